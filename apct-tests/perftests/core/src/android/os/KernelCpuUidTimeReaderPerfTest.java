@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.util.SparseArray;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.internal.os.KernelCpuProcStringReader;
+import com.android.internal.os.KernelCpuUidBpfMapReader;
+import com.android.internal.os.KernelCpuUidTimeReader.KernelCpuUidActiveTimeReader;
+import com.android.internal.os.KernelCpuUidTimeReader.KernelCpuUidClusterTimeReader;
+import com.android.internal.os.KernelCpuUidTimeReader.KernelCpuUidFreqTimeReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Performance tests of the per-UID CPU time readers BatteryStats uses on each CPU update, fed
+ * with the BPF map contents of a device running many apps.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class KernelCpuUidTimeReaderPerfTest {
+    private static final int UID_COUNT = 1000;
+    private static final int FREQ_COUNT = 48;
+    private static final int CORE_COUNT = 8;
+    private static final long[] CORES_ON_CLUSTERS = {4, 3, 1};
+
+    @Rule
+    public final PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    @Test
+    public void timeReadDeltaFreqTimes() {
+        final FakeBpfMapReader bpfReader = new FakeBpfMapReader(new long[FREQ_COUNT], FREQ_COUNT);
+        final KernelCpuUidFreqTimeReader reader = new KernelCpuUidFreqTimeReader("",
+                new KernelCpuProcStringReader(""), bpfReader, false);
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            bpfReader.advanceTimes();
+            state.resumeTiming();
+            reader.readDelta(null);
+        }
+    }
+
+    @Test
+    public void timeReadDeltaActiveTimes() {
+        final FakeBpfMapReader bpfReader =
+                new FakeBpfMapReader(new long[] {CORE_COUNT}, CORE_COUNT);
+        final KernelCpuUidActiveTimeReader reader = new KernelCpuUidActiveTimeReader(
+                new KernelCpuProcStringReader(""), bpfReader, false);
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            bpfReader.advanceTimes();
+            state.resumeTiming();
+            reader.readDelta(null);
+        }
+    }
+
+    @Test
+    public void timeReadDeltaClusterTimes() {
+        final FakeBpfMapReader bpfReader = new FakeBpfMapReader(CORES_ON_CLUSTERS, CORE_COUNT);
+        final KernelCpuUidClusterTimeReader reader = new KernelCpuUidClusterTimeReader(
+                new KernelCpuProcStringReader(""), bpfReader, false);
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            bpfReader.advanceTimes();
+            state.resumeTiming();
+            reader.readDelta(null);
+        }
+    }
+
+    /** Serves the same map on each read, with the times of all the UIDs going up in between. */
+    private static class FakeBpfMapReader extends KernelCpuUidBpfMapReader {
+        private final long[] mDimensions;
+
+        FakeBpfMapReader(long[] dimensions, int timesPerUid) {
+            mDimensions = dimensions;
+            mData = new SparseArray<>(UID_COUNT);
+            for (int i = 0; i < UID_COUNT; i++) {
+                mData.put(Process.FIRST_APPLICATION_UID + i, new long[timesPerUid]);
+            }
+        }
+
+        void advanceTimes() {
+            for (int i = 0; i < mData.size(); i++) {
+                final long[] times = mData.valueAt(i);
+                for (int j = 0; j < times.length; j++) {
+                    times[j] += j + 1;
+                }
+            }
+        }
+
+        @Override
+        public boolean startTrackingBpfTimes() {
+            return true;
+        }
+
+        @Override
+        protected boolean readBpfData() {
+            return true;
+        }
+
+        @Override
+        public long[] getDataDimensions() {
+            return mDimensions;
+        }
+    }
+}
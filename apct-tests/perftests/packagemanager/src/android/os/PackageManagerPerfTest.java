@@ -29,6 +29,7 @@ import android.content.Intent;
 import android.content.IntentSender;
 import android.content.pm.PackageInstaller;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.perftests.utils.BenchmarkState;
 import android.perftests.utils.PerfStatusReporter;
 
@@ -184,6 +185,65 @@ public class PackageManagerPerfTest {
         testQueryIntentActivities();
     }
 
+    @Test
+    @DisableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryBroadcastReceiversActionOnly() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final PackageManager pm =
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageManager();
+        final Intent intent = new Intent(Intent.ACTION_BOOT_COMPLETED);
+
+        while (state.keepRunning()) {
+            pm.queryBroadcastReceivers(intent, 0);
+        }
+    }
+
+    @Test
+    @EnableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryBroadcastReceiversActionOnlyWithFiltering() {
+        testQueryBroadcastReceiversActionOnly();
+    }
+
+    @Test
+    @DisableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryBroadcastReceiversActionAndScheme() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final PackageManager pm =
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageManager();
+        final Intent intent = new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", TEST_ACTIVITY.getPackageName(), null));
+
+        while (state.keepRunning()) {
+            pm.queryBroadcastReceivers(intent, 0);
+        }
+    }
+
+    @Test
+    @EnableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryBroadcastReceiversActionAndSchemeWithFiltering() {
+        testQueryBroadcastReceiversActionAndScheme();
+    }
+
+    @Test
+    @DisableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryIntentActivitiesViewUri() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final PackageManager pm =
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageManager();
+        final Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://www.android.com"))
+                .addCategory(Intent.CATEGORY_BROWSABLE);
+
+        while (state.keepRunning()) {
+            pm.queryIntentActivities(intent, 0);
+        }
+    }
+
+    @Test
+    @EnableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
+    public void testQueryIntentActivitiesViewUriWithFiltering() {
+        testQueryIntentActivitiesViewUri();
+    }
+
     @Test
     @DisableCompatChanges(PackageManager.FILTER_APPLICATION_QUERY)
     public void testGetPackageInfo() throws Exception {
@@ -40,6 +40,8 @@ public final class SettingsProviderPerfTest {
     private static final String SETTING_NAME1 = "test:setting1";
     private static final String SETTING_NAME2 = "test-setting2";
     private static final String UNSET_SETTING = "test_unset_setting";
+    private static final String WRITE_SETTING_PREFIX = "test_write_setting";
+    private static final int WRITE_SETTING_COUNT = 16;
 
     private final ContentResolver mContentResolver;
 
@@ -63,6 +65,9 @@ public final class SettingsProviderPerfTest {
         Settings.Secure.putString(mContentResolver, SETTING_NAME1, "null");
         Settings.Config.deleteString(NAMESPACE, SETTING_NAME1);
         Settings.Config.deleteString(NAMESPACE, SETTING_NAME2);
+        for (int i = 0; i < WRITE_SETTING_COUNT; i++) {
+            Settings.Secure.putString(mContentResolver, WRITE_SETTING_PREFIX + i, "null");
+        }
     }
 
     @Test
@@ -101,6 +106,28 @@ public final class SettingsProviderPerfTest {
         }
     }
 
+    @Test
+    public void testSettingsValueConsecutiveWrite() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int i = 0;
+        while (state.keepRunning()) {
+            // Each write makes the provider persist the changed setting shortly after
+            Settings.Secure.putString(mContentResolver, SETTING_NAME1, Integer.toString(i));
+            i++;
+        }
+    }
+
+    @Test
+    public void testSettingsValueConsecutiveWriteManyKeys() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int i = 0;
+        while (state.keepRunning()) {
+            Settings.Secure.putString(mContentResolver,
+                    WRITE_SETTING_PREFIX + (i % WRITE_SETTING_COUNT), Integer.toString(i));
+            i++;
+        }
+    }
+
     @Test
     public void testSettingsNamespaceConsecutiveRead() {
         final List<String> names = new ArrayList<>();
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.wm;
+
+import static android.hardware.display.DisplayManager.VIRTUAL_DISPLAY_FLAG_OWN_CONTENT_ONLY;
+import static android.view.WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
+import static android.view.WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+import static android.view.WindowManager.LayoutParams.TYPE_PRIVATE_PRESENTATION;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.ImageReader;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.PerfTestActivity;
+import android.util.MergedConfiguration;
+import android.view.IWindow;
+import android.view.IWindowSession;
+import android.view.InsetsSourceControl;
+import android.view.InsetsState;
+import android.view.SurfaceControl;
+import android.view.View;
+import android.view.WindowManager;
+import android.view.WindowManagerGlobal;
+import android.widget.LinearLayout;
+import android.window.ClientWindowFrames;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.rule.ActivityTestRule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures the latency of relaying out a window of the default display, which goes through
+ * surface placement, while another display holds a growing number of windows that don't change.
+ */
+@RunWith(Parameterized.class)
+@LargeTest
+public class SurfacePlacementPerfTest extends WindowManagerPerfTestBase {
+    private static final int DISPLAY_SIZE = 400;
+
+    @Rule
+    public final PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    @Rule
+    public final ActivityTestRule<PerfTestActivity> mActivityRule =
+            new ActivityTestRule<>(PerfTestActivity.class);
+
+    /** The number of windows on the other display. */
+    @Parameterized.Parameter(0)
+    public int windowCount;
+
+    @Parameterized.Parameters(name = "{0}Windows")
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][] { { 0 }, { 50 }, { 200 }, { 500 } });
+    }
+
+    private final ArrayList<View> mViews = new ArrayList<>();
+    private ImageReader mImageReader;
+    private VirtualDisplay mVirtualDisplay;
+    private WindowManager mVirtualDisplayWindowManager;
+
+    @After
+    public void tearDown() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            for (int i = 0; i < mViews.size(); i++) {
+                mVirtualDisplayWindowManager.removeViewImmediate(mViews.get(i));
+            }
+        });
+        mViews.clear();
+        if (mVirtualDisplay != null) {
+            mVirtualDisplay.release();
+        }
+        if (mImageReader != null) {
+            mImageReader.close();
+        }
+    }
+
+    @Test
+    public void testRelayoutWithWindowsOnOtherDisplay() throws Throwable {
+        final Activity activity = mActivityRule.getActivity();
+        final ContentView contentView = new ContentView(activity);
+        mActivityRule.runOnUiThread(() -> activity.setContentView(contentView));
+        addWindowsToVirtualDisplay(activity);
+
+        final IWindow window = contentView.getWindow();
+        final View decorView = activity.getWindow().getDecorView();
+        final WindowManager.LayoutParams params =
+                (WindowManager.LayoutParams) decorView.getLayoutParams();
+        final int width = decorView.getMeasuredWidth();
+        final int height = decorView.getMeasuredHeight();
+        final ClientWindowFrames outFrames = new ClientWindowFrames();
+        final MergedConfiguration outMergedConfiguration = new MergedConfiguration();
+        final InsetsState outInsetsState = new InsetsState();
+        final InsetsSourceControl.Array outControls = new InsetsSourceControl.Array();
+        final SurfaceControl outSurfaceControl = decorView.getViewRootImpl().getSurfaceControl();
+        final IWindowSession session = WindowManagerGlobal.getWindowSession();
+
+        // Toggle the visibility so that every relayout places surfaces.
+        final int[] visibilities = { View.INVISIBLE, View.VISIBLE };
+        int iteration = 0;
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            relayout(session, window, params, width, height,
+                    visibilities[iteration++ % visibilities.length], outFrames,
+                    outMergedConfiguration, outSurfaceControl, outInsetsState, outControls);
+        }
+    }
+
+    private static void relayout(IWindowSession session, IWindow window,
+            WindowManager.LayoutParams params, int width, int height, int visibility,
+            ClientWindowFrames outFrames, MergedConfiguration outMergedConfiguration,
+            SurfaceControl outSurfaceControl, InsetsState outInsetsState,
+            InsetsSourceControl.Array outControls) throws RemoteException {
+        session.relayout(window, params, width, height, visibility, 0 /* flags */,
+                0 /* seq */, 0 /* lastSyncSeqId */, outFrames, outMergedConfiguration,
+                outSurfaceControl, outInsetsState, outControls, new Bundle());
+    }
+
+    private void addWindowsToVirtualDisplay(Activity activity) throws Throwable {
+        mImageReader = ImageReader.newInstance(DISPLAY_SIZE, DISPLAY_SIZE, PixelFormat.RGBA_8888,
+                2 /* maxImages */);
+        mVirtualDisplay = activity.getSystemService(DisplayManager.class).createVirtualDisplay(
+                SurfacePlacementPerfTest.class.getSimpleName(), DISPLAY_SIZE, DISPLAY_SIZE,
+                160 /* densityDpi */, mImageReader.getSurface(),
+                VIRTUAL_DISPLAY_FLAG_OWN_CONTENT_ONLY);
+        final Context displayContext = activity.createDisplayContext(
+                mVirtualDisplay.getDisplay());
+        mVirtualDisplayWindowManager = displayContext.getSystemService(WindowManager.class);
+
+        mActivityRule.runOnUiThread(() -> {
+            for (int i = 0; i < windowCount; i++) {
+                final View view = new View(displayContext);
+                final WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
+                        DISPLAY_SIZE / 4, DISPLAY_SIZE / 4, TYPE_PRIVATE_PRESENTATION,
+                        FLAG_NOT_FOCUSABLE | FLAG_NOT_TOUCHABLE, PixelFormat.OPAQUE);
+                lp.x = i % DISPLAY_SIZE;
+                lp.y = i / DISPLAY_SIZE;
+                mVirtualDisplayWindowManager.addView(view, lp);
+                mViews.add(view);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+    }
+
+    /** A view to get the IWindow of the activity. */
+    private static class ContentView extends LinearLayout {
+        ContentView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected IWindow getWindow() {
+            return super.getWindow();
+        }
+    }
+}
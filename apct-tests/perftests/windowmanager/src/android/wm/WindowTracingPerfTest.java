@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.wm;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.PerfTestActivity;
+import android.util.Log;
+import android.util.MergedConfiguration;
+import android.view.IWindow;
+import android.view.IWindowSession;
+import android.view.InsetsSourceControl;
+import android.view.InsetsState;
+import android.view.SurfaceControl;
+import android.view.View;
+import android.view.WindowManager;
+import android.view.WindowManagerGlobal;
+import android.widget.LinearLayout;
+import android.window.ClientWindowFrames;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.rule.ActivityTestRule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures the latency of relaying out a window with window tracing off and on. The time the
+ * window manager lock was held by the captures is reported by {@code cmd window tracing status},
+ * which is logged after each run.
+ */
+@RunWith(Parameterized.class)
+@LargeTest
+public class WindowTracingPerfTest extends WindowManagerPerfTestBase {
+    private static final String TAG = "WindowTracingPerfTest";
+
+    @Rule
+    public final PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    @Rule
+    public final ActivityTestRule<PerfTestActivity> mActivityRule =
+            new ActivityTestRule<>(PerfTestActivity.class);
+
+    /** Whether window tracing is on while relaying out. */
+    @Parameterized.Parameter(0)
+    public boolean tracing;
+
+    @Parameterized.Parameters(name = "tracing={0}")
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    @After
+    public void stopTracing() {
+        if (tracing) {
+            Log.i(TAG, executeShellCommand("cmd window tracing status"));
+            executeShellCommand("cmd window tracing stop");
+        }
+    }
+
+    @Test
+    public void testRelayout() throws Throwable {
+        final Activity activity = mActivityRule.getActivity();
+        final ContentView contentView = new ContentView(activity);
+        mActivityRule.runOnUiThread(() -> activity.setContentView(contentView));
+        if (tracing) {
+            executeShellCommand("cmd window tracing start");
+        }
+
+        final IWindow window = contentView.getWindow();
+        final View decorView = activity.getWindow().getDecorView();
+        final WindowManager.LayoutParams params =
+                (WindowManager.LayoutParams) decorView.getLayoutParams();
+        final int width = decorView.getMeasuredWidth();
+        final int height = decorView.getMeasuredHeight();
+        final ClientWindowFrames outFrames = new ClientWindowFrames();
+        final MergedConfiguration outMergedConfiguration = new MergedConfiguration();
+        final InsetsState outInsetsState = new InsetsState();
+        final InsetsSourceControl.Array outControls = new InsetsSourceControl.Array();
+        final SurfaceControl outSurfaceControl = decorView.getViewRootImpl().getSurfaceControl();
+        final IWindowSession session = WindowManagerGlobal.getWindowSession();
+
+        // Toggle the visibility so that every relayout places surfaces and logs a trace entry.
+        final int[] visibilities = { View.INVISIBLE, View.VISIBLE };
+        int iteration = 0;
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            session.relayout(window, params, width, height,
+                    visibilities[iteration++ % visibilities.length], 0 /* flags */,
+                    0 /* seq */, 0 /* lastSyncSeqId */, outFrames, outMergedConfiguration,
+                    outSurfaceControl, outInsetsState, outControls, new Bundle());
+        }
+    }
+
+    /** A view to get the IWindow of the activity. */
+    private static class ContentView extends LinearLayout {
+        ContentView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected IWindow getWindow() {
+            return super.getWindow();
+        }
+    }
+}
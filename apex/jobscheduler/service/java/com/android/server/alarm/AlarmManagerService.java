@@ -750,6 +750,8 @@ public class AlarmManagerService extends SystemService {
         static final String KEY_TEMPORARY_QUOTA_BUMP = "temporary_quota_bump";
         @VisibleForTesting
         static final String KEY_CACHED_LISTENER_REMOVAL_DELAY = "cached_listener_removal_delay";
+        @VisibleForTesting
+        static final String KEY_USE_TIMING_WHEEL_ALARM_STORE = "use_timing_wheel_alarm_store";
 
         private static final long DEFAULT_MIN_FUTURITY = 5 * 1000;
         private static final long DEFAULT_MIN_INTERVAL = 60 * 1000;
@@ -797,6 +799,8 @@ public class AlarmManagerService extends SystemService {
 
         private static final long DEFAULT_CACHED_LISTENER_REMOVAL_DELAY = 10_000;
 
+        private static final boolean DEFAULT_USE_TIMING_WHEEL_ALARM_STORE = false;
+
         // Minimum futurity of a new alarm
         public long MIN_FUTURITY = DEFAULT_MIN_FUTURITY;
 
@@ -900,6 +904,12 @@ public class AlarmManagerService extends SystemService {
          */
         public long CACHED_LISTENER_REMOVAL_DELAY = DEFAULT_CACHED_LISTENER_REMOVAL_DELAY;
 
+        /**
+         * Whether alarms are kept in a {@link TimingWheelAlarmStore} instead of a
+         * {@link LazyAlarmStore}.
+         */
+        public boolean USE_TIMING_WHEEL_ALARM_STORE = DEFAULT_USE_TIMING_WHEEL_ALARM_STORE;
+
         private long mLastAllowWhileIdleWhitelistDuration = -1;
         private int mVersion = 0;
 
@@ -1088,6 +1098,15 @@ public class AlarmManagerService extends SystemService {
                                     KEY_CACHED_LISTENER_REMOVAL_DELAY,
                                     DEFAULT_CACHED_LISTENER_REMOVAL_DELAY);
                             break;
+                        case KEY_USE_TIMING_WHEEL_ALARM_STORE:
+                            final boolean useTimingWheel = properties.getBoolean(
+                                    KEY_USE_TIMING_WHEEL_ALARM_STORE,
+                                    DEFAULT_USE_TIMING_WHEEL_ALARM_STORE);
+                            if (useTimingWheel != USE_TIMING_WHEEL_ALARM_STORE) {
+                                USE_TIMING_WHEEL_ALARM_STORE = useTimingWheel;
+                                migrateAlarmStoreLocked();
+                            }
+                            break;
                         default:
                             if (name.startsWith(KEY_PREFIX_STANDBY_QUOTA) && !standbyQuotaUpdated) {
                                 // The quotas need to be updated in order, so we can't just rely
@@ -1337,6 +1356,9 @@ public class AlarmManagerService extends SystemService {
             TimeUtils.formatDuration(CACHED_LISTENER_REMOVAL_DELAY, pw);
             pw.println();
 
+            pw.print(KEY_USE_TIMING_WHEEL_ALARM_STORE, USE_TIMING_WHEEL_ALARM_STORE);
+            pw.println();
+
             pw.decreaseIndent();
         }
 
@@ -1956,8 +1978,7 @@ public class AlarmManagerService extends SystemService {
             mHandler = new AlarmHandler();
             mConstants = new Constants(mHandler);
 
-            mAlarmStore = new LazyAlarmStore();
-            mAlarmStore.setAlarmClockRemovalListener(mAlarmClockUpdater);
+            mAlarmStore = createAlarmStoreLocked();
 
             mAppWakeupHistory = new AppWakeupHistory(Constants.DEFAULT_APP_STANDBY_WINDOW);
             mAllowWhileIdleHistory = new AppWakeupHistory(INTERVAL_HOUR);
@@ -3112,8 +3133,10 @@ public class AlarmManagerService extends SystemService {
                         + " does not belong to the calling uid " + callingUid);
             }
             synchronized (mLock) {
-                removeAlarmsInternalLocked(
-                        a -> (a.matches(callingPackage) && a.creatorUid == callingUid),
+                final Predicate<Alarm> whichAlarms =
+                        a -> (a.matches(callingPackage) && a.creatorUid == callingUid);
+                removeAlarmsInternalLocked(whichAlarms,
+                        mAlarmStore.removeForPackage(callingPackage, whichAlarms),
                         REMOVE_REASON_ALARM_CANCELLED);
             }
         }
@@ -4030,6 +4053,31 @@ public class AlarmManagerService extends SystemService {
                 DateFormat.format(pattern, info.getTriggerTime()).toString();
     }
 
+    @GuardedBy("mLock")
+    private AlarmStore createAlarmStoreLocked() {
+        final AlarmStore alarmStore = mConstants.USE_TIMING_WHEEL_ALARM_STORE
+                ? new TimingWheelAlarmStore() : new LazyAlarmStore();
+        alarmStore.setAlarmClockRemovalListener(mAlarmClockUpdater);
+        return alarmStore;
+    }
+
+    /**
+     * Moves all the alarms to a new store of the type selected by
+     * {@link Constants#USE_TIMING_WHEEL_ALARM_STORE}. The alarms keep their delivery times, so
+     * nothing needs to be rescheduled.
+     */
+    @GuardedBy("mLock")
+    void migrateAlarmStoreLocked() {
+        if (mAlarmStore == null) {
+            return;
+        }
+        final AlarmStore newStore = createAlarmStoreLocked();
+        newStore.addAll(mAlarmStore.asList());
+        Slog.i(TAG, "Moved " + newStore.size() + " alarms from " + mAlarmStore.getName()
+                + " to " + newStore.getName());
+        mAlarmStore = newStore;
+    }
+
     void rescheduleKernelAlarmsLocked() {
         // Schedule the next upcoming wakeup alarm.  If there is a deliverable batch
         // prior to that which contains no wakeups, we schedule that as well.
@@ -4134,7 +4182,8 @@ public class AlarmManagerService extends SystemService {
         final Predicate<Alarm> whichAlarms = a -> (a.uid == uid && a.packageName.equals(packageName)
                 && a.windowLength == 0);
         synchronized (mLock) {
-            removeAlarmsInternalLocked(whichAlarms, REMOVE_REASON_EXACT_PERMISSION_REVOKED);
+            removeAlarmsInternalLocked(whichAlarms, mAlarmStore.removeForUid(uid, whichAlarms),
+                    REMOVE_REASON_EXACT_PERMISSION_REVOKED);
         }
 
         if (killUid && mConstants.KILL_ON_SCHEDULE_EXACT_ALARM_REVOKED) {
@@ -4145,10 +4194,23 @@ public class AlarmManagerService extends SystemService {
 
     @GuardedBy("mLock")
     private void removeAlarmsInternalLocked(Predicate<Alarm> whichAlarms, int reason) {
+        removeAlarmsInternalLocked(whichAlarms, mAlarmStore.remove(whichAlarms), reason);
+    }
+
+    /**
+     * Removes the alarms that pass {@code whichAlarms} from the alarms that are pending
+     * delivery, and cleans up after all the removed alarms.
+     *
+     * @param removedAlarms The alarms that passed {@code whichAlarms} and were already removed
+     *                      from {@link #mAlarmStore}, possibly through one of its indexed
+     *                      removals.
+     */
+    @GuardedBy("mLock")
+    private void removeAlarmsInternalLocked(Predicate<Alarm> whichAlarms,
+            ArrayList<Alarm> removedAlarms, int reason) {
         final long nowRtc = mInjector.getCurrentTimeMillis();
         final long nowElapsed = mInjector.getElapsedRealtimeMillis();
 
-        final ArrayList<Alarm> removedAlarms = mAlarmStore.remove(whichAlarms);
         final boolean removedFromStore = !removedAlarms.isEmpty();
 
         for (int i = mPendingBackgroundAlarms.size() - 1; i >= 0; i--) {
@@ -4218,7 +4280,8 @@ public class AlarmManagerService extends SystemService {
             }
             return;
         }
-        removeAlarmsInternalLocked(a -> a.matches(operation, directReceiver), reason);
+        removeAlarmsInternalLocked(a -> a.matches(operation, directReceiver),
+                mAlarmStore.removeMatching(operation, directReceiver), reason);
     }
 
     @GuardedBy("mLock")
@@ -4227,7 +4290,9 @@ public class AlarmManagerService extends SystemService {
             // If a force-stop occurs for a system-uid package, ignore it.
             return;
         }
-        removeAlarmsInternalLocked(a -> a.uid == uid, reason);
+        final Predicate<Alarm> whichAlarms = a -> a.uid == uid;
+        removeAlarmsInternalLocked(whichAlarms, mAlarmStore.removeForUid(uid, whichAlarms),
+                reason);
     }
 
     @GuardedBy("mLock")
@@ -4239,7 +4304,9 @@ public class AlarmManagerService extends SystemService {
             }
             return;
         }
-        removeAlarmsInternalLocked(a -> a.matches(packageName), reason);
+        final Predicate<Alarm> whichAlarms = a -> a.matches(packageName);
+        removeAlarmsInternalLocked(whichAlarms,
+                mAlarmStore.removeForPackage(packageName, whichAlarms), reason);
     }
 
     // Only called for ephemeral apps
@@ -4251,7 +4318,8 @@ public class AlarmManagerService extends SystemService {
         }
         final Predicate<Alarm> whichAlarms = (a) -> (a.uid == uid
                 && mActivityManagerInternal.isAppStartModeDisabled(uid, a.packageName));
-        removeAlarmsInternalLocked(whichAlarms, REMOVE_REASON_UNDEFINED);
+        removeAlarmsInternalLocked(whichAlarms, mAlarmStore.removeForUid(uid, whichAlarms),
+                REMOVE_REASON_UNDEFINED);
     }
 
     @GuardedBy("mLock")
@@ -5155,8 +5223,10 @@ public class AlarmManagerService extends SystemService {
                 case REMOVE_EXACT_LISTENER_ALARMS_ON_CACHED:
                     uid = (Integer) msg.obj;
                     synchronized (mLock) {
-                        removeAlarmsInternalLocked(a -> {
-                            if (a.uid != uid || a.listener == null || a.windowLength != 0) {
+                        final int cachedUid = uid;
+                        final Predicate<Alarm> whichAlarms = a -> {
+                            if (a.uid != cachedUid || a.listener == null
+                                    || a.windowLength != 0) {
                                 return false;
                             }
                             // TODO (b/265195908): Change to .w once we have some data on breakages.
@@ -5164,7 +5234,10 @@ public class AlarmManagerService extends SystemService {
                                     + UserHandle.formatUid(a.uid) + ":" + a.packageName
                                     + " because the app went into cached state");
                             return true;
-                        }, REMOVE_REASON_LISTENER_CACHED);
+                        };
+                        removeAlarmsInternalLocked(whichAlarms,
+                                mAlarmStore.removeForUid(cachedUid, whichAlarms),
+                                REMOVE_REASON_LISTENER_CACHED);
                     }
                     break;
                 default:
@@ -16,6 +16,8 @@
 
 package com.android.server.alarm;
 
+import android.app.IAlarmListener;
+import android.app.PendingIntent;
 import android.os.SystemClock;
 import android.util.IndentingPrintWriter;
 import android.util.proto.ProtoOutputStream;
@@ -54,6 +56,41 @@ public interface AlarmStore {
      */
     ArrayList<Alarm> remove(Predicate<Alarm> whichAlarms);
 
+    /**
+     * Removes alarms of the given uid that pass the given predicate. Stores that index their
+     * alarms by uid can do this without going through all the alarms.
+     *
+     * @param uid The uid of the alarms to remove.
+     * @param whichAlarms The predicate describing the alarms of the uid to remove.
+     * @return a list containing alarms that were removed.
+     */
+    default ArrayList<Alarm> removeForUid(int uid, Predicate<Alarm> whichAlarms) {
+        return remove(a -> a.uid == uid && whichAlarms.test(a));
+    }
+
+    /**
+     * Removes alarms that {@link Alarm#matches(String) match} the given package and pass the
+     * given predicate.
+     *
+     * @param packageName The source package of the alarms to remove.
+     * @param whichAlarms The predicate describing the alarms of the package to remove.
+     * @return a list containing alarms that were removed.
+     */
+    default ArrayList<Alarm> removeForPackage(String packageName,
+            Predicate<Alarm> whichAlarms) {
+        return remove(a -> a.matches(packageName) && whichAlarms.test(a));
+    }
+
+    /**
+     * Removes alarms that {@link Alarm#matches(PendingIntent, IAlarmListener) match} the given
+     * operation or listener.
+     *
+     * @return a list containing alarms that were removed.
+     */
+    default ArrayList<Alarm> removeMatching(PendingIntent operation, IAlarmListener listener) {
+        return remove(a -> a.matches(operation, listener));
+    }
+
     /**
      * Set a listener to be invoked whenever an alarm clock is removed by a call to
      * {@link #remove(Predicate) remove} from this store.
@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.alarm;
+
+import static com.android.server.alarm.AlarmManagerService.dumpAlarmList;
+import static com.android.server.alarm.AlarmManagerService.isTimeTickAlarm;
+
+import android.app.AlarmManager;
+import android.app.IAlarmListener;
+import android.app.PendingIntent;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.IndentingPrintWriter;
+import android.util.Slog;
+import android.util.SparseArray;
+import android.util.proto.ProtoOutputStream;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.StatLogger;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Alarm store backed by a hierarchical timing wheel.
+ * <p>
+ * Alarms are hashed into slots by their delivery time. Each of the {@link #NUM_LEVELS} levels has
+ * {@link #NUM_SLOTS} slots, and a slot of a level spans all the slots of the level below it. An
+ * alarm is kept in the lowest level whose current span contains its delivery time, so the alarms
+ * of a level are all due before the alarms of the levels above it, and the slots of a level are
+ * due in order. When the wheel moves on to a new slot of a level, the alarms of that slot are
+ * cascaded to the levels below. Adding or removing an alarm only touches its own slot, and only
+ * the slots holding the earliest alarms need to be sorted to find the next delivery times.
+ * <p>
+ * Alarms are also indexed by uid, by source package and by their PendingIntent or listener, so
+ * that removing the alarms of an app, or an alarm that is being replaced, doesn't have to go
+ * through all the alarms.
+ */
+public class TimingWheelAlarmStore implements AlarmStore {
+    @VisibleForTesting
+    static final String TAG = TimingWheelAlarmStore.class.getSimpleName();
+    private static final long ALARM_DEADLINE_SLOP = 500;
+
+    /** log2 of the time spanned by a slot of the lowest level, in milliseconds. */
+    private static final int TICK_SHIFT = 10;
+    private static final int SLOT_BITS = 6;
+    private static final int NUM_SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = NUM_SLOTS - 1;
+    /**
+     * With 1024 ms ticks, the levels span about 65 seconds, 70 minutes, three days and six and a
+     * half months. Alarms further out than that are kept in {@link #mOverflow}.
+     */
+    private static final int NUM_LEVELS = 4;
+
+    private static final Comparator<Alarm> sIncreasingTimeOrder = Comparator.comparingLong(
+            Alarm::getWhenElapsed);
+
+    /** The alarms whose delivery times fall in the same span of the wheel. */
+    private static final class Slot {
+        final ArrayList<Alarm> mAlarms = new ArrayList<>();
+        private boolean mSorted = true;
+
+        void add(Alarm a) {
+            final int n = mAlarms.size();
+            if (n > 0 && mAlarms.get(n - 1).getWhenElapsed() > a.getWhenElapsed()) {
+                mSorted = false;
+            }
+            mAlarms.add(a);
+        }
+
+        void remove(Alarm a) {
+            // Alarms are compared by identity, and removing keeps the order.
+            mAlarms.remove(a);
+        }
+
+        void sortIfNeeded() {
+            if (!mSorted) {
+                Collections.sort(mAlarms, sIncreasingTimeOrder);
+                mSorted = true;
+            }
+        }
+
+        boolean isEmpty() {
+            return mAlarms.isEmpty();
+        }
+    }
+
+    private final Slot[][] mWheel = new Slot[NUM_LEVELS][NUM_SLOTS];
+    private final Slot mOverflow = new Slot();
+    /** The slot of each alarm in this store. */
+    private final HashMap<Alarm, Slot> mSlots = new HashMap<>();
+    /** The tick that the wheel is at. Alarms due before it are kept in its slot. */
+    private long mCurrentTick;
+
+    private final SparseArray<ArraySet<Alarm>> mAlarmsByUid = new SparseArray<>();
+    private final ArrayMap<String, ArraySet<Alarm>> mAlarmsBySourcePackage = new ArrayMap<>();
+    /** Alarms keyed by their {@link Alarm#operation} or the binder of their listener. */
+    private final HashMap<Object, ArraySet<Alarm>> mAlarmsByTarget = new HashMap<>();
+
+    private Runnable mOnAlarmClockRemoved;
+
+    interface Stats {
+        int GET_NEXT_DELIVERY_TIME = 0;
+        int GET_NEXT_WAKEUP_DELIVERY_TIME = 1;
+        int GET_COUNT = 2;
+    }
+
+    final StatLogger mStatLogger = new StatLogger(TAG + " stats", new String[]{
+            "GET_NEXT_DELIVERY_TIME",
+            "GET_NEXT_WAKEUP_DELIVERY_TIME",
+            "GET_COUNT",
+    });
+
+    public TimingWheelAlarmStore() {
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            for (int i = 0; i < NUM_SLOTS; i++) {
+                mWheel[level][i] = new Slot();
+            }
+        }
+    }
+
+    @Override
+    public void add(Alarm a) {
+        insert(a);
+        addToIndex(mAlarmsByUid, a.uid, a);
+        addToIndex(mAlarmsBySourcePackage, a.sourcePackage, a);
+        addToIndex(mAlarmsByTarget, getTarget(a), a);
+    }
+
+    @Override
+    public void addAll(ArrayList<Alarm> alarms) {
+        if (alarms == null) {
+            return;
+        }
+        for (int i = 0; i < alarms.size(); i++) {
+            add(alarms.get(i));
+        }
+    }
+
+    @Override
+    public ArrayList<Alarm> remove(Predicate<Alarm> whichAlarms) {
+        final ArrayList<Alarm> removedAlarms = new ArrayList<>();
+        for (final Alarm a : new InOrderIterable()) {
+            if (whichAlarms.test(a)) {
+                removedAlarms.add(a);
+            }
+        }
+        return removeAll(removedAlarms);
+    }
+
+    @Override
+    public ArrayList<Alarm> removeForUid(int uid, Predicate<Alarm> whichAlarms) {
+        return removeAll(filter(mAlarmsByUid.get(uid), whichAlarms));
+    }
+
+    @Override
+    public ArrayList<Alarm> removeForPackage(String packageName, Predicate<Alarm> whichAlarms) {
+        return removeAll(filter(mAlarmsBySourcePackage.get(packageName), whichAlarms));
+    }
+
+    @Override
+    public ArrayList<Alarm> removeMatching(PendingIntent operation, IAlarmListener listener) {
+        final Predicate<Alarm> whichAlarms = a -> a.matches(operation, listener);
+        final ArrayList<Alarm> removedAlarms = new ArrayList<>();
+        if (operation != null) {
+            removedAlarms.addAll(filter(mAlarmsByTarget.get(operation), whichAlarms));
+        }
+        if (listener != null) {
+            removedAlarms.addAll(filter(mAlarmsByTarget.get(listener.asBinder()), whichAlarms));
+        }
+        return removeAll(removedAlarms);
+    }
+
+    private static ArrayList<Alarm> filter(ArraySet<Alarm> alarms, Predicate<Alarm> whichAlarms) {
+        final ArrayList<Alarm> filtered = new ArrayList<>();
+        if (alarms != null) {
+            for (int i = 0; i < alarms.size(); i++) {
+                final Alarm a = alarms.valueAt(i);
+                if (whichAlarms.test(a)) {
+                    filtered.add(a);
+                }
+            }
+        }
+        return filtered;
+    }
+
+    private ArrayList<Alarm> removeAll(ArrayList<Alarm> removedAlarms) {
+        for (int i = 0; i < removedAlarms.size(); i++) {
+            final Alarm removed = removedAlarms.get(i);
+            removeInternal(removed);
+            if (removed.alarmClock != null && mOnAlarmClockRemoved != null) {
+                mOnAlarmClockRemoved.run();
+            }
+            if (isTimeTickAlarm(removed)) {
+                // This code path is not invoked when delivering alarms, only when removing
+                // alarms due to the caller cancelling it or getting uninstalled, etc.
+                Slog.wtf(TAG, "Removed TIME_TICK alarm");
+            }
+        }
+        return removedAlarms;
+    }
+
+    private void removeInternal(Alarm a) {
+        final Slot slot = mSlots.remove(a);
+        if (slot != null) {
+            slot.remove(a);
+        }
+        removeFromIndex(mAlarmsByUid, a.uid, a);
+        removeFromIndex(mAlarmsBySourcePackage, a.sourcePackage, a);
+        removeFromIndex(mAlarmsByTarget, getTarget(a), a);
+    }
+
+    @Override
+    public void setAlarmClockRemovalListener(Runnable listener) {
+        mOnAlarmClockRemoved = listener;
+    }
+
+    @Override
+    public Alarm getNextWakeFromIdleAlarm() {
+        for (final Alarm alarm : new InOrderIterable()) {
+            if ((alarm.flags & AlarmManager.FLAG_WAKE_FROM_IDLE) != 0) {
+                return alarm;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return mSlots.size();
+    }
+
+    @Override
+    public long getNextWakeupDeliveryTime() {
+        final long start = mStatLogger.getTime();
+        long nextWakeup = 0;
+        for (final Alarm a : new InOrderIterable()) {
+            if (!a.wakeup) {
+                continue;
+            }
+            if (nextWakeup == 0) {
+                nextWakeup = a.getMaxWhenElapsed();
+            } else {
+                if (a.getWhenElapsed() > nextWakeup) {
+                    break;
+                }
+                nextWakeup = Math.min(nextWakeup, a.getMaxWhenElapsed());
+            }
+        }
+        mStatLogger.logDurationStat(Stats.GET_NEXT_WAKEUP_DELIVERY_TIME, start);
+        return nextWakeup;
+    }
+
+    @Override
+    public long getNextDeliveryTime() {
+        final long start = mStatLogger.getTime();
+        final InOrderIterator it = new InOrderIterator();
+        if (!it.hasNext()) {
+            return 0;
+        }
+        long nextDelivery = it.next().getMaxWhenElapsed();
+        while (it.hasNext()) {
+            final Alarm a = it.next();
+            if (a.getWhenElapsed() > nextDelivery) {
+                break;
+            }
+            nextDelivery = Math.min(nextDelivery, a.getMaxWhenElapsed());
+        }
+        mStatLogger.logDurationStat(Stats.GET_NEXT_DELIVERY_TIME, start);
+        return nextDelivery;
+    }
+
+    @Override
+    public ArrayList<Alarm> removePendingAlarms(long nowElapsed) {
+        final ArrayList<Alarm> pending = new ArrayList<>();
+
+        // Only send wake-up alarms if this is the absolutely latest time we can evaluate
+        // for at least one wakeup alarm. This prevents sending other non-wakeup alarms when the
+        // screen is off but the CPU is awake for some reason.
+        boolean sendWakeups = false;
+
+        // If any alarm with FLAG_STANDALONE is present, we cannot send any alarms without that flag
+        // in the present batch.
+        boolean standalonesOnly = false;
+
+        for (final Alarm alarm : new InOrderIterable()) {
+            if (alarm.getWhenElapsed() > nowElapsed) {
+                break;
+            }
+            pending.add(alarm);
+            if (alarm.wakeup && alarm.getMaxWhenElapsed() <= nowElapsed + ALARM_DEADLINE_SLOP) {
+                // Using some slop as it is better to send the wakeup alarm now, rather than
+                // waking up again a short time later, just to send it.
+                sendWakeups = true;
+            }
+            if ((alarm.flags & AlarmManager.FLAG_STANDALONE) != 0) {
+                standalonesOnly = true;
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            removeInternal(pending.get(i));
+        }
+        // Everything left is due after now, so the wheel can move on.
+        advanceTo(nowElapsed >> TICK_SHIFT);
+
+        final ArrayList<Alarm> toSend = new ArrayList<>();
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            final Alarm pendingAlarm = pending.get(i);
+            if (!sendWakeups && pendingAlarm.wakeup) {
+                continue;
+            }
+            if (standalonesOnly && (pendingAlarm.flags & AlarmManager.FLAG_STANDALONE) == 0) {
+                continue;
+            }
+            pending.remove(i);
+            toSend.add(pendingAlarm);
+        }
+        // Perhaps some alarms could not be sent right now. Adding them back for later.
+        addAll(pending);
+        return toSend;
+    }
+
+    @Override
+    public boolean updateAlarmDeliveries(AlarmDeliveryCalculator deliveryCalculator) {
+        final ArrayList<Alarm> changedAlarms = new ArrayList<>();
+        for (final Alarm alarm : new ArrayList<>(mSlots.keySet())) {
+            if (deliveryCalculator.updateAlarmDelivery(alarm)) {
+                changedAlarms.add(alarm);
+            }
+        }
+        for (int i = 0; i < changedAlarms.size(); i++) {
+            final Alarm alarm = changedAlarms.get(i);
+            mSlots.remove(alarm).remove(alarm);
+            insert(alarm);
+        }
+        return !changedAlarms.isEmpty();
+    }
+
+    @Override
+    public ArrayList<Alarm> asList() {
+        final ArrayList<Alarm> list = new ArrayList<>(mSlots.size());
+        for (final Alarm a : new InOrderIterable()) {
+            list.add(a);
+        }
+        return list;
+    }
+
+    @Override
+    public void dump(IndentingPrintWriter ipw, long nowElapsed, SimpleDateFormat sdf) {
+        final ArrayList<Alarm> alarms = asList();
+        // dumpAlarmList goes through the list backwards.
+        Collections.reverse(alarms);
+        ipw.println(alarms.size() + " pending alarms: ");
+        ipw.increaseIndent();
+        dumpAlarmList(ipw, alarms, nowElapsed, sdf);
+        ipw.decreaseIndent();
+
+        ipw.print("Current tick: ");
+        ipw.println(mCurrentTick);
+        ipw.print("Alarms per level: ");
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            int count = 0;
+            for (int i = 0; i < NUM_SLOTS; i++) {
+                count += mWheel[level][i].mAlarms.size();
+            }
+            ipw.print(count);
+            ipw.print(" ");
+        }
+        ipw.print(mOverflow.mAlarms.size());
+        ipw.println();
+        mStatLogger.dump(ipw);
+    }
+
+    @Override
+    public void dumpProto(ProtoOutputStream pos, long nowElapsed) {
+        final ArrayList<Alarm> alarms = asList();
+        for (int i = alarms.size() - 1; i >= 0; i--) {
+            alarms.get(i).dumpDebug(pos, AlarmManagerServiceDumpProto.PENDING_ALARMS, nowElapsed);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return TAG;
+    }
+
+    @Override
+    public int getCount(Predicate<Alarm> condition) {
+        long start = mStatLogger.getTime();
+
+        int count = 0;
+        for (final Alarm a : mSlots.keySet()) {
+            if (condition.test(a)) {
+                count++;
+            }
+        }
+        mStatLogger.logDurationStat(Stats.GET_COUNT, start);
+        return count;
+    }
+
+    private void insert(Alarm a) {
+        final Slot slot = getSlot(a.getWhenElapsed() >> TICK_SHIFT);
+        slot.add(a);
+        mSlots.put(a, slot);
+    }
+
+    /**
+     * Returns the slot of the lowest level whose current span contains {@code tick}. Alarms that
+     * are already due are kept in the slot of the current tick.
+     */
+    private Slot getSlot(long tick) {
+        tick = Math.max(tick, mCurrentTick);
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            final int spanShift = SLOT_BITS * (level + 1);
+            if ((tick >> spanShift) == (mCurrentTick >> spanShift)) {
+                return mWheel[level][getSlotIndex(tick, level)];
+            }
+        }
+        return mOverflow;
+    }
+
+    private static int getSlotIndex(long tick, int level) {
+        return (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    /**
+     * Moves the wheel to {@code tick}, cascading the alarms of the slots it moves into to the
+     * levels below. No alarm in this store may be due before {@code tick}.
+     */
+    private void advanceTo(long tick) {
+        final long oldTick = mCurrentTick;
+        if (tick <= oldTick) {
+            return;
+        }
+        mCurrentTick = tick;
+        if ((tick >> (SLOT_BITS * NUM_LEVELS)) != (oldTick >> (SLOT_BITS * NUM_LEVELS))) {
+            cascade(mOverflow);
+        }
+        // Going from the top down, so alarms cascaded from a level end up in their final slot
+        // before the level below is cascaded.
+        for (int level = NUM_LEVELS - 1; level > 0; level--) {
+            final int shift = SLOT_BITS * level;
+            if ((tick >> shift) != (oldTick >> shift)) {
+                cascade(mWheel[level][getSlotIndex(tick, level)]);
+            }
+        }
+    }
+
+    private void cascade(Slot slot) {
+        if (slot.isEmpty()) {
+            return;
+        }
+        final ArrayList<Alarm> alarms = new ArrayList<>(slot.mAlarms);
+        slot.mAlarms.clear();
+        for (int i = 0; i < alarms.size(); i++) {
+            insert(alarms.get(i));
+        }
+    }
+
+    private static Object getTarget(Alarm a) {
+        return a.operation != null ? a.operation : a.listener.asBinder();
+    }
+
+    private static void addToIndex(SparseArray<ArraySet<Alarm>> index, int key, Alarm a) {
+        ArraySet<Alarm> alarms = index.get(key);
+        if (alarms == null) {
+            alarms = new ArraySet<>();
+            index.put(key, alarms);
+        }
+        alarms.add(a);
+    }
+
+    private static <K> void addToIndex(Map<K, ArraySet<Alarm>> index, K key, Alarm a) {
+        ArraySet<Alarm> alarms = index.get(key);
+        if (alarms == null) {
+            alarms = new ArraySet<>();
+            index.put(key, alarms);
+        }
+        alarms.add(a);
+    }
+
+    private static void removeFromIndex(SparseArray<ArraySet<Alarm>> index, int key, Alarm a) {
+        final ArraySet<Alarm> alarms = index.get(key);
+        if (alarms != null && alarms.remove(a) && alarms.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, ArraySet<Alarm>> index, K key,
+            Alarm a) {
+        final ArraySet<Alarm> alarms = index.get(key);
+        if (alarms != null && alarms.remove(a) && alarms.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private final class InOrderIterable implements Iterable<Alarm> {
+        @Override
+        public Iterator<Alarm> iterator() {
+            return new InOrderIterator();
+        }
+    }
+
+    /**
+     * Goes through the alarms in increasing order of delivery time, sorting each slot when it
+     * gets to it. The store must not be modified while iterating.
+     */
+    private final class InOrderIterator implements Iterator<Alarm> {
+        /** The level of the next slot to look at, or {@link #NUM_LEVELS} for the overflow. */
+        private int mLevel;
+        private int mSlotIndex;
+        private Slot mSlot;
+        private int mIndex;
+
+        InOrderIterator() {
+            mSlotIndex = getSlotIndex(mCurrentTick, 0);
+            moveToNextSlot();
+        }
+
+        private void moveToNextSlot() {
+            mSlot = null;
+            mIndex = 0;
+            while (mLevel < NUM_LEVELS) {
+                while (mSlotIndex < NUM_SLOTS) {
+                    final Slot slot = mWheel[mLevel][mSlotIndex++];
+                    if (!slot.isEmpty()) {
+                        slot.sortIfNeeded();
+                        mSlot = slot;
+                        return;
+                    }
+                }
+                mLevel++;
+                if (mLevel < NUM_LEVELS) {
+                    mSlotIndex = getSlotIndex(mCurrentTick, mLevel);
+                }
+            }
+            if (mLevel == NUM_LEVELS) {
+                mLevel++;
+                if (!mOverflow.isEmpty()) {
+                    mOverflow.sortIfNeeded();
+                    mSlot = mOverflow;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mSlot != null;
+        }
+
+        @Override
+        public Alarm next() {
+            if (mSlot == null) {
+                throw new NoSuchElementException();
+            }
+            final Alarm a = mSlot.mAlarms.get(mIndex++);
+            if (mIndex == mSlot.mAlarms.size()) {
+                moveToNextSlot();
+            }
+            return a;
+        }
+    }
+}
@@ -559,9 +559,11 @@ public class JobSchedulerService extends com.android.server.SystemService
                             break;
                         case Constants.KEY_MAX_NUM_PERSISTED_JOB_WORK_ITEMS:
                         case Constants.KEY_PERSIST_IN_SPLIT_FILES:
+                        case Constants.KEY_PERSIST_WITH_CHANGE_LOG:
                             if (!persistenceUpdated) {
                                 mConstants.updatePersistingConstantsLocked();
                                 mJobs.setUseSplitFiles(mConstants.PERSIST_IN_SPLIT_FILES);
+                                mJobs.setUseChangeLog(mConstants.PERSIST_WITH_CHANGE_LOG);
                                 persistenceUpdated = true;
                             }
                             break;
@@ -691,6 +693,7 @@ public class JobSchedulerService extends com.android.server.SystemService
                 "runtime_use_data_estimates_for_limits";
 
         private static final String KEY_PERSIST_IN_SPLIT_FILES = "persist_in_split_files";
+        private static final String KEY_PERSIST_WITH_CHANGE_LOG = "persist_with_change_log";
 
         private static final String KEY_MAX_NUM_PERSISTED_JOB_WORK_ITEMS =
                 "max_num_persisted_job_work_items";
@@ -741,6 +744,7 @@ public class JobSchedulerService extends com.android.server.SystemService
         public static final long DEFAULT_RUNTIME_CUMULATIVE_UI_LIMIT_MS = 24 * HOUR_IN_MILLIS;
         public static final boolean DEFAULT_RUNTIME_USE_DATA_ESTIMATES_FOR_LIMITS = false;
         static final boolean DEFAULT_PERSIST_IN_SPLIT_FILES = true;
+        static final boolean DEFAULT_PERSIST_WITH_CHANGE_LOG = true;
         static final int DEFAULT_MAX_NUM_PERSISTED_JOB_WORK_ITEMS = 100_000;
 
         /**
@@ -943,6 +947,12 @@ public class JobSchedulerService extends com.android.server.SystemService
          */
         public boolean PERSIST_IN_SPLIT_FILES = DEFAULT_PERSIST_IN_SPLIT_FILES;
 
+        /**
+         * Whether to append the changes to the jobs of a split file to a log instead of
+         * rewriting the whole file. Only applies when {@link #PERSIST_IN_SPLIT_FILES} is true.
+         */
+        public boolean PERSIST_WITH_CHANGE_LOG = DEFAULT_PERSIST_WITH_CHANGE_LOG;
+
         /**
          * The maximum number of {@link JobWorkItem JobWorkItems} that can be persisted per job.
          */
@@ -1010,6 +1020,9 @@ public class JobSchedulerService extends com.android.server.SystemService
         private void updatePersistingConstantsLocked() {
             PERSIST_IN_SPLIT_FILES = DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_JOB_SCHEDULER,
                     KEY_PERSIST_IN_SPLIT_FILES, DEFAULT_PERSIST_IN_SPLIT_FILES);
+            PERSIST_WITH_CHANGE_LOG = DeviceConfig.getBoolean(
+                    DeviceConfig.NAMESPACE_JOB_SCHEDULER,
+                    KEY_PERSIST_WITH_CHANGE_LOG, DEFAULT_PERSIST_WITH_CHANGE_LOG);
             MAX_NUM_PERSISTED_JOB_WORK_ITEMS = DeviceConfig.getInt(
                     DeviceConfig.NAMESPACE_JOB_SCHEDULER,
                     KEY_MAX_NUM_PERSISTED_JOB_WORK_ITEMS,
@@ -1209,6 +1222,7 @@ public class JobSchedulerService extends com.android.server.SystemService
                     RUNTIME_USE_DATA_ESTIMATES_FOR_LIMITS).println();
 
             pw.print(KEY_PERSIST_IN_SPLIT_FILES, PERSIST_IN_SPLIT_FILES).println();
+            pw.print(KEY_PERSIST_WITH_CHANGE_LOG, PERSIST_WITH_CHANGE_LOG).println();
             pw.print(KEY_MAX_NUM_PERSISTED_JOB_WORK_ITEMS, MAX_NUM_PERSISTED_JOB_WORK_ITEMS)
                     .println();
 
@@ -61,18 +61,24 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -105,6 +111,11 @@ public final class JobStore {
     private static final int ALL_UIDS = -1;
     @VisibleForTesting
     static final int INVALID_UID = -2;
+    /**
+     * A split job file is only rewritten once its change log has grown past both its own size
+     * and this size, so that shards with few jobs don't get compacted on every other change.
+     */
+    private static final long MIN_CHANGE_LOG_COMPACTION_BYTES = 32 * 1024L;
 
     final Object mLock;
     final Object mWriteScheduleLock;    // used solely for invariants around write scheduling
@@ -129,11 +140,26 @@ public final class JobStore {
     private final AtomicFile mJobsFile;
     private final File mJobFileDirectory;
     private final SparseBooleanArray mPendingJobWriteUids = new SparseBooleanArray();
+    /**
+     * The (namespace, jobId) of the jobs that changed since the last write, for each uid in
+     * {@link #mPendingJobWriteUids} whose changes are all known. A pending uid without an entry
+     * here needs its whole split file to be rewritten.
+     */
+    @GuardedBy("mLock")
+    private final SparseArray<ArraySet<Pair<String, Integer>>> mPendingJobChanges =
+            new SparseArray<>();
     /** Handler backed by IoThread for writing to disk. */
     private final Handler mIoHandler = IoThread.getHandler();
     private static JobStore sSingleton;
 
     private boolean mUseSplitFiles = JobSchedulerService.Constants.DEFAULT_PERSIST_IN_SPLIT_FILES;
+    private boolean mUseChangeLog = JobSchedulerService.Constants.DEFAULT_PERSIST_WITH_CHANGE_LOG;
+
+    /**
+     * The number of bytes written to job files and change logs, for measuring write cost. Only
+     * updated by {@link #mWriteRunnable}.
+     */
+    private volatile long mPersistedBytes;
 
     private JobStorePersistStats mPersistInfo = new JobStorePersistStats();
 
@@ -290,7 +316,7 @@ public final class JobStore {
             maybeUpdateHighWaterMark();
         }
         if (jobStatus.isPersisted()) {
-            mPendingJobWriteUids.put(jobStatus.getUid(), true);
+            markJobChangedLocked(jobStatus);
             maybeWriteStatusToDiskAsync();
         }
         if (DEBUG) {
@@ -308,7 +334,7 @@ public final class JobStore {
             maybeUpdateHighWaterMark();
         }
         if (jobStatus.isPersisted()) {
-            mPendingJobWriteUids.put(jobStatus.getUid(), true);
+            markJobChangedLocked(jobStatus);
         }
     }
 
@@ -344,7 +370,7 @@ public final class JobStore {
         }
         mCurrentJobSetSize--;
         if (removeFromPersisted && jobStatus.isPersisted()) {
-            mPendingJobWriteUids.put(jobStatus.getUid(), true);
+            markJobChangedLocked(jobStatus);
             maybeWriteStatusToDiskAsync();
         }
         return removed;
@@ -359,7 +385,7 @@ public final class JobStore {
             mCurrentJobSetSize--;
         }
         if (jobStatus.isPersisted()) {
-            mPendingJobWriteUids.put(jobStatus.getUid(), true);
+            markJobChangedLocked(jobStatus);
         }
     }
 
@@ -377,10 +403,37 @@ public final class JobStore {
         if (!jobStatus.isPersisted()) {
             return;
         }
-        mPendingJobWriteUids.put(jobStatus.getUid(), true);
+        markJobChangedLocked(jobStatus);
         maybeWriteStatusToDiskAsync();
     }
 
+    /**
+     * Notes that the persisted state of {@code jobStatus} changed, so that the next write only
+     * has to record this job rather than rewrite every job of its uid.
+     */
+    @GuardedBy("mLock")
+    private void markJobChangedLocked(@NonNull JobStatus jobStatus) {
+        final int uid = jobStatus.getUid();
+        ArraySet<Pair<String, Integer>> changes = mPendingJobChanges.get(uid);
+        if (changes == null) {
+            if (mPendingJobWriteUids.get(uid)) {
+                // The whole file of this uid is already going to be rewritten.
+                return;
+            }
+            changes = new ArraySet<>();
+            mPendingJobChanges.put(uid, changes);
+        }
+        changes.add(new Pair<>(jobStatus.getNamespace(), jobStatus.getJobId()));
+        mPendingJobWriteUids.put(uid, true);
+    }
+
+    /** Notes that the whole file of {@code uid} has to be rewritten on the next write. */
+    @GuardedBy("mLock")
+    private void markJobFileChangedLocked(int uid) {
+        mPendingJobChanges.remove(uid);
+        mPendingJobWriteUids.put(uid, true);
+    }
+
     @VisibleForTesting
     public void clear() {
         mJobSet.clear();
@@ -408,6 +461,17 @@ public final class JobStore {
         }
     }
 
+    /**
+     * Sets whether changes to the jobs of split files are appended to change logs. Logs that are
+     * already on disk are still read either way.
+     */
+    @VisibleForTesting
+    public void setUseChangeLog(boolean useChangeLog) {
+        synchronized (mLock) {
+            mUseChangeLog = useChangeLog;
+        }
+    }
+
     /**
      * The same as above but does not schedule writing. This makes perf benchmarks more stable.
      */
@@ -511,6 +575,11 @@ public final class JobStore {
     private static final String XML_TAG_EXTRAS = "extras";
     private static final String XML_TAG_JOB_WORK_ITEM = "job-work-item";
 
+    /** Change log record of a job that was scheduled or updated, followed by its XML. */
+    private static final byte CHANGE_LOG_OP_UPSERT = 1;
+    /** Change log record of a job that was removed, followed by its namespace and id. */
+    private static final byte CHANGE_LOG_OP_REMOVE = 2;
+
     private void migrateJobFilesAsync() {
         synchronized (mLock) {
             mPendingJobWriteUids.put(ALL_UIDS, true);
@@ -522,8 +591,9 @@ public final class JobStore {
     }
 
     /**
-     * Every time the state changes we write all the jobs in one swath, instead of trying to
-     * track incremental changes.
+     * Every time the state changes we write all the jobs of each changed file in one swath. In
+     * split file mode, the changes to a file that was already written since boot are appended to
+     * its change log instead, until the log is large enough to be compacted into the file.
      */
     private void maybeWriteStatusToDiskAsync() {
         synchronized (mWriteScheduleLock) {
@@ -555,6 +625,15 @@ public final class JobStore {
         }
     }
 
+    /**
+     * Returns the number of bytes written to job files and change logs since the store was
+     * created. Should only be used for measuring write amplification in tests.
+     */
+    @VisibleForTesting
+    public long getPersistedBytesForTesting() {
+        return mPersistedBytes;
+    }
+
     /**
      * Wait for any pending write to the persistent store to clear
      * @param maxWaitMillis Maximum time from present to wait
@@ -613,6 +692,11 @@ public final class JobStore {
         return values;
     }
 
+    private File getChangeLogFile(int uid) {
+        return new File(mJobFileDirectory,
+                JOB_FILE_SPLIT_PREFIX + uid + JobStoreChangeLog.FILE_SUFFIX);
+    }
+
     @VisibleForTesting
     static int extractUidFromJobFileName(@NonNull File file) {
         final String fileName = file.getName();
@@ -638,10 +722,20 @@ public final class JobStore {
      */
     private final Runnable mWriteRunnable = new Runnable() {
         private final SparseArray<AtomicFile> mJobFiles = new SparseArray<>();
+        /**
+         * The change log of each split file written since boot. A split file that isn't in here
+         * has to be rewritten before changes can be appended for it.
+         */
+        private final SparseArray<JobStoreChangeLog> mChangeLogs = new SparseArray<>();
         private final CopyConsumer mPersistedJobCopier = new CopyConsumer();
 
         class CopyConsumer implements Consumer<JobStatus> {
             private final SparseArray<List<JobStatus>> mJobStoreCopy = new SparseArray<>();
+            /** The jobs to append to the change log of each uid instead of rewriting its file. */
+            private final SparseArray<List<JobStatus>> mChangedJobCopy = new SparseArray<>();
+            /** The (namespace, jobId) of the jobs to record as removed in the change log. */
+            private final SparseArray<List<Pair<String, Integer>>> mRemovedJobCopy =
+                    new SparseArray<>();
             private boolean mCopyAllJobs;
 
             private void prepare() {
@@ -673,7 +767,14 @@ public final class JobStore {
                         }
                     } else {
                         for (int i = 0; i < mPendingJobWriteUids.size(); ++i) {
-                            mJobStoreCopy.put(mPendingJobWriteUids.keyAt(i), new ArrayList<>());
+                            final int uid = mPendingJobWriteUids.keyAt(i);
+                            final ArraySet<Pair<String, Integer>> changes =
+                                    mPendingJobChanges.get(uid);
+                            if (changes != null && canAppendChanges(uid)) {
+                                copyChanges(uid, changes);
+                            } else {
+                                mJobStoreCopy.put(uid, new ArrayList<>());
+                            }
                         }
                     }
                 } else {
@@ -684,10 +785,46 @@ public final class JobStore {
                 }
             }
 
+            /** Copies the jobs of the files that have to be rewritten. */
+            private void copy() {
+                if (mCopyAllJobs) {
+                    mJobSet.forEachJob(null, this);
+                    return;
+                }
+                // Only go through the jobs of the uids whose file changed.
+                for (int i = mJobStoreCopy.size() - 1; i >= 0; --i) {
+                    mJobSet.forEachJob(mJobStoreCopy.keyAt(i), this);
+                }
+            }
+
+            private boolean canAppendChanges(int uid) {
+                final JobStoreChangeLog changeLog = mChangeLogs.get(uid);
+                return mUseChangeLog && changeLog != null && changeLog.isUsable()
+                        && !changeLog.needsCompaction(MIN_CHANGE_LOG_COMPACTION_BYTES);
+            }
+
+            private void copyChanges(int uid,
+                    @NonNull ArraySet<Pair<String, Integer>> changes) {
+                final List<JobStatus> changedJobs = new ArrayList<>();
+                final List<Pair<String, Integer>> removedJobs = new ArrayList<>();
+                for (int i = changes.size() - 1; i >= 0; --i) {
+                    final Pair<String, Integer> key = changes.valueAt(i);
+                    final JobStatus jobStatus = mJobSet.get(uid, key.first, key.second);
+                    if (jobStatus != null && jobStatus.isPersisted()) {
+                        changedJobs.add(new JobStatus(jobStatus));
+                    } else {
+                        removedJobs.add(key);
+                    }
+                }
+                mChangedJobCopy.put(uid, changedJobs);
+                mRemovedJobCopy.put(uid, removedJobs);
+            }
+
             @Override
             public void accept(JobStatus jobStatus) {
                 final int uid = mUseSplitFiles ? jobStatus.getUid() : ALL_UIDS;
-                if (jobStatus.isPersisted() && (mCopyAllJobs || mPendingJobWriteUids.get(uid))) {
+                if (jobStatus.isPersisted()
+                        && (mCopyAllJobs || mJobStoreCopy.indexOfKey(uid) >= 0)) {
                     List<JobStatus> uidJobList = mJobStoreCopy.get(uid);
                     if (uidJobList == null) {
                         uidJobList = new ArrayList<>();
@@ -699,6 +836,8 @@ public final class JobStore {
 
             private void reset() {
                 mJobStoreCopy.clear();
+                mChangedJobCopy.clear();
+                mRemovedJobCopy.clear();
             }
         }
 
@@ -726,16 +865,17 @@ public final class JobStore {
                 // Clone the jobs so we can release the lock before writing.
                 useSplitFiles = mUseSplitFiles;
                 mPersistedJobCopier.prepare();
-                mJobSet.forEachJob(null, mPersistedJobCopier);
+                mPersistedJobCopier.copy();
                 mPendingJobWriteUids.clear();
+                mPendingJobChanges.clear();
             }
             mPersistInfo.countAllJobsSaved = 0;
             mPersistInfo.countSystemServerJobsSaved = 0;
             mPersistInfo.countSystemSyncManagerJobsSaved = 0;
             for (int i = mPersistedJobCopier.mJobStoreCopy.size() - 1; i >= 0; --i) {
+                final int uid = mPersistedJobCopier.mJobStoreCopy.keyAt(i);
                 AtomicFile file;
                 if (useSplitFiles) {
-                    final int uid = mPersistedJobCopier.mJobStoreCopy.keyAt(i);
                     file = mJobFiles.get(uid);
                     if (file == null) {
                         file = createJobFile(JOB_FILE_SPLIT_PREFIX + uid);
@@ -745,11 +885,31 @@ public final class JobStore {
                     file = mJobsFile;
                 }
                 if (DEBUG) {
-                    Slog.d(TAG, "Writing for " + mPersistedJobCopier.mJobStoreCopy.keyAt(i)
+                    Slog.d(TAG, "Writing for " + uid
                             + " to " + file.getBaseFile().getName() + ": "
                             + mPersistedJobCopier.mJobStoreCopy.valueAt(i).size() + " jobs");
                 }
-                writeJobsMapImpl(file, mPersistedJobCopier.mJobStoreCopy.valueAt(i));
+                if (!useSplitFiles) {
+                    writeJobsMapImpl(file, mPersistedJobCopier.mJobStoreCopy.valueAt(i), 0);
+                    continue;
+                }
+                // Tie a new change log to the rewritten file. The old log is deleted only after
+                // the file is replaced, so that reading never replays it onto the new file.
+                final long generation = newChangeLogGeneration();
+                mChangeLogs.remove(uid);
+                if (writeJobsMapImpl(file, mPersistedJobCopier.mJobStoreCopy.valueAt(i),
+                        generation)) {
+                    final JobStoreChangeLog changeLog = new JobStoreChangeLog(
+                            getChangeLogFile(uid), generation, file.getBaseFile().length());
+                    changeLog.deleteStale();
+                    mChangeLogs.put(uid, changeLog);
+                }
+            }
+            for (int i = mPersistedJobCopier.mChangedJobCopy.size() - 1; i >= 0; --i) {
+                final int uid = mPersistedJobCopier.mChangedJobCopy.keyAt(i);
+                appendChangesImpl(uid, mChangeLogs.get(uid),
+                        mPersistedJobCopier.mChangedJobCopy.valueAt(i),
+                        mPersistedJobCopier.mRemovedJobCopy.get(uid));
             }
             if (DEBUG) {
                 Slog.v(TAG, "Finished writing, took " + (sElapsedRealtimeClock.millis()
@@ -758,6 +918,7 @@ public final class JobStore {
             mPersistedJobCopier.reset();
             if (!useSplitFiles) {
                 mJobFiles.clear();
+                mChangeLogs.clear();
             }
             // Update the last modified time of the directory to aid in RTC time verification
             // (see the JobStore constructor).
@@ -782,18 +943,108 @@ public final class JobStore {
             }
         }
 
-        private void writeJobsMapImpl(@NonNull AtomicFile file, @NonNull List<JobStatus> jobList) {
+        private long newChangeLogGeneration() {
+            long generation;
+            do {
+                generation = ThreadLocalRandom.current().nextLong();
+            } while (generation == 0);
+            return generation;
+        }
+
+        /**
+         * @param changeLogGeneration the generation of the change log of this file, or 0 if
+         *         changes aren't appended for this file.
+         * @return whether the file was written
+         */
+        private boolean writeJobsMapImpl(@NonNull AtomicFile file,
+                @NonNull List<JobStatus> jobList, long changeLogGeneration) {
+            mEventLogger.setStartTime(SystemClock.uptimeMillis());
+            FileOutputStream fos = null;
+            try {
+                fos = file.startWrite();
+                writeJobsToXml(fos, jobList, changeLogGeneration);
+                file.finishWrite(fos);
+                mPersistedBytes += file.getBaseFile().length();
+                return true;
+            } catch (IOException e) {
+                if (DEBUG) {
+                    Slog.v(TAG, "Error writing out job data.", e);
+                }
+            } catch (XmlPullParserException e) {
+                if (DEBUG) {
+                    Slog.d(TAG, "Error persisting bundle.", e);
+                }
+            }
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+            return false;
+        }
+
+        /**
+         * Appends the changed and removed jobs of {@code uid} to its change log. If that fails,
+         * or if the log has grown enough to be worth compacting, the file of {@code uid} is
+         * scheduled to be rewritten.
+         */
+        private void appendChangesImpl(int uid, @NonNull JobStoreChangeLog changeLog,
+                @NonNull List<JobStatus> changedJobs,
+                @NonNull List<Pair<String, Integer>> removedJobs) {
+            final List<byte[]> records = new ArrayList<>(changedJobs.size() + removedJobs.size());
+            boolean appended = false;
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (int i = 0; i < changedJobs.size(); i++) {
+                    bytes.reset();
+                    bytes.write(CHANGE_LOG_OP_UPSERT);
+                    writeJobsToXml(bytes, changedJobs.subList(i, i + 1), 0);
+                    records.add(bytes.toByteArray());
+                }
+                for (int i = 0; i < removedJobs.size(); i++) {
+                    final Pair<String, Integer> key = removedJobs.get(i);
+                    bytes.reset();
+                    final DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeByte(CHANGE_LOG_OP_REMOVE);
+                    out.writeBoolean(key.first != null);
+                    if (key.first != null) {
+                        out.writeUTF(key.first);
+                    }
+                    out.writeInt(key.second);
+                    out.flush();
+                    records.add(bytes.toByteArray());
+                }
+                if (DEBUG) {
+                    Slog.d(TAG, "Appending " + records.size() + " changes for " + uid);
+                }
+                mPersistedBytes += changeLog.append(records);
+                appended = true;
+            } catch (IOException | XmlPullParserException e) {
+                Slog.w(TAG, "Error appending job changes for " + uid, e);
+            }
+            if (!appended || changeLog.needsCompaction(MIN_CHANGE_LOG_COMPACTION_BYTES)) {
+                // Rewrite the whole file in the background. Until then, the file and the part of
+                // the log that was written are still consistent.
+                synchronized (mLock) {
+                    markJobFileChangedLocked(uid);
+                }
+                maybeWriteStatusToDiskAsync();
+            }
+        }
+
+        private void writeJobsToXml(@NonNull OutputStream os, @NonNull List<JobStatus> jobList,
+                long changeLogGeneration) throws IOException, XmlPullParserException {
             int numJobs = 0;
             int numSystemJobs = 0;
             int numSyncJobs = 0;
-            mEventLogger.setStartTime(SystemClock.uptimeMillis());
-            try (FileOutputStream fos = file.startWrite()) {
-                TypedXmlSerializer out = Xml.resolveSerializer(fos);
+            try {
+                TypedXmlSerializer out = Xml.resolveSerializer(os);
                 out.startDocument(null, true);
                 out.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
 
                 out.startTag(null, XML_TAG_JOB_INFO);
                 out.attribute(null, "version", Integer.toString(JOBS_FILE_VERSION));
+                if (changeLogGeneration != 0) {
+                    out.attributeLong(null, "changeLog", changeLogGeneration);
+                }
                 for (int i=0; i<jobList.size(); i++) {
                     JobStatus jobStatus = jobList.get(i);
                     if (DEBUG) {
@@ -817,16 +1068,6 @@ public final class JobStore {
                 }
                 out.endTag(null, XML_TAG_JOB_INFO);
                 out.endDocument();
-
-                file.finishWrite(fos);
-            } catch (IOException e) {
-                if (DEBUG) {
-                    Slog.v(TAG, "Error writing out job data.", e);
-                }
-            } catch (XmlPullParserException e) {
-                if (DEBUG) {
-                    Slog.d(TAG, "Error persisting bundle.", e);
-                }
             } finally {
                 mPersistInfo.countAllJobsSaved += numJobs;
                 mPersistInfo.countSystemServerJobsSaved += numSystemJobs;
@@ -1080,6 +1321,8 @@ public final class JobStore {
         private final JobSet jobSet;
         private final boolean rtcGood;
         private final CountDownLatch mCompletionLatch;
+        /** The change log generation of the last file read by {@link #readJobMapImpl}. */
+        private long mChangeLogGeneration;
 
         /**
          * @param jobSet Reference to the (empty) set of JobStatus objects that back the JobStore,
@@ -1132,6 +1375,11 @@ public final class JobStore {
                     final AtomicFile aFile = createJobFile(file);
                     try (FileInputStream fis = aFile.openRead()) {
                         jobs = readJobMapImpl(fis, rtcGood, nowElapsed);
+                        if (mChangeLogGeneration != 0
+                                && file.getName().startsWith(JOB_FILE_SPLIT_PREFIX)) {
+                            jobs = replayChangeLog(jobs, extractUidFromJobFileName(file),
+                                    mChangeLogGeneration, nowElapsed);
+                        }
                         if (jobs != null) {
                             for (int i = 0; i < jobs.size(); i++) {
                                 JobStatus js = jobs.get(i);
@@ -1207,8 +1455,73 @@ public final class JobStore {
             }
         }
 
+        /**
+         * Applies the change log of the split file of {@code uid} to the jobs read from that file.
+         * Changes are replayed up to the first record that can't be read.
+         */
+        private List<JobStatus> replayChangeLog(@Nullable List<JobStatus> jobs, int uid,
+                long generation, long nowElapsed) {
+            if (uid == INVALID_UID) {
+                return jobs;
+            }
+            final File changeLogFile = getChangeLogFile(uid);
+            final List<byte[]> records = JobStoreChangeLog.readRecords(changeLogFile, generation);
+            if (records.isEmpty()) {
+                return jobs;
+            }
+            if (jobs == null) {
+                jobs = new ArrayList<>();
+            }
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    final byte[] record = records.get(i);
+                    final DataInputStream in =
+                            new DataInputStream(new ByteArrayInputStream(record));
+                    final byte op = in.readByte();
+                    switch (op) {
+                        case CHANGE_LOG_OP_UPSERT:
+                            final List<JobStatus> changedJobs = readJobMapImpl(in, rtcGood,
+                                    nowElapsed);
+                            if (changedJobs != null) {
+                                for (int j = 0; j < changedJobs.size(); j++) {
+                                    final JobStatus js = changedJobs.get(j);
+                                    removeJob(jobs, js.getNamespace(), js.getJobId());
+                                    jobs.add(js);
+                                }
+                            }
+                            break;
+                        case CHANGE_LOG_OP_REMOVE:
+                            final String namespace = in.readBoolean() ? in.readUTF() : null;
+                            removeJob(jobs, namespace, in.readInt());
+                            break;
+                        default:
+                            throw new IOException("Unknown job change log op " + op);
+                    }
+                }
+            } catch (XmlPullParserException | IOException e) {
+                // A record that passed its CRC but can't be decoded. Keep what was replayed so far.
+                Slog.wtf(TAG, "Malformed job change log " + changeLogFile.getName(), e);
+            }
+            if (DEBUG) {
+                Slog.d(TAG, "Replayed " + records.size() + " job changes for " + uid);
+            }
+            return jobs;
+        }
+
+        private void removeJob(@NonNull List<JobStatus> jobs, @Nullable String namespace,
+                int jobId) {
+            for (int i = jobs.size() - 1; i >= 0; --i) {
+                final JobStatus js = jobs.get(i);
+                if (js.getJobId() == jobId && Objects.equals(js.getNamespace(), namespace)) {
+                    jobs.remove(i);
+                    return;
+                }
+            }
+        }
+
         private List<JobStatus> readJobMapImpl(InputStream fis, boolean rtcIsGood, long nowElapsed)
                 throws XmlPullParserException, IOException {
+            mChangeLogGeneration = 0;
             TypedXmlPullParser parser = Xml.resolvePullParser(fis);
 
             int eventType = parser.getEventType();
@@ -1228,6 +1541,7 @@ public final class JobStore {
             if (XML_TAG_JOB_INFO.equals(tagName)) {
                 final List<JobStatus> jobs = new ArrayList<JobStatus>();
                 final int version = parser.getAttributeInt(null, "version");
+                mChangeLogGeneration = parser.getAttributeLong(null, "changeLog", 0);
                 // Read in version info.
                 if (version > JOBS_FILE_VERSION || version < 0) {
                     Slog.d(TAG, "Invalid version number, aborting jobs file read.");
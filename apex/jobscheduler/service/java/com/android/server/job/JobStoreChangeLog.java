@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.job;
+
+import android.annotation.NonNull;
+import android.os.FileUtils;
+import android.util.Slog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to the jobs of one split job file since that file was
+ * last written in full by {@link JobStore}.
+ * <p>
+ * The log is tied to its job file by a generation that is stored both in the log header and in
+ * the job file. A log whose generation doesn't match the job file it is read with is ignored, so
+ * a crash between rewriting a job file and deleting its log never replays stale changes. Every
+ * record carries its own length and CRC, and reading stops at the first record that is truncated
+ * or corrupted, which is what a crash in the middle of an append leaves behind.
+ * <pre>
+ * header: int magic, int version, long generation
+ * record: int payloadLength, int payloadCrc, byte[payloadLength] payload
+ * </pre>
+ * This class is not thread safe; {@link JobStore} only uses it from its write runnable.
+ */
+final class JobStoreChangeLog {
+    private static final String TAG = "JobStoreChangeLog";
+
+    static final String FILE_SUFFIX = ".log";
+
+    private static final int MAGIC = 0x4a53434c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    @NonNull
+    private final File mFile;
+    private final long mGeneration;
+    private final long mBaseLength;
+
+    /** The length of the log on disk, 0 if it doesn't exist yet, or -1 if it is unusable. */
+    private long mLength;
+
+    /**
+     * @param generation the generation of the job file that was just written in full; any log
+     *         already on disk belongs to an older one and is replaced on the first append.
+     * @param baseLength the size of that job file.
+     */
+    JobStoreChangeLog(@NonNull File file, long generation, long baseLength) {
+        mFile = file;
+        mGeneration = generation;
+        mBaseLength = baseLength;
+    }
+
+    /** Whether records can still be appended to this log. */
+    boolean isUsable() {
+        return mLength >= 0;
+    }
+
+    /**
+     * Whether this log has grown enough that replaying it costs more than reading a freshly
+     * written job file, so the job file should be rewritten instead of appended to.
+     */
+    boolean needsCompaction(long minCompactionBytes) {
+        return mLength > Math.max(minCompactionBytes, mBaseLength);
+    }
+
+    /**
+     * Appends {@code payloads} to the log and waits for them to reach the disk. On failure the
+     * log is no longer {@link #isUsable() usable}.
+     *
+     * @return the number of bytes written
+     */
+    int append(@NonNull List<byte[]> payloads) throws IOException {
+        if (!isUsable()) {
+            throw new IllegalStateException("Appending to unusable job change log " + mFile);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final boolean create = mLength == 0;
+        if (create) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mGeneration);
+        }
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < payloads.size(); i++) {
+            final byte[] payload = payloads.get(i);
+            crc.reset();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        out.flush();
+
+        boolean appended = false;
+        try (FileOutputStream fos = new FileOutputStream(mFile, /* append */ !create)) {
+            bytes.writeTo(fos);
+            FileUtils.sync(fos);
+            appended = true;
+        } finally {
+            mLength = appended ? mLength + bytes.size() : -1;
+        }
+        return bytes.size();
+    }
+
+    /** Deletes any log left on disk for an older generation of the job file. */
+    void deleteStale() {
+        if (mFile.exists() && !mFile.delete()) {
+            Slog.w(TAG, "Failed to delete job change log " + mFile);
+        }
+    }
+
+    /**
+     * Reads the records of the log at {@code file} if it belongs to the job file of
+     * {@code generation}. A truncated or corrupted tail is ignored.
+     */
+    @NonNull
+    static List<byte[]> readRecords(@NonNull File file, long generation) {
+        final ArrayList<byte[]> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            Slog.w(TAG, "Failed to read job change log " + file, e);
+            return records;
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION || buffer.getLong() != generation) {
+            Slog.i(TAG, "Ignoring job change log " + file + " of another job file");
+            return records;
+        }
+        final CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int payloadLength = buffer.getInt();
+            final int payloadCrc = buffer.getInt();
+            if (payloadLength <= 0 || payloadLength > buffer.remaining()) {
+                break;
+            }
+            final byte[] payload = new byte[payloadLength];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != payloadCrc) {
+                break;
+            }
+            records.add(payload);
+        }
+        if (buffer.hasRemaining()) {
+            Slog.w(TAG, "Ignoring " + buffer.remaining() + " bytes at the end of " + file);
+        }
+        return records;
+    }
+}
@@ -59,15 +59,33 @@ public final class BatteryController extends RestrictingController {
      */
     @GuardedBy("mLock")
     private final ArraySet<JobStatus> mTopStartedJobs = new ArraySet<>();
+    /**
+     * Tracked jobs split by whether their charging and battery not low constraints are satisfied,
+     * so that battery state changes only visit the jobs whose constraints flip.
+     */
+    @GuardedBy("mLock")
+    private final ConstraintIndex mConstraintIndex = new ConstraintIndex(
+            JobStatus.CONSTRAINT_CHARGING, JobStatus.CONSTRAINT_BATTERY_NOT_LOW);
+    /**
+     * Jobs whose charging constraint was last evaluated with the top app exemption, i.e. against
+     * whether power is connected rather than whether the device is charging. They are evaluated
+     * on every battery state change, as {@link #mConstraintIndex} doesn't account for them.
+     */
+    @GuardedBy("mLock")
+    private final ArraySet<JobStatus> mTopExemptedJobs = new ArraySet<>();
 
     private final PowerTracker mPowerTracker;
 
     private final FlexibilityController mFlexibilityController;
     /**
      * Helper set to avoid too much GC churn from frequent calls to
-     * {@link #maybeReportNewChargingStateLocked()}.
+     * {@link #maybeReportNewChargingStateLocked(boolean)}.
      */
     private final ArraySet<JobStatus> mChangedJobs = new ArraySet<>();
+    /**
+     * Helper set for the jobs to evaluate in {@link #maybeReportNewChargingStateLocked(boolean)}.
+     */
+    private final ArraySet<JobStatus> mJobsToEvaluate = new ArraySet<>();
 
     @GuardedBy("mLock")
     private Boolean mLastReportedStatsdBatteryNotLow = null;
@@ -92,12 +110,15 @@ public final class BatteryController extends RestrictingController {
                 if (hasTopExemptionLocked(taskStatus)) {
                     taskStatus.setChargingConstraintSatisfied(nowElapsed,
                             mPowerTracker.isPowerConnected());
+                    mTopExemptedJobs.add(taskStatus);
                 } else {
                     taskStatus.setChargingConstraintSatisfied(nowElapsed,
                             mService.isBatteryCharging() && mService.isBatteryNotLow());
+                    mTopExemptedJobs.remove(taskStatus);
                 }
             }
             taskStatus.setBatteryNotLowConstraintSatisfied(nowElapsed, mService.isBatteryNotLow());
+            mConstraintIndex.add(taskStatus);
         }
     }
 
@@ -137,6 +158,8 @@ public final class BatteryController extends RestrictingController {
         if (taskStatus.clearTrackingController(JobStatus.TRACKING_BATTERY)) {
             mTrackedTasks.remove(taskStatus);
             mTopStartedJobs.remove(taskStatus);
+            mTopExemptedJobs.remove(taskStatus);
+            mConstraintIndex.remove(taskStatus);
         }
     }
 
@@ -153,7 +176,7 @@ public final class BatteryController extends RestrictingController {
         // Update job bookkeeping out of band.
         AppSchedulingModuleThread.getHandler().post(() -> {
             synchronized (mLock) {
-                maybeReportNewChargingStateLocked();
+                maybeReportNewChargingStateLocked(false);
             }
         });
     }
@@ -162,7 +185,8 @@ public final class BatteryController extends RestrictingController {
     @GuardedBy("mLock")
     public void onUidBiasChangedLocked(int uid, int prevBias, int newBias) {
         if (prevBias == JobInfo.BIAS_TOP_APP || newBias == JobInfo.BIAS_TOP_APP) {
-            maybeReportNewChargingStateLocked();
+            // Jobs may have gained the top app exemption, which isn't indexed.
+            maybeReportNewChargingStateLocked(true);
         }
     }
 
@@ -172,8 +196,12 @@ public final class BatteryController extends RestrictingController {
                 || mTopStartedJobs.contains(taskStatus);
     }
 
+    /**
+     * @param evaluateAllJobs whether to evaluate all tracked jobs, instead of only the ones whose
+     *                        constraints may have flipped with the battery state.
+     */
     @GuardedBy("mLock")
-    private void maybeReportNewChargingStateLocked() {
+    private void maybeReportNewChargingStateLocked(boolean evaluateAllJobs) {
         final boolean powerConnected = mPowerTracker.isPowerConnected();
         final boolean stablePower = mService.isBatteryCharging() && mService.isBatteryNotLow();
         final boolean batteryNotLow = mService.isBatteryNotLow();
@@ -201,9 +229,21 @@ public final class BatteryController extends RestrictingController {
         mFlexibilityController.setConstraintSatisfied(
                 JobStatus.CONSTRAINT_BATTERY_NOT_LOW, batteryNotLow, nowElapsed);
 
-        for (int i = mTrackedTasks.size() - 1; i >= 0; i--) {
-            final JobStatus ts = mTrackedTasks.valueAt(i);
+        final ArraySet<JobStatus> jobsToEvaluate;
+        if (evaluateAllJobs) {
+            jobsToEvaluate = mTrackedTasks;
+        } else {
+            jobsToEvaluate = mJobsToEvaluate;
+            mConstraintIndex.addJobsToFlip(JobStatus.CONSTRAINT_CHARGING, stablePower,
+                    jobsToEvaluate);
+            mConstraintIndex.addJobsToFlip(JobStatus.CONSTRAINT_BATTERY_NOT_LOW, batteryNotLow,
+                    jobsToEvaluate);
+            jobsToEvaluate.addAll(mTopExemptedJobs);
+        }
+        for (int i = jobsToEvaluate.size() - 1; i >= 0; i--) {
+            final JobStatus ts = jobsToEvaluate.valueAt(i);
             if (ts.hasChargingConstraint()) {
+                final boolean changed;
                 if (hasTopExemptionLocked(ts)
                         && ts.getEffectivePriority() >= JobInfo.PRIORITY_DEFAULT) {
                     // If the job started while the app was on top or the app is currently on top,
@@ -212,18 +252,24 @@ public final class BatteryController extends RestrictingController {
                     // For user requested/initiated jobs, users may be confused when the task stops
                     // running even though the device is plugged in.
                     // Low priority jobs don't need to be exempted.
-                    if (ts.setChargingConstraintSatisfied(nowElapsed, powerConnected)) {
-                        mChangedJobs.add(ts);
-                    }
-                } else if (ts.setChargingConstraintSatisfied(nowElapsed, stablePower)) {
+                    changed = ts.setChargingConstraintSatisfied(nowElapsed, powerConnected);
+                    mTopExemptedJobs.add(ts);
+                } else {
+                    changed = ts.setChargingConstraintSatisfied(nowElapsed, stablePower);
+                    mTopExemptedJobs.remove(ts);
+                }
+                if (changed) {
+                    mConstraintIndex.onConstraintChanged(ts, JobStatus.CONSTRAINT_CHARGING);
                     mChangedJobs.add(ts);
                 }
             }
             if (ts.hasBatteryNotLowConstraint()
                     && ts.setBatteryNotLowConstraintSatisfied(nowElapsed, batteryNotLow)) {
+                mConstraintIndex.onConstraintChanged(ts, JobStatus.CONSTRAINT_BATTERY_NOT_LOW);
                 mChangedJobs.add(ts);
             }
         }
+        mJobsToEvaluate.clear();
         if (stablePower || batteryNotLow) {
             // If one of our conditions has been satisfied, always schedule any newly ready jobs.
             mStateChangedListener.onRunJobNow(null);
@@ -286,7 +332,7 @@ public final class BatteryController extends RestrictingController {
                     mPowerConnected = false;
                 }
 
-                maybeReportNewChargingStateLocked();
+                maybeReportNewChargingStateLocked(false);
             }
         }
     }
@@ -307,6 +353,7 @@ public final class BatteryController extends RestrictingController {
         pw.println("Power connected: " + mPowerTracker.isPowerConnected());
         pw.println("Stable power: " + (mService.isBatteryCharging() && mService.isBatteryNotLow()));
         pw.println("Not low: " + mService.isBatteryNotLow());
+        mConstraintIndex.dump(pw);
 
         for (int i = 0; i < mTrackedTasks.size(); i++) {
             final JobStatus js = mTrackedTasks.valueAt(i);
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.job.controllers;
+
+import android.annotation.NonNull;
+import android.util.ArraySet;
+import android.util.IndentingPrintWriter;
+import android.util.SparseArray;
+
+/**
+ * Index of the jobs tracked by a controller, split by whether each of the device-wide
+ * constraints the controller evaluates is currently satisfied for them.
+ * <p>
+ * When the device state behind one of these constraints changes, the only jobs whose constraint
+ * can flip are the ones in the opposite partition, so the controller visits those instead of all
+ * the jobs it tracks. Most device state broadcasts (e.g. battery level changes) don't flip
+ * anything, and then the controller doesn't visit any job at all.
+ * <p>
+ * The controller owns the satisfied bits of these constraints and must call
+ * {@link #onConstraintChanged(JobStatus, int)} whenever it changes one of them. This class isn't
+ * thread safe; controllers use it while holding the JobSchedulerService lock.
+ */
+final class ConstraintIndex {
+    /** The constraints indexed. */
+    private final int[] mConstraints;
+    /** Jobs that have the constraint and for which it is satisfied, keyed by constraint. */
+    private final SparseArray<ArraySet<JobStatus>> mSatisfiedJobs = new SparseArray<>();
+    /** Jobs that have the constraint and for which it isn't satisfied, keyed by constraint. */
+    private final SparseArray<ArraySet<JobStatus>> mUnsatisfiedJobs = new SparseArray<>();
+
+    ConstraintIndex(int... constraints) {
+        mConstraints = constraints;
+        for (int constraint : constraints) {
+            mSatisfiedJobs.put(constraint, new ArraySet<>());
+            mUnsatisfiedJobs.put(constraint, new ArraySet<>());
+        }
+    }
+
+    /**
+     * Adds the job to the partitions of the indexed constraints it has, or moves it to the right
+     * ones if it was already indexed.
+     */
+    void add(@NonNull JobStatus js) {
+        for (int constraint : mConstraints) {
+            if (js.hasConstraint(constraint)) {
+                put(js, constraint);
+            } else {
+                mSatisfiedJobs.get(constraint).remove(js);
+                mUnsatisfiedJobs.get(constraint).remove(js);
+            }
+        }
+    }
+
+    void remove(@NonNull JobStatus js) {
+        for (int constraint : mConstraints) {
+            mSatisfiedJobs.get(constraint).remove(js);
+            mUnsatisfiedJobs.get(constraint).remove(js);
+        }
+    }
+
+    /**
+     * Moves the job to the partition matching the current state of the constraint. Does nothing
+     * if the job isn't indexed for the constraint.
+     */
+    void onConstraintChanged(@NonNull JobStatus js, int constraint) {
+        final ArraySet<JobStatus> satisfiedJobs = mSatisfiedJobs.get(constraint);
+        final ArraySet<JobStatus> unsatisfiedJobs = mUnsatisfiedJobs.get(constraint);
+        if (satisfiedJobs.remove(js) || unsatisfiedJobs.remove(js)) {
+            put(js, constraint);
+        }
+    }
+
+    private void put(@NonNull JobStatus js, int constraint) {
+        if (js.isConstraintSatisfied(constraint)) {
+            mUnsatisfiedJobs.get(constraint).remove(js);
+            mSatisfiedJobs.get(constraint).add(js);
+        } else {
+            mSatisfiedJobs.get(constraint).remove(js);
+            mUnsatisfiedJobs.get(constraint).add(js);
+        }
+    }
+
+    /**
+     * Adds to {@code outJobs} the jobs whose constraint would change if it became
+     * {@code satisfied}.
+     */
+    void addJobsToFlip(int constraint, boolean satisfied, @NonNull ArraySet<JobStatus> outJobs) {
+        outJobs.addAll(satisfied
+                ? mUnsatisfiedJobs.get(constraint) : mSatisfiedJobs.get(constraint));
+    }
+
+    void dump(@NonNull IndentingPrintWriter pw) {
+        pw.print("Constraint index (satisfied/unsatisfied):");
+        for (int constraint : mConstraints) {
+            pw.print(" ");
+            pw.print(Integer.toHexString(constraint));
+            pw.print("=");
+            pw.print(mSatisfiedJobs.get(constraint).size());
+            pw.print("/");
+            pw.print(mUnsatisfiedJobs.get(constraint).size());
+        }
+        pw.println();
+    }
+}
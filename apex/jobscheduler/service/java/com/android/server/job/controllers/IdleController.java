@@ -47,6 +47,11 @@ public final class IdleController extends RestrictingController implements Idlen
     // Policy: we decide that we're "idle" if the device has been unused /
     // screen off or dreaming or wireless charging dock idle for at least this long
     final ArraySet<JobStatus> mTrackedTasks = new ArraySet<>();
+    /** Tracked jobs split by whether their idle constraint is satisfied. */
+    private final ConstraintIndex mConstraintIndex =
+            new ConstraintIndex(JobStatus.CONSTRAINT_IDLE);
+    /** Helper set to avoid GC churn in {@link #reportNewIdleState(boolean)}. */
+    private final ArraySet<JobStatus> mChangedJobs = new ArraySet<>();
     IdlenessTracker mIdleTracker;
     private final FlexibilityController mFlexibilityController;
 
@@ -67,6 +72,7 @@ public final class IdleController extends RestrictingController implements Idlen
             mTrackedTasks.add(taskStatus);
             taskStatus.setTrackingController(JobStatus.TRACKING_IDLE);
             taskStatus.setIdleConstraintSatisfied(nowElapsed, mIdleTracker.isIdle());
+            mConstraintIndex.add(taskStatus);
         }
     }
 
@@ -79,6 +85,7 @@ public final class IdleController extends RestrictingController implements Idlen
     public void maybeStopTrackingJobLocked(JobStatus taskStatus, JobStatus incomingJob) {
         if (taskStatus.clearTrackingController(JobStatus.TRACKING_IDLE)) {
             mTrackedTasks.remove(taskStatus);
+            mConstraintIndex.remove(taskStatus);
         }
     }
 
@@ -100,11 +107,16 @@ public final class IdleController extends RestrictingController implements Idlen
             final long nowElapsed = sElapsedRealtimeClock.millis();
             mFlexibilityController.setConstraintSatisfied(
                     JobStatus.CONSTRAINT_IDLE, isIdle, nowElapsed);
-            for (int i = mTrackedTasks.size()-1; i >= 0; i--) {
-                mTrackedTasks.valueAt(i).setIdleConstraintSatisfied(nowElapsed, isIdle);
+            // Only the jobs in the other partition of the index can flip.
+            mConstraintIndex.addJobsToFlip(JobStatus.CONSTRAINT_IDLE, isIdle, mChangedJobs);
+            for (int i = mChangedJobs.size() - 1; i >= 0; i--) {
+                final JobStatus js = mChangedJobs.valueAt(i);
+                js.setIdleConstraintSatisfied(nowElapsed, isIdle);
+                mConstraintIndex.onConstraintChanged(js, JobStatus.CONSTRAINT_IDLE);
             }
+            mStateChangedListener.onControllerStateChanged(mChangedJobs);
+            mChangedJobs.clear();
         }
-        mStateChangedListener.onControllerStateChanged(mTrackedTasks);
     }
 
     /**
@@ -126,6 +138,7 @@ public final class IdleController extends RestrictingController implements Idlen
     public void dumpControllerStateLocked(IndentingPrintWriter pw,
             Predicate<JobStatus> predicate) {
         pw.println("Currently idle: " + mIdleTracker.isIdle());
+        mConstraintIndex.dump(pw);
         pw.println("Idleness tracker:"); mIdleTracker.dump(pw);
         pw.println();
 
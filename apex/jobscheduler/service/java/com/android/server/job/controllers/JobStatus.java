@@ -1507,7 +1507,7 @@ public final class JobStatus {
      * Checks both {@link #requiredConstraints} and {@link #mDynamicConstraints} to see if this job
      * requires the specified constraint.
      */
-    private boolean hasConstraint(int constraint) {
+    boolean hasConstraint(int constraint) {
         return (requiredConstraints & constraint) != 0 || (mDynamicConstraints & constraint) != 0;
     }
 
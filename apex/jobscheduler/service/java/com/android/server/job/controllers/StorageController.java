@@ -45,6 +45,11 @@ public final class StorageController extends StateController {
             || Log.isLoggable(TAG, Log.DEBUG);
 
     private final ArraySet<JobStatus> mTrackedTasks = new ArraySet<JobStatus>();
+    /** Tracked jobs split by whether their storage not low constraint is satisfied. */
+    private final ConstraintIndex mConstraintIndex =
+            new ConstraintIndex(JobStatus.CONSTRAINT_STORAGE_NOT_LOW);
+    /** Helper set to avoid GC churn in {@link #maybeReportNewStorageState()}. */
+    private final ArraySet<JobStatus> mChangedJobs = new ArraySet<>();
     private final StorageTracker mStorageTracker;
 
     @VisibleForTesting
@@ -66,6 +71,7 @@ public final class StorageController extends StateController {
             taskStatus.setTrackingController(JobStatus.TRACKING_STORAGE);
             taskStatus.setStorageNotLowConstraintSatisfied(
                     nowElapsed, mStorageTracker.isStorageNotLow());
+            mConstraintIndex.add(taskStatus);
         }
     }
 
@@ -73,26 +79,31 @@ public final class StorageController extends StateController {
     public void maybeStopTrackingJobLocked(JobStatus taskStatus, JobStatus incomingJob) {
         if (taskStatus.clearTrackingController(JobStatus.TRACKING_STORAGE)) {
             mTrackedTasks.remove(taskStatus);
+            mConstraintIndex.remove(taskStatus);
         }
     }
 
     private void maybeReportNewStorageState() {
         final long nowElapsed = sElapsedRealtimeClock.millis();
         final boolean storageNotLow = mStorageTracker.isStorageNotLow();
-        boolean reportChange = false;
         synchronized (mLock) {
-            for (int i = mTrackedTasks.size() - 1; i >= 0; i--) {
-                final JobStatus ts = mTrackedTasks.valueAt(i);
-                reportChange |= ts.setStorageNotLowConstraintSatisfied(nowElapsed, storageNotLow);
+            // Only the jobs in the other partition of the index can flip.
+            mConstraintIndex.addJobsToFlip(JobStatus.CONSTRAINT_STORAGE_NOT_LOW, storageNotLow,
+                    mChangedJobs);
+            for (int i = mChangedJobs.size() - 1; i >= 0; i--) {
+                final JobStatus ts = mChangedJobs.valueAt(i);
+                ts.setStorageNotLowConstraintSatisfied(nowElapsed, storageNotLow);
+                mConstraintIndex.onConstraintChanged(ts, JobStatus.CONSTRAINT_STORAGE_NOT_LOW);
             }
-        }
-        if (storageNotLow) {
-            // Tell the scheduler that any ready jobs should be flushed.
-            mStateChangedListener.onRunJobNow(null);
-        } else if (reportChange) {
-            // Let the scheduler know that state has changed. This may or may not result in an
-            // execution.
-            mStateChangedListener.onControllerStateChanged(mTrackedTasks);
+            if (storageNotLow) {
+                // Tell the scheduler that any ready jobs should be flushed.
+                mStateChangedListener.onRunJobNow(null);
+            } else if (mChangedJobs.size() > 0) {
+                // Let the scheduler know that state has changed. This may or may not result in an
+                // execution.
+                mStateChangedListener.onControllerStateChanged(mChangedJobs);
+            }
+            mChangedJobs.clear();
         }
     }
 
@@ -158,6 +169,7 @@ public final class StorageController extends StateController {
             Predicate<JobStatus> predicate) {
         pw.println("Not low: " + mStorageTracker.isStorageNotLow());
         pw.println("Sequence: " + mStorageTracker.getSeq());
+        mConstraintIndex.dump(pw);
         pw.println();
 
         for (int i = 0; i < mTrackedTasks.size(); i++) {
@@ -67,6 +67,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -202,6 +203,47 @@ public class AppIdleHistory {
         int lastRestrictReason;
     }
 
+    /**
+     * The state of a batch of a user's packages, in parallel arrays indexed by the position of
+     * each package in the batch. The caller adds the packages along with their minimum bucket,
+     * then {@link #loadPackageStates} looks up the history of each package once and evaluates
+     * the usage thresholds of all of them in a single pass, so that a full bucket recompute
+     * doesn't go through the user's history map several times for every package.
+     */
+    static final class PackageStates {
+        int size;
+        String[] packageNames = new String[0];
+        int[] minBuckets = new int[0];
+        AppUsageHistory[] histories = new AppUsageHistory[0];
+        long[] lastUsedScreenTimes = new long[0];
+        long[] lastUsedElapsedTimes = new long[0];
+        /** The threshold index of each package, as returned by {@link #getThresholdIndex}. */
+        int[] thresholdIndices = new int[0];
+
+        /** Empties the batch and makes room for {@code capacity} packages. */
+        void reset(int capacity) {
+            if (capacity > packageNames.length) {
+                packageNames = new String[capacity];
+                minBuckets = new int[capacity];
+                histories = new AppUsageHistory[capacity];
+                lastUsedScreenTimes = new long[capacity];
+                lastUsedElapsedTimes = new long[capacity];
+                thresholdIndices = new int[capacity];
+            } else {
+                // Don't hold on to the previous batch.
+                Arrays.fill(packageNames, 0, size, null);
+                Arrays.fill(histories, 0, size, null);
+            }
+            size = 0;
+        }
+
+        void add(String packageName, int minBucket) {
+            packageNames[size] = packageName;
+            minBuckets[size] = minBucket;
+            size++;
+        }
+    }
+
     AppIdleHistory(File storageDir, long elapsedRealtime) {
         mElapsedSnapshot = elapsedRealtime;
         mScreenOnSnapshot = elapsedRealtime;
@@ -414,6 +456,10 @@ public class AppIdleHistory {
         ArrayMap<String, AppUsageHistory> userHistory = getUserHistory(userId);
         AppUsageHistory appUsageHistory =
                 getPackageHistory(userHistory, packageName, elapsedRealtime, true);
+        return isIdle(appUsageHistory);
+    }
+
+    static boolean isIdle(AppUsageHistory appUsageHistory) {
         return appUsageHistory.currentBucket >= IDLE_BUCKET_CUTOFF;
     }
 
@@ -435,6 +481,16 @@ public class AppIdleHistory {
         ArrayMap<String, AppUsageHistory> userHistory = getUserHistory(userId);
         AppUsageHistory appUsageHistory =
                 getPackageHistory(userHistory, packageName, elapsedRealtime, true);
+        setAppStandbyBucket(appUsageHistory, packageName, userId, elapsedRealtime, bucket, reason,
+                resetExpiryTimes);
+    }
+
+    /**
+     * Same as {@link #setAppStandbyBucket(String, int, long, int, int, boolean)}, for an app
+     * whose history was already looked up.
+     */
+    void setAppStandbyBucket(AppUsageHistory appUsageHistory, String packageName, int userId,
+            long elapsedRealtime, int bucket, int reason, boolean resetExpiryTimes) {
         final boolean changed = appUsageHistory.currentBucket != bucket;
         appUsageHistory.currentBucket = bucket;
         appUsageHistory.bucketingReason = reason;
@@ -611,6 +667,10 @@ public class AppIdleHistory {
         ArrayMap<String, AppUsageHistory> userHistory = getUserHistory(userId);
         AppUsageHistory appUsageHistory = getPackageHistory(userHistory, packageName,
                 elapsedRealtime, true);
+        return shouldInformListeners(appUsageHistory, bucket);
+    }
+
+    boolean shouldInformListeners(AppUsageHistory appUsageHistory, int bucket) {
         if (appUsageHistory.lastInformedBucket != bucket) {
             appUsageHistory.lastInformedBucket = bucket;
             return true;
@@ -648,6 +708,12 @@ public class AppIdleHistory {
                 + " lastUsedElapsed=" + appUsageHistory.lastUsedElapsedTime);
         if (DEBUG) Slog.d(TAG, packageName + " screenOn=" + screenOnDelta
                 + ", elapsed=" + elapsedDelta);
+        return getThresholdIndex(screenOnDelta, elapsedDelta, screenTimeThresholds,
+                elapsedTimeThresholds);
+    }
+
+    private static int getThresholdIndex(long screenOnDelta, long elapsedDelta,
+            long[] screenTimeThresholds, long[] elapsedTimeThresholds) {
         for (int i = screenTimeThresholds.length - 1; i >= 0; i--) {
             if (screenOnDelta >= screenTimeThresholds[i]
                 && elapsedDelta >= elapsedTimeThresholds[i]) {
@@ -657,6 +723,40 @@ public class AppIdleHistory {
         return 0;
     }
 
+    /**
+     * Looks up the history of each package of {@code states}, creating it if needed, and fills
+     * in their last used times and threshold indices, as {@link #getThresholdIndex} would
+     * return them at {@code elapsedRealtime}.
+     */
+    void loadPackageStates(int userId, long elapsedRealtime, PackageStates states,
+            long[] screenTimeThresholds, long[] elapsedTimeThresholds) {
+        final ArrayMap<String, AppUsageHistory> userHistory = getUserHistory(userId);
+        final int size = states.size;
+        final AppUsageHistory[] histories = states.histories;
+        final long[] lastUsedScreenTimes = states.lastUsedScreenTimes;
+        final long[] lastUsedElapsedTimes = states.lastUsedElapsedTimes;
+        for (int i = 0; i < size; i++) {
+            final AppUsageHistory appUsageHistory = getPackageHistory(userHistory,
+                    states.packageNames[i], elapsedRealtime, true);
+            histories[i] = appUsageHistory;
+            lastUsedScreenTimes[i] = appUsageHistory.lastUsedScreenTime;
+            lastUsedElapsedTimes[i] = appUsageHistory.lastUsedElapsedTime;
+        }
+
+        final long screenOnTime = getScreenOnTime(elapsedRealtime);
+        final long elapsedTime = getElapsedTime(elapsedRealtime);
+        final int[] thresholdIndices = states.thresholdIndices;
+        for (int i = 0; i < size; i++) {
+            final long lastUsedScreenTime = lastUsedScreenTimes[i];
+            final long lastUsedElapsedTime = lastUsedElapsedTimes[i];
+            thresholdIndices[i] = lastUsedElapsedTime < 0 || lastUsedScreenTime < 0
+                    ? -1
+                    : getThresholdIndex(screenOnTime - lastUsedScreenTime,
+                            elapsedTime - lastUsedElapsedTime, screenTimeThresholds,
+                            elapsedTimeThresholds);
+        }
+    }
+
     /**
      * Log a standby bucket change to statsd, and also logcat if debug logging is enabled.
      */
@@ -916,6 +916,8 @@ public class AppStandbyController
         }
 
         final long elapsedRealtime = mInjector.elapsedRealtime();
+        final AppIdleHistory.PackageStates states = new AppIdleHistory.PackageStates();
+        final SparseBooleanArray idleChanges = new SparseBooleanArray();
         for (int i = 0; i < runningUserIds.length; i++) {
             final int userId = runningUserIds[i];
             if (checkUserId != UserHandle.USER_ALL && checkUserId != userId) {
@@ -928,11 +930,45 @@ public class AppStandbyController
                     PackageManager.MATCH_DISABLED_COMPONENTS,
                     userId);
             final int packageCount = packages.size();
+            states.reset(packageCount);
             for (int p = 0; p < packageCount; p++) {
                 final PackageInfo pi = packages.get(p);
                 final String packageName = pi.packageName;
-                checkAndUpdateStandbyState(packageName, userId, pi.applicationInfo.uid,
-                        elapsedRealtime);
+                int uid = pi.applicationInfo.uid;
+                if (uid <= 0) {
+                    try {
+                        uid = mPackageManager.getPackageUidAsUser(packageName, userId);
+                    } catch (PackageManager.NameNotFoundException e) {
+                        // Not a valid package for this user, nothing to do
+                        continue;
+                    }
+                }
+                final int minBucket = getAppMinBucket(packageName, UserHandle.getAppId(uid),
+                        userId);
+                if (DEBUG) {
+                    Slog.d(TAG, "   Checking idle state for " + packageName
+                            + " minBucket=" + standbyBucketToString(minBucket));
+                }
+                states.add(packageName, minBucket);
+            }
+
+            // Evaluate all the packages of the user in one pass over their states.
+            idleChanges.clear();
+            synchronized (mAppIdleLock) {
+                mAppIdleHistory.loadPackageStates(userId, elapsedRealtime, states,
+                        mAppStandbyScreenThresholds, mAppStandbyElapsedThresholds);
+                for (int p = 0; p < states.size; p++) {
+                    final AppUsageHistory app = states.histories[p];
+                    if (updateStandbyStateLocked(states.packageNames[p], userId,
+                            elapsedRealtime, states.minBuckets[p], app,
+                            states.thresholdIndices[p])) {
+                        idleChanges.append(p, AppIdleHistory.isIdle(app));
+                    }
+                }
+            }
+            for (int c = 0; c < idleChanges.size(); c++) {
+                notifyBatteryStats(states.packageNames[idleChanges.keyAt(c)], userId,
+                        idleChanges.valueAt(c));
             }
         }
         if (DEBUG) {
@@ -961,122 +997,134 @@ public class AppStandbyController
             Slog.d(TAG, "   Checking idle state for " + packageName
                     + " minBucket=" + standbyBucketToString(minBucket));
         }
-        final boolean previouslyIdle, stillIdle;
+        final boolean idleChanged, stillIdle;
+        synchronized (mAppIdleLock) {
+            final AppUsageHistory app = mAppIdleHistory.getAppUsageHistory(packageName, userId,
+                    elapsedRealtime);
+            final int thresholdIndex = mAppIdleHistory.getThresholdIndex(packageName, userId,
+                    elapsedRealtime, mAppStandbyScreenThresholds, mAppStandbyElapsedThresholds);
+            idleChanged = updateStandbyStateLocked(packageName, userId, elapsedRealtime,
+                    minBucket, app, thresholdIndex);
+            stillIdle = AppIdleHistory.isIdle(app);
+        }
+        if (idleChanged) {
+            notifyBatteryStats(packageName, userId, stillIdle);
+        }
+    }
+
+    /**
+     * Updates the standby bucket of an app based on its usage history.
+     *
+     * @param app the usage history of the app
+     * @param thresholdIndex the index of the usage thresholds the app exceeds, as returned by
+     *                       {@link AppIdleHistory#getThresholdIndex}
+     * @return whether the app went in or out of idle
+     */
+    @GuardedBy("mAppIdleLock")
+    private boolean updateStandbyStateLocked(String packageName, @UserIdInt int userId,
+            long elapsedRealtime, int minBucket, AppUsageHistory app, int thresholdIndex) {
+        final boolean previouslyIdle = AppIdleHistory.isIdle(app);
         if (minBucket <= STANDBY_BUCKET_ACTIVE) {
             // No extra processing needed for ACTIVE or higher since apps can't drop into lower
             // buckets.
-            synchronized (mAppIdleLock) {
-                previouslyIdle = mAppIdleHistory.isIdle(packageName, userId, elapsedRealtime);
-                mAppIdleHistory.setAppStandbyBucket(packageName, userId, elapsedRealtime,
-                        minBucket, REASON_MAIN_DEFAULT);
-                stillIdle = mAppIdleHistory.isIdle(packageName, userId, elapsedRealtime);
-            }
-            maybeInformListeners(packageName, userId, elapsedRealtime,
+            mAppIdleHistory.setAppStandbyBucket(app, packageName, userId, elapsedRealtime,
                     minBucket, REASON_MAIN_DEFAULT, false);
-        } else {
-            synchronized (mAppIdleLock) {
-                previouslyIdle = mAppIdleHistory.isIdle(packageName, userId, elapsedRealtime);
-                final AppIdleHistory.AppUsageHistory app =
-                        mAppIdleHistory.getAppUsageHistory(packageName,
-                        userId, elapsedRealtime);
-                int reason = app.bucketingReason;
-                final int oldMainReason = reason & REASON_MAIN_MASK;
-
-                // If the bucket was forced by the user/developer, leave it alone.
-                // A usage event will be the only way to bring it out of this forced state
-                if (oldMainReason == REASON_MAIN_FORCED_BY_USER) {
-                    return;
-                }
-                final int oldBucket = app.currentBucket;
-                if (oldBucket == STANDBY_BUCKET_NEVER) {
-                    // None of this should bring an app out of the NEVER bucket.
-                    return;
-                }
-                int newBucket = Math.max(oldBucket, STANDBY_BUCKET_ACTIVE); // Undo EXEMPTED
-                boolean predictionLate = predictionTimedOut(app, elapsedRealtime);
-                // Compute age-based bucket
-                if (oldMainReason == REASON_MAIN_DEFAULT
-                        || oldMainReason == REASON_MAIN_USAGE
-                        || oldMainReason == REASON_MAIN_TIMEOUT
-                        || predictionLate) {
-
-                    if (!predictionLate && app.lastPredictedBucket >= STANDBY_BUCKET_ACTIVE
-                            && app.lastPredictedBucket <= STANDBY_BUCKET_RARE) {
-                        newBucket = app.lastPredictedBucket;
-                        reason = REASON_MAIN_PREDICTED | REASON_SUB_PREDICTED_RESTORED;
-                        if (DEBUG) {
-                            Slog.d(TAG, "Restored predicted newBucket = "
-                                    + standbyBucketToString(newBucket));
-                        }
-                    } else {
-                        // Don't update the standby state for apps that were restored
-                        if (!(oldMainReason == REASON_MAIN_DEFAULT
-                                && (app.bucketingReason & REASON_SUB_MASK)
-                                        == REASON_SUB_DEFAULT_APP_RESTORED)) {
-                            newBucket = getBucketForLocked(packageName, userId, elapsedRealtime);
-                            if (DEBUG) {
-                                Slog.d(TAG, "Evaluated AOSP newBucket = "
-                                        + standbyBucketToString(newBucket));
-                            }
-                            reason = REASON_MAIN_TIMEOUT;
-                        }
-                    }
-                }
+            maybeInformListenersLocked(app, packageName, userId, minBucket, REASON_MAIN_DEFAULT,
+                    false);
+            return previouslyIdle != AppIdleHistory.isIdle(app);
+        }
 
-                // Check if the app is within one of the expiry times for forced bucket elevation
-                final long elapsedTimeAdjusted = mAppIdleHistory.getElapsedTime(elapsedRealtime);
-                final int bucketWithValidExpiryTime = getMinBucketWithValidExpiryTime(app,
-                        newBucket, elapsedTimeAdjusted);
-                if (bucketWithValidExpiryTime != STANDBY_BUCKET_UNKNOWN) {
-                    newBucket = bucketWithValidExpiryTime;
-                    if (newBucket == STANDBY_BUCKET_ACTIVE || app.currentBucket == newBucket) {
-                        reason = app.bucketingReason;
-                    } else {
-                        reason = REASON_MAIN_USAGE | REASON_SUB_USAGE_ACTIVE_TIMEOUT;
-                    }
-                    if (DEBUG) {
-                        Slog.d(TAG, "    Keeping at " + standbyBucketToString(newBucket)
-                                + " due to min timeout");
-                    }
-                }
+        int reason = app.bucketingReason;
+        final int oldMainReason = reason & REASON_MAIN_MASK;
 
-                if (app.lastUsedByUserElapsedTime >= 0
-                        && app.lastRestrictAttemptElapsedTime > app.lastUsedByUserElapsedTime
-                        && elapsedTimeAdjusted - app.lastUsedByUserElapsedTime
-                        >= mInjector.getAutoRestrictedBucketDelayMs()) {
-                    newBucket = STANDBY_BUCKET_RESTRICTED;
-                    reason = app.lastRestrictReason;
-                    if (DEBUG) {
-                        Slog.d(TAG, "Bringing down to RESTRICTED due to timeout");
-                    }
+        // If the bucket was forced by the user/developer, leave it alone.
+        // A usage event will be the only way to bring it out of this forced state
+        if (oldMainReason == REASON_MAIN_FORCED_BY_USER) {
+            return false;
+        }
+        final int oldBucket = app.currentBucket;
+        if (oldBucket == STANDBY_BUCKET_NEVER) {
+            // None of this should bring an app out of the NEVER bucket.
+            return false;
+        }
+        int newBucket = Math.max(oldBucket, STANDBY_BUCKET_ACTIVE); // Undo EXEMPTED
+        boolean predictionLate = predictionTimedOut(app, elapsedRealtime);
+        // Compute age-based bucket
+        if (oldMainReason == REASON_MAIN_DEFAULT
+                || oldMainReason == REASON_MAIN_USAGE
+                || oldMainReason == REASON_MAIN_TIMEOUT
+                || predictionLate) {
+
+            if (!predictionLate && app.lastPredictedBucket >= STANDBY_BUCKET_ACTIVE
+                    && app.lastPredictedBucket <= STANDBY_BUCKET_RARE) {
+                newBucket = app.lastPredictedBucket;
+                reason = REASON_MAIN_PREDICTED | REASON_SUB_PREDICTED_RESTORED;
+                if (DEBUG) {
+                    Slog.d(TAG, "Restored predicted newBucket = "
+                            + standbyBucketToString(newBucket));
                 }
-                if (newBucket > minBucket) {
-                    newBucket = minBucket;
-                    // Leave the reason alone.
+            } else {
+                // Don't update the standby state for apps that were restored
+                if (!(oldMainReason == REASON_MAIN_DEFAULT
+                        && (app.bucketingReason & REASON_SUB_MASK)
+                                == REASON_SUB_DEFAULT_APP_RESTORED)) {
+                    newBucket = getThresholdBucket(thresholdIndex);
                     if (DEBUG) {
-                        Slog.d(TAG, "Bringing up from " + standbyBucketToString(newBucket)
-                                + " to " + standbyBucketToString(minBucket)
-                                + " due to min bucketing");
+                        Slog.d(TAG, "Evaluated AOSP newBucket = "
+                                + standbyBucketToString(newBucket));
                     }
-                }
-                if (DEBUG) {
-                    Slog.d(TAG, "     Old bucket=" + standbyBucketToString(oldBucket)
-                            + ", newBucket=" + standbyBucketToString(newBucket));
-                }
-                if (oldBucket != newBucket || predictionLate) {
-                    mAppIdleHistory.setAppStandbyBucket(packageName, userId,
-                            elapsedRealtime, newBucket, reason);
-                    stillIdle = mAppIdleHistory.isIdle(packageName, userId, elapsedRealtime);
-                    maybeInformListeners(packageName, userId, elapsedRealtime,
-                            newBucket, reason, false);
-                } else {
-                    stillIdle = previouslyIdle;
+                    reason = REASON_MAIN_TIMEOUT;
                 }
             }
         }
-        if (previouslyIdle != stillIdle) {
-            notifyBatteryStats(packageName, userId, stillIdle);
+
+        // Check if the app is within one of the expiry times for forced bucket elevation
+        final long elapsedTimeAdjusted = mAppIdleHistory.getElapsedTime(elapsedRealtime);
+        final int bucketWithValidExpiryTime = getMinBucketWithValidExpiryTime(app,
+                newBucket, elapsedTimeAdjusted);
+        if (bucketWithValidExpiryTime != STANDBY_BUCKET_UNKNOWN) {
+            newBucket = bucketWithValidExpiryTime;
+            if (newBucket == STANDBY_BUCKET_ACTIVE || app.currentBucket == newBucket) {
+                reason = app.bucketingReason;
+            } else {
+                reason = REASON_MAIN_USAGE | REASON_SUB_USAGE_ACTIVE_TIMEOUT;
+            }
+            if (DEBUG) {
+                Slog.d(TAG, "    Keeping at " + standbyBucketToString(newBucket)
+                        + " due to min timeout");
+            }
+        }
+
+        if (app.lastUsedByUserElapsedTime >= 0
+                && app.lastRestrictAttemptElapsedTime > app.lastUsedByUserElapsedTime
+                && elapsedTimeAdjusted - app.lastUsedByUserElapsedTime
+                >= mInjector.getAutoRestrictedBucketDelayMs()) {
+            newBucket = STANDBY_BUCKET_RESTRICTED;
+            reason = app.lastRestrictReason;
+            if (DEBUG) {
+                Slog.d(TAG, "Bringing down to RESTRICTED due to timeout");
+            }
+        }
+        if (newBucket > minBucket) {
+            newBucket = minBucket;
+            // Leave the reason alone.
+            if (DEBUG) {
+                Slog.d(TAG, "Bringing up from " + standbyBucketToString(newBucket)
+                        + " to " + standbyBucketToString(minBucket)
+                        + " due to min bucketing");
+            }
+        }
+        if (DEBUG) {
+            Slog.d(TAG, "     Old bucket=" + standbyBucketToString(oldBucket)
+                    + ", newBucket=" + standbyBucketToString(newBucket));
+        }
+        if (oldBucket != newBucket || predictionLate) {
+            mAppIdleHistory.setAppStandbyBucket(app, packageName, userId,
+                    elapsedRealtime, newBucket, reason, false);
+            maybeInformListenersLocked(app, packageName, userId, newBucket, reason, false);
+            return previouslyIdle != AppIdleHistory.isIdle(app);
         }
+        return false;
     }
 
     /** Returns true if there hasn't been a prediction for the app in a while. */
@@ -1092,14 +1140,29 @@ public class AppStandbyController
         synchronized (mAppIdleLock) {
             if (mAppIdleHistory.shouldInformListeners(packageName, userId,
                     elapsedRealtime, bucket)) {
-                final StandbyUpdateRecord r = StandbyUpdateRecord.obtain(packageName, userId,
-                        bucket, reason, userStartedInteracting);
-                if (DEBUG) Slog.d(TAG, "Standby bucket for " + packageName + "=" + bucket);
-                mHandler.sendMessage(mHandler.obtainMessage(MSG_INFORM_LISTENERS, r));
+                informListenersLocked(packageName, userId, bucket, reason,
+                        userStartedInteracting);
             }
         }
     }
 
+    @GuardedBy("mAppIdleLock")
+    private void maybeInformListenersLocked(AppUsageHistory app, String packageName, int userId,
+            int bucket, int reason, boolean userStartedInteracting) {
+        if (mAppIdleHistory.shouldInformListeners(app, bucket)) {
+            informListenersLocked(packageName, userId, bucket, reason, userStartedInteracting);
+        }
+    }
+
+    @GuardedBy("mAppIdleLock")
+    private void informListenersLocked(String packageName, int userId, int bucket, int reason,
+            boolean userStartedInteracting) {
+        final StandbyUpdateRecord r = StandbyUpdateRecord.obtain(packageName, userId,
+                bucket, reason, userStartedInteracting);
+        if (DEBUG) Slog.d(TAG, "Standby bucket for " + packageName + "=" + bucket);
+        mHandler.sendMessage(mHandler.obtainMessage(MSG_INFORM_LISTENERS, r));
+    }
+
     /**
      * Evaluates next bucket based on time since last used and the bucketing thresholds.
      * @param packageName the app
@@ -1113,6 +1176,11 @@ public class AppStandbyController
             long elapsedRealtime) {
         int bucketIndex = mAppIdleHistory.getThresholdIndex(packageName, userId,
                 elapsedRealtime, mAppStandbyScreenThresholds, mAppStandbyElapsedThresholds);
+        return getThresholdBucket(bucketIndex);
+    }
+
+    @StandbyBuckets
+    private static int getThresholdBucket(int bucketIndex) {
         return bucketIndex >= 0 ? THRESHOLD_BUCKETS[bucketIndex] : STANDBY_BUCKET_NEVER;
     }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app.usage;
+
+import android.annotation.NonNull;
+import android.os.RemoteException;
+
+/**
+ * Iterates over the events of a time range like {@link UsageEvents}, but fetches them from the
+ * system in pages of a bounded number of events as it goes, so that neither the caller nor the
+ * system ever holds all of the events of a large range at once.
+ *
+ * The system keeps no state between pages: each page is requested from the time of the last
+ * event read, skipping the events at that time which were already read. Events are only
+ * appended after the current time, so pages line up as long as the range ends in the past or
+ * the caller doesn't mind seeing events which happened while it iterated.
+ *
+ * This class is NOT thread-safe.
+ *
+ * @see UsageStatsManager#queryEventsCursor(long, long, int)
+ * @hide
+ */
+public final class UsageEventsCursor {
+    private final IUsageStatsManager mService;
+    private final String mCallingPackage;
+    private final long mEndTime;
+    private final int mPageSize;
+
+    /** The page being read, or {@code null} before the first and after the last page. */
+    private UsageEvents mPage;
+    /** The number of events read from {@link #mPage}. */
+    private int mPageReadCount;
+    private boolean mLastPage;
+
+    /** The time of the last event read, from which the next page starts. */
+    private long mResumeTime;
+    /** The number of events read at {@link #mResumeTime}, which the next page skips. */
+    private int mResumeSkip;
+
+    UsageEventsCursor(@NonNull IUsageStatsManager service, @NonNull String callingPackage,
+            long beginTime, long endTime, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        mService = service;
+        mCallingPackage = callingPackage;
+        mResumeTime = beginTime;
+        mEndTime = endTime;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Returns whether or not there are more events to read using {@link #getNextEvent}. This may
+     * fetch the next page of events from the system.
+     */
+    public boolean hasNextEvent() {
+        if (mPage != null && mPage.hasNextEvent()) {
+            return true;
+        }
+        if (mLastPage || (mPage != null && mPageReadCount < mPageSize)) {
+            // The page wasn't full, so there are no more events in the range.
+            mPage = null;
+            mLastPage = true;
+            return false;
+        }
+        try {
+            mPage = mService.queryEventsPage(mResumeTime, mEndTime, mResumeSkip, mPageSize,
+                    mCallingPackage);
+        } catch (RemoteException e) {
+            mPage = null;
+        }
+        mPageReadCount = 0;
+        if (mPage == null || !mPage.hasNextEvent()) {
+            mPage = null;
+            mLastPage = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the next event and puts its data into {@code eventOut}.
+     *
+     * @return {@code true} if an event was available, {@code false} if there are no more events.
+     */
+    public boolean getNextEvent(@NonNull UsageEvents.Event eventOut) {
+        if (eventOut == null) {
+            throw new IllegalArgumentException("Given eventOut must not be null");
+        }
+        if (!hasNextEvent()) {
+            return false;
+        }
+        mPage.getNextEvent(eventOut);
+        mPageReadCount++;
+        if (eventOut.mTimeStamp == mResumeTime) {
+            mResumeSkip++;
+        } else {
+            mResumeTime = eventOut.mTimeStamp;
+            mResumeSkip = 1;
+        }
+        return true;
+    }
+}
@@ -580,6 +580,29 @@ public final class UsageStatsManager {
         return sEmptyResults;
     }
 
+    /**
+     * Like {@link #queryEvents(long, long)}, but returns a cursor which fetches the events from
+     * the system in pages of at most {@code pageSize} events as it is iterated. Unlike a
+     * {@link UsageEvents}, which holds all of the events of the range, the memory this takes
+     * doesn't depend on the size of the range.
+     * <p> The caller must have {@link android.Manifest.permission#PACKAGE_USAGE_STATS} </p>
+     *
+     * @param beginTime The inclusive beginning of the range of events to include in the results.
+     *                 Defined in terms of "Unix time", see
+     *                 {@link java.lang.System#currentTimeMillis}.
+     * @param endTime The exclusive end of the range of events to include in the results. Defined
+     *               in terms of "Unix time", see {@link java.lang.System#currentTimeMillis}.
+     * @param pageSize The maximum number of events fetched from the system at once.
+     * @return A {@link UsageEventsCursor}.
+     * @hide
+     */
+    @NonNull
+    public UsageEventsCursor queryEventsCursor(long beginTime, long endTime,
+            @IntRange(from = 1) int pageSize) {
+        return new UsageEventsCursor(mService, mContext.getOpPackageName(), beginTime, endTime,
+                pageSize);
+    }
+
     /**
      * Like {@link #queryEvents(long, long)}, but only returns events for the calling package.
      * <em>Note: Starting from {@link android.os.Build.VERSION_CODES#R Android R}, if the user's
@@ -2222,6 +2222,16 @@ public class IntentFilter implements Parcelable {
         return mExtras == null ? new PersistableBundle() : mExtras;
     }
 
+    /**
+     * Return whether any intent extras were set on this filter, without allocating the
+     * empty bundle returned by {@link #getExtras()}.
+     *
+     * @hide
+     */
+    public final boolean hasExtras() {
+        return mExtras != null && !mExtras.isEmpty();
+    }
+
     /**
      * Return a {@link Predicate} which tests whether this filter matches the
      * given <var>intent</var>.
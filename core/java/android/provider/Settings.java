@@ -112,6 +112,7 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Field;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -3280,6 +3281,37 @@ public final class Settings {
             final boolean isSelf = (userHandle == UserHandle.myUserId());
             final boolean useCache = isSelf && !isInSystemServer();
             boolean needsGenerationTracker = false;
+            if (useCache && mCallListCommand != null) {
+                // A flag is served from the cache of its whole namespace, which is tracked by a
+                // single generation number, so reading several flags of a namespace only costs
+                // one call to the provider until the namespace changes.
+                final int namespaceEnd = name.indexOf('/');
+                if (namespaceEnd > 0) {
+                    final String prefix = name.substring(0, namespaceEnd + 1);
+                    synchronized (NameValueCache.this) {
+                        if (isPrefixCachedLocked(prefix)) {
+                            if (DEBUG) {
+                                Log.i(TAG, "Cache hit for setting:" + name + " in prefix");
+                            }
+                            return mValues.get(name);
+                        }
+                    }
+                    if (canReadNamespace(prefix.substring(0, namespaceEnd))) {
+                        final ArrayMap<String, String> namespaceValues =
+                                getStringsForPrefix(cr, prefix, Collections.emptyList());
+                        if (!namespaceValues.isEmpty()) {
+                            return namespaceValues.get(name);
+                        }
+                        // An empty namespace is cached like any other, but a failed call returns
+                        // an empty map too and caches nothing. Look the flag up on its own then.
+                        synchronized (NameValueCache.this) {
+                            if (isPrefixCachedLocked(prefix)) {
+                                return null;
+                            }
+                        }
+                    }
+                }
+            }
             if (useCache) {
                 synchronized (NameValueCache.this) {
                     final GenerationTracker generationTracker = mGenerationTrackers.get(name);
@@ -3492,6 +3524,38 @@ public final class Settings {
             }
         }
 
+        /**
+         * Returns whether every setting under {@code prefix} is cached and up to date. Drops
+         * the cached settings of the prefix if they are stale.
+         */
+        @GuardedBy("this")
+        private boolean isPrefixCachedLocked(String prefix) {
+            final GenerationTracker generationTracker = mGenerationTrackers.get(prefix);
+            if (generationTracker == null || !mValues.containsKey(prefix)) {
+                return false;
+            }
+            if (generationTracker.isGenerationChanged()) {
+                for (int i = mValues.size() - 1; i >= 0; i--) {
+                    if (mValues.keyAt(i).startsWith(prefix)) {
+                        mValues.removeAt(i);
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        // Like Config.enforceReadPermission(), without throwing.
+        private static boolean canReadNamespace(String namespace) {
+            final Application application = ActivityThread.currentApplication();
+            if (application == null) {
+                return false;
+            }
+            return application.checkCallingOrSelfPermission(
+                    Manifest.permission.READ_DEVICE_CONFIG) == PackageManager.PERMISSION_GRANTED
+                    || DeviceConfig.getPublicNamespaces().contains(namespace);
+        }
+
         private static boolean isCallerExemptFromReadableRestriction() {
             if (Settings.isInSystemServer()) {
                 return true;
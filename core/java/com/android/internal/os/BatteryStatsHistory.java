@@ -47,6 +47,9 @@ import com.android.internal.util.ParseUtils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
@@ -71,6 +74,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * The file number grows sequentially and we never skip number.
  * When count of history files exceeds {@link BatteryStatsImpl.Constants#MAX_HISTORY_FILES},
  * the lowest numbered file is deleted and a new file is open.
+ * Saving the buffer into mActiveFile only appends the records added since the previous save,
+ * unless records that were already saved have been rewritten since.
  *
  * All interfaces in BatteryStatsHistory should only be called by BatteryStatsImpl and protected by
  * locks on BatteryStatsImpl object.
@@ -85,6 +90,9 @@ public class BatteryStatsHistory {
     private static final String HISTORY_DIR = "battery-history";
     private static final String FILE_SUFFIX = ".bin";
     private static final int MIN_FREE_SPACE = 100 * 1024 * 1024;
+    // Size of the version, history base time and buffer size that precede the history buffer
+    // in a history file.
+    private static final int HISTORY_FILE_HEADER_SIZE = 16;
 
     // Part of initial delta int that specifies the time delta.
     static final int DELTA_TIME_MASK = 0x7ffff;
@@ -142,6 +150,11 @@ public class BatteryStatsHistory {
      * The active history file that the history buffer is backed up into.
      */
     private AtomicFile mActiveFile;
+    /**
+     * The number of bytes at the start of {@link #mHistoryBuffer} that are saved unchanged in
+     * {@link #mActiveFile}, or -1 if the active file has to be rewritten in full on the next save.
+     */
+    private int mPersistedHistoryBufferSize = -1;
     /**
      * A list of history files with incremental indexes.
      */
@@ -385,6 +398,7 @@ public class BatteryStatsHistory {
         mNextHistoryTagIdx = 0;
         mNumHistoryTagChars = 0;
         mHistoryBufferLastPos = -1;
+        mPersistedHistoryBufferSize = -1;
         if (mStepDetailsCalculator != null) {
             mStepDetailsCalculator.clear();
         }
@@ -433,6 +447,7 @@ public class BatteryStatsHistory {
      */
     private void setActiveFile(int fileNumber) {
         mActiveFile = getFile(fileNumber);
+        mPersistedHistoryBufferSize = -1;
         if (DEBUG) {
             Slog.d(TAG, "activeHistoryFile:" + mActiveFile.getBaseFile().getPath());
         }
@@ -870,6 +885,11 @@ public class BatteryStatsHistory {
         return mActiveFile;
     }
 
+    @VisibleForTesting
+    public int getPersistedHistoryBufferSize() {
+        return mPersistedHistoryBufferSize;
+    }
+
     /**
      * @return the total size of all history files and history buffer.
      */
@@ -1378,6 +1398,10 @@ public class BatteryStatsHistory {
             if (DEBUG) Slog.i(TAG, "ADD: rewinding back to " + mHistoryBufferLastPos);
             mHistoryBuffer.setDataSize(mHistoryBufferLastPos);
             mHistoryBuffer.setDataPosition(mHistoryBufferLastPos);
+            if (mHistoryBufferLastPos < mPersistedHistoryBufferSize) {
+                // The saved copy of the last record is stale now.
+                mPersistedHistoryBufferSize = -1;
+            }
             mHistoryBufferLastPos = -1;
             elapsedRealtimeMs = mHistoryLastWritten.time - mHistoryBaseTimeMs;
             // If the last written history had a wakelock tag, we need to retain it.
@@ -1870,6 +1894,12 @@ public class BatteryStatsHistory {
             return;
         }
 
+        if (mPersistedHistoryBufferSize >= 0
+                && mPersistedHistoryBufferSize <= mHistoryBuffer.dataSize()
+                && appendHistoryBufferToActiveFile()) {
+            return;
+        }
+
         Parcel p = Parcel.obtain();
         try {
             final long start = SystemClock.uptimeMillis();
@@ -1878,12 +1908,72 @@ public class BatteryStatsHistory {
                 Slog.d(TAG, "writeHistoryBuffer duration ms:"
                         + (SystemClock.uptimeMillis() - start) + " bytes:" + p.dataSize());
             }
-            writeParcelToFileLocked(p, mActiveFile);
+            mPersistedHistoryBufferSize = writeParcelToFileLocked(p, mActiveFile)
+                    ? mHistoryBuffer.dataSize() : -1;
         } finally {
             p.recycle();
         }
     }
 
+    /**
+     * Saves the history buffer by writing the records added since the previous save after the
+     * ones already in the active file, and then updating the file header. The records are
+     * synced before the header that covers them, so an interrupted save leaves the previous
+     * contents of the file intact.
+     *
+     * @return true if the active file is up to date, false if it needs to be rewritten in full.
+     */
+    private boolean appendHistoryBufferToActiveFile() {
+        final int dataSize = mHistoryBuffer.dataSize();
+        final int persistedSize = mPersistedHistoryBufferSize;
+        final Parcel header = Parcel.obtain();
+        final Parcel records = Parcel.obtain();
+        mWriteLock.lock();
+        try (FileChannel channel = FileChannel.open(mActiveFile.getBaseFile().toPath(),
+                StandardOpenOption.WRITE)) {
+            final long startTimeMs = SystemClock.uptimeMillis();
+            if (channel.size() != HISTORY_FILE_HEADER_SIZE + persistedSize) {
+                Slog.w(TAG, "Unexpected size of " + mActiveFile.getBaseFile() + ": "
+                        + channel.size());
+                mPersistedHistoryBufferSize = -1;
+                return false;
+            }
+            if (dataSize > persistedSize) {
+                records.appendFrom(mHistoryBuffer, persistedSize, dataSize - persistedSize);
+                writeFully(channel, records.marshall(),
+                        HISTORY_FILE_HEADER_SIZE + persistedSize);
+                channel.force(false);
+            }
+            writeHistoryBufferHeader(header);
+            writeFully(channel, header.marshall(), 0);
+            channel.force(false);
+            mPersistedHistoryBufferSize = dataSize;
+            if (DEBUG) {
+                Slog.d(TAG, "appendHistoryBufferToActiveFile file:"
+                        + mActiveFile.getBaseFile().getPath()
+                        + " duration ms:" + (SystemClock.uptimeMillis() - startTimeMs)
+                        + " bytes:" + (dataSize - persistedSize));
+            }
+            return true;
+        } catch (IOException e) {
+            Slog.w(TAG, "Error appending battery history", e);
+            mPersistedHistoryBufferSize = -1;
+            return false;
+        } finally {
+            mWriteLock.unlock();
+            records.recycle();
+            header.recycle();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
     /**
      * Reads history buffer from a persisted Parcel.
      */
@@ -1899,6 +1989,7 @@ public class BatteryStatsHistory {
 
         mHistoryBuffer.setDataSize(0);
         mHistoryBuffer.setDataPosition(0);
+        mPersistedHistoryBufferSize = -1;
 
         int bufSize = in.readInt();
         int curPos = in.dataPosition();
@@ -1947,9 +2038,7 @@ public class BatteryStatsHistory {
             TimeUtils.formatDuration(mLastHistoryElapsedRealtimeMs, sb);
             Slog.i(TAG, sb.toString());
         }
-        out.writeInt(BatteryStatsHistory.VERSION);
-        out.writeLong(mHistoryBaseTimeMs + mLastHistoryElapsedRealtimeMs);
-        out.writeInt(mHistoryBuffer.dataSize());
+        writeHistoryBufferHeader(out);
         if (DEBUG) {
             Slog.i(TAG, "***************** WRITING HISTORY: "
                     + mHistoryBuffer.dataSize() + " bytes at " + out.dataPosition());
@@ -1957,7 +2046,14 @@ public class BatteryStatsHistory {
         out.appendFrom(mHistoryBuffer, 0, mHistoryBuffer.dataSize());
     }
 
-    private void writeParcelToFileLocked(Parcel p, AtomicFile file) {
+    /** Writes the {@link #HISTORY_FILE_HEADER_SIZE} bytes that precede the history buffer. */
+    private void writeHistoryBufferHeader(Parcel out) {
+        out.writeInt(BatteryStatsHistory.VERSION);
+        out.writeLong(mHistoryBaseTimeMs + mLastHistoryElapsedRealtimeMs);
+        out.writeInt(mHistoryBuffer.dataSize());
+    }
+
+    private boolean writeParcelToFileLocked(Parcel p, AtomicFile file) {
         FileOutputStream fos = null;
         mWriteLock.lock();
         try {
@@ -1973,9 +2069,11 @@ public class BatteryStatsHistory {
             }
             com.android.internal.logging.EventLogTags.writeCommitSysConfigFile(
                     "batterystats", SystemClock.uptimeMillis() - startTimeMs);
+            return true;
         } catch (IOException e) {
             Slog.w(TAG, "Error writing battery statistics", e);
             file.failWrite(fos);
+            return false;
         } finally {
             mWriteLock.unlock();
         }
@@ -170,6 +170,27 @@ public abstract class KernelCpuUidBpfMapReader {
             return true;
         }
 
+        /**
+         * Moves to the next uid without copying its times, which can then be read with
+         * {@link #getUid()} and {@link #getTimes()} until the next move or until this iterator
+         * is closed. The times must not be modified.
+         */
+        public boolean moveToNextUid() {
+            if (mPos >= mData.size()) {
+                return false;
+            }
+            mPos++;
+            return true;
+        }
+
+        public int getUid() {
+            return mData.keyAt(mPos - 1);
+        }
+
+        public long[] getTimes() {
+            return mData.valueAt(mPos - 1);
+        }
+
         public void close() {
             mReadLock.unlock();
         }
@@ -57,6 +57,11 @@ public abstract class KernelCpuUidTimeReader<T> {
 
     final String mTag = this.getClass().getSimpleName();
     final SparseArray<T> mLastTimes = new SparseArray<>();
+    /**
+     * The last times of each UID, for the readers that keep them in columns rather than in
+     * {@link #mLastTimes}, so that a read doesn't allocate.
+     */
+    final KernelCpuUidTimesTable mLastUidTimes = new KernelCpuUidTimesTable();
     final KernelCpuProcStringReader mReader;
     final boolean mThrottle;
     protected boolean mBpfTimesAvailable;
@@ -156,6 +161,7 @@ public abstract class KernelCpuUidTimeReader<T> {
      */
     public void removeUid(int uid) {
         mLastTimes.delete(uid);
+        mLastUidTimes.removeUidsInRange(uid, uid);
 
         if (mBpfTimesAvailable) {
             mBpfReader.removeUidsInRange(uid, uid);
@@ -180,6 +186,7 @@ public abstract class KernelCpuUidTimeReader<T> {
         int firstIndex = mLastTimes.indexOfKey(startUid);
         int lastIndex = mLastTimes.indexOfKey(endUid);
         mLastTimes.removeAtRange(firstIndex, lastIndex - firstIndex + 1);
+        mLastUidTimes.removeUidsInRange(startUid, endUid);
 
         if (mBpfTimesAvailable) {
             mBpfReader.removeUidsInRange(startUid, endUid);
@@ -492,18 +499,15 @@ public abstract class KernelCpuUidTimeReader<T> {
             return mCpuFreqs;
         }
 
-        private void processUidDelta(@Nullable Callback<long[]> cb) {
-            final int uid = (int) mBuffer[0];
+        private void processUidDelta(@Nullable Callback<long[]> cb, int uid, long[] curTimes) {
             long[] lastTimes = mLastTimes.get(uid);
             if (lastTimes == null) {
                 lastTimes = new long[mFreqCount];
                 mLastTimes.put(uid, lastTimes);
             }
-            copyToCurTimes();
             boolean notify = false;
             for (int i = 0; i < mFreqCount; i++) {
-                // Unit is 10ms.
-                mDeltaTimes[i] = mCurTimes[i] - lastTimes[i];
+                mDeltaTimes[i] = curTimes[i] - lastTimes[i];
                 if (mDeltaTimes[i] < 0) {
                     if (DEBUG) Slog.e(mTag, "Negative delta from freq time for uid: " + uid
                             + ", delta: " + mDeltaTimes[i]);
@@ -512,7 +516,7 @@ public abstract class KernelCpuUidTimeReader<T> {
                 notify |= mDeltaTimes[i] > 0;
             }
             if (notify) {
-                System.arraycopy(mCurTimes, 0, lastTimes, 0, mFreqCount);
+                System.arraycopy(curTimes, 0, lastTimes, 0, mFreqCount);
                 if (cb != null) {
                     cb.onUidCpuTime(uid, mDeltaTimes);
                 }
@@ -524,8 +528,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            processUidDelta(cb);
+                        // BPF times are already in ms, so they can be used without copying them.
+                        while (iter.moveToNextUid()) {
+                            processUidDelta(cb, iter.getUid(), iter.getTimes());
                         }
                         return;
                     }
@@ -545,7 +550,8 @@ public abstract class KernelCpuUidTimeReader<T> {
                         }
                         continue;
                     }
-                    processUidDelta(cb);
+                    copyToCurTimes();
+                    processUidDelta(cb, (int) mBuffer[0], mCurTimes);
                 }
             }
         }
@@ -555,9 +561,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            copyToCurTimes();
-                            cb.onUidCpuTime((int) mBuffer[0], mCurTimes);
+                        while (iter.moveToNextUid()) {
+                            System.arraycopy(iter.getTimes(), 0, mCurTimes, 0, mFreqCount);
+                            cb.onUidCpuTime(iter.getUid(), mCurTimes);
                         }
                         return;
                     }
@@ -580,9 +586,9 @@ public abstract class KernelCpuUidTimeReader<T> {
         }
 
         private void copyToCurTimes() {
-            long factor = mBpfTimesAvailable ? 1 : 10;
+            // Unit is 10ms.
             for (int i = 0; i < mFreqCount; i++) {
-                mCurTimes[i] = mBuffer[i + 1] * factor;
+                mCurTimes[i] = mBuffer[i + 1] * 10;
             }
         }
 
@@ -674,13 +680,14 @@ public abstract class KernelCpuUidTimeReader<T> {
             super(reader, bpfReader, throttle, Clock.SYSTEM_CLOCK);
         }
 
-        private void processUidDelta(@Nullable Callback<Long> cb) {
-            int uid = (int) mBuffer[0];
-            long cpuActiveTime = sumActiveTime(mBuffer, mBpfTimesAvailable ? 1 : 10);
+        private void processUidDelta(@Nullable Callback<Long> cb, int uid, long cpuActiveTime) {
             if (cpuActiveTime > 0) {
-                long delta = cpuActiveTime - mLastTimes.get(uid, 0L);
+                mLastUidTimes.setWidth(1);
+                final int row = mLastUidTimes.getOrAddRow(uid);
+                final long[] lastTimes = mLastUidTimes.getTimes();
+                long delta = cpuActiveTime - lastTimes[row];
                 if (delta > 0) {
-                    mLastTimes.put(uid, cpuActiveTime);
+                    lastTimes[row] = cpuActiveTime;
                     if (cb != null) {
                         cb.onUidCpuTime(uid, delta);
                     }
@@ -696,8 +703,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            processUidDelta(cb);
+                        while (iter.moveToNextUid()) {
+                            processUidDelta(cb, iter.getUid(),
+                                    sumActiveTime(iter.getTimes(), 0, mCores, 1));
                         }
                         return;
                     }
@@ -713,15 +721,16 @@ public abstract class KernelCpuUidTimeReader<T> {
                         Slog.wtf(mTag, "Invalid line: " + buf.toString());
                         continue;
                     }
-                    processUidDelta(cb);
+                    // UID is stored at mBuffer[0].
+                    processUidDelta(cb, (int) mBuffer[0], sumActiveTime(mBuffer, 1, mCores, 10));
                 }
             }
         }
 
-        private void processUidAbsolute(@Nullable Callback<Long> cb) {
-            long cpuActiveTime = sumActiveTime(mBuffer, mBpfTimesAvailable ? 1 : 10);
+        private void processUidAbsolute(@Nullable Callback<Long> cb, int uid,
+                long cpuActiveTime) {
             if (cpuActiveTime > 0) {
-                cb.onUidCpuTime((int) mBuffer[0], cpuActiveTime);
+                cb.onUidCpuTime(uid, cpuActiveTime);
             }
         }
 
@@ -730,8 +739,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            processUidAbsolute(cb);
+                        while (iter.moveToNextUid()) {
+                            processUidAbsolute(cb, iter.getUid(),
+                                    sumActiveTime(iter.getTimes(), 0, mCores, 1));
                         }
                         return;
                     }
@@ -747,16 +757,20 @@ public abstract class KernelCpuUidTimeReader<T> {
                         Slog.wtf(mTag, "Invalid line: " + buf.toString());
                         continue;
                     }
-                    processUidAbsolute(cb);
+                    processUidAbsolute(cb, (int) mBuffer[0],
+                            sumActiveTime(mBuffer, 1, mCores, 10));
                 }
             }
         }
 
-        private static long sumActiveTime(long[] times, double factor) {
-            // UID is stored at times[0].
+        /**
+         * Sums the {@code cores} times starting at {@code offset}, the n-th of which is the time
+         * spent running concurrently with n - 1 other processes.
+         */
+        private static long sumActiveTime(long[] times, int offset, int cores, double factor) {
             double sum = 0;
-            for (int i = 1; i < times.length; i++) {
-                sum += (double) times[i] * factor / i; // Unit is 10ms.
+            for (int i = 1; i <= cores; i++) {
+                sum += (double) times[offset + i - 1] * factor / i;
             }
             return (long) sum;
         }
@@ -851,18 +865,13 @@ public abstract class KernelCpuUidTimeReader<T> {
             super(reader, bpfReader, throttle, Clock.SYSTEM_CLOCK);
         }
 
-        void processUidDelta(@Nullable Callback<long[]> cb) {
-            int uid = (int) mBuffer[0];
-            long[] lastTimes = mLastTimes.get(uid);
-            if (lastTimes == null) {
-                lastTimes = new long[mNumClusters];
-                mLastTimes.put(uid, lastTimes);
-            }
-            sumClusterTime();
-            boolean valid = true;
+        void processUidDelta(@Nullable Callback<long[]> cb, int uid) {
+            mLastUidTimes.setWidth(mNumClusters);
+            final int row = mLastUidTimes.getOrAddRow(uid);
+            final long[] lastTimes = mLastUidTimes.getTimes();
             boolean notify = false;
             for (int i = 0; i < mNumClusters; i++) {
-                mDeltaTime[i] = mCurTime[i] - lastTimes[i];
+                mDeltaTime[i] = mCurTime[i] - lastTimes[row + i];
                 if (mDeltaTime[i] < 0) {
                     Slog.e(mTag, "Negative delta from cluster time for uid: " + uid
                             + ", delta: " + mDeltaTime[i]);
@@ -871,7 +880,7 @@ public abstract class KernelCpuUidTimeReader<T> {
                 notify |= mDeltaTime[i] > 0;
             }
             if (notify) {
-                System.arraycopy(mCurTime, 0, lastTimes, 0, mNumClusters);
+                System.arraycopy(mCurTime, 0, lastTimes, row, mNumClusters);
                 if (cb != null) {
                     cb.onUidCpuTime(uid, mDeltaTime);
                 }
@@ -883,8 +892,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            processUidDelta(cb);
+                        while (iter.moveToNextUid()) {
+                            sumClusterTime(iter.getTimes(), 0, 1);
+                            processUidDelta(cb, iter.getUid());
                         }
                         return;
                     }
@@ -900,7 +910,8 @@ public abstract class KernelCpuUidTimeReader<T> {
                         Slog.wtf(mTag, "Invalid line: " + buf.toString());
                         continue;
                     }
-                    processUidDelta(cb);
+                    sumClusterTime(mBuffer, 1, 10);
+                    processUidDelta(cb, (int) mBuffer[0]);
                 }
             }
         }
@@ -910,9 +921,9 @@ public abstract class KernelCpuUidTimeReader<T> {
             if (mBpfTimesAvailable) {
                 try (BpfMapIterator iter = mBpfReader.open(!mThrottle)) {
                     if (checkPrecondition(iter)) {
-                        while (iter.getNextUid(mBuffer)) {
-                            sumClusterTime();
-                            cb.onUidCpuTime((int) mBuffer[0], mCurTime);
+                        while (iter.moveToNextUid()) {
+                            sumClusterTime(iter.getTimes(), 0, 1);
+                            cb.onUidCpuTime(iter.getUid(), mCurTime);
                         }
                         return;
                     }
@@ -928,20 +939,22 @@ public abstract class KernelCpuUidTimeReader<T> {
                         Slog.wtf(mTag, "Invalid line: " + buf.toString());
                         continue;
                     }
-                    sumClusterTime();
+                    sumClusterTime(mBuffer, 1, 10);
                     cb.onUidCpuTime((int) mBuffer[0], mCurTime);
                 }
             }
         }
 
-        private void sumClusterTime() {
-            double factor = mBpfTimesAvailable ? 1 : 10;
-            // UID is stored at mBuffer[0].
-            int core = 1;
+        /**
+         * Sums the times of each cluster into {@link #mCurTime}, reading the times of all cores
+         * from {@code times}, starting at {@code offset}.
+         */
+        private void sumClusterTime(long[] times, int offset, double factor) {
+            int core = offset;
             for (int i = 0; i < mNumClusters; i++) {
                 double sum = 0;
                 for (int j = 1; j <= mCoresOnClusters[i]; j++) {
-                    sum += (double) mBuffer[core++] * factor / j; // Unit is 10ms.
+                    sum += (double) times[core++] * factor / j;
                 }
                 mCurTime[i] = (long) sum;
             }
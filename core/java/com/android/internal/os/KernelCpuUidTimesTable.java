@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import com.android.internal.util.GrowingArrayUtils;
+
+import libcore.util.EmptyArray;
+
+import java.util.Arrays;
+
+/**
+ * Per-UID rows of a fixed number of times, stored in columns: a sorted array of UIDs and a flat
+ * array holding the times of row i at [i * width, (i + 1) * width).
+ *
+ * Used by the {@link KernelCpuUidTimeReader} family to keep the times of the last read, so that
+ * a read doesn't allocate anything once all the UIDs have been seen. Lookups are fastest when
+ * made in increasing UID order, which is the order the BPF maps are iterated in.
+ *
+ * This class is NOT thread-safe.
+ */
+final class KernelCpuUidTimesTable {
+    private int mWidth;
+    private int[] mUids = EmptyArray.INT;
+    private long[] mTimes = EmptyArray.LONG;
+    private int mSize;
+    /** The row after the one last looked up. */
+    private int mCursor;
+
+    /** Sets the number of times in each row, clearing the table if it changes. */
+    void setWidth(int width) {
+        if (width == mWidth) {
+            return;
+        }
+        mWidth = width;
+        mSize = 0;
+        mCursor = 0;
+        mTimes = new long[mUids.length * width];
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int uidAt(int index) {
+        return mUids[index];
+    }
+
+    /**
+     * Returns the array holding the times. It is replaced when rows are added, so it must be
+     * fetched again after {@link #getOrAddRow}.
+     */
+    long[] getTimes() {
+        return mTimes;
+    }
+
+    /**
+     * Returns the offset in {@link #getTimes()} of the row of {@code uid}, adding a row of zeroes
+     * for it if there is none.
+     */
+    int getOrAddRow(int uid) {
+        int index;
+        if (mCursor < mSize && mUids[mCursor] == uid) {
+            index = mCursor;
+        } else {
+            index = Arrays.binarySearch(mUids, 0, mSize, uid);
+            if (index < 0) {
+                index = ~index;
+                insertRow(index, uid);
+            }
+        }
+        mCursor = index + 1;
+        return index * mWidth;
+    }
+
+    private void insertRow(int index, int uid) {
+        if (mSize + 1 > mUids.length) {
+            final int capacity = GrowingArrayUtils.growSize(mSize);
+            final int[] uids = new int[capacity];
+            final long[] times = new long[capacity * mWidth];
+            System.arraycopy(mUids, 0, uids, 0, index);
+            System.arraycopy(mTimes, 0, times, 0, index * mWidth);
+            System.arraycopy(mUids, index, uids, index + 1, mSize - index);
+            System.arraycopy(mTimes, index * mWidth, times, (index + 1) * mWidth,
+                    (mSize - index) * mWidth);
+            mUids = uids;
+            mTimes = times;
+        } else {
+            System.arraycopy(mUids, index, mUids, index + 1, mSize - index);
+            System.arraycopy(mTimes, index * mWidth, mTimes, (index + 1) * mWidth,
+                    (mSize - index) * mWidth);
+            Arrays.fill(mTimes, index * mWidth, (index + 1) * mWidth, 0);
+        }
+        mUids[index] = uid;
+        mSize++;
+    }
+
+    /** Removes the rows of the UIDs from {@code startUid} to {@code endUid}, inclusive. */
+    void removeUidsInRange(int startUid, int endUid) {
+        if (endUid < startUid) {
+            return;
+        }
+        int first = Arrays.binarySearch(mUids, 0, mSize, startUid);
+        if (first < 0) {
+            first = ~first;
+        }
+        int end = Arrays.binarySearch(mUids, first, mSize, endUid);
+        end = end < 0 ? ~end : end + 1;
+        if (end == first) {
+            return;
+        }
+        System.arraycopy(mUids, end, mUids, first, mSize - end);
+        System.arraycopy(mTimes, end * mWidth, mTimes, first * mWidth, (mSize - end) * mWidth);
+        mSize -= end - first;
+        mCursor = 0;
+    }
+}
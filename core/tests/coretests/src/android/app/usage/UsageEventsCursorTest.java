@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app.usage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.RemoteException;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UsageEventsCursorTest {
+    private final ArrayList<UsageEvents.Event> mEvents = new ArrayList<>();
+    private IUsageStatsManager mService;
+    private int mPagesServed;
+
+    @Before
+    public void setUp() throws RemoteException {
+        mService = mock(IUsageStatsManager.class);
+        // Serves pages the way the system does, from the events of the range.
+        when(mService.queryEventsPage(anyLong(), anyLong(), anyInt(), anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    final long beginTime = invocation.getArgument(0);
+                    final long endTime = invocation.getArgument(1);
+                    int skip = invocation.getArgument(2);
+                    final int maxEvents = invocation.getArgument(3);
+                    mPagesServed++;
+                    final List<UsageEvents.Event> page = new ArrayList<>();
+                    for (UsageEvents.Event event : mEvents) {
+                        if (event.mTimeStamp < beginTime || event.mTimeStamp >= endTime) {
+                            continue;
+                        }
+                        if (skip > 0) {
+                            skip--;
+                            continue;
+                        }
+                        if (page.size() == maxEvents) {
+                            break;
+                        }
+                        page.add(event);
+                    }
+                    return page.isEmpty() ? null : new UsageEvents(page, new String[0]);
+                });
+    }
+
+    private void addEvents(long timeStamp, int count) {
+        for (int i = 0; i < count; i++) {
+            final UsageEvents.Event event = new UsageEvents.Event();
+            event.mTimeStamp = timeStamp;
+            event.mInstanceId = mEvents.size();
+            mEvents.add(event);
+        }
+    }
+
+    private void assertCursorReads(long beginTime, long endTime, int pageSize, int firstId,
+            int count) {
+        final UsageEventsCursor cursor = new UsageEventsCursor(mService, "pkg", beginTime,
+                endTime, pageSize);
+        final UsageEvents.Event event = new UsageEvents.Event();
+        for (int i = 0; i < count; i++) {
+            assertTrue(cursor.getNextEvent(event));
+            assertEquals(firstId + i, event.mInstanceId);
+        }
+        assertFalse(cursor.hasNextEvent());
+        assertFalse(cursor.getNextEvent(event));
+    }
+
+    @Test
+    public void testPagesSplitAtEventsWithTheSameTime() {
+        addEvents(10, 1);
+        addEvents(20, 5);
+        addEvents(30, 2);
+        addEvents(40, 4);
+
+        for (int pageSize = 1; pageSize <= mEvents.size() + 1; pageSize++) {
+            assertCursorReads(0, 100, pageSize, 0, mEvents.size());
+        }
+    }
+
+    @Test
+    public void testRange() {
+        addEvents(10, 3);
+        addEvents(20, 3);
+        addEvents(30, 3);
+
+        assertCursorReads(20, 30, 2, 3, 3);
+        assertCursorReads(35, 100, 2, 0, 0);
+    }
+
+    @Test
+    public void testNoFetchAfterPartialPage() {
+        addEvents(10, 5);
+
+        assertCursorReads(0, 100, 3, 0, 5);
+        assertEquals(2, mPagesServed);
+    }
+}
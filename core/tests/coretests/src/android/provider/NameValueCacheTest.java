@@ -45,6 +45,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -325,6 +326,43 @@ public class NameValueCacheTest {
         assertThat(cachedKeyValues).isEmpty();
     }
 
+    @Test
+    public void testCaching_someFlagsFromNamespace() throws Exception {
+        HashMap<String, String> keyValues = new HashMap<>();
+        keyValues.put("a", "b");
+        keyValues.put("c", "d");
+        Settings.Config.setStrings(mMockContentResolver, NAMESPACE, keyValues);
+        verify(mMockIContentProvider, times(1)).call(any(), any(),
+                eq(Settings.CALL_METHOD_SET_ALL_CONFIG), any(), any(Bundle.class));
+
+        // The first read of some flags fetches the whole namespace.
+        Map<String, String> returnedValues = Settings.Config.getStrings(mMockContentResolver,
+                NAMESPACE, Collections.singletonList("a"));
+        verify(mMockIContentProvider, times(1)).call(any(), any(),
+                eq(Settings.CALL_METHOD_LIST_CONFIG), any(), any(Bundle.class));
+        assertThat(returnedValues).containsExactly("a", "b");
+
+        // Other flags of the namespace, set or not, are served from the cache.
+        Map<String, String> cachedKeyValues = Settings.Config.getStrings(mMockContentResolver,
+                NAMESPACE, Arrays.asList("c", "e"));
+        verifyNoMoreInteractions(mMockIContentProvider);
+        assertThat(cachedKeyValues).containsExactly("c", "d");
+
+        // Modify the namespace to invalidate the cache.
+        keyValues.put("c", "f");
+        Settings.Config.setStrings(mMockContentResolver, NAMESPACE, keyValues);
+        verify(mMockIContentProvider, times(2)).call(any(), any(),
+                eq(Settings.CALL_METHOD_SET_ALL_CONFIG), any(), any(Bundle.class));
+
+        Map<String, String> returnedValues2 = Settings.Config.getStrings(mMockContentResolver,
+                NAMESPACE, Collections.singletonList("c"));
+        verify(mMockIContentProvider, times(2)).call(any(), any(),
+                eq(Settings.CALL_METHOD_LIST_CONFIG), any(), any(Bundle.class));
+        assertThat(returnedValues2).containsExactly("c", "f");
+        verify(mMockIContentProvider, times(0)).call(any(), any(),
+                eq(Settings.CALL_METHOD_GET_CONFIG), any(), any(Bundle.class));
+    }
+
     @Test
     public void testCaching_singleSetting() throws Exception {
         Settings.Secure.putString(mMockContentResolver, SETTING, "a");
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class KernelCpuUidTimesTableTest {
+    private KernelCpuUidTimesTable mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new KernelCpuUidTimesTable();
+        mTable.setWidth(3);
+    }
+
+    @Test
+    public void testRowsKeepTheirTimesWhenOthersAreAdded() {
+        // Out of order, to insert rows before and in between existing ones.
+        final int[] uids = {10050, 10010, 10030, 10020, 10060, 10040};
+        for (int uid : uids) {
+            setRow(uid, uid, uid + 1, uid + 2);
+        }
+
+        assertEquals(uids.length, mTable.size());
+        for (int i = 0; i < mTable.size(); i++) {
+            assertEquals(10010 + i * 10, mTable.uidAt(i));
+        }
+        for (int uid : uids) {
+            assertRow(uid, uid, uid + 1, uid + 2);
+        }
+    }
+
+    @Test
+    public void testNewRowIsZeroed() {
+        setRow(10010, 1, 2, 3);
+        setRow(10030, 4, 5, 6);
+        mTable.removeUidsInRange(10030, 10030);
+
+        // Reuses the slot freed by the removed row.
+        assertRow(10020, 0, 0, 0);
+        assertRow(10040, 0, 0, 0);
+    }
+
+    @Test
+    public void testLookupsInOrderDontReallocate() {
+        for (int uid = 10000; uid < 10100; uid++) {
+            setRow(uid, uid, 0, 0);
+        }
+        final long[] times = mTable.getTimes();
+        for (int uid = 10000; uid < 10100; uid++) {
+            mTable.getOrAddRow(uid);
+        }
+        assertSame(times, mTable.getTimes());
+    }
+
+    @Test
+    public void testRemoveUidsInRange() {
+        for (int uid = 10000; uid < 10010; uid++) {
+            setRow(uid, uid, 0, 0);
+        }
+        // Bounds that aren't in the table.
+        mTable.removeUidsInRange(9000, 10001);
+        mTable.removeUidsInRange(10004, 10005);
+        mTable.removeUidsInRange(10008, 20000);
+        // An invalid range.
+        mTable.removeUidsInRange(10007, 10006);
+
+        assertEquals(4, mTable.size());
+        assertEquals(10002, mTable.uidAt(0));
+        assertEquals(10003, mTable.uidAt(1));
+        assertEquals(10006, mTable.uidAt(2));
+        assertEquals(10007, mTable.uidAt(3));
+        assertRow(10006, 10006, 0, 0);
+    }
+
+    @Test
+    public void testSetWidthClearsTable() {
+        setRow(10010, 1, 2, 3);
+        mTable.setWidth(3);
+        assertEquals(1, mTable.size());
+
+        mTable.setWidth(2);
+        assertEquals(0, mTable.size());
+        assertEquals(0, mTable.getOrAddRow(10010));
+    }
+
+    private void setRow(int uid, long... times) {
+        final int row = mTable.getOrAddRow(uid);
+        System.arraycopy(times, 0, mTable.getTimes(), row, times.length);
+    }
+
+    private void assertRow(int uid, long... expected) {
+        final int row = mTable.getOrAddRow(uid);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], mTable.getTimes()[row + i]);
+        }
+    }
+}
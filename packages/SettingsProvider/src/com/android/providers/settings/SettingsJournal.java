@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.providers.settings;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.FileUtils;
+import android.util.Slog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary journal of the settings mutations made since the last full XML
+ * snapshot written by {@link SettingsState}.
+ * <p>
+ * The journal is tied to a snapshot by a generation number that is stored both in the journal
+ * header and in the snapshot. A journal whose generation does not match the snapshot it is
+ * loaded with is ignored, so a crash between writing a new snapshot and resetting the journal
+ * never replays stale records. Every record carries its own length and CRC, and replay stops at
+ * the first record that is truncated or corrupted, which is what a crash in the middle of an
+ * append leaves behind.
+ * </p>
+ * <pre>
+ * header: int magic, int version, long generation
+ * record: int payloadLength, int payloadCrc, byte[payloadLength] payload
+ * </pre>
+ * This class is not thread safe; {@link SettingsState} only uses it with its write lock held.
+ */
+final class SettingsJournal {
+    private static final String LOG_TAG = "SettingsJournal";
+
+    static final String JOURNAL_FILE_SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x53534a4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte OP_VERSION = 1;
+    private static final byte OP_PUT = 2;
+    private static final byte OP_DELETE = 3;
+
+    /** Receives the records of the journal while it is replayed. */
+    interface Replayer {
+        void onVersion(int version);
+
+        void onPut(String name, String value, String defaultValue, String packageName,
+                String tag, boolean defaultFromSystem, String id,
+                boolean isValuePreservedInRestore);
+
+        void onDelete(String name);
+    }
+
+    /** A batch of records, appended to the journal at once. */
+    static final class Batch {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream mPayloadBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mPayload = new DataOutputStream(mPayloadBytes);
+        private final CRC32 mCrc = new CRC32();
+        private int mCount;
+
+        void writeVersion(int version) throws IOException {
+            mPayload.writeByte(OP_VERSION);
+            mPayload.writeInt(version);
+            finishRecord();
+        }
+
+        void writePut(String name, String value, String defaultValue, String packageName,
+                String tag, boolean defaultFromSystem, String id,
+                boolean isValuePreservedInRestore) throws IOException {
+            mPayload.writeByte(OP_PUT);
+            writeString(mPayload, name);
+            writeString(mPayload, value);
+            writeString(mPayload, defaultValue);
+            writeString(mPayload, packageName);
+            writeString(mPayload, tag);
+            mPayload.writeBoolean(defaultFromSystem);
+            writeString(mPayload, id);
+            mPayload.writeBoolean(isValuePreservedInRestore);
+            finishRecord();
+        }
+
+        void writeDelete(String name) throws IOException {
+            mPayload.writeByte(OP_DELETE);
+            writeString(mPayload, name);
+            finishRecord();
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        private void finishRecord() throws IOException {
+            mPayload.flush();
+            final byte[] payload = mPayloadBytes.toByteArray();
+            mPayloadBytes.reset();
+            mCrc.reset();
+            mCrc.update(payload);
+            final DataOutputStream out = new DataOutputStream(mBytes);
+            out.writeInt(payload.length);
+            out.writeInt((int) mCrc.getValue());
+            out.write(payload);
+            out.flush();
+            mCount++;
+        }
+    }
+
+    @NonNull
+    private final File mFile;
+
+    /** The generation of the journal on disk, or -1 if there is no usable journal. */
+    private long mGeneration = -1;
+
+    private long mLength;
+
+    SettingsJournal(@NonNull File settingsFile) {
+        mFile = new File(settingsFile.getAbsolutePath() + JOURNAL_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns whether records can be appended, that is whether the journal on disk follows the
+     * snapshot it was last {@link #replay replayed} or {@link #reset} with.
+     */
+    boolean isUsable() {
+        return mGeneration >= 0;
+    }
+
+    long getLength() {
+        return mLength;
+    }
+
+    /**
+     * Replays the journal if it belongs to the snapshot of {@code generation}. A truncated or
+     * corrupted tail is discarded.
+     *
+     * @return whether the journal can be appended to
+     */
+    boolean replay(long generation, @NonNull Replayer replayer) {
+        mGeneration = -1;
+        mLength = 0;
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(mFile.toPath());
+        } catch (IOException e) {
+            if (mFile.exists()) {
+                Slog.w(LOG_TAG, "Failed to read settings journal " + mFile, e);
+            }
+            return false;
+        }
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int validLength = 0;
+        try {
+            if (bytes.length < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != generation) {
+                Slog.i(LOG_TAG, "Ignoring settings journal " + mFile + " of another snapshot");
+                return false;
+            }
+            validLength = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (validLength + RECORD_HEADER_SIZE <= bytes.length) {
+                final int payloadLength = in.readInt();
+                final int payloadCrc = in.readInt();
+                if (payloadLength <= 0
+                        || payloadLength > bytes.length - validLength - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes, validLength + RECORD_HEADER_SIZE, payloadLength);
+                if ((int) crc.getValue() != payloadCrc) {
+                    break;
+                }
+                replayRecord(new DataInputStream(new ByteArrayInputStream(bytes,
+                        validLength + RECORD_HEADER_SIZE, payloadLength)), replayer);
+                in.skipBytes(payloadLength);
+                validLength += RECORD_HEADER_SIZE + payloadLength;
+            }
+        } catch (IOException e) {
+            // A record that passed its CRC but cannot be decoded. Keep what was replayed so far.
+            Slog.w(LOG_TAG, "Malformed settings journal " + mFile, e);
+        }
+
+        if (validLength < HEADER_SIZE) {
+            return false;
+        }
+        if (validLength < bytes.length) {
+            Slog.w(LOG_TAG, "Discarding " + (bytes.length - validLength)
+                    + " bytes at the end of settings journal " + mFile);
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(validLength);
+                file.getFD().sync();
+            } catch (IOException e) {
+                Slog.w(LOG_TAG, "Failed to truncate settings journal " + mFile, e);
+                return false;
+            }
+        }
+        mGeneration = generation;
+        mLength = validLength;
+        return true;
+    }
+
+    private static void replayRecord(@NonNull DataInputStream in, @NonNull Replayer replayer)
+            throws IOException {
+        final byte op = in.readByte();
+        switch (op) {
+            case OP_VERSION:
+                replayer.onVersion(in.readInt());
+                break;
+            case OP_PUT:
+                replayer.onPut(readString(in), readString(in), readString(in), readString(in),
+                        readString(in), in.readBoolean(), readString(in), in.readBoolean());
+                break;
+            case OP_DELETE:
+                replayer.onDelete(readString(in));
+                break;
+            default:
+                throw new IOException("Unknown settings journal op " + op);
+        }
+    }
+
+    /**
+     * Empties the journal and ties it to the snapshot of {@code generation}.
+     */
+    void reset(long generation) throws IOException {
+        mGeneration = -1;
+        mLength = 0;
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(generation);
+            data.flush();
+            FileUtils.sync(out);
+        }
+        mGeneration = generation;
+        mLength = HEADER_SIZE;
+    }
+
+    /**
+     * Appends {@code batch} to the journal and waits for it to reach the disk. On failure the
+     * journal is no longer {@link #isUsable() usable} until the next {@link #reset}.
+     */
+    void append(@NonNull Batch batch) throws IOException {
+        if (!isUsable()) {
+            throw new IllegalStateException("Appending to unusable settings journal " + mFile);
+        }
+        boolean appended = false;
+        try (FileOutputStream out = new FileOutputStream(mFile, /* append */ true)) {
+            batch.mBytes.writeTo(out);
+            out.flush();
+            FileUtils.sync(out);
+            appended = true;
+        } finally {
+            if (appended) {
+                mLength += batch.mBytes.size();
+            } else {
+                mGeneration = -1;
+            }
+        }
+    }
+
+    // Strings are written as UTF-16 code units, so that values with unpaired surrogates, which
+    // settings allow, round trip exactly.
+    private static void writeString(@NonNull DataOutputStream out, @Nullable String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > SettingsState.MAX_LENGTH_PER_STRING) {
+            throw new IOException("String too long in settings journal: " + length);
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
@@ -78,6 +78,12 @@ import java.util.Set;
  * for saving the state asynchronously to an XML file after a mutation and
  * loading the from an XML file on construction.
  * <p>
+ * Most writes only append the settings that changed to a {@link SettingsJournal}
+ * next to the XML file, which is replayed on load. The full XML snapshot is
+ * rewritten, and the journal emptied, once the journal has grown too large, or
+ * when a change cannot be expressed in the journal.
+ * </p>
+ * <p>
  * This class uses the same lock as the settings provider to ensure that
  * multiple changes made by the settings provider, e,g, upgrade, bulk insert,
  * etc, are atomically persisted since the asynchronous persistence is using
@@ -98,6 +104,10 @@ final class SettingsState {
     private static final long WRITE_SETTINGS_DELAY_MILLIS = 200;
     private static final long MAX_WRITE_SETTINGS_DELAY_MILLIS = 2000;
 
+    // The journal is compacted into a new snapshot once it is larger than this, or larger
+    // than the snapshot itself, so replaying it on load stays cheap.
+    private static final long MAX_JOURNAL_LENGTH_BYTES = 256 * 1024;
+
     public static final int MAX_BYTES_PER_APP_PACKAGE_UNLIMITED = -1;
     public static final int MAX_BYTES_PER_APP_PACKAGE_LIMITED = 40000;
 
@@ -113,6 +123,7 @@ final class SettingsState {
     private static final String ATTR_TAG_BASE64 = "tagBase64";
 
     private static final String ATTR_VERSION = "version";
+    private static final String ATTR_JOURNAL_GENERATION = "journalGeneration";
     private static final String ATTR_ID = "id";
     private static final String ATTR_NAME = "name";
 
@@ -209,6 +220,22 @@ final class SettingsState {
     @GuardedBy("mLock")
     private long mNextId;
 
+    // The names of the settings changed since the last write, which the next write appends
+    // to the journal unless it writes a full snapshot.
+    @GuardedBy("mLock")
+    private final ArraySet<String> mChangedSettingNames = new ArraySet<>();
+
+    // Whether the next write has to be a full snapshot.
+    @GuardedBy("mLock")
+    private boolean mSnapshotRequired = true;
+
+    @GuardedBy("mWriteLock")
+    private final SettingsJournal mJournal;
+
+    // The generation of the snapshot on disk, which the journal must match.
+    @GuardedBy("mWriteLock")
+    private long mSnapshotGeneration;
+
     @GuardedBy("mLock")
     private int mNextHistoricalOpIdx;
 
@@ -292,6 +319,7 @@ final class SettingsState {
         mStatePersistTag = "settings-" + getTypeFromKey(key) + "-" + getUserIdFromKey(key);
         mKey = key;
         mHandler = new MyHandler(looper);
+        mJournal = new SettingsJournal(file);
         if (maxBytesPerAppPackage == MAX_BYTES_PER_APP_PACKAGE_LIMITED) {
             mMaxBytesPerAppPackage = maxBytesPerAppPackage;
             mPackageToMemoryUsage = new ArrayMap<>();
@@ -345,6 +373,7 @@ final class SettingsState {
             Setting setting = mSettings.valueAt(i);
             if (packageName.equals(setting.packageName)) {
                 mSettings.removeAt(i);
+                mChangedSettingNames.add(name);
                 removedSomething = true;
             }
         }
@@ -402,6 +431,7 @@ final class SettingsState {
                     oldValue, newSetting.getValue(), oldDefaultValue, newSetting.getDefaultValue());
             checkNewMemoryUsagePerPackageLocked(newSetting.getPackageName(), newSize);
             mSettings.put(name, newSetting);
+            mChangedSettingNames.add(name);
             updateMemoryUsagePerPackageLocked(newSetting.getPackageName(), newSize);
             scheduleWriteIfNeededLocked();
         }
@@ -476,6 +506,7 @@ final class SettingsState {
 
         updateMemoryUsagePerPackageLocked(packageName, newSize);
 
+        mChangedSettingNames.add(name);
         scheduleWriteIfNeededLocked();
 
         return true;
@@ -501,6 +532,8 @@ final class SettingsState {
         // to unban all unbanned namespaces.
         if (mNamespaceBannedHashes.get(prefix) != null) {
             mNamespaceBannedHashes.clear();
+            // Banned hashes are only kept in the snapshot.
+            mSnapshotRequired = true;
             scheduleWriteIfNeededLocked();
         }
     }
@@ -513,6 +546,7 @@ final class SettingsState {
         // The write is intentionally not scheduled here, banned hashes should and will be written
         // when the related setting changes are written
         mNamespaceBannedHashes.put(prefix, hashCode(keyValues));
+        mSnapshotRequired = true;
     }
 
     @GuardedBy("mLock")
@@ -575,6 +609,7 @@ final class SettingsState {
         }
 
         if (!changedKeys.isEmpty()) {
+            mChangedSettingNames.addAll(changedKeys);
             scheduleWriteIfNeededLocked();
         }
 
@@ -583,6 +618,15 @@ final class SettingsState {
 
     // The settings provider must hold its lock when calling here.
     public void persistSyncLocked() {
+        mHandler.removeMessages(MyHandler.MSG_PERSIST_SETTINGS);
+        mSnapshotRequired = true;
+        doWriteState();
+    }
+
+    // Like persistSyncLocked(), but only appends the pending changes to the journal when it can.
+    @VisibleForTesting
+    @GuardedBy("mLock")
+    void persistChangesSyncLocked() {
         mHandler.removeMessages(MyHandler.MSG_PERSIST_SETTINGS);
         doWriteState();
     }
@@ -610,6 +654,7 @@ final class SettingsState {
 
         addHistoricalOperationLocked(HISTORICAL_OPERATION_DELETE, oldState);
 
+        mChangedSettingNames.add(name);
         scheduleWriteIfNeededLocked();
 
         return true;
@@ -643,6 +688,7 @@ final class SettingsState {
 
         addHistoricalOperationLocked(HISTORICAL_OPERATION_RESET, oldSetting);
 
+        mChangedSettingNames.add(name);
         scheduleWriteIfNeededLocked();
 
         return true;
@@ -849,20 +895,57 @@ final class SettingsState {
         final int version;
         final ArrayMap<String, Setting> settings;
         final ArrayMap<String, String> namespaceBannedHashes;
+        final ArrayMap<String, Setting> changedSettings;
 
         synchronized (mLock) {
             version = mVersion;
-            settings = new ArrayMap<>(mSettings);
-            namespaceBannedHashes = new ArrayMap<>(mNamespaceBannedHashes);
+            if (mSnapshotRequired) {
+                settings = new ArrayMap<>(mSettings);
+                namespaceBannedHashes = new ArrayMap<>(mNamespaceBannedHashes);
+                changedSettings = null;
+            } else {
+                settings = null;
+                namespaceBannedHashes = null;
+                final int changedCount = mChangedSettingNames.size();
+                changedSettings = new ArrayMap<>(changedCount);
+                for (int i = 0; i < changedCount; i++) {
+                    final String name = mChangedSettingNames.valueAt(i);
+                    final Setting setting = mSettings.get(name);
+                    // Copy the setting, as it is updated in place
+                    changedSettings.put(name, setting != null ? new Setting(setting) : null);
+                }
+            }
+            mChangedSettingNames.clear();
+            mSnapshotRequired = false;
             mDirty = false;
             mWriteScheduled = false;
         }
 
+        if (changedSettings != null) {
+            if (writeJournal(version, changedSettings)) {
+                synchronized (mLock) {
+                    if (isJournalFull()) {
+                        // Compact on the next write, rather than delaying this one.
+                        mSnapshotRequired = true;
+                    }
+                    addHistoricalOperationLocked(HISTORICAL_OPERATION_PERSIST, null);
+                }
+            } else {
+                // Fall back to a full snapshot, which also captures these changes.
+                synchronized (mLock) {
+                    mSnapshotRequired = true;
+                    scheduleWriteIfNeededLocked();
+                }
+            }
+            return;
+        }
+
         synchronized (mWriteLock) {
             if (DEBUG_PERSISTENCE) {
                 Slog.i(LOG_TAG, "[PERSIST START]");
             }
 
+            final long generation = mSnapshotGeneration + 1;
             AtomicFile destination = new AtomicFile(mStatePersistFile, mStatePersistTag);
             FileOutputStream out = null;
             try {
@@ -872,6 +955,7 @@ final class SettingsState {
                 serializer.startDocument(null, true);
                 serializer.startTag(null, TAG_SETTINGS);
                 serializer.attributeInt(null, ATTR_VERSION, version);
+                serializer.attributeLong(null, ATTR_JOURNAL_GENERATION, generation);
 
                 final int settingCount = settings.size();
                 for (int i = 0; i < settingCount; i++) {
@@ -924,6 +1008,8 @@ final class SettingsState {
                 destination.finishWrite(out);
 
                 wroteState = true;
+                mSnapshotGeneration = generation;
+                resetJournal(generation);
 
                 if (DEBUG_PERSISTENCE) {
                     Slog.i(LOG_TAG, "[PERSIST END]");
@@ -958,6 +1044,10 @@ final class SettingsState {
         }
 
         if (!wroteState) {
+            synchronized (mLock) {
+                // The changes this write was meant to persist are only in memory now.
+                mSnapshotRequired = true;
+            }
             if (settingFailedToBePersisted != null) {
                 synchronized (mLock) {
                     // Delete the problematic setting. This will schedule a write as well.
@@ -972,6 +1062,68 @@ final class SettingsState {
         }
     }
 
+    /**
+     * Appends the given changed settings to the journal, a null setting being a deletion.
+     *
+     * @return whether the changes reached the disk
+     */
+    private boolean writeJournal(int version, ArrayMap<String, Setting> changedSettings) {
+        synchronized (mWriteLock) {
+            if (!mJournal.isUsable()) {
+                return false;
+            }
+            try {
+                final SettingsJournal.Batch batch = new SettingsJournal.Batch();
+                batch.writeVersion(version);
+                final int changedCount = changedSettings.size();
+                for (int i = 0; i < changedCount; i++) {
+                    final Setting setting = changedSettings.valueAt(i);
+                    // Mirror the snapshot, which drops transient and unserializable settings.
+                    if (setting == null || setting.isTransient() || !isPersistable(setting)) {
+                        batch.writeDelete(changedSettings.keyAt(i));
+                    } else {
+                        batch.writePut(setting.getName(), setting.getValue(),
+                                setting.getDefaultValue(), setting.getPackageName(),
+                                setting.getTag(), setting.isDefaultFromSystem(), setting.getId(),
+                                setting.isValuePreservedInRestore());
+                    }
+                }
+                mJournal.append(batch);
+                if (DEBUG_PERSISTENCE) {
+                    Slog.i(LOG_TAG, "[JOURNALED] " + batch.getCount() + " records");
+                }
+            } catch (IOException e) {
+                Slog.e(LOG_TAG, "Failed to append to settings journal", e);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private boolean isJournalFull() {
+        synchronized (mWriteLock) {
+            return mJournal.getLength() > MAX_JOURNAL_LENGTH_BYTES
+                    || mJournal.getLength() > mStatePersistFile.length();
+        }
+    }
+
+    @GuardedBy("mWriteLock")
+    private void resetJournal(long generation) {
+        try {
+            mJournal.reset(generation);
+        } catch (IOException e) {
+            // The snapshot is written, only the next write has to be a snapshot as well.
+            Slog.e(LOG_TAG, "Failed to reset settings journal", e);
+        }
+    }
+
+    // Whether writeSingleSetting() would persist the setting.
+    private static boolean isPersistable(Setting setting) {
+        return setting.getId() != null && !isBinary(setting.getId())
+                && setting.getName() != null && !isBinary(setting.getName())
+                && setting.getPackageName() != null && !isBinary(setting.getPackageName());
+    }
+
     private static void logSettingsDirectoryInformation(File settingsFile) {
         File parent = settingsFile.getParentFile();
         Slog.i(LOG_TAG, "directory info for directory/file " + settingsFile
@@ -1196,6 +1348,7 @@ final class SettingsState {
             throws IOException, XmlPullParserException {
 
         mVersion = parser.getAttributeInt(null, ATTR_VERSION);
+        final long generation = parser.getAttributeLong(null, ATTR_JOURNAL_GENERATION, 0);
 
         final SettingsParserState state = new SettingsParserState(getTypeFromKey(mKey));
 
@@ -1235,9 +1388,46 @@ final class SettingsState {
             }
         }
 
+        replayJournalLocked(generation, state);
+
         state.onFinish();
     }
 
+    @GuardedBy("mLock")
+    private void replayJournalLocked(long generation, SettingsParserState state) {
+        final SettingsJournal.Replayer replayer = new SettingsJournal.Replayer() {
+            @Override
+            public void onVersion(int version) {
+                mVersion = version;
+            }
+
+            @Override
+            public void onPut(String name, String value, String defaultValue,
+                    String packageName, String tag, boolean defaultFromSystem, String id,
+                    boolean isValuePreservedInRestore) {
+                if (!state.onSettingRead(name, value)) {
+                    return;
+                }
+                mSettings.put(name, new Setting(name, value, defaultValue, packageName, tag,
+                        defaultFromSystem, id, isValuePreservedInRestore));
+                if (DEBUG_PERSISTENCE) {
+                    Slog.i(LOG_TAG, "[REPLAYED] " + name + "=" + value);
+                }
+            }
+
+            @Override
+            public void onDelete(String name) {
+                mSettings.remove(name);
+            }
+        };
+        final boolean usable;
+        synchronized (mWriteLock) {
+            mSnapshotGeneration = generation;
+            usable = mJournal.replay(generation, replayer);
+        }
+        mSnapshotRequired = !usable;
+    }
+
     @GuardedBy("mLock")
     private void parseNamespaceHash(TypedXmlPullParser parser)
             throws IOException, XmlPullParserException {
@@ -27,6 +27,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
 
 public class SettingsStateTest extends AndroidTestCase {
     public static final String CRAZY_STRING =
@@ -54,11 +57,15 @@ public class SettingsStateTest extends AndroidTestCase {
     private final Object mLock = new Object();
 
     private File mSettingsFile;
+    private File mJournalFile;
 
     @Override
     protected void setUp() {
         mSettingsFile = new File(getContext().getCacheDir(), "setting.xml");
         mSettingsFile.delete();
+        mJournalFile = new File(mSettingsFile.getAbsolutePath()
+                + SettingsJournal.JOURNAL_FILE_SUFFIX);
+        mJournalFile.delete();
     }
 
     public void testIsBinary() {
@@ -195,6 +202,122 @@ public class SettingsStateTest extends AndroidTestCase {
         }
     }
 
+    public void testJournal_changesSurviveReload() throws Exception {
+        synchronized (mLock) {
+            SettingsState settingsWriter = getSettingStateObject();
+            settingsWriter.insertSettingLocked("k1", "v1", null, false, TEST_PACKAGE);
+            settingsWriter.insertSettingLocked("k2", "v2", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+            final byte[] snapshot = Files.readAllBytes(mSettingsFile.toPath());
+
+            settingsWriter.insertSettingLocked("k1", "v1b", null, false, TEST_PACKAGE);
+            settingsWriter.deleteSettingLocked("k2");
+            settingsWriter.insertSettingLocked("k3", CRAZY_STRING, null, false, TEST_PACKAGE);
+            settingsWriter.persistChangesSyncLocked();
+
+            // The changes went to the journal only.
+            assertTrue(Arrays.equals(snapshot, Files.readAllBytes(mSettingsFile.toPath())));
+            assertTrue(mJournalFile.length() > 0);
+
+            SettingsState settingsReader = getSettingStateObject();
+            assertEquals("v1b", settingsReader.getSettingLocked("k1").getValue());
+            assertTrue(settingsReader.getSettingLocked("k2").isNull());
+            assertEquals(CRAZY_STRING, settingsReader.getSettingLocked("k3").getValue());
+            assertTrue(settingsReader.getSettingLocked("k1").isValuePreservedInRestore());
+        }
+    }
+
+    public void testJournal_tornAppendIsDiscarded() throws Exception {
+        synchronized (mLock) {
+            SettingsState settingsWriter = getSettingStateObject();
+            settingsWriter.insertSettingLocked("k1", "v1", null, false, TEST_PACKAGE);
+            settingsWriter.insertSettingLocked("k2", "v2", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+
+            settingsWriter.insertSettingLocked("k1", "v1b", null, false, TEST_PACKAGE);
+            settingsWriter.persistChangesSyncLocked();
+            settingsWriter.insertSettingLocked("k2", "v2b", null, false, TEST_PACKAGE);
+            settingsWriter.persistChangesSyncLocked();
+
+            // Simulate a crash in the middle of the second append.
+            try (RandomAccessFile journal = new RandomAccessFile(mJournalFile, "rw")) {
+                journal.setLength(journal.length() - 3);
+            }
+
+            SettingsState settingsReader = getSettingStateObject();
+            assertEquals("v1b", settingsReader.getSettingLocked("k1").getValue());
+            assertEquals("v2", settingsReader.getSettingLocked("k2").getValue());
+
+            // The journal can be appended to again after the torn record was discarded.
+            settingsReader.insertSettingLocked("k2", "v2c", null, false, TEST_PACKAGE);
+            settingsReader.persistChangesSyncLocked();
+            assertEquals("v2c", getSettingStateObject().getSettingLocked("k2").getValue());
+        }
+    }
+
+    public void testJournal_corruptedRecordIsDiscarded() throws Exception {
+        synchronized (mLock) {
+            SettingsState settingsWriter = getSettingStateObject();
+            settingsWriter.insertSettingLocked("k1", "v1", null, false, TEST_PACKAGE);
+            settingsWriter.insertSettingLocked("k2", "v2", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+
+            settingsWriter.insertSettingLocked("k1", "v1b", null, false, TEST_PACKAGE);
+            settingsWriter.persistChangesSyncLocked();
+
+            try (RandomAccessFile journal = new RandomAccessFile(mJournalFile, "rw")) {
+                journal.seek(journal.length() - 1);
+                final int last = journal.read();
+                journal.seek(journal.length() - 1);
+                journal.write(last ^ 0xff);
+            }
+
+            SettingsState settingsReader = getSettingStateObject();
+            assertEquals("v1", settingsReader.getSettingLocked("k1").getValue());
+            assertEquals("v2", settingsReader.getSettingLocked("k2").getValue());
+        }
+    }
+
+    public void testJournal_staleJournalIsIgnored() throws Exception {
+        synchronized (mLock) {
+            SettingsState settingsWriter = getSettingStateObject();
+            settingsWriter.insertSettingLocked("k1", "v1", null, false, TEST_PACKAGE);
+            settingsWriter.insertSettingLocked("k2", "v2", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+
+            settingsWriter.insertSettingLocked("k1", "v1b", null, false, TEST_PACKAGE);
+            settingsWriter.persistChangesSyncLocked();
+            final byte[] staleJournal = Files.readAllBytes(mJournalFile.toPath());
+
+            // A new snapshot, after which the device crashed before the journal was reset.
+            settingsWriter.insertSettingLocked("k1", "v1c", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+            Files.write(mJournalFile.toPath(), staleJournal);
+
+            SettingsState settingsReader = getSettingStateObject();
+            assertEquals("v1c", settingsReader.getSettingLocked("k1").getValue());
+            assertEquals("v2", settingsReader.getSettingLocked("k2").getValue());
+        }
+    }
+
+    public void testJournal_missingJournalFallsBackToSnapshot() throws Exception {
+        synchronized (mLock) {
+            SettingsState settingsWriter = getSettingStateObject();
+            settingsWriter.insertSettingLocked("k1", "v1", null, false, TEST_PACKAGE);
+            settingsWriter.insertSettingLocked("k2", "v2", null, false, TEST_PACKAGE);
+            settingsWriter.persistSyncLocked();
+            mJournalFile.delete();
+
+            SettingsState settingsReader = getSettingStateObject();
+            assertEquals("v1", settingsReader.getSettingLocked("k1").getValue());
+            // Without a journal to append to, the next write is a full snapshot.
+            settingsReader.insertSettingLocked("k1", "v1b", null, false, TEST_PACKAGE);
+            settingsReader.persistChangesSyncLocked();
+            mJournalFile.delete();
+            assertEquals("v1b", getSettingStateObject().getSettingLocked("k1").getValue());
+        }
+    }
+
     public void testInitializeSetting_preserveFlagNotSet() {
         SettingsState settingsWriter = getSettingStateObject();
         settingsWriter.insertSettingLocked(SETTING_NAME, "1", null, false, TEST_PACKAGE);
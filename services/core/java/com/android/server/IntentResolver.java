@@ -55,6 +55,23 @@ public abstract class IntentResolver<F, R extends Object> {
     final private static boolean localLOGV = DEBUG || false;
     final private static boolean localVerificationLOGV = DEBUG || false;
 
+    /**
+     * The candidate list must be fully matched against the intent.
+     */
+    private static final int PRE_MATCH_NONE = 0;
+
+    /**
+     * Every candidate is known to declare the intent's action and the intent carries no data,
+     * so candidates without data or extras constraints only need their categories matched.
+     */
+    private static final int PRE_MATCH_ACTION = 1;
+
+    /**
+     * Every candidate is known to declare the intent's action and scheme.  Candidates that
+     * have no further data or extras constraints only need their categories matched.
+     */
+    private static final int PRE_MATCH_ACTION_SCHEME = 2;
+
     public void addFilter(@Nullable PackageDataSnapshot snapshot, F f) {
         IntentFilter intentFilter = getIntentFilter(f);
         if (localLOGV) {
@@ -75,6 +92,9 @@ public abstract class IntentResolver<F, R extends Object> {
             register_intent_filter(f, intentFilter.actionsIterator(),
                     mTypedActionToFilter, "      TypedAction: ");
         }
+        if (numS != 0) {
+            register_scheme_actions(f, intentFilter, "      SchemeAction: ");
+        }
     }
 
     /**
@@ -186,6 +206,9 @@ public abstract class IntentResolver<F, R extends Object> {
             unregister_intent_filter(f, intentFilter.actionsIterator(),
                     mTypedActionToFilter, "      TypedAction: ");
         }
+        if (numS != 0) {
+            unregister_scheme_actions(f, intentFilter, "      SchemeAction: ");
+        }
     }
 
     boolean dumpMap(PrintWriter out, String titlePrefix, String title,
@@ -363,7 +386,7 @@ public abstract class IntentResolver<F, R extends Object> {
         int N = listCut.size();
         for (int i = 0; i < N; ++i) {
             buildResolveList(computer, intent, categories, debug, defaultOnly, resolvedType, scheme,
-                    listCut.get(i), resultList, userId, customFlags);
+                    listCut.get(i), PRE_MATCH_NONE, resultList, userId, customFlags);
         }
         filterResults(resultList);
         sortResults(resultList);
@@ -392,6 +415,8 @@ public abstract class IntentResolver<F, R extends Object> {
         F[] secondTypeCut = null;
         F[] thirdTypeCut = null;
         F[] schemeCut = null;
+        int firstTypePreMatch = PRE_MATCH_NONE;
+        int schemePreMatch = PRE_MATCH_NONE;
 
         // If the intent includes a MIME type, then we want to collect all of
         // the filters that match that MIME type.
@@ -435,7 +460,15 @@ public abstract class IntentResolver<F, R extends Object> {
         // the filters that match its scheme (we will further refine matches
         // on the authority and path by directly matching each resulting filter).
         if (scheme != null) {
-            schemeCut = mSchemeToFilter.get(scheme);
+            if (intent.getAction() != null) {
+                // Filters without the intent's action can never match, so narrow the
+                // scheme list down to the filters that declare both.
+                final ArrayMap<String, F[]> actionCut = mSchemeActionToFilter.get(scheme);
+                schemeCut = actionCut != null ? actionCut.get(intent.getAction()) : null;
+                schemePreMatch = PRE_MATCH_ACTION_SCHEME;
+            } else {
+                schemeCut = mSchemeToFilter.get(scheme);
+            }
             if (debug) Slog.v(TAG, "Scheme list: " + Arrays.toString(schemeCut));
         }
 
@@ -444,6 +477,9 @@ public abstract class IntentResolver<F, R extends Object> {
         // data.
         if (resolvedType == null && scheme == null && intent.getAction() != null) {
             firstTypeCut = mActionToFilter.get(intent.getAction());
+            if (intent.getData() == null) {
+                firstTypePreMatch = PRE_MATCH_ACTION;
+            }
             if (debug) Slog.v(TAG, "Action list: " + Arrays.toString(firstTypeCut));
         }
 
@@ -451,19 +487,19 @@ public abstract class IntentResolver<F, R extends Object> {
         Computer computer = (Computer) snapshot;
         if (firstTypeCut != null) {
             buildResolveList(computer, intent, categories, debug, defaultOnly, resolvedType,
-                    scheme, firstTypeCut, finalList, userId, customFlags);
+                    scheme, firstTypeCut, firstTypePreMatch, finalList, userId, customFlags);
         }
         if (secondTypeCut != null) {
             buildResolveList(computer, intent, categories, debug, defaultOnly, resolvedType,
-                    scheme, secondTypeCut, finalList, userId, customFlags);
+                    scheme, secondTypeCut, PRE_MATCH_NONE, finalList, userId, customFlags);
         }
         if (thirdTypeCut != null) {
             buildResolveList(computer, intent, categories, debug, defaultOnly, resolvedType,
-                    scheme, thirdTypeCut, finalList, userId, customFlags);
+                    scheme, thirdTypeCut, PRE_MATCH_NONE, finalList, userId, customFlags);
         }
         if (schemeCut != null) {
             buildResolveList(computer, intent, categories, debug, defaultOnly, resolvedType,
-                    scheme, schemeCut, finalList, userId, customFlags);
+                    scheme, schemeCut, schemePreMatch, finalList, userId, customFlags);
         }
         filterResults(finalList);
         sortResults(finalList);
@@ -665,6 +701,48 @@ public abstract class IntentResolver<F, R extends Object> {
         return num;
     }
 
+    private final void register_scheme_actions(F filter, IntentFilter intentFilter,
+            String prefix) {
+        final Iterator<String> schemes = intentFilter.schemesIterator();
+        if (schemes == null) {
+            return;
+        }
+
+        while (schemes.hasNext()) {
+            final String scheme = schemes.next();
+            ArrayMap<String, F[]> actions = mSchemeActionToFilter.get(scheme);
+            if (actions == null) {
+                actions = new ArrayMap<String, F[]>();
+            }
+            register_intent_filter(filter, intentFilter.actionsIterator(), actions,
+                    prefix + scheme + " ");
+            if (!actions.isEmpty()) {
+                mSchemeActionToFilter.put(scheme, actions);
+            }
+        }
+    }
+
+    private final void unregister_scheme_actions(F filter, IntentFilter intentFilter,
+            String prefix) {
+        final Iterator<String> schemes = intentFilter.schemesIterator();
+        if (schemes == null) {
+            return;
+        }
+
+        while (schemes.hasNext()) {
+            final String scheme = schemes.next();
+            final ArrayMap<String, F[]> actions = mSchemeActionToFilter.get(scheme);
+            if (actions == null) {
+                continue;
+            }
+            unregister_intent_filter(filter, intentFilter.actionsIterator(), actions,
+                    prefix + scheme + " ");
+            if (actions.isEmpty()) {
+                mSchemeActionToFilter.remove(scheme);
+            }
+        }
+    }
+
     private final void remove_all_objects(ArrayMap<String, F[]> map, String name,
             F object) {
         F[] array = map.get(name);
@@ -704,7 +782,7 @@ public abstract class IntentResolver<F, R extends Object> {
 
     private void buildResolveList(@NonNull Computer computer, Intent intent,
             FastImmutableArraySet<String> categories, boolean debug, boolean defaultOnly,
-            String resolvedType, String scheme, F[] src, List<R> dest, int userId,
+            String resolvedType, String scheme, F[] src, int preMatch, List<R> dest, int userId,
             long customFlags) {
         final String action = intent.getAction();
         final Uri data = intent.getData();
@@ -766,7 +844,22 @@ public abstract class IntentResolver<F, R extends Object> {
                 continue;
             }
 
-            match = intentFilter.match(action, resolvedType, scheme, data, categories, TAG);
+            if (preMatch == PRE_MATCH_ACTION && intentFilter.typesIterator() == null
+                    && intentFilter.schemesIterator() == null && !intentFilter.hasExtras()) {
+                match = intentFilter.matchCategories(categories) == null
+                        ? IntentFilter.MATCH_CATEGORY_EMPTY + IntentFilter.MATCH_ADJUSTMENT_NORMAL
+                        : IntentFilter.NO_MATCH_CATEGORY;
+            } else if (preMatch == PRE_MATCH_ACTION_SCHEME && resolvedType == null
+                    && intentFilter.typesIterator() == null
+                    && intentFilter.schemeSpecificPartsIterator() == null
+                    && intentFilter.authoritiesIterator() == null
+                    && !intentFilter.hasExtras()) {
+                match = intentFilter.matchCategories(categories) == null
+                        ? IntentFilter.MATCH_CATEGORY_SCHEME + IntentFilter.MATCH_ADJUSTMENT_NORMAL
+                        : IntentFilter.NO_MATCH_CATEGORY;
+            } else {
+                match = intentFilter.match(action, resolvedType, scheme, data, categories, TAG);
+            }
             if (match >= 0) {
                 if (debug) Slog.v(TAG, "  Filter matched!  match=0x" +
                         Integer.toHexString(match) + " hasDefault="
@@ -840,6 +933,18 @@ public abstract class IntentResolver<F, R extends Object> {
         }
     }
 
+    private void copyNestedInto(ArrayMap<String, ArrayMap<String, F[]>> l,
+            ArrayMap<String, ArrayMap<String, F[]>> r) {
+        final int end = r.size();
+        l.clear();
+        l.ensureCapacity(end);
+        for (int i = 0; i < end; i++) {
+            final ArrayMap<String, F[]> val = new ArrayMap<String, F[]>();
+            copyInto(val, r.valueAt(i));
+            l.put(r.keyAt(i), val);
+        }
+    }
+
     protected void copyInto(ArraySet<F> l, ArraySet<F> r) {
         l.clear();
         final int end = r.size();
@@ -859,6 +964,7 @@ public abstract class IntentResolver<F, R extends Object> {
         copyInto(mSchemeToFilter, orig.mSchemeToFilter);
         copyInto(mActionToFilter, orig.mActionToFilter);
         copyInto(mTypedActionToFilter, orig.mTypedActionToFilter);
+        copyNestedInto(mSchemeActionToFilter, orig.mSchemeActionToFilter);
     }
 
     /**
@@ -904,6 +1010,15 @@ public abstract class IntentResolver<F, R extends Object> {
      */
     private final ArrayMap<String, F[]> mTypedActionToFilter = new ArrayMap<String, F[]>();
 
+    /**
+     * All of the URI schemes that have been registered, each mapping to the actions declared
+     * alongside that scheme.  This is the intersection of {@link #mSchemeToFilter} with the
+     * filters' actions, so that resolving an intent with both an action and a scheme only
+     * visits filters that can match both.
+     */
+    private final ArrayMap<String, ArrayMap<String, F[]>> mSchemeActionToFilter =
+            new ArrayMap<String, ArrayMap<String, F[]>>();
+
     /**
      * Rather than refactoring the entire class, this allows the input {@link F} to be a type
      * other than {@link IntentFilter}, transforming it whenever necessary. It is valid to use
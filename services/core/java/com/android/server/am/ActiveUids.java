@@ -37,6 +37,12 @@ final class ActiveUids {
     @CompositeRWLock({"mService", "mProcLock"})
     private final SparseArray<UidRecord> mActiveUids = new SparseArray<>();
 
+    /**
+     * The state of the active uids as of the last {@link #publishSnapshotLSP}, readable without
+     * any lock.
+     */
+    private volatile UidStateSnapshot mSnapshot = UidStateSnapshot.EMPTY;
+
     ActiveUids(ActivityManagerService service, boolean postChangesToAtm) {
         mService = service;
         mProcLock = service != null ? service.mProcLock : null;
@@ -66,6 +72,21 @@ final class ActiveUids {
         // So there is no need to notify activity task manager.
     }
 
+    /**
+     * Publishes the current state of the active uids to lock-free readers of
+     * {@link #getSnapshot}. Called after the state has been committed, so readers never see the
+     * intermediate states of an oom adj update.
+     */
+    @GuardedBy({"mService", "mProcLock"})
+    void publishSnapshotLSP() {
+        mSnapshot = UidStateSnapshot.copyOf(this);
+    }
+
+    /** Returns the last published state of the active uids. Does not need any lock. */
+    UidStateSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     @GuardedBy(anyOf = {"mService", "mProcLock"})
     UidRecord get(int uid) {
         return mActiveUids.get(uid);
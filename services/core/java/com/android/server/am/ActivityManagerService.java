@@ -7613,12 +7613,10 @@ public class ActivityManagerService extends IActivityManager.Stub
                 UserHandle.getUserId(uid), false /* allowAll */, ALLOW_FULL_ONLY,
                 "getUidProcessState", callingPackage); // Ignore return value
 
-        synchronized (mProcLock) {
-            if (mPendingStartActivityUids.isPendingTopUid(uid)) {
-                return PROCESS_STATE_TOP;
-            }
-            return mProcessList.getUidProcStateLOSP(uid);
+        if (mPendingStartActivityUids.isPendingTopUid(uid)) {
+            return PROCESS_STATE_TOP;
         }
+        return mProcessList.getUidStateSnapshot().getProcState(uid);
     }
 
     @Override
@@ -7633,9 +7631,7 @@ public class ActivityManagerService extends IActivityManager.Stub
                 UserHandle.getUserId(uid), false /* allowAll */, ALLOW_FULL_ONLY,
                 "getUidProcessCapabilities", callingPackage); // Ignore return value
 
-        synchronized (mProcLock) {
-            return mProcessList.getUidProcessCapabilityLOSP(uid);
-        }
+        return mProcessList.getUidStateSnapshot().getCapability(uid);
     }
 
     @Override
@@ -7718,10 +7714,8 @@ public class ActivityManagerService extends IActivityManager.Stub
             enforceCallingPermission(android.Manifest.permission.PACKAGE_USAGE_STATS,
                     "isUidActive");
         }
-        synchronized (mProcLock) {
-            if (isUidActiveLOSP(uid)) {
-                return true;
-            }
+        if (mProcessList.getUidStateSnapshot().isActive(uid)) {
+            return true;
         }
         return mInternal.isPendingTopUid(uid);
     }
@@ -15362,6 +15356,11 @@ public class ActivityManagerService extends IActivityManager.Stub
         mCurBroadcastStats.addBroadcast(action, srcPackage, receiveCount, skipCount, dispatchTime);
     }
 
+    final void addBatchedBroadcastDeliveryStatLocked(int batchSize, long dispatchMicros) {
+        rotateBroadcastStatsIfNeededLocked();
+        mCurBroadcastStats.addBatchedDelivery(batchSize, dispatchMicros);
+    }
+
     final void addBackgroundCheckViolationLocked(String action, String targetPackage) {
         rotateBroadcastStatsIfNeededLocked();
         mCurBroadcastStats.addBackgroundCheckViolation(action, targetPackage);
@@ -16655,6 +16654,7 @@ public class ActivityManagerService extends IActivityManager.Stub
                                     synchronized (mProcLock) {
                                         uidRec.setIdle(true);
                                         uidRec.setSetIdle(true);
+                                        mProcessList.mActiveUids.publishSnapshotLSP();
                                     }
                                     Slog.w(TAG, "Idling uid " + UserHandle.formatUid(uid)
                                             + " from package " + packageName + " user " + userId);
@@ -17770,7 +17770,7 @@ public class ActivityManagerService extends IActivityManager.Stub
 
         @Override
         public int getUidProcessState(int uid) {
-            return getUidState(uid);
+            return mProcessList.getUidStateSnapshot().getProcState(uid);
         }
 
         @Override
@@ -17920,9 +17920,7 @@ public class ActivityManagerService extends IActivityManager.Stub
 
         @Override
         public boolean isUidActive(int uid) {
-            synchronized (mProcLock) {
-                return isUidActiveLOSP(uid);
-            }
+            return mProcessList.getUidStateSnapshot().isActive(uid);
         }
 
         @Override
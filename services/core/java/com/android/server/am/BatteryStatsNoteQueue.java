@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.am;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.os.WorkSource;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free queue of the most frequent battery stats notes (wakelocks, sensors and uid
+ * process states), appended by binder threads and drained in batches by the battery stats handler
+ * thread.
+ * <p>
+ * Each note is written into a pre-allocated slot of a ring, so appending one doesn't allocate, take
+ * a lock or post a message: a producer claims the next position with a CAS, stamps the note with
+ * the current time, fills in the slot and publishes it by bumping the slot's sequence number. The
+ * handler is only poked when there is no drain pending already.
+ * <p>
+ * The claimed position orders the notes: they are handed to the consumer in that order, and with
+ * times that never go back along it, even if a producer was preempted between claiming its
+ * position and reading the clock. The consumer can stop at the first note stamped after a given
+ * time, so that these notes can be applied in order with messages posted to the handler.
+ * <p>
+ * If the ring is full, appending fails and the producer has to deliver the note another way, as
+ * dropping a stop note would leave a timer running forever.
+ */
+final class BatteryStatsNoteQueue {
+    static final int NOTE_START_WAKELOCK = 0;
+    static final int NOTE_STOP_WAKELOCK = 1;
+    static final int NOTE_START_WAKELOCK_FROM_SOURCE = 2;
+    static final int NOTE_STOP_WAKELOCK_FROM_SOURCE = 3;
+    static final int NOTE_START_SENSOR = 4;
+    static final int NOTE_STOP_SENSOR = 5;
+    static final int NOTE_UID_PROCESS_STATE = 6;
+
+    /** A note waiting in the queue. Only valid while it is passed to the consumer. */
+    static final class Note {
+        int type;
+        int uid;
+        int pid;
+        /** The wakelock type, sensor or process state, depending on the note type. */
+        int arg;
+        boolean unimportantForLogging;
+        @Nullable String name;
+        @Nullable String historyName;
+        @Nullable WorkSource workSource;
+        long elapsedRealtime;
+        long uptime;
+
+        void set(int type, int uid, int pid, int arg, boolean unimportantForLogging,
+                @Nullable String name, @Nullable String historyName,
+                @Nullable WorkSource workSource, long elapsedRealtime, long uptime) {
+            this.type = type;
+            this.uid = uid;
+            this.pid = pid;
+            this.arg = arg;
+            this.unimportantForLogging = unimportantForLogging;
+            this.name = name;
+            this.historyName = historyName;
+            this.workSource = workSource;
+            this.elapsedRealtime = elapsedRealtime;
+            this.uptime = uptime;
+        }
+    }
+
+    private final Handler mHandler;
+    private final Note[] mNotes;
+    /**
+     * Sequence number of each slot: equal to the position a producer may claim when the slot is
+     * free, and to that position + 1 once the note written at that position is published.
+     */
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    /** The next position producers will claim. */
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private final Runnable mDrainRunnable = this::onDrainScheduled;
+
+    // Only accessed from the handler thread.
+    private long mHead;
+    private long mLastElapsedRealtime;
+    private long mLastUptime;
+
+    /**
+     * @param capacity the number of notes the queue can hold, must be a power of 2.
+     * @param handler the handler on whose thread the queue is drained. It has to call
+     *                {@link #drain} before dispatching each message, up to the time the message
+     *                was posted at.
+     */
+    BatteryStatsNoteQueue(int capacity, @NonNull Handler handler) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+        mHandler = handler;
+        mNotes = new Note[capacity];
+        mSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mNotes[i] = new Note();
+            mSequences.set(i, i);
+        }
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Appends a note, stamped with the current time. Can be called from any thread.
+     *
+     * @return whether the note was queued, {@code false} if the queue is full.
+     */
+    boolean append(int type, int uid, int pid, int arg, boolean unimportantForLogging,
+            @Nullable String name, @Nullable String historyName,
+            @Nullable WorkSource workSource) {
+        final long position = claim();
+        if (position < 0) {
+            scheduleDrain();
+            return false;
+        }
+        // Read the clock only once the position is claimed, so that notes claimed later are
+        // stamped later too, unless this thread gets preempted in between.
+        final long elapsedRealtime = SystemClock.elapsedRealtime();
+        final long uptime = SystemClock.uptimeMillis();
+        final int index = (int) (position & mMask);
+        mNotes[index].set(type, uid, pid, arg, unimportantForLogging, name, historyName,
+                workSource, elapsedRealtime, uptime);
+        mSequences.set(index, position + 1);
+        scheduleDrain();
+        return true;
+    }
+
+    /** Returns the claimed position, or -1 if the ring is full. */
+    private long claim() {
+        while (true) {
+            final long position = mTail.get();
+            final long sequence = mSequences.get((int) (position & mMask));
+            if (sequence == position) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (sequence < position) {
+                // The consumer hasn't freed this slot yet.
+                return -1;
+            }
+            // Otherwise another producer claimed this position first, try the next one.
+        }
+    }
+
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mHandler.post(mDrainRunnable);
+        }
+    }
+
+    private void onDrainScheduled() {
+        // The handler drained the notes stamped before this runnable was posted on its way here.
+        // Clear the flag first, so that notes published from now on schedule another drain, and
+        // schedule one for the notes published since the runnable was posted.
+        mDrainScheduled.set(false);
+        if (mSequences.get((int) (mHead & mMask)) == mHead + 1) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Passes up to {@code maxNotes} notes to the consumer, in order, and frees their slots. Stops
+     * at the first note stamped after {@code maxUptime}. Must be called on the handler thread.
+     *
+     * @return the number of notes drained. Less than {@code maxNotes} if the queue is empty, the
+     * next note isn't published yet or is stamped after {@code maxUptime}; a drain is scheduled
+     * for the remaining notes in any case.
+     */
+    int drain(@NonNull Consumer<Note> consumer, int maxNotes, long maxUptime) {
+        int drained = 0;
+        while (drained < maxNotes) {
+            final int index = (int) (mHead & mMask);
+            if (mSequences.get(index) != mHead + 1) {
+                break;
+            }
+            final Note note = mNotes[index];
+            final long uptime = Math.max(note.uptime, mLastUptime);
+            if (uptime > maxUptime) {
+                break;
+            }
+            note.uptime = uptime;
+            note.elapsedRealtime = Math.max(note.elapsedRealtime, mLastElapsedRealtime);
+            mLastUptime = note.uptime;
+            mLastElapsedRealtime = note.elapsedRealtime;
+            consumer.accept(note);
+
+            note.name = null;
+            note.historyName = null;
+            note.workSource = null;
+            mSequences.set(index, mHead + mNotes.length);
+            mHead++;
+            drained++;
+        }
+        return drained;
+    }
+}
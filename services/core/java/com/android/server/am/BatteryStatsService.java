@@ -63,6 +63,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.INetworkManagementService;
+import android.os.Message;
 import android.os.Parcel;
 import android.os.ParcelFormatException;
 import android.os.PowerManager.ServiceType;
@@ -136,6 +137,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * All information we are collecting about things that can happen that impact
@@ -174,9 +176,22 @@ public final class BatteryStatsService extends IBatteryStats.Stub
     private static final String MIN_CONSUMED_POWER_THRESHOLD_KEY = "min_consumed_power_threshold";
     private static final String EMPTY = "Empty";
 
+    /** The number of notes {@link #mNoteQueue} can hold before notes are posted one by one. */
+    private static final int NOTE_QUEUE_CAPACITY = 1024;
+    /** The most notes applied in one go, to not hold the stats lock for too long. */
+    private static final int MAX_NOTES_PER_BATCH = 64;
+
     private final HandlerThread mHandlerThread;
     private final Handler mHandler;
     private final Object mLock = new Object();
+    /**
+     * The most frequent notes, queued without taking {@link #mLock} or posting a message each.
+     * Before dispatching a message, the handler applies the queued notes stamped before the
+     * message was posted, so that these notes are applied in order with the ones posted to it
+     * directly.
+     */
+    private final BatteryStatsNoteQueue mNoteQueue;
+    private final Consumer<BatteryStatsNoteQueue.Note> mNoteApplier = this::applyNoteLocked;
 
     private final Object mPowerStatsLock = new Object();
     @GuardedBy("mPowerStatsLock")
@@ -368,7 +383,16 @@ public final class BatteryStatsService extends IBatteryStats.Stub
         };
         mHandlerThread = new HandlerThread("batterystats-handler");
         mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mHandler = new Handler(mHandlerThread.getLooper()) {
+            @Override
+            public void dispatchMessage(Message msg) {
+                // Messages are posted after stamping the notes they carry, so every note stamped
+                // no later than this message was posted is applied first.
+                drainNotes(msg.getWhen());
+                super.dispatchMessage(msg);
+            }
+        };
+        mNoteQueue = new BatteryStatsNoteQueue(NOTE_QUEUE_CAPACITY, mHandler);
 
         mPowerProfile = new PowerProfile(context);
 
@@ -591,6 +615,75 @@ public final class BatteryStatsService extends IBatteryStats.Stub
         awaitUninterruptibly(mWorker.scheduleSync(reason, flags));
     }
 
+    /** Applies the queued notes stamped at or before {@code maxUptime}, on the handler thread. */
+    private void drainNotes(long maxUptime) {
+        int drained;
+        do {
+            synchronized (mStats) {
+                drained = mNoteQueue.drain(mNoteApplier, MAX_NOTES_PER_BATCH, maxUptime);
+            }
+        } while (drained == MAX_NOTES_PER_BATCH);
+    }
+
+    /** Queues a note, stamped with the current time. Doesn't take any lock. */
+    private void appendNote(int type, int uid, int pid, int arg, boolean unimportantForLogging,
+            String name, String historyName, WorkSource ws) {
+        if (mNoteQueue.append(type, uid, pid, arg, unimportantForLogging, name, historyName,
+                ws)) {
+            return;
+        }
+        // The queue is full, post the note on its own. The notes queued before it are still
+        // applied first.
+        final BatteryStatsNoteQueue.Note note = new BatteryStatsNoteQueue.Note();
+        note.set(type, uid, pid, arg, unimportantForLogging, name, historyName, ws,
+                SystemClock.elapsedRealtime(), SystemClock.uptimeMillis());
+        mHandler.post(() -> {
+            synchronized (mStats) {
+                applyNoteLocked(note);
+            }
+        });
+    }
+
+    @GuardedBy("mStats")
+    private void applyNoteLocked(BatteryStatsNoteQueue.Note note) {
+        switch (note.type) {
+            case BatteryStatsNoteQueue.NOTE_START_WAKELOCK:
+                mStats.noteStartWakeLocked(note.uid, note.pid, null, note.name, note.historyName,
+                        note.arg, note.unimportantForLogging, note.elapsedRealtime, note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_STOP_WAKELOCK:
+                mStats.noteStopWakeLocked(note.uid, note.pid, null, note.name, note.historyName,
+                        note.arg, note.elapsedRealtime, note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_START_WAKELOCK_FROM_SOURCE:
+                mStats.noteStartWakeFromSourceLocked(note.workSource, note.pid, note.name,
+                        note.historyName, note.arg, note.unimportantForLogging,
+                        note.elapsedRealtime, note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_STOP_WAKELOCK_FROM_SOURCE:
+                mStats.noteStopWakeFromSourceLocked(note.workSource, note.pid, note.name,
+                        note.historyName, note.arg, note.elapsedRealtime, note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_START_SENSOR:
+                mStats.noteStartSensorLocked(note.uid, note.arg, note.elapsedRealtime,
+                        note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_STOP_SENSOR:
+                mStats.noteStopSensorLocked(note.uid, note.arg, note.elapsedRealtime,
+                        note.uptime);
+                break;
+            case BatteryStatsNoteQueue.NOTE_UID_PROCESS_STATE:
+                // CpuWakeupStats only takes its own lock, which is never held while taking mStats.
+                mCpuWakeupStats.noteUidProcessState(note.uid, note.arg);
+                mStats.noteUidProcessStateLocked(note.uid, note.arg, note.elapsedRealtime,
+                        note.uptime);
+                break;
+            default:
+                Slog.wtf(TAG, "Unknown note type " + note.type);
+                break;
+        }
+    }
+
     private void awaitCompletion() {
         final CountDownLatch latch = new CountDownLatch(1);
         mHandler.post(() -> {
@@ -799,16 +892,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
 
     /** @param state Process state from ActivityManager.java. */
     void noteUidProcessState(int uid, int state) {
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                mCpuWakeupStats.noteUidProcessState(uid, state);
-                synchronized (mStats) {
-                    mStats.noteUidProcessStateLocked(uid, state, elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_UID_PROCESS_STATE, uid, 0, state, false,
+                null, null, null);
     }
 
     // Public interface...
@@ -1122,16 +1207,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
             final String historyName, final int type, final boolean unimportantForLogging) {
         super.noteStartWakelock_enforcePermission();
 
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStartWakeLocked(uid, pid, null, name, historyName, type,
-                            unimportantForLogging, elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_START_WAKELOCK, uid, pid, type,
+                unimportantForLogging, name, historyName, null);
     }
 
     @Override
@@ -1140,16 +1217,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
             final String historyName, final int type) {
         super.noteStopWakelock_enforcePermission();
 
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStopWakeLocked(uid, pid, null, name, historyName, type,
-                            elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_STOP_WAKELOCK, uid, pid, type, false,
+                name, historyName, null);
     }
 
     @Override
@@ -1159,16 +1228,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
         super.noteStartWakelockFromSource_enforcePermission();
 
         final WorkSource localWs = ws != null ? new WorkSource(ws) : null;
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStartWakeFromSourceLocked(localWs, pid, name, historyName,
-                            type, unimportantForLogging, elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_START_WAKELOCK_FROM_SOURCE, 0, pid, type,
+                unimportantForLogging, name, historyName, localWs);
     }
 
     @Override
@@ -1201,16 +1262,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
         super.noteStopWakelockFromSource_enforcePermission();
 
         final WorkSource localWs = ws != null ? new WorkSource(ws) : null;
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStopWakeFromSourceLocked(localWs, pid, name, historyName, type,
-                            elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_STOP_WAKELOCK_FROM_SOURCE, 0, pid, type,
+                false, name, historyName, localWs);
     }
 
     @Override
@@ -1292,15 +1345,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
     public void noteStartSensor(final int uid, final int sensor) {
         super.noteStartSensor_enforcePermission();
 
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStartSensorLocked(uid, sensor, elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_START_SENSOR, uid, 0, sensor, false,
+                null, null, null);
         FrameworkStatsLog.write_non_chained(FrameworkStatsLog.SENSOR_STATE_CHANGED, uid,
                 null, sensor, FrameworkStatsLog.SENSOR_STATE_CHANGED__STATE__ON);
     }
@@ -1333,15 +1379,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
     public void noteStopSensor(final int uid, final int sensor) {
         super.noteStopSensor_enforcePermission();
 
-        synchronized (mLock) {
-            final long elapsedRealtime = SystemClock.elapsedRealtime();
-            final long uptime = SystemClock.uptimeMillis();
-            mHandler.post(() -> {
-                synchronized (mStats) {
-                    mStats.noteStopSensorLocked(uid, sensor, elapsedRealtime, uptime);
-                }
-            });
-        }
+        appendNote(BatteryStatsNoteQueue.NOTE_STOP_SENSOR, uid, 0, sensor, false,
+                null, null, null);
         FrameworkStatsLog.write_non_chained(FrameworkStatsLog.SENSOR_STATE_CHANGED, uid,
                 null, sensor, FrameworkStatsLog.SENSOR_STATE_CHANGED__STATE__OFF);
     }
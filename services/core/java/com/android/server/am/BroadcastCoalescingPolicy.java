@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.am;
+
+import android.annotation.NonNull;
+import android.app.BroadcastOptions;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.os.UserHandle;
+import android.util.ArraySet;
+
+/**
+ * Policy logic that decides if a {@link BroadcastRecord} describes state that a receiver only
+ * ever needs the latest value of, so that an undelivered older instance of it can be replaced
+ * in-place in the {@link BroadcastProcessQueue} of a cached process.
+ * <p>
+ * This extends {@link BroadcastOptions#DELIVERY_GROUP_POLICY_MOST_RECENT} to the system state
+ * broadcasts listed here whose senders don't declare a delivery group policy. Unlike that policy,
+ * it only applies to processes that are not running, which are the ones that would otherwise
+ * be woken up once for every stale instance.
+ */
+final class BroadcastCoalescingPolicy {
+    /**
+     * State broadcasts where every instance supersedes the previous one with the same action
+     * and delivery group.
+     */
+    private static final ArraySet<String> COALESCED_ACTIONS = new ArraySet<>(new String[] {
+            Intent.ACTION_BATTERY_CHANGED,
+            ConnectivityManager.CONNECTIVITY_ACTION,
+            Intent.ACTION_TIME_TICK,
+            Intent.ACTION_TIME_CHANGED,
+            Intent.ACTION_TIMEZONE_CHANGED,
+    });
+
+    private BroadcastCoalescingPolicy() {
+    }
+
+    /**
+     * Returns whether {@code r} can replace older instances of itself that are still pending
+     * for the receivers of a cached process.
+     */
+    static boolean isCoalescable(@NonNull BroadcastRecord r) {
+        // Ordered and prioritized broadcasts would lose their ordering guarantees, and the
+        // sender of a result expects it from every receiver.
+        if (r.ordered || r.prioritized || r.resultTo != null) {
+            return false;
+        }
+        // An explicit policy from the sender always wins
+        if (r.getDeliveryGroupPolicy() != BroadcastOptions.DELIVERY_GROUP_POLICY_ALL) {
+            return false;
+        }
+        return UserHandle.isCore(r.callingUid)
+                && COALESCED_ACTIONS.contains(r.intent.getAction());
+    }
+
+    /**
+     * Returns whether an undelivered {@code oldRecord} is superseded by {@code newRecord}, which
+     * has to be {@link #isCoalescable coalescable}. Both are keyed by the sender, the action and
+     * the delivery group, and connectivity changes also by the type of network they describe.
+     */
+    static boolean supersedes(@NonNull BroadcastRecord newRecord,
+            @NonNull BroadcastRecord oldRecord) {
+        return newRecord.callingUid == oldRecord.callingUid
+                && newRecord.userId == oldRecord.userId
+                && !oldRecord.ordered && !oldRecord.prioritized && oldRecord.resultTo == null
+                && newRecord.intent.getAction().equals(oldRecord.intent.getAction())
+                && newRecord.matchesDeliveryGroup(oldRecord)
+                && isSameNetwork(newRecord.intent, oldRecord.intent);
+    }
+
+    /**
+     * Returns whether two instances of a broadcast describe the same network, which is always
+     * the case for broadcasts other than {@link ConnectivityManager#CONNECTIVITY_ACTION}.
+     */
+    private static boolean isSameNetwork(@NonNull Intent newIntent, @NonNull Intent oldIntent) {
+        if (!ConnectivityManager.CONNECTIVITY_ACTION.equals(newIntent.getAction())) {
+            return true;
+        }
+        // Each network type reports its own state, which receivers may track separately
+        return newIntent.getIntExtra(ConnectivityManager.EXTRA_NETWORK_TYPE, -1)
+                == oldIntent.getIntExtra(ConnectivityManager.EXTRA_NETWORK_TYPE, -1);
+    }
+}
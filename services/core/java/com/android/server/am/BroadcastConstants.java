@@ -301,6 +301,43 @@ public class BroadcastConstants {
             "pending_cold_start_check_interval_millis";
     private static final long DEFAULT_PENDING_COLD_START_CHECK_INTERVAL_MILLIS = 30_000;
 
+    /**
+     * For {@link BroadcastQueueModernImpl}: Whether the receivers that are dispatched to a warm
+     * process in a single pass should be handed to it in one
+     * {@link android.app.IApplicationThread#scheduleReceiverList} transaction, rather than one
+     * transaction per receiver.
+     */
+    public boolean BATCH_DELIVERY_ENABLED = DEFAULT_BATCH_DELIVERY_ENABLED;
+    private static final String KEY_BATCH_DELIVERY_ENABLED = "bcast_batch_delivery_enabled";
+    private static final boolean DEFAULT_BATCH_DELIVERY_ENABLED = false;
+
+    /**
+     * For {@link BroadcastQueueModernImpl}: Maximum number of receivers handed to a process in
+     * a single {@link android.app.IApplicationThread#scheduleReceiverList} transaction.
+     */
+    public int BATCH_DELIVERY_MAX_RECEIVERS = DEFAULT_BATCH_DELIVERY_MAX_RECEIVERS;
+    private static final String KEY_BATCH_DELIVERY_MAX_RECEIVERS =
+            "bcast_batch_delivery_max_receivers";
+    private static final int DEFAULT_BATCH_DELIVERY_MAX_RECEIVERS = 32;
+
+    /**
+     * For {@link BroadcastQueueModernImpl}: Maximum estimated size in bytes of a single
+     * {@link android.app.IApplicationThread#scheduleReceiverList} transaction, well below what
+     * the binder buffer of a process can take for oneway transactions.
+     */
+    public int BATCH_DELIVERY_MAX_BYTES = DEFAULT_BATCH_DELIVERY_MAX_BYTES;
+    private static final String KEY_BATCH_DELIVERY_MAX_BYTES = "bcast_batch_delivery_max_bytes";
+    private static final int DEFAULT_BATCH_DELIVERY_MAX_BYTES = 64 * 1024;
+
+    /**
+     * For {@link BroadcastQueueModernImpl}: Whether a state broadcast sent by the system without
+     * a delivery group policy should replace its undelivered older instances in the queues of
+     * cached processes, as decided by {@link BroadcastCoalescingPolicy}.
+     */
+    public boolean COALESCE_STATE_BROADCASTS = DEFAULT_COALESCE_STATE_BROADCASTS;
+    private static final String KEY_COALESCE_STATE_BROADCASTS = "bcast_coalesce_state_broadcasts";
+    private static final boolean DEFAULT_COALESCE_STATE_BROADCASTS = true;
+
     // Settings override tracking for this instance
     private String mSettingsKey;
     private SettingsObserver mSettingsObserver;
@@ -453,6 +490,14 @@ public class BroadcastConstants {
             PENDING_COLD_START_CHECK_INTERVAL_MILLIS = getDeviceConfigLong(
                     KEY_PENDING_COLD_START_CHECK_INTERVAL_MILLIS,
                     DEFAULT_PENDING_COLD_START_CHECK_INTERVAL_MILLIS);
+            BATCH_DELIVERY_ENABLED = getDeviceConfigBoolean(KEY_BATCH_DELIVERY_ENABLED,
+                    DEFAULT_BATCH_DELIVERY_ENABLED);
+            BATCH_DELIVERY_MAX_RECEIVERS = getDeviceConfigInt(KEY_BATCH_DELIVERY_MAX_RECEIVERS,
+                    DEFAULT_BATCH_DELIVERY_MAX_RECEIVERS);
+            BATCH_DELIVERY_MAX_BYTES = getDeviceConfigInt(KEY_BATCH_DELIVERY_MAX_BYTES,
+                    DEFAULT_BATCH_DELIVERY_MAX_BYTES);
+            COALESCE_STATE_BROADCASTS = getDeviceConfigBoolean(KEY_COALESCE_STATE_BROADCASTS,
+                    DEFAULT_COALESCE_STATE_BROADCASTS);
         }
 
         // TODO: migrate BroadcastRecord to accept a BroadcastConstants
@@ -513,6 +558,10 @@ public class BroadcastConstants {
                     CORE_DEFER_UNTIL_ACTIVE).println();
             pw.print(KEY_PENDING_COLD_START_CHECK_INTERVAL_MILLIS,
                     PENDING_COLD_START_CHECK_INTERVAL_MILLIS).println();
+            pw.print(KEY_BATCH_DELIVERY_ENABLED, BATCH_DELIVERY_ENABLED).println();
+            pw.print(KEY_BATCH_DELIVERY_MAX_RECEIVERS, BATCH_DELIVERY_MAX_RECEIVERS).println();
+            pw.print(KEY_BATCH_DELIVERY_MAX_BYTES, BATCH_DELIVERY_MAX_BYTES).println();
+            pw.print(KEY_COALESCE_STATE_BROADCASTS, COALESCE_STATE_BROADCASTS).println();
             pw.decreaseIndent();
             pw.println();
         }
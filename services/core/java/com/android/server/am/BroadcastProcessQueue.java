@@ -18,6 +18,7 @@ package com.android.server.am;
 
 import static com.android.internal.util.Preconditions.checkState;
 import static com.android.server.am.BroadcastRecord.deliveryStateToString;
+import static com.android.server.am.BroadcastRecord.isDeliveryStateTerminal;
 import static com.android.server.am.BroadcastRecord.isReceiverEquals;
 
 import android.annotation.CheckResult;
@@ -360,6 +361,54 @@ class BroadcastProcessQueue {
         return null;
     }
 
+    /**
+     * If this process is freezable, searches from newest to oldest for a pending dispatch of an
+     * older instance of the given {@link BroadcastCoalescingPolicy#isCoalescable coalescable}
+     * broadcast to the same receiver, and replaces it in-place with the given broadcast.
+     * <p>
+     * Unlike {@link #enqueueOrReplaceBroadcast}, only the dispatch to this process is replaced;
+     * the older broadcast may still be delivered to receivers in other processes. As with
+     * {@link #replaceBroadcastInQueue}, the given broadcast takes over the enqueue time of the
+     * dispatch it replaces.
+     *
+     * @param replacedConsumer notified of the dispatch that was replaced, which is no longer
+     *         part of this queue and should be finished by the caller.
+     * @return whether a dispatch was replaced; otherwise the broadcast still needs to be
+     *         enqueued.
+     */
+    public boolean coalesceBroadcast(@NonNull BroadcastRecord record, int recordIndex,
+            @NonNull BroadcastConsumer deferredStatesApplyConsumer,
+            @NonNull BroadcastConsumer replacedConsumer) {
+        if (!mProcessFreezable) {
+            return false;
+        }
+        final Iterator<SomeArgs> it = getQueueForBroadcast(record).descendingIterator();
+        final Object receiver = record.receivers.get(recordIndex);
+        while (it.hasNext()) {
+            final SomeArgs args = it.next();
+            final BroadcastRecord testRecord = (BroadcastRecord) args.arg1;
+            final int testRecordIndex = args.argi1;
+            final Object testReceiver = testRecord.receivers.get(testRecordIndex);
+            if (isReceiverEquals(receiver, testReceiver)
+                    && !isDeliveryStateTerminal(testRecord.getDeliveryState(testRecordIndex))
+                    && BroadcastCoalescingPolicy.supersedes(record, testRecord)) {
+                if (mLastDeferredStates && record.deferUntilActive
+                        && (record.getDeliveryState(recordIndex)
+                                == BroadcastRecord.DELIVERY_PENDING)) {
+                    deferredStatesApplyConsumer.accept(record, recordIndex);
+                }
+                args.arg1 = record;
+                args.argi1 = recordIndex;
+                record.copyEnqueueTimeFrom(testRecord);
+                onBroadcastDequeued(testRecord, testRecordIndex);
+                onBroadcastEnqueued(record, recordIndex);
+                replacedConsumer.accept(testRecord, testRecordIndex);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Functional interface that tests a {@link BroadcastRecord} that has been
      * previously enqueued in {@link BroadcastProcessQueue}.
@@ -50,6 +50,7 @@ import android.app.ActivityManager;
 import android.app.ApplicationExitInfo;
 import android.app.BroadcastOptions;
 import android.app.IApplicationThread;
+import android.app.ReceiverInfo;
 import android.app.UidObserver;
 import android.app.usage.UsageEvents.Event;
 import android.content.ComponentName;
@@ -61,6 +62,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.os.Bundle;
 import android.os.BundleMerger;
+import android.os.DeadObjectException;
 import android.os.Handler;
 import android.os.Message;
 import android.os.PowerExemptionManager;
@@ -72,6 +74,7 @@ import android.text.format.DateUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.IndentingPrintWriter;
+import android.util.IntArray;
 import android.util.MathUtils;
 import android.util.Pair;
 import android.util.Slog;
@@ -242,6 +245,36 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
      */
     private @UptimeMillisLong long mLastTestFailureTime;
 
+    /**
+     * Receivers that {@link #dispatchReceivers} has scheduled during the current pass of
+     * {@link #scheduleReceiverWarmLocked}, waiting to be handed to the process in a single
+     * transaction. Only non-null during such a pass, and only when
+     * {@link BroadcastConstants#BATCH_DELIVERY_ENABLED} is set.
+     */
+    @GuardedBy("mService")
+    private @Nullable ArrayList<ReceiverInfo> mReceiverBatch;
+
+    /** The broadcast and receiver index of each receiver in {@link #mReceiverBatch}. */
+    @GuardedBy("mService")
+    private final ArrayList<BroadcastRecord> mReceiverBatchRecords = new ArrayList<>();
+    @GuardedBy("mService")
+    private final IntArray mReceiverBatchIndexes = new IntArray();
+
+    /** The estimated size of {@link #mReceiverBatch} once parcelled. */
+    @GuardedBy("mService")
+    private int mReceiverBatchBytes;
+
+    /**
+     * The estimated parcelled size of a {@link ReceiverInfo} aside from its extras and result
+     * data, which covers the intent's action, data and component and a receiver's
+     * {@link ActivityInfo}.
+     */
+    private static final int RECEIVER_INFO_BASE_BYTES = 1024;
+
+    /** When the first receiver of {@link #mReceiverBatch} was scheduled. */
+    @GuardedBy("mService")
+    private long mReceiverBatchStartNanos;
+
     private static final int MSG_UPDATE_RUNNING_LIST = 1;
     private static final int MSG_DELIVERY_TIMEOUT_SOFT = 2;
     private static final int MSG_DELIVERY_TIMEOUT_HARD = 3;
@@ -717,6 +750,9 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
             replacedBroadcasts = new ArraySet<>();
         }
         boolean enqueuedBroadcast = false;
+        final boolean coalescable = mConstants.COALESCE_STATE_BROADCASTS
+                && !mService.shouldIgnoreDeliveryGroupPolicy(r.intent.getAction())
+                && BroadcastCoalescingPolicy.isCoalescable(r);
 
         for (int i = 0; i < r.receivers.size(); i++) {
             final Object receiver = r.receivers.get(i);
@@ -733,10 +769,14 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
             }
 
             enqueuedBroadcast = true;
-            final BroadcastRecord replacedBroadcast = queue.enqueueOrReplaceBroadcast(
-                    r, i, mBroadcastConsumerDeferApply);
-            if (replacedBroadcast != null) {
-                replacedBroadcasts.add(replacedBroadcast);
+            // Cached processes only need the latest instance of a state broadcast
+            if (!coalescable || !queue.coalesceBroadcast(r, i, mBroadcastConsumerDeferApply,
+                    mBroadcastConsumerSkipCoalesced)) {
+                final BroadcastRecord replacedBroadcast = queue.enqueueOrReplaceBroadcast(
+                        r, i, mBroadcastConsumerDeferApply);
+                if (replacedBroadcast != null) {
+                    replacedBroadcasts.add(replacedBroadcast);
+                }
             }
             updateRunnableList(queue);
             enqueueUpdateRunningList();
@@ -938,36 +978,203 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
         checkState(queue.isActive(), "isActive");
 
         final int cookie = traceBegin("scheduleReceiverWarmLocked");
-        while (queue.isActive()) {
-            final BroadcastRecord r = queue.getActive();
-            final int index = queue.getActiveIndex();
+        if (mConstants.BATCH_DELIVERY_ENABLED) {
+            mReceiverBatch = new ArrayList<>();
+        }
+        try {
+            while (queue.isActive()) {
+                final BroadcastRecord r = queue.getActive();
+                final int index = queue.getActiveIndex();
+
+                if (r.terminalCount == 0) {
+                    r.dispatchTime = SystemClock.uptimeMillis();
+                    r.dispatchRealTime = SystemClock.elapsedRealtime();
+                    r.dispatchClockTime = System.currentTimeMillis();
+                }
 
-            if (r.terminalCount == 0) {
-                r.dispatchTime = SystemClock.uptimeMillis();
-                r.dispatchRealTime = SystemClock.elapsedRealtime();
-                r.dispatchClockTime = System.currentTimeMillis();
+                final String skipReason = shouldSkipReceiver(queue, r, index);
+                if (skipReason == null) {
+                    final boolean isBlockingDispatch = dispatchReceivers(queue, r, index);
+                    if (isBlockingDispatch) {
+                        // If the batch can't be delivered, the blocking receiver has been
+                        // finished and there is nothing left to wait for
+                        return !flushReceiverBatchLocked(queue, true);
+                    }
+                } else {
+                    finishReceiverActiveLocked(queue, BroadcastRecord.DELIVERY_SKIPPED,
+                            skipReason);
+                }
+
+                if (shouldRetire(queue)) {
+                    break;
+                }
+
+                // We're on a roll; move onto the next broadcast for this process
+                queue.makeActiveNextPending();
             }
+            flushReceiverBatchLocked(queue, false);
+            return true;
+        } finally {
+            mReceiverBatch = null;
+            clearReceiverBatchRecords();
+            traceEnd(cookie);
+        }
+    }
 
-            final String skipReason = shouldSkipReceiver(queue, r, index);
-            if (skipReason == null) {
-                final boolean isBlockingDispatch = dispatchReceivers(queue, r, index);
-                if (isBlockingDispatch) {
-                    traceEnd(cookie);
-                    return false;
+    /** Forgets the broadcast and receiver index of each receiver of the current batch. */
+    private void clearReceiverBatchRecords() {
+        mReceiverBatchRecords.clear();
+        mReceiverBatchIndexes.clear();
+        mReceiverBatchBytes = 0;
+    }
+
+    /**
+     * Hands the receivers collected in {@link #mReceiverBatch} to the process of {@code queue}
+     * in a single {@link IApplicationThread#scheduleReceiverList} transaction. Each receiver
+     * still reports its own result through {@code finishReceiver()}, except the ones assumed
+     * delivered, which are marked delivered once they have been handed over.
+     * <p>
+     * If the transaction fails while the process is still alive, e.g. because it is too large,
+     * the receivers are handed over one by one instead.
+     *
+     * @param activeIsBlocking whether the active receiver of {@code queue} is the last receiver
+     *         of the batch and is waiting to be finished by the process.
+     * @return {@code false} if the batch could not be delivered, in which case a blocking
+     *         active receiver has been finished or the exception thrown.
+     */
+    @GuardedBy("mService")
+    private boolean flushReceiverBatchLocked(@NonNull BroadcastProcessQueue queue,
+            boolean activeIsBlocking) throws BroadcastDeliveryFailedException {
+        final ArrayList<ReceiverInfo> batch = mReceiverBatch;
+        if (batch == null || batch.isEmpty()) {
+            return true;
+        }
+        mReceiverBatch = new ArrayList<>();
+        mReceiverBatchBytes = 0;
+
+        final ProcessRecord app = queue.app;
+        final IApplicationThread thread = app.getOnewayThread();
+        // The number of receivers of the batch that were handed over, in order
+        int delivered = 0;
+        RemoteException failure = null;
+        if (thread == null) {
+            failure = new RemoteException("missing IApplicationThread");
+        } else {
+            try {
+                thread.scheduleReceiverList(batch);
+                delivered = batch.size();
+                mService.addBatchedBroadcastDeliveryStatLocked(batch.size(),
+                        (SystemClock.elapsedRealtimeNanos() - mReceiverBatchStartNanos) / 1000);
+            } catch (DeadObjectException e) {
+                failure = e;
+            } catch (RemoteException e) {
+                logw("Failed to schedule a batch of " + batch.size() + " receivers via " + app
+                        + ", scheduling them one by one: " + e);
+                try {
+                    for (; delivered < batch.size(); delivered++) {
+                        scheduleReceiverInfo(thread, batch.get(delivered));
+                    }
+                } catch (RemoteException e2) {
+                    failure = e2;
                 }
-            } else {
-                finishReceiverActiveLocked(queue, BroadcastRecord.DELIVERY_SKIPPED, skipReason);
             }
+        }
 
-            if (shouldRetire(queue)) {
-                break;
+        // Registered receivers assumed delivered are only finished once handed over
+        boolean finishedAny = false;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).assumeDelivered) {
+                    final BroadcastRecord r = mReceiverBatchRecords.get(i);
+                    final int index = mReceiverBatchIndexes.get(i);
+                    setDeliveryState(queue, app, r, index, r.receivers.get(index),
+                            i < delivered ? BroadcastRecord.DELIVERY_DELIVERED
+                                    : BroadcastRecord.DELIVERY_FAILURE,
+                            i < delivered ? "assuming delivered" : "remote app");
+                    finishedAny = true;
+                }
             }
+        } finally {
+            clearReceiverBatchRecords();
+        }
+        if (finishedAny) {
+            checkAndRemoveWaitingFor();
+        }
+        if (failure == null) {
+            return true;
+        }
 
-            // We're on a roll; move onto the next broadcast for this process
-            queue.makeActiveNextPending();
+        logw("Failed to schedule " + (batch.size() - delivered) + " receivers via " + app
+                + ": " + failure);
+        app.killLocked("Can't deliver broadcast", ApplicationExitInfo.REASON_OTHER,
+                ApplicationExitInfo.SUBREASON_UNDELIVERED_BROADCAST, true);
+        if (activeIsBlocking) {
+            // As in dispatchReceivers(), a manifest broadcast needs to be redelivered
+            final BroadcastRecord r = queue.getActive();
+            if (r.receivers.get(queue.getActiveIndex()) instanceof ResolveInfo) {
+                mLocalHandler.removeMessages(MSG_DELIVERY_TIMEOUT_SOFT, queue);
+                throw new BroadcastDeliveryFailedException(failure);
+            }
+            finishReceiverActiveLocked(queue, BroadcastRecord.DELIVERY_FAILURE, "remote app");
+        }
+        return false;
+    }
+
+    /** Hands a single receiver of a batch over, as {@code ActivityThread} would unpack it. */
+    private static void scheduleReceiverInfo(@NonNull IApplicationThread thread,
+            @NonNull ReceiverInfo info) throws RemoteException {
+        if (info.registered) {
+            thread.scheduleRegisteredReceiver(info.receiver, info.intent, info.resultCode,
+                    info.data, info.extras, info.ordered, info.sticky, info.assumeDelivered,
+                    info.sendingUser, info.processState, info.sendingUid, info.sendingPackage);
+        } else {
+            thread.scheduleReceiver(info.intent, info.activityInfo, info.compatInfo,
+                    info.resultCode, info.data, info.extras, info.sync, info.assumeDelivered,
+                    info.sendingUser, info.processState, info.sendingUid, info.sendingPackage);
         }
-        traceEnd(cookie);
-        return true;
+    }
+
+    /**
+     * Adds a receiver to {@link #mReceiverBatch}, first handing the batch over if it would
+     * otherwise carry more receivers or bytes than allowed in a single transaction.
+     */
+    @GuardedBy("mService")
+    private void addToReceiverBatchLocked(@NonNull BroadcastProcessQueue queue,
+            @NonNull BroadcastRecord r, int index, @NonNull ReceiverInfo info)
+            throws BroadcastDeliveryFailedException {
+        final int bytes = estimateParcelledSize(info);
+        if (!mReceiverBatch.isEmpty()
+                && (mReceiverBatch.size() >= mConstants.BATCH_DELIVERY_MAX_RECEIVERS
+                        || mReceiverBatchBytes + bytes > mConstants.BATCH_DELIVERY_MAX_BYTES)) {
+            flushReceiverBatchLocked(queue, false);
+        }
+        if (mReceiverBatch.isEmpty()) {
+            mReceiverBatchStartNanos = SystemClock.elapsedRealtimeNanos();
+        }
+        mReceiverBatch.add(info);
+        mReceiverBatchRecords.add(r);
+        mReceiverBatchIndexes.add(index);
+        mReceiverBatchBytes += bytes;
+    }
+
+    /**
+     * Estimates the size of {@code info} once parcelled, without parcelling it. Extras that
+     * haven't been unparcelled since they were received are counted at their parcelled size
+     * and others not at all; a batch that still turns out too large for a single transaction
+     * is handed over one receiver at a time by {@link #flushReceiverBatchLocked}.
+     */
+    private static int estimateParcelledSize(@NonNull ReceiverInfo info) {
+        int bytes = RECEIVER_INFO_BASE_BYTES;
+        if (info.intent != null) {
+            bytes += info.intent.getExtrasTotalSize();
+        }
+        if (info.extras != null) {
+            bytes += info.extras.getSize();
+        }
+        if (info.data != null) {
+            bytes += 2 * info.data.length();
+        }
+        return bytes;
     }
 
     /**
@@ -1074,28 +1281,51 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
                 queue.lastProcessState = app.mState.getCurProcState();
                 if (receiver instanceof BroadcastFilter) {
                     notifyScheduleRegisteredReceiver(app, r, (BroadcastFilter) receiver);
-                    thread.scheduleRegisteredReceiver(
-                        ((BroadcastFilter) receiver).receiverList.receiver,
-                        receiverIntent, r.resultCode, r.resultData, r.resultExtras,
-                        r.ordered, r.initialSticky, assumeDelivered, r.userId,
-                        app.mState.getReportedProcState(),
-                        r.shareIdentity ? r.callingUid : Process.INVALID_UID,
-                        r.shareIdentity ? r.callerPackage : null);
+                    if (mReceiverBatch != null) {
+                        final ReceiverInfo info = makeReceiverInfo(app, r, receiverIntent,
+                                assumeDelivered);
+                        info.registered = true;
+                        info.receiver = ((BroadcastFilter) receiver).receiverList.receiver;
+                        info.ordered = r.ordered;
+                        info.sticky = r.initialSticky;
+                        addToReceiverBatchLocked(queue, r, index, info);
+                    } else {
+                        thread.scheduleRegisteredReceiver(
+                            ((BroadcastFilter) receiver).receiverList.receiver,
+                            receiverIntent, r.resultCode, r.resultData, r.resultExtras,
+                            r.ordered, r.initialSticky, assumeDelivered, r.userId,
+                            app.mState.getReportedProcState(),
+                            r.shareIdentity ? r.callingUid : Process.INVALID_UID,
+                            r.shareIdentity ? r.callerPackage : null);
+                    }
                     // TODO: consider making registered receivers of unordered
                     // broadcasts report results to detect ANRs
                     if (assumeDelivered) {
-                        finishReceiverActiveLocked(queue, BroadcastRecord.DELIVERY_DELIVERED,
-                                "assuming delivered");
+                        // A batched receiver is only finished once the batch is handed over
+                        if (mReceiverBatch == null) {
+                            finishReceiverActiveLocked(queue,
+                                    BroadcastRecord.DELIVERY_DELIVERED, "assuming delivered");
+                        }
                         return false;
                     }
                 } else {
                     notifyScheduleReceiver(app, r, (ResolveInfo) receiver);
-                    thread.scheduleReceiver(receiverIntent, ((ResolveInfo) receiver).activityInfo,
-                            null, r.resultCode, r.resultData, r.resultExtras, r.ordered,
-                            assumeDelivered, r.userId,
-                            app.mState.getReportedProcState(),
-                            r.shareIdentity ? r.callingUid : Process.INVALID_UID,
-                            r.shareIdentity ? r.callerPackage : null);
+                    if (mReceiverBatch != null) {
+                        final ReceiverInfo info = makeReceiverInfo(app, r, receiverIntent,
+                                assumeDelivered);
+                        info.registered = false;
+                        info.activityInfo = ((ResolveInfo) receiver).activityInfo;
+                        info.sync = r.ordered;
+                        addToReceiverBatchLocked(queue, r, index, info);
+                    } else {
+                        thread.scheduleReceiver(receiverIntent,
+                                ((ResolveInfo) receiver).activityInfo,
+                                null, r.resultCode, r.resultData, r.resultExtras, r.ordered,
+                                assumeDelivered, r.userId,
+                                app.mState.getReportedProcState(),
+                                r.shareIdentity ? r.callingUid : Process.INVALID_UID,
+                                r.shareIdentity ? r.callerPackage : null);
+                    }
                 }
                 return true;
             } catch (RemoteException e) {
@@ -1121,6 +1351,24 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
         }
     }
 
+    /**
+     * Fills in the fields of a {@link ReceiverInfo} shared by manifest and registered receivers.
+     */
+    private static @NonNull ReceiverInfo makeReceiverInfo(@NonNull ProcessRecord app,
+            @NonNull BroadcastRecord r, @NonNull Intent receiverIntent, boolean assumeDelivered) {
+        final ReceiverInfo info = new ReceiverInfo();
+        info.intent = receiverIntent;
+        info.data = r.resultData;
+        info.extras = r.resultExtras;
+        info.assumeDelivered = assumeDelivered;
+        info.sendingUser = r.userId;
+        info.processState = app.mState.getReportedProcState();
+        info.resultCode = r.resultCode;
+        info.sendingUid = r.shareIdentity ? r.callingUid : Process.INVALID_UID;
+        info.sendingPackage = r.shareIdentity ? r.callerPackage : null;
+        return info;
+    }
+
     /**
      * Schedule the final {@link BroadcastRecord#resultTo} delivery for an
      * ordered broadcast; assumes the sender is still a warm process.
@@ -1524,6 +1772,11 @@ class BroadcastQueueModernImpl extends BroadcastQueue {
         r.resultExtras = null;
     };
 
+    private final BroadcastConsumer mBroadcastConsumerSkipCoalesced = (r, i) -> {
+        setDeliveryState(null, null, r, i, r.receivers.get(i), BroadcastRecord.DELIVERY_SKIPPED,
+                "mBroadcastConsumerSkipCoalesced");
+    };
+
     private final BroadcastConsumer mBroadcastConsumerDeferApply = (r, i) -> {
         setDeliveryState(null, null, r, i, r.receivers.get(i), BroadcastRecord.DELIVERY_DEFERRED,
                 "mBroadcastConsumerDeferApply");
@@ -34,6 +34,13 @@ public final class BroadcastStats {
     long mEndUptime;
     final ArrayMap<String, ActionEntry> mActions = new ArrayMap<>();
 
+    // Receivers handed to a process in one IApplicationThread.scheduleReceiverList() call
+    int mBatchCount;
+    long mBatchedReceiverCount;
+    int mMaxBatchSize;
+    long mTotalBatchDispatchMicros;
+    long mMaxBatchDispatchMicros;
+
     static final Comparator<ActionEntry> ACTIONS_COMPARATOR = new Comparator<ActionEntry>() {
         @Override public int compare(ActionEntry o1, ActionEntry o2) {
             if (o1.mTotalDispatchTime < o2.mTotalDispatchTime) {
@@ -108,6 +115,22 @@ public final class BroadcastStats {
         ve.mCount++;
     }
 
+    /**
+     * Records a batch of {@code batchSize} receivers that was delivered to a process in a single
+     * transaction, {@code dispatchMicros} after the first of them was scheduled.
+     */
+    public void addBatchedDelivery(int batchSize, long dispatchMicros) {
+        mBatchCount++;
+        mBatchedReceiverCount += batchSize;
+        if (mMaxBatchSize < batchSize) {
+            mMaxBatchSize = batchSize;
+        }
+        mTotalBatchDispatchMicros += dispatchMicros;
+        if (mMaxBatchDispatchMicros < dispatchMicros) {
+            mMaxBatchDispatchMicros = dispatchMicros;
+        }
+    }
+
     @NeverCompile
     public boolean dumpStats(PrintWriter pw, String prefix, String dumpPackage) {
         boolean printedSomething = false;
@@ -155,6 +178,22 @@ public final class BroadcastStats {
                 pw.println(" times");
             }
         }
+        if (dumpPackage == null && mBatchCount > 0) {
+            printedSomething = true;
+            pw.print(prefix);
+            pw.print("Batched deliveries: ");
+            pw.print(mBatchCount);
+            pw.print(", receivers: ");
+            pw.print(mBatchedReceiverCount);
+            pw.print(", max size: ");
+            pw.println(mMaxBatchSize);
+            pw.print(prefix);
+            pw.print("  Total dispatch time: ");
+            pw.print(mTotalBatchDispatchMicros);
+            pw.print("us, max: ");
+            pw.print(mMaxBatchDispatchMicros);
+            pw.println("us");
+        }
         return printedSomething;
     }
 
@@ -199,5 +238,18 @@ public final class BroadcastStats {
                 pw.println();
             }
         }
+        if (dumpPackage == null && mBatchCount > 0) {
+            pw.print("b,");
+            pw.print(mBatchCount);
+            pw.print(",");
+            pw.print(mBatchedReceiverCount);
+            pw.print(",");
+            pw.print(mMaxBatchSize);
+            pw.print(",");
+            pw.print(mTotalBatchDispatchMicros);
+            pw.print(",");
+            pw.print(mMaxBatchDispatchMicros);
+            pw.println();
+        }
     }
 }
@@ -388,6 +388,8 @@ public class OomAdjuster {
     private final ArraySet<ProcessRecord> mTmpProcessSet = new ArraySet<>();
     private final ArraySet<ProcessRecord> mPendingProcessSet = new ArraySet<>();
     private final ArraySet<ProcessRecord> mProcessesInCycle = new ArraySet<>();
+    private final ArrayDeque<ProcessRecord> mTmpWorklist = new ArrayDeque<>();
+    private final ArraySet<ProcessRecord> mTmpVisited = new ArraySet<>();
 
     /**
      * Flag to mark if there is an ongoing oomAdjUpdate: potentially the oomAdjUpdate
@@ -680,6 +682,14 @@ public class OomAdjuster {
             return success;
         }
 
+        if (mConstants.OOMADJ_UPDATE_INCREMENTAL && mProcessesInCycle.isEmpty()
+                && state.getCurRawAdj() != UNKNOWN_ADJ
+                && propagateOomAdjLSP(app, topApp, oomAdjReason)) {
+            mService.mOomAdjProfiler.oomAdjEnded();
+            Trace.traceEnd(Trace.TRACE_TAG_ACTIVITY_MANAGER);
+            return true;
+        }
+
         // Next to find out all its reachable processes
         ArrayList<ProcessRecord> processes = mTmpProcessList;
         ActiveUids uids = mTmpUidRecords;
@@ -723,6 +733,156 @@ public class OomAdjuster {
         return true;
     }
 
+    /**
+     * Propagates the change of the given process, which has just been computed and applied, to
+     * the processes it binds to or uses providers of, one edge at a time: a process is only
+     * recomputed if one of its clients changed, and its own services and providers are only
+     * visited if its raw adj, raw proc state, capability or bound-by-non-bg-restricted state
+     * changed in turn. This is cheaper than recomputing every reachable process
+     * when the change dies out close to its origin, which is the common case.
+     *
+     * @return {@code true} if the change has been fully propagated; {@code false} if the
+     *         propagation ran into a cycle, a process that needs a cached adj slot or one that
+     *         was already computed as the client of another (as in a diamond), in which case the
+     *         processes left to update are added to {@link #mPendingProcessSet} and the caller
+     *         must update the reachable processes the regular way.
+     */
+    @GuardedBy({"mService", "mProcLock"})
+    private boolean propagateOomAdjLSP(ProcessRecord app, ProcessRecord topApp,
+            @OomAdjReason int oomAdjReason) {
+        final ArrayDeque<ProcessRecord> worklist = mTmpWorklist;
+        final ArraySet<ProcessRecord> visited = mTmpVisited;
+        worklist.clear();
+        visited.clear();
+        visited.add(app);
+        enqueueDownstreamProcessesLocked(app, worklist, visited);
+
+        final long now = SystemClock.uptimeMillis();
+        boolean propagated = true;
+        for (ProcessRecord pr = worklist.poll(); pr != null; pr = worklist.poll()) {
+            if (pr.isKilledByAm() || pr.getThread() == null) {
+                continue;
+            }
+            final ProcessStateRecord state = pr.mState;
+            if (state.getAdjSeq() == mAdjSeq) {
+                // It has been computed already, as a client of a process visited before it, so
+                // its previous values are gone and whether it changed is unknown; leave it and
+                // the processes it binds to to the regular partial update.
+                mPendingProcessSet.add(pr);
+                propagated = false;
+                break;
+            }
+            // Clients contribute their raw values, not the applied ones, which may have been
+            // clamped (by a max adj, for instance) or deferred, so compare those.
+            final int oldRawAdj = state.getCurRawAdj();
+            final int oldRawProcState = state.getCurRawProcState();
+            final int oldCapability = state.getCurCapability();
+            final boolean oldBoundByNonBgRestricted = state.isCurBoundByNonBgRestrictedApp();
+            final int cachedAdj = oldRawAdj >= CACHED_APP_MIN_ADJ ? oldRawAdj : UNKNOWN_ADJ;
+            state.setContainsCycle(false);
+            state.setProcStateChanged(false);
+            pr.mOptRecord.setLastOomAdjChangeReason(oomAdjReason);
+            performUpdateOomAdjLSP(pr, cachedAdj, topApp, now, oomAdjReason);
+            if (!mProcessesInCycle.isEmpty() || state.getCurRawAdj() == UNKNOWN_ADJ) {
+                // Cycles need to be iterated over, and cached adj slots are assigned across
+                // the whole LRU list; leave both to the regular partial update.
+                mPendingProcessSet.add(pr);
+                for (int i = mProcessesInCycle.size() - 1; i >= 0; i--) {
+                    mPendingProcessSet.add(mProcessesInCycle.valueAt(i));
+                }
+                mProcessesInCycle.clear();
+                propagated = false;
+                break;
+            }
+            if (oldRawAdj != state.getCurRawAdj()
+                    || oldRawProcState != state.getCurRawProcState()
+                    || oldCapability != state.getCurCapability()
+                    || oldBoundByNonBgRestricted != state.isCurBoundByNonBgRestrictedApp()) {
+                enqueueDownstreamProcessesLocked(pr, worklist, visited);
+            }
+        }
+        if (!propagated) {
+            mPendingProcessSet.addAll(worklist);
+        }
+        worklist.clear();
+        visited.clear();
+        return propagated;
+    }
+
+    /**
+     * Adds the processes whose importance may be raised by the given process, that is the
+     * processes hosting the services it binds to and the providers it uses, as well as its SDK
+     * sandboxes, to {@code worklist} unless they have been visited already. It follows the same
+     * edges as {@link #collectReachableProcessesLocked}.
+     */
+    @GuardedBy("mService")
+    private void enqueueDownstreamProcessesLocked(ProcessRecord pr,
+            ArrayDeque<ProcessRecord> worklist, ArraySet<ProcessRecord> visited) {
+        final ProcessServiceRecord psr = pr.mServices;
+        for (int i = psr.numberOfConnections() - 1; i >= 0; i--) {
+            ConnectionRecord cr = psr.getConnectionAt(i);
+            ProcessRecord service = cr.hasFlag(ServiceInfo.FLAG_ISOLATED_PROCESS)
+                    ? cr.binding.service.isolationHostProc : cr.binding.service.app;
+            if (service == null || service == pr || isSystemAdjCapped(service)) {
+                continue;
+            }
+            if (cr.hasFlag(Context.BIND_WAIVE_PRIORITY)
+                    && cr.notHasFlag(Context.BIND_TREAT_LIKE_ACTIVITY
+                    | Context.BIND_ADJUST_WITH_ACTIVITY)) {
+                continue;
+            }
+            if (visited.add(service)) {
+                worklist.offer(service);
+            }
+        }
+        final ProcessProviderRecord ppr = pr.mProviders;
+        for (int i = ppr.numberOfProviderConnections() - 1; i >= 0; i--) {
+            ContentProviderConnection cpc = ppr.getProviderConnectionAt(i);
+            ProcessRecord provider = cpc.provider.proc;
+            if (provider == null || provider == pr || isSystemAdjCapped(provider)) {
+                continue;
+            }
+            if (visited.add(provider)) {
+                worklist.offer(provider);
+            }
+        }
+        final List<ProcessRecord> sdkSandboxes =
+                mProcessList.getSdkSandboxProcessesForAppLocked(pr.uid);
+        final int numSdkSandboxes = sdkSandboxes != null ? sdkSandboxes.size() : 0;
+        for (int i = numSdkSandboxes - 1; i >= 0; i--) {
+            ProcessRecord sdkSandbox = sdkSandboxes.get(i);
+            if (visited.add(sdkSandbox)) {
+                worklist.offer(sdkSandbox);
+            }
+        }
+        if (pr.isSdkSandbox) {
+            for (int is = psr.numberOfRunningServices() - 1; is >= 0; is--) {
+                ServiceRecord s = psr.getRunningServiceAt(is);
+                ArrayMap<IBinder, ArrayList<ConnectionRecord>> serviceConnections =
+                        s.getConnections();
+                for (int conni = serviceConnections.size() - 1; conni >= 0; conni--) {
+                    ArrayList<ConnectionRecord> clist = serviceConnections.valueAt(conni);
+                    for (int i = clist.size() - 1; i >= 0; i--) {
+                        ProcessRecord attributedApp = clist.get(i).binding.attributedClient;
+                        if (attributedApp == null || attributedApp == pr
+                                || isSystemAdjCapped(attributedApp)) {
+                            continue;
+                        }
+                        if (visited.add(attributedApp)) {
+                            worklist.offer(attributedApp);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Whether the process is capped at a system adj, which its clients cannot change. */
+    private static boolean isSystemAdjCapped(ProcessRecord app) {
+        return app.mState.getMaxAdj() >= ProcessList.SYSTEM_ADJ
+                && app.mState.getMaxAdj() < FOREGROUND_APP_ADJ;
+    }
+
     @GuardedBy("mService")
     private boolean collectReachableProcessesLocked(ArraySet<ProcessRecord> apps,
             ArrayList<ProcessRecord> processes, ActiveUids uids) {
@@ -1591,6 +1751,7 @@ public class OomAdjuster {
             }
             mService.mInternal.deletePendingTopUid(uidRec.getUid(), nowElapsed);
         }
+        mActiveUids.publishSnapshotLSP();
         if (mLocalPowerManager != null) {
             mLocalPowerManager.finishUidChanges();
         }
@@ -3447,6 +3608,7 @@ public class OomAdjuster {
                     synchronized (mProcLock) {
                         uidRec.setIdle(true);
                         uidRec.setSetIdle(true);
+                        mActiveUids.publishSnapshotLSP();
                     }
                     mService.doStopUidLocked(uidRec.getUid(), uidRec);
                 } else {
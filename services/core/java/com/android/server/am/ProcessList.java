@@ -3177,6 +3177,7 @@ public final class ProcessList {
                 }
                 uidRec.updateHasInternetPermission();
                 mActiveUids.put(proc.uid, uidRec);
+                mActiveUids.publishSnapshotLSP();
                 EventLogTags.writeAmUidRunning(uidRec.getUid());
                 mService.noteUidProcessState(uidRec.getUid(), uidRec.getCurProcState(),
                         uidRec.getCurCapability());
@@ -3348,6 +3349,7 @@ public final class ProcessList {
                                 UidRecord.CHANGE_GONE | UidRecord.CHANGE_PROCSTATE);
                         EventLogTags.writeAmUidStopped(uid);
                         mActiveUids.remove(uid);
+                        mActiveUids.publishSnapshotLSP();
                         mService.mFgsStartTempAllowList.removeUid(record.info.uid);
                         mService.noteUidProcessState(uid, ActivityManager.PROCESS_STATE_NONEXISTENT,
                                 ActivityManager.PROCESS_CAPABILITY_NONE);
@@ -5084,6 +5086,14 @@ public final class ProcessList {
         return uidRec == null ? PROCESS_CAPABILITY_NONE : uidRec.getCurCapability();
     }
 
+    /**
+     * Returns the last published state of the active uids, for callers that don't hold
+     * the AMS lock or the proc lock.
+     */
+    UidStateSnapshot getUidStateSnapshot() {
+        return mActiveUids.getSnapshot();
+    }
+
     /** Returns the UidRecord for the given uid, if it exists. */
     @GuardedBy(anyOf = {"mService", "mProcLock"})
     UidRecord getUidRecordLOSP(int uid) {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.am;
+
+import static android.app.ActivityManager.PROCESS_CAPABILITY_NONE;
+import static android.app.ActivityManager.PROCESS_STATE_NONEXISTENT;
+
+import android.app.ActivityManager;
+import android.app.ActivityManager.ProcessCapability;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the state of the active uids, published by {@link ActiveUids} whenever
+ * that state is committed. Read-only queries about uids are served from the latest copy without
+ * holding the AMS lock or the proc lock, so they don't wait for an oom adj update to finish.
+ */
+final class UidStateSnapshot {
+    static final UidStateSnapshot EMPTY = new UidStateSnapshot(0);
+
+    /** The active uids, in ascending order. */
+    private final int[] mUids;
+    private final int[] mProcStates;
+    private final int[] mCapabilities;
+    private final boolean[] mActive;
+
+    private UidStateSnapshot(int size) {
+        mUids = new int[size];
+        mProcStates = new int[size];
+        mCapabilities = new int[size];
+        mActive = new boolean[size];
+    }
+
+    /**
+     * Copies the state of the given uids. {@code uids} must be iterated in ascending uid order,
+     * which {@link ActiveUids} guarantees.
+     */
+    static UidStateSnapshot copyOf(ActiveUids uids) {
+        final int size = uids.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+        final UidStateSnapshot snapshot = new UidStateSnapshot(size);
+        for (int i = 0; i < size; i++) {
+            final UidRecord uidRec = uids.valueAt(i);
+            snapshot.mUids[i] = uids.keyAt(i);
+            snapshot.mProcStates[i] = uidRec.getCurProcState();
+            snapshot.mCapabilities[i] = uidRec.getCurCapability();
+            snapshot.mActive[i] = !uidRec.isSetIdle();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the uid's process state or {@link ActivityManager#PROCESS_STATE_NONEXISTENT} if
+     * not running.
+     */
+    int getProcState(int uid) {
+        final int index = Arrays.binarySearch(mUids, uid);
+        return index < 0 ? PROCESS_STATE_NONEXISTENT : mProcStates[index];
+    }
+
+    /**
+     * Returns the uid's process capability or {@link ActivityManager#PROCESS_CAPABILITY_NONE}
+     * if not running.
+     */
+    @ProcessCapability int getCapability(int uid) {
+        final int index = Arrays.binarySearch(mUids, uid);
+        return index < 0 ? PROCESS_CAPABILITY_NONE : mCapabilities[index];
+    }
+
+    /** Returns whether the uid is running and not idle. */
+    boolean isActive(int uid) {
+        final int index = Arrays.binarySearch(mUids, uid);
+        return index >= 0 && mActive[index];
+    }
+}
@@ -19,6 +19,7 @@ package com.android.server.notification;
 import android.app.NotificationHistory;
 import android.app.NotificationHistory.HistoricalNotification;
 import android.os.Handler;
+import android.text.TextUtils;
 import android.util.AtomicFile;
 import android.util.Slog;
 
@@ -33,6 +34,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -63,6 +65,8 @@ public class NotificationHistoryDatabase {
     // List of files holding history information, sorted newest to oldest
     final List<AtomicFile> mHistoryFiles;
     private final File mHistoryDir;
+    // Directory holding the index of each history file, under the same name
+    private final File mIndexDir;
     private final File mVersionFile;
     // Current version of the database files schema
     private int mCurrentVersion;
@@ -77,6 +81,7 @@ public class NotificationHistoryDatabase {
         mFileWriteHandler = fileWriteHandler;
         mVersionFile = new File(dir, "version");
         mHistoryDir = new File(dir, "history");
+        mIndexDir = new File(dir, "history_index");
         mHistoryFiles = new ArrayList<>();
         mBuffer = new NotificationHistory();
         mWriteBufferRunnable = new WriteBufferRunnable();
@@ -88,6 +93,9 @@ public class NotificationHistoryDatabase {
                 if (!mHistoryDir.exists() && !mHistoryDir.mkdir()) {
                     throw new IllegalStateException("could not create history directory");
                 }
+                if (!mIndexDir.exists() && !mIndexDir.mkdir()) {
+                    throw new IllegalStateException("could not create history index directory");
+                }
                 mVersionFile.createNewFile();
             } catch (Exception e) {
                 Slog.e(TAG, "could not create needed files", e);
@@ -113,6 +121,16 @@ public class NotificationHistoryDatabase {
         for (File file : files) {
             mHistoryFiles.add(new AtomicFile(file));
         }
+
+        // Drop the index of any history file that is gone
+        final File[] indexFiles = mIndexDir.listFiles();
+        if (indexFiles != null) {
+            for (File indexFile : indexFiles) {
+                if (!new File(mHistoryDir, indexFile.getName()).exists()) {
+                    indexFile.delete();
+                }
+            }
+        }
     }
 
     private void checkVersionAndBuildLocked() {
@@ -159,6 +177,23 @@ public class NotificationHistoryDatabase {
         mFileWriteHandler.post(rcr);
     }
 
+    /**
+     * Writes the buffered notifications to disk now, if there are any, instead of when the write
+     * scheduled by {@link #addNotification} comes due. This lets the writes of all users be
+     * batched on the schedule of {@link NotificationHistoryJobService}.
+     */
+    void writeBufferedNotifications() {
+        synchronized (mLock) {
+            // Under the lock, so that a write scheduled by a concurrent addNotification is never
+            // left behind to write out an empty buffer.
+            mFileWriteHandler.removeCallbacks(mWriteBufferRunnable);
+            if (mBuffer.getHistoryCount() == 0) {
+                return;
+            }
+            mWriteBufferRunnable.run();
+        }
+    }
+
     public void addNotification(final HistoricalNotification notification) {
         synchronized (mLock) {
             mBuffer.addNewNotificationToWrite(notification);
@@ -193,15 +228,19 @@ public class NotificationHistoryDatabase {
             int maxNotifications) {
         synchronized (mLock) {
             NotificationHistory notifications = new NotificationHistory();
+            final NotificationHistoryFilter filter = new NotificationHistoryFilter.Builder()
+                    .setPackage(packageName)
+                    .setChannel(packageName, channelId)
+                    .setMaxNotifications(maxNotifications)
+                    .build();
 
             for (AtomicFile file : mHistoryFiles) {
                 try {
-                    readLocked(file, notifications,
-                            new NotificationHistoryFilter.Builder()
-                                    .setPackage(packageName)
-                                    .setChannel(packageName, channelId)
-                                    .setMaxNotifications(maxNotifications)
-                                    .build());
+                    // Only decode the matching notifications, if the file has an index
+                    if (TextUtils.isEmpty(packageName)
+                            || !readIndexedLocked(file, notifications, filter)) {
+                        readLocked(file, notifications, filter);
+                    }
                     if (maxNotifications == notifications.getHistoryCount()) {
                         // No need to read any more files
                         break;
@@ -221,8 +260,10 @@ public class NotificationHistoryDatabase {
         synchronized (mLock) {
             for (AtomicFile file : mHistoryFiles) {
                 file.delete();
+                getIndexFile(file).delete();
             }
             mHistoryDir.delete();
+            mIndexDir.delete();
             mHistoryFiles.clear();
         }
     }
@@ -287,21 +328,62 @@ public class NotificationHistoryDatabase {
             Slog.d(TAG, "Removed " + file.getBaseFile().getName());
         }
         file.delete();
+        getIndexFile(file).delete();
         // TODO: delete all relevant bitmaps, once they exist
         removeFilePathFromHistory(file.getBaseFile().getAbsolutePath());
     }
 
     private void writeLocked(AtomicFile file, NotificationHistory notifications)
             throws IOException {
+        // Drop the index first, so that it isn't used if the new index can't be written
+        final AtomicFile indexFile = getIndexFile(file);
+        indexFile.delete();
+        final NotificationHistoryIndex index;
         FileOutputStream fos = file.startWrite();
         try {
-            NotificationHistoryProtoHelper.write(fos, notifications, mCurrentVersion);
+            index = NotificationHistoryProtoHelper.writeIndexed(fos, notifications,
+                    mCurrentVersion);
             file.finishWrite(fos);
             fos = null;
         } finally {
             // When fos is null (successful write), this will no-op
             file.failWrite(fos);
         }
+        try {
+            index.write(indexFile, file.getBaseFile());
+        } catch (IOException e) {
+            // Reads of this file will decode all of it
+            Slog.e(TAG, "Failed to write index of " + file.getBaseFile().getName(), e);
+        }
+    }
+
+    private AtomicFile getIndexFile(AtomicFile file) {
+        return new AtomicFile(new File(mIndexDir, file.getBaseFile().getName()));
+    }
+
+    /**
+     * Reads the notifications of {@code file} matching {@code filter} using the index of the
+     * file, which skips the notifications of other packages and channels.
+     *
+     * @return {@code false} if the file has no up to date index, in which case nothing was read.
+     */
+    private boolean readIndexedLocked(AtomicFile file, NotificationHistory notificationsOut,
+            NotificationHistoryFilter filter) throws IOException {
+        final File historyFile = file.getBaseFile();
+        final NotificationHistoryIndex index = NotificationHistoryIndex.read(
+                getIndexFile(file).getBaseFile(), historyFile);
+        if (index == null) {
+            return false;
+        }
+        final long[] entries = index.getEntries(filter.getPackage(), filter.getChannel());
+        if (entries.length == 0) {
+            return true;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(historyFile, "r")) {
+            NotificationHistoryProtoHelper.read(in, index.headerLength, entries,
+                    notificationsOut, filter);
+        }
+        return true;
     }
 
     private static void readLocked(AtomicFile file, NotificationHistory notificationsOut,
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.notification;
+
+import android.annotation.Nullable;
+import android.app.NotificationHistory.HistoricalNotification;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.LongArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions of the notifications of a history file, by package and channel, which let
+ * filtered reads only decode the matching notifications of the file, and skip files without any
+ * altogether.
+ *
+ * The index is kept in a file of its own and records the length and modification time of the
+ * history file it was built for. It is ignored once the history file changes without it, and
+ * reads then go through the whole history file instead.
+ *
+ * <pre>
+ * int magic, int version, long historyLength, long historyLastModified, int headerLength,
+ * int packageCount, for each package:
+ *     String package, int channelCount, for each channel:
+ *         String channelId, int count, long[count] entries
+ * </pre>
+ *
+ * Each entry holds the offset of an encoded notification in its high 32 bits and its length in
+ * the low 32 bits, so that sorting entries sorts them in file order.
+ */
+final class NotificationHistoryIndex {
+    private static final int MAGIC = 0x4E48494E; // "NHIN"
+    private static final int VERSION = 1;
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
+    private static final long[] NO_ENTRIES = new long[0];
+
+    /** The length of the string pool and other fields before the first notification. */
+    final int headerLength;
+    /** Entries, in file order, by channel id, by package. */
+    private final ArrayMap<String, ArrayMap<String, long[]>> mEntries;
+
+    private NotificationHistoryIndex(int headerLength,
+            ArrayMap<String, ArrayMap<String, long[]>> entries) {
+        this.headerLength = headerLength;
+        mEntries = entries;
+    }
+
+    static long getOffset(long entry) {
+        return entry >>> 32;
+    }
+
+    static int getLength(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Returns the entries of the notifications of {@code packageName}, in file order, optionally
+     * limited to those of channel {@code channelId}.
+     */
+    long[] getEntries(String packageName, @Nullable String channelId) {
+        final ArrayMap<String, long[]> channels = mEntries.get(nonNull(packageName));
+        if (channels == null) {
+            return NO_ENTRIES;
+        }
+        if (!TextUtils.isEmpty(channelId)) {
+            final long[] entries = channels.get(channelId);
+            return entries != null ? entries : NO_ENTRIES;
+        }
+        if (channels.size() == 1) {
+            return channels.valueAt(0);
+        }
+        int count = 0;
+        for (int i = 0; i < channels.size(); i++) {
+            count += channels.valueAt(i).length;
+        }
+        final long[] entries = new long[count];
+        count = 0;
+        for (int i = 0; i < channels.size(); i++) {
+            final long[] channelEntries = channels.valueAt(i);
+            System.arraycopy(channelEntries, 0, entries, count, channelEntries.length);
+            count += channelEntries.length;
+        }
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    /**
+     * Builds the index of {@code history}, the encoded history of {@code notifications}, as
+     * written by {@link NotificationHistoryProtoHelper#write}.
+     */
+    static NotificationHistoryIndex build(byte[] history,
+            List<HistoricalNotification> notifications) throws IOException {
+        final ArrayMap<String, ArrayMap<String, LongArray>> entries = new ArrayMap<>();
+        final int notificationField = (int) NotificationHistoryProto.NOTIFICATION;
+        int headerLength = -1;
+        int notificationIndex = 0;
+        // Walk through the top level fields, without decoding them.
+        final int[] position = new int[1];
+        while (position[0] < history.length) {
+            final int start = position[0];
+            final long tag = readVarint(history, position);
+            final int wireType = (int) (tag & 0x7);
+            switch (wireType) {
+                case WIRE_TYPE_VARINT:
+                    readVarint(history, position);
+                    break;
+                case WIRE_TYPE_FIXED64:
+                    position[0] += 8;
+                    break;
+                case WIRE_TYPE_LENGTH_DELIMITED:
+                    final long length = readVarint(history, position);
+                    position[0] += (int) length;
+                    break;
+                case WIRE_TYPE_FIXED32:
+                    position[0] += 4;
+                    break;
+                default:
+                    throw new IOException("Unexpected wire type " + wireType + " at " + start);
+            }
+            if ((int) (tag >>> 3) != notificationField) {
+                continue;
+            }
+            if (headerLength < 0) {
+                headerLength = start;
+            }
+            if (notificationIndex >= notifications.size()) {
+                throw new IOException("More notifications in history than written");
+            }
+            final HistoricalNotification notification = notifications.get(notificationIndex++);
+            ArrayMap<String, LongArray> channels = entries.get(
+                    nonNull(notification.getPackage()));
+            if (channels == null) {
+                channels = new ArrayMap<>();
+                entries.put(nonNull(notification.getPackage()), channels);
+            }
+            LongArray channelEntries = channels.get(nonNull(notification.getChannelId()));
+            if (channelEntries == null) {
+                channelEntries = new LongArray();
+                channels.put(nonNull(notification.getChannelId()), channelEntries);
+            }
+            channelEntries.add(((long) start << 32) | (position[0] - start));
+        }
+        if (position[0] != history.length) {
+            throw new IOException("Truncated history");
+        }
+
+        final ArrayMap<String, ArrayMap<String, long[]>> index = new ArrayMap<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final ArrayMap<String, LongArray> channels = entries.valueAt(i);
+            final ArrayMap<String, long[]> indexChannels = new ArrayMap<>(channels.size());
+            for (int j = 0; j < channels.size(); j++) {
+                indexChannels.put(channels.keyAt(j), channels.valueAt(j).toArray());
+            }
+            index.put(entries.keyAt(i), indexChannels);
+        }
+        return new NotificationHistoryIndex(headerLength < 0 ? history.length : headerLength,
+                index);
+    }
+
+    /** Writes the index of {@code historyFile}, as it is now, to {@code indexFile}. */
+    void write(AtomicFile indexFile, File historyFile) throws IOException {
+        FileOutputStream fos = indexFile.startWrite();
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(historyFile.length());
+            out.writeLong(historyFile.lastModified());
+            out.writeInt(headerLength);
+            out.writeInt(mEntries.size());
+            for (int i = 0; i < mEntries.size(); i++) {
+                out.writeUTF(mEntries.keyAt(i));
+                final ArrayMap<String, long[]> channels = mEntries.valueAt(i);
+                out.writeInt(channels.size());
+                for (int j = 0; j < channels.size(); j++) {
+                    out.writeUTF(channels.keyAt(j));
+                    final long[] entries = channels.valueAt(j);
+                    out.writeInt(entries.length);
+                    for (long entry : entries) {
+                        out.writeLong(entry);
+                    }
+                }
+            }
+            out.flush();
+            indexFile.finishWrite(fos);
+            fos = null;
+        } finally {
+            // When fos is null (successful write), this will no-op
+            indexFile.failWrite(fos);
+        }
+    }
+
+    /**
+     * Reads the index of {@code historyFile} from {@code indexFile}.
+     *
+     * @return the index, or {@code null} if there is none or it wasn't built for the current
+     *         contents of {@code historyFile}.
+     */
+    static @Nullable NotificationHistoryIndex read(File indexFile, File historyFile)
+            throws IOException {
+        final FileInputStream fis;
+        try {
+            fis = new FileInputStream(indexFile);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != historyFile.length()
+                    || in.readLong() != historyFile.lastModified()) {
+                return null;
+            }
+            final int headerLength = in.readInt();
+            final int packageCount = in.readInt();
+            final ArrayMap<String, ArrayMap<String, long[]>> index =
+                    new ArrayMap<>(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                final String packageName = in.readUTF();
+                final int channelCount = in.readInt();
+                final ArrayMap<String, long[]> channels = new ArrayMap<>(channelCount);
+                for (int j = 0; j < channelCount; j++) {
+                    final String channelId = in.readUTF();
+                    final long[] entries = new long[in.readInt()];
+                    for (int k = 0; k < entries.length; k++) {
+                        entries[k] = in.readLong();
+                    }
+                    channels.put(channelId, entries);
+                }
+                index.put(packageName, channels);
+            }
+            return new NotificationHistoryIndex(headerLength, index);
+        }
+    }
+
+    private static long readVarint(byte[] data, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IOException("Truncated varint");
+            }
+            final byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String nonNull(@Nullable String s) {
+        return s != null ? s : "";
+    }
+}
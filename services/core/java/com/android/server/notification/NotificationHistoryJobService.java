@@ -33,7 +33,7 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * This service runs every twenty minutes to ensure the retention policy for notification history
- * data.
+ * data, and to write the history buffered for all users to disk in one batch.
  */
 public class NotificationHistoryJobService extends JobService {
     private final static String TAG = "NotificationHistoryJob";
@@ -157,6 +157,7 @@ public class NotificationHistoryManager {
     }
 
     public void cleanupHistoryFiles() {
+        final ArrayList<NotificationHistoryDatabase> userHistories = new ArrayList<>();
         synchronized (mLock) {
             int n = mUserUnlockedStates.size();
             for (int i = 0;  i < n; i++) {
@@ -169,9 +170,15 @@ public class NotificationHistoryManager {
                         continue;
                     }
                     userHistory.prune();
+                    userHistories.add(userHistory);
                 }
             }
         }
+        // Write the buffered history of all users in one pass, outside of the lock so that
+        // posting notifications isn't held up by the disk.
+        for (int i = 0; i < userHistories.size(); i++) {
+            userHistories.get(i).writeBufferedNotifications();
+        }
     }
 
     public void deleteNotificationHistoryItem(String pkg, int uid, long postedTime) {
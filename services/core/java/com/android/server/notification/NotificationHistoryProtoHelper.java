@@ -29,6 +29,7 @@ import com.android.server.notification.NotificationHistoryProto.Notification;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -325,7 +326,64 @@ final class NotificationHistoryProtoHelper {
         }
     }
 
+    /**
+     * Reads the notifications of {@code in} with the given index entries, which must be in file
+     * order, without going through the rest of the file.
+     *
+     * @see NotificationHistoryIndex
+     */
+    static void read(RandomAccessFile in, int headerLength, long[] entries,
+            NotificationHistory notifications, NotificationHistoryFilter filter)
+            throws IOException {
+        final byte[] header = new byte[headerLength];
+        in.seek(0);
+        in.readFully(header);
+        final ProtoInputStream headerProto = new ProtoInputStream(header);
+        List<String> stringPool = new ArrayList<>();
+        boolean readHeader = false;
+        while (!readHeader) {
+            switch (headerProto.nextField()) {
+                case (int) NotificationHistoryProto.STRING_POOL:
+                    stringPool = readStringPool(headerProto);
+                    break;
+                case ProtoInputStream.NO_MORE_FIELDS:
+                    readHeader = true;
+                    break;
+            }
+        }
+
+        for (long entry : entries) {
+            if (!filter.matchesCountFilter(notifications)) {
+                break;
+            }
+            final byte[] data = new byte[NotificationHistoryIndex.getLength(entry)];
+            in.seek(NotificationHistoryIndex.getOffset(entry));
+            in.readFully(data);
+            final ProtoInputStream proto = new ProtoInputStream(data);
+            if (proto.nextField() == (int) NotificationHistoryProto.NOTIFICATION) {
+                readNotification(proto, stringPool, notifications, filter);
+            }
+        }
+        notifications.poolStringsFromNotifications();
+    }
+
     public static void write(OutputStream out, NotificationHistory notifications, int version) {
+        writeProto(out, notifications, version);
+    }
+
+    /**
+     * Same as {@link #write(OutputStream, NotificationHistory, int)}, and returns the index of
+     * what was written.
+     */
+    static NotificationHistoryIndex writeIndexed(OutputStream out,
+            NotificationHistory notifications, int version) throws IOException {
+        final ProtoOutputStream proto = writeProto(out, notifications, version);
+        return NotificationHistoryIndex.build(proto.getBytes(),
+                notifications.getNotificationsToWrite());
+    }
+
+    private static ProtoOutputStream writeProto(OutputStream out,
+            NotificationHistory notifications, int version) {
         final ProtoOutputStream proto = new ProtoOutputStream(out);
         proto.write(NotificationHistoryProto.MAJOR_VERSION, version);
         // String pool should be written before the history itself
@@ -339,5 +397,6 @@ final class NotificationHistoryProtoHelper {
         }
 
         proto.flush();
+        return proto;
     }
 }
@@ -22,6 +22,7 @@ import static com.android.server.pm.KnownPackages.LAST_KNOWN_PACKAGE;
 import static com.android.server.pm.PackageManagerServiceUtils.dumpCriticalInfo;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.ComponentName;
 import android.content.pm.FeatureInfo;
 import android.content.pm.PackageManager;
@@ -62,6 +63,8 @@ final class DumpHelper {
     private final ArraySet<String> mProtectedBroadcasts;
     private final PerUidReadTimeouts[] mPerUidReadTimeouts;
     private final SnapshotStatistics mSnapshotStatistics;
+    @Nullable
+    private final InitAppsHelper mInitAppsHelper;
 
     DumpHelper(
             PermissionManagerServiceInternal permissionManager,
@@ -73,7 +76,8 @@ final class DumpHelper {
             ArrayMap<String, FeatureInfo> availableFeatures,
             ArraySet<String> protectedBroadcasts,
             PerUidReadTimeouts[] perUidReadTimeouts,
-            SnapshotStatistics snapshotStatistics) {
+            SnapshotStatistics snapshotStatistics,
+            @Nullable InitAppsHelper initAppsHelper) {
         mPermissionManager = permissionManager;
         mStorageEventHelper = storageEventHelper;
         mDomainVerificationManager = domainVerificationManager;
@@ -85,6 +89,7 @@ final class DumpHelper {
         mProtectedBroadcasts = protectedBroadcasts;
         mPerUidReadTimeouts = perUidReadTimeouts;
         mSnapshotStatistics = snapshotStatistics;
+        mInitAppsHelper = initAppsHelper;
     }
 
     @NeverCompile // Avoid size overhead of debugging code.
@@ -266,6 +271,8 @@ final class DumpHelper {
                 }
             } else if ("protected-broadcasts".equals(cmd)) {
                 dumpState.setDump(DumpState.DUMP_PROTECTED_BROADCASTS);
+            } else if ("parsing".equals(cmd)) {
+                dumpState.setDump(DumpState.DUMP_PACKAGE_PARSING);
             }
         }
 
@@ -609,6 +616,17 @@ final class DumpHelper {
             }
 
         }
+
+        if (!checkin
+                && dumpState.isDumping(DumpState.DUMP_PACKAGE_PARSING)
+                && packageName == null
+                && mInitAppsHelper != null) {
+            if (dumpState.onTitlePrinted()) {
+                pw.println();
+            }
+            pw.println("Boot package parsing:");
+            mInitAppsHelper.dumpParseStats(pw, "  ");
+        }
     }
 
     private void printHelp(PrintWriter pw) {
@@ -647,6 +665,7 @@ final class DumpHelper {
         pw.println("    snapshot: dump snapshot statistics");
         pw.println("    protected-broadcasts: print list of protected broadcast actions");
         pw.println("    known-packages: dump known packages");
+        pw.println("    parsing: dump boot package parsing statistics");
         pw.println("    <package.name>: info about given package");
     }
 
@@ -47,13 +47,14 @@ public final class DumpState {
     public static final int DUMP_PER_UID_READ_TIMEOUTS = 1 << 28;
     public static final int DUMP_SNAPSHOT_STATISTICS = 1 << 29;
     public static final int DUMP_PROTECTED_BROADCASTS = 1 << 30;
+    public static final long DUMP_PACKAGE_PARSING = 1L << 31;
 
     public static final int OPTION_SHOW_FILTERS = 1 << 0;
     public static final int OPTION_DUMP_ALL_COMPONENTS = 1 << 1;
     public static final int OPTION_SKIP_PERMISSIONS = 1 << 2;
     public static final int OPTION_INCLUDE_APEX = 1 << 3;
 
-    private int mTypes;
+    private long mTypes;
 
     private int mOptions;
 
@@ -66,7 +67,7 @@ public final class DumpState {
 
     private SharedUserSetting mSharedUser;
 
-    public boolean isDumping(int type) {
+    public boolean isDumping(long type) {
         if (mTypes == 0 && type != DUMP_PREFERRED_XML) {
             return true;
         }
@@ -74,7 +75,7 @@ public final class DumpState {
         return (mTypes & type) != 0;
     }
 
-    public void setDump(int type) {
+    public void setDump(long type) {
         mTypes |= type;
     }
 
@@ -41,6 +41,7 @@ import android.system.ErrnoException;
 import android.system.Os;
 import android.util.ArrayMap;
 import android.util.EventLog;
+import android.util.Pair;
 import android.util.Slog;
 
 import com.android.internal.annotations.GuardedBy;
@@ -55,6 +56,7 @@ import com.android.server.pm.pkg.parsing.ParsingPackageUtils;
 import com.android.server.utils.WatchedArrayMap;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
@@ -95,6 +97,11 @@ final class InitAppsHelper {
     // partition or be disabled.
     private final List<String> mStubSystemApps = new ArrayList<>();
 
+    /** The parse timing of every directory scanned during boot, in scan order. */
+    @GuardedBy("mScanStats")
+    private final List<Pair<File, ParallelPackageParser.ParseStats>> mScanStats =
+            new ArrayList<>();
+
     // TODO(b/198166813): remove PMS dependency
     InitAppsHelper(PackageManagerService pm, ApexManager apexManager,
             InstallPackageHelper installPackageHelper,
@@ -372,8 +379,14 @@ final class InitAppsHelper {
                 // when scanning apk in apexes, we want to check the maxSdkVersion
                 parseFlags |= PARSE_APK_IN_APEX;
             }
-            mInstallPackageHelper.installPackagesFromDir(scanDir, parseFlags,
-                    scanFlags, packageParser, executorService, apexInfo);
+            final ParallelPackageParser.ParseStats stats =
+                    mInstallPackageHelper.installPackagesFromDir(scanDir, parseFlags,
+                            scanFlags, packageParser, executorService, apexInfo);
+            if (stats != null) {
+                synchronized (mScanStats) {
+                    mScanStats.add(Pair.create(scanDir, stats));
+                }
+            }
         } finally {
             Trace.traceEnd(TRACE_TAG_PACKAGE_MANAGER);
         }
@@ -391,4 +404,22 @@ final class InitAppsHelper {
     public int getSystemScanFlags() {
         return mSystemScanFlags;
     }
+
+    /**
+     * Dumps the parse timing of the directories scanned during boot.
+     */
+    public void dumpParseStats(PrintWriter pw, String prefix) {
+        pw.print(prefix);
+        pw.print("threads=");
+        pw.println(ParallelPackageParser.getThreadCount());
+        synchronized (mScanStats) {
+            for (int i = 0; i < mScanStats.size(); i++) {
+                final Pair<File, ParallelPackageParser.ParseStats> entry = mScanStats.get(i);
+                pw.print(prefix);
+                pw.print(entry.first);
+                pw.print(": ");
+                entry.second.dump(pw);
+            }
+        }
+    }
 }
@@ -3692,14 +3692,20 @@ final class InstallPackageHelper {
         return results;
     }
 
+    /**
+     * Parses and installs every package in {@code scanDir}.
+     *
+     * @return the parse timing of the directory, or null if it holds no packages
+     */
     @GuardedBy({"mPm.mInstallLock", "mPm.mLock"})
-    public void installPackagesFromDir(File scanDir, int parseFlags,
+    @Nullable
+    public ParallelPackageParser.ParseStats installPackagesFromDir(File scanDir, int parseFlags,
             int scanFlags, PackageParser2 packageParser, ExecutorService executorService,
             @Nullable ApexManager.ActiveApexInfo apexInfo) {
         final File[] files = scanDir.listFiles();
         if (ArrayUtils.isEmpty(files)) {
             Log.d(TAG, "No files in app dir " + scanDir);
-            return;
+            return null;
         }
 
         if (DEBUG_PACKAGE_SCANNING) {
@@ -3709,8 +3715,8 @@ final class InstallPackageHelper {
         ParallelPackageParser parallelPackageParser =
                 new ParallelPackageParser(packageParser, executorService);
 
-        // Submit files for parsing in parallel
-        int fileCount = 0;
+        // Submit files for parsing in parallel, largest first
+        final List<File> packageFiles = new ArrayList<>(files.length);
         for (File file : files) {
             final boolean isPackage = (isApkFile(file) || file.isDirectory())
                     && !PackageInstallerService.isStageName(file.getName());
@@ -3723,9 +3729,10 @@ final class InstallPackageHelper {
                 Log.w(TAG, "Dropping cache of " + file.getAbsolutePath());
                 cacher.cleanCachedResult(file);
             }
-            parallelPackageParser.submit(file, parseFlags);
-            fileCount++;
+            packageFiles.add(file);
         }
+        parallelPackageParser.submitLargestFirst(packageFiles, parseFlags);
+        int fileCount = packageFiles.size();
 
         // Process results one by one
         for (; fileCount > 0; fileCount--) {
@@ -3765,6 +3772,7 @@ final class InstallPackageHelper {
                 mRemovePackageHelper.removeCodePath(parseResult.scanFile);
             }
         }
+        return packageFiles.isEmpty() ? null : parallelPackageParser.getStats();
     }
 
     /**
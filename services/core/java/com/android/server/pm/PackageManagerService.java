@@ -2141,6 +2141,9 @@ public class PackageManagerService implements PackageSender, TestUtilityService
             mOverlayConfig = mInitAppsHelper.initSystemApps(packageParser, packageSettings, userIds,
                     startTime);
             mInitAppsHelper.initNonSystemApps(packageParser, userIds, startTime);
+            t.traceBegin("write package cache index");
+            packageParser.writeCacheIndex(t);
+            t.traceEnd();
             packageParser.close();
 
             mRequiredVerifierPackages = getRequiredButNotReallyRequiredVerifiersLPr(computer);
@@ -6476,7 +6479,7 @@ public class PackageManagerService implements PackageSender, TestUtilityService
             new DumpHelper(mPermissionManager, mStorageEventHelper,
                     mDomainVerificationManager, mInstallerService, mRequiredVerifierPackages,
                     knownPackages, mChangedPackagesTracker, availableFeatures, protectedBroadcasts,
-                    getPerUidReadTimeouts(snapshot), mSnapshotStatistics
+                    getPerUidReadTimeouts(snapshot), mSnapshotStatistics, mInitAppsHelper
             ).doDump(snapshot, fd, pw, args);
         }
 
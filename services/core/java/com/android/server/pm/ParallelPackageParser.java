@@ -18,35 +18,53 @@ package com.android.server.pm;
 
 import static android.os.Trace.TRACE_TAG_PACKAGE_MANAGER;
 
+import android.content.pm.parsing.ApkLiteParseUtils;
 import android.os.Process;
+import android.os.SystemClock;
 import android.os.Trace;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ConcurrentUtils;
 import com.android.server.pm.parsing.PackageParser2;
 import com.android.server.pm.parsing.pkg.ParsedPackage;
 
 import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 
 /**
  * Helper class for parallel parsing of packages using {@link PackageParser2}.
- * <p>Parsing requests are processed by a thread-pool of {@link #MAX_THREADS}.
+ * <p>Parsing requests are processed by a thread-pool of {@link #getThreadCount()} threads.
  * At any time, at most {@link #QUEUE_CAPACITY} results are kept in RAM</p>
  */
 class ParallelPackageParser {
 
     private static final int QUEUE_CAPACITY = 30;
-    private static final int MAX_THREADS = 4;
+    private static final int MIN_THREADS = 2;
+    private static final int MAX_THREADS = 8;
 
     private volatile String mInterruptedInThread;
 
     private final BlockingQueue<ParseResult> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
 
+    /**
+     * Returns the number of parsing threads, which follows the number of online cores but is
+     * capped to bound the memory held by in-flight parse results.
+     */
+    static int getThreadCount() {
+        return Math.max(MIN_THREADS,
+                Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
     static ExecutorService makeExecutorService() {
-        return ConcurrentUtils.newFixedThreadPool(MAX_THREADS, "package-parsing-thread",
+        return ConcurrentUtils.newFixedThreadPool(getThreadCount(), "package-parsing-thread",
                 Process.THREAD_PRIORITY_FOREGROUND);
     }
 
@@ -54,11 +72,69 @@ class ParallelPackageParser {
 
     private final ExecutorService mExecutorService;
 
+    private final Object mStatsLock = new Object();
+
+    @GuardedBy("mStatsLock")
+    private final ParseStats mStats = new ParseStats();
+
     ParallelPackageParser(PackageParser2 packageParser, ExecutorService executorService) {
         mPackageParser = packageParser;
         mExecutorService = executorService;
     }
 
+    /**
+     * Timing of the packages parsed by one {@link ParallelPackageParser}.
+     */
+    static class ParseStats {
+        int count;
+        long firstSubmitTime = -1; // Uptime of the first submission
+        long totalParseTime; // Sum of the time spent parsing each package
+        long maxParseTime; // Longest time spent parsing a single package
+        File maxParseFile; // The package that took the longest to parse
+        long[] completionTimes = new long[16]; // Uptime at which each package finished parsing
+
+        /**
+         * Returns the time from the first submission until the last package finished parsing.
+         */
+        long getWallTime() {
+            return count == 0 ? 0 : completionTimes[count - 1] - firstSubmitTime;
+        }
+
+        /**
+         * Returns the time during which the parsing threads were no longer all busy, that is
+         * from the moment fewer packages than threads remained until the last one finished.
+         */
+        long getTailTime() {
+            if (count == 0) {
+                return 0;
+            }
+            final long[] times = Arrays.copyOf(completionTimes, count);
+            Arrays.sort(times);
+            final int tailStart = Math.max(0, count - getThreadCount());
+            return times[count - 1] - (tailStart == 0 ? firstSubmitTime : times[tailStart - 1]);
+        }
+
+        void dump(PrintWriter pw) {
+            pw.print("packages=");
+            pw.print(count);
+            pw.print(" wall=");
+            pw.print(getWallTime());
+            pw.print("ms parse=");
+            pw.print(totalParseTime);
+            pw.print("ms tail=");
+            pw.print(getTailTime());
+            pw.print("ms max=");
+            pw.print(maxParseTime);
+            pw.print("ms");
+            if (maxParseFile != null) {
+                pw.print(" (");
+                pw.print(maxParseFile);
+                pw.print(")");
+            }
+            pw.println();
+        }
+    }
+
     static class ParseResult {
 
         ParsedPackage parsedPackage; // Parsed package
@@ -93,15 +169,72 @@ class ParallelPackageParser {
         }
     }
 
+    /**
+     * Submits the files for parsing, largest first, so that the biggest packages do not end
+     * up serializing the tail of the scan behind an otherwise idle thread pool.
+     * @param scanFiles files to scan
+     * @param parseFlags parse flags
+     */
+    public void submitLargestFirst(List<File> scanFiles, int parseFlags) {
+        final int count = scanFiles.size();
+        final List<SizedFile> sized = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final File file = scanFiles.get(i);
+            sized.add(new SizedFile(file, estimateSize(file)));
+        }
+        sized.sort(Comparator.comparingLong((SizedFile p) -> p.size).reversed());
+        for (int i = 0; i < count; i++) {
+            submit(sized.get(i).file, parseFlags);
+        }
+    }
+
+    private static final class SizedFile {
+        final File file;
+        final long size;
+
+        SizedFile(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Returns the size of the package at {@code file}: the file size of an APK, or the sum of
+     * the APKs directly within a cluster package directory. Subdirectories such as oat/ and lib/
+     * aren't parsed, so they aren't counted.
+     */
+    @VisibleForTesting
+    static long estimateSize(File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long size = 0;
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                if (ApkLiteParseUtils.isApkFile(child)) {
+                    size += child.length();
+                }
+            }
+        }
+        return size;
+    }
+
     /**
      * Submits the file for parsing
      * @param scanFile file to scan
      * @param parseFlags parse flags
      */
     public void submit(File scanFile, int parseFlags) {
+        synchronized (mStatsLock) {
+            if (mStats.firstSubmitTime < 0) {
+                mStats.firstSubmitTime = SystemClock.uptimeMillis();
+            }
+        }
         mExecutorService.submit(() -> {
             ParseResult pr = new ParseResult();
             Trace.traceBegin(TRACE_TAG_PACKAGE_MANAGER, "parallel parsePackage [" + scanFile + "]");
+            final long startTime = SystemClock.uptimeMillis();
             try {
                 pr.scanFile = scanFile;
                 pr.parsedPackage = parsePackage(scanFile, parseFlags);
@@ -110,6 +243,7 @@ class ParallelPackageParser {
             } finally {
                 Trace.traceEnd(TRACE_TAG_PACKAGE_MANAGER);
             }
+            recordParsed(scanFile, startTime, SystemClock.uptimeMillis());
             try {
                 mQueue.put(pr);
             } catch (InterruptedException e) {
@@ -122,6 +256,39 @@ class ParallelPackageParser {
         });
     }
 
+    private void recordParsed(File scanFile, long startTime, long endTime) {
+        synchronized (mStatsLock) {
+            final ParseStats stats = mStats;
+            if (stats.count == stats.completionTimes.length) {
+                stats.completionTimes = Arrays.copyOf(stats.completionTimes, stats.count * 2);
+            }
+            stats.completionTimes[stats.count++] = endTime;
+            final long parseTime = endTime - startTime;
+            stats.totalParseTime += parseTime;
+            if (parseTime > stats.maxParseTime || stats.maxParseFile == null) {
+                stats.maxParseTime = parseTime;
+                stats.maxParseFile = scanFile;
+            }
+        }
+    }
+
+    /**
+     * Returns the timing of the packages parsed so far.  This is expected to be called once
+     * every submitted package has been taken.
+     */
+    ParseStats getStats() {
+        synchronized (mStatsLock) {
+            final ParseStats stats = new ParseStats();
+            stats.count = mStats.count;
+            stats.firstSubmitTime = mStats.firstSubmitTime;
+            stats.totalParseTime = mStats.totalParseTime;
+            stats.maxParseTime = mStats.maxParseTime;
+            stats.maxParseFile = mStats.maxParseFile;
+            stats.completionTimes = Arrays.copyOf(mStats.completionTimes, mStats.count);
+            return stats;
+        }
+    }
+
     @VisibleForTesting
     protected ParsedPackage parsePackage(File scanFile, int parseFlags)
             throws PackageManagerException {
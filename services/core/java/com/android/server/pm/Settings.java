@@ -414,7 +414,9 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
     // List of replaced system applications
     @Watched
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PRIVATE)
-    final WatchedArrayMap<String, PackageSetting> mDisabledSysPackages = new WatchedArrayMap<>();
+    final WatchedArrayMap<String, PackageSetting> mDisabledSysPackages;
+    private final SnapshotCache<WatchedArrayMap<String, PackageSetting>>
+            mDisabledSysPackagesSnapshot;
 
     /** List of packages that are blocked for uninstall for specific users */
     @Watched
@@ -498,7 +500,8 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
             mCrossProfileIntentResolversSnapshot;
 
     @Watched
-    final WatchedArrayMap<String, SharedUserSetting> mSharedUsers = new WatchedArrayMap<>();
+    final WatchedArrayMap<String, SharedUserSetting> mSharedUsers;
+    private final SnapshotCache<WatchedArrayMap<String, SharedUserSetting>> mSharedUsersSnapshot;
     @Watched(manual = true)
     private final AppIdSettingMap mAppIds;
 
@@ -516,8 +519,8 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
     // names.  The packages appear everywhere else under their original
     // names.
     @Watched
-    private final WatchedArrayMap<String, String> mRenamedPackages =
-            new WatchedArrayMap<String, String>();
+    private final WatchedArrayMap<String, String> mRenamedPackages;
+    private final SnapshotCache<WatchedArrayMap<String, String>> mRenamedPackagesSnapshot;
 
     // For every user, it is used to find the package name of the default browser app pending to be
     // applied, either on first boot after upgrade, or after backup & restore but before app is
@@ -635,6 +638,15 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
         mPendingPackages = new WatchedArrayList<>();
         mPendingPackagesSnapshot = new SnapshotCache.Auto<>(mPendingPackages, mPendingPackages,
                 "Settings.mPendingPackages");
+        mDisabledSysPackages = new WatchedArrayMap<>();
+        mDisabledSysPackagesSnapshot = new SnapshotCache.Auto<>(mDisabledSysPackages,
+                mDisabledSysPackages, "Settings.mDisabledSysPackages");
+        mSharedUsers = new WatchedArrayMap<>();
+        mSharedUsersSnapshot = new SnapshotCache.Auto<>(mSharedUsers, mSharedUsers,
+                "Settings.mSharedUsers");
+        mRenamedPackages = new WatchedArrayMap<>();
+        mRenamedPackagesSnapshot = new SnapshotCache.Auto<>(mRenamedPackages, mRenamedPackages,
+                "Settings.mRenamedPackages");
         mKeySetManagerService = new KeySetManagerService(mPackages);
 
         // Test-only handler working on background thread.
@@ -696,6 +708,15 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
         mPendingPackages = new WatchedArrayList<>();
         mPendingPackagesSnapshot = new SnapshotCache.Auto<>(mPendingPackages, mPendingPackages,
                 "Settings.mPendingPackages");
+        mDisabledSysPackages = new WatchedArrayMap<>();
+        mDisabledSysPackagesSnapshot = new SnapshotCache.Auto<>(mDisabledSysPackages,
+                mDisabledSysPackages, "Settings.mDisabledSysPackages");
+        mSharedUsers = new WatchedArrayMap<>();
+        mSharedUsersSnapshot = new SnapshotCache.Auto<>(mSharedUsers, mSharedUsers,
+                "Settings.mSharedUsers");
+        mRenamedPackages = new WatchedArrayMap<>();
+        mRenamedPackagesSnapshot = new SnapshotCache.Auto<>(mRenamedPackages, mRenamedPackages,
+                "Settings.mRenamedPackages");
         mKeySetManagerService = new KeySetManagerService(mPackages);
 
         mHandler = handler;
@@ -770,7 +791,8 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
 
         mDomainVerificationManager = r.mDomainVerificationManager;
 
-        mDisabledSysPackages.snapshot(r.mDisabledSysPackages);
+        mDisabledSysPackages = r.mDisabledSysPackagesSnapshot.snapshot();
+        mDisabledSysPackagesSnapshot = new SnapshotCache.Sealed<>();
         mBlockUninstallPackages.snapshot(r.mBlockUninstallPackages);
         mVersion.putAll(r.mVersion);
         mVerifierDeviceIdentity = r.mVerifierDeviceIdentity;
@@ -781,7 +803,8 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
         mCrossProfileIntentResolvers = r.mCrossProfileIntentResolversSnapshot.snapshot();
         mCrossProfileIntentResolversSnapshot = new SnapshotCache.Sealed<>();
 
-        mSharedUsers.snapshot(r.mSharedUsers);
+        mSharedUsers = r.mSharedUsersSnapshot.snapshot();
+        mSharedUsersSnapshot = new SnapshotCache.Sealed<>();
         mAppIds = r.mAppIds.snapshot();
 
         mPastSignatures = r.mPastSignaturesSnapshot.snapshot();
@@ -789,7 +812,8 @@ public final class Settings implements Watchable, Snappable, ResilientAtomicFile
         mKeySetRefs = r.mKeySetRefsSnapshot.snapshot();
         mKeySetRefsSnapshot = new SnapshotCache.Sealed<>();
 
-        mRenamedPackages.snapshot(r.mRenamedPackages);
+        mRenamedPackages = r.mRenamedPackagesSnapshot.snapshot();
+        mRenamedPackagesSnapshot = new SnapshotCache.Sealed<>();
         mNextAppLinkGeneration.snapshot(r.mNextAppLinkGeneration);
         mPendingDefaultBrowser.snapshot(r.mPendingDefaultBrowser);
         // mReadMessages
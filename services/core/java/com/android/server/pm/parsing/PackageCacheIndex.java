@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.pm.parsing;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.AtomicFile;
+import android.util.Slog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single file that packs the entries written by {@link PackageCacher}.  For every cache key
+ * the index records the mtime of the package file at the time the cache entry was known to be
+ * up to date, followed by the cache entry itself.  A lookup that finds a matching mtime is served
+ * from the index, without opening, stat'ing or reading the per-package cache file.
+ *
+ * The index is read through a read-only memory mapping and searched in place.  Entries that are
+ * used while it is live are collected and written back as a new index by {@link #write()}, so
+ * entries for packages that are no longer scanned drop out of the index.  Entries that were not
+ * served from the index are copied from their per-package cache files at that point.
+ *
+ * The per-package cache files stay the source of truth: anything that invalidates one of them
+ * outside of a boot scan deletes the index through {@link #delete(File)}.
+ *
+ * <pre>
+ * header:  int magic, int version, int count
+ * offsets: int[count], the position of each record, sorted by key
+ * record:  short keyLength, byte[keyLength] key (UTF-8), long packageMtime, int entryLength,
+ *          byte[entryLength] entry
+ * </pre>
+ */
+class PackageCacheIndex {
+
+    private static final String TAG = "PackageCacheIndex";
+
+    /** The index file name.  It cannot collide with a cache key, which never starts with '.'. */
+    static final String INDEX_FILE_NAME = ".index";
+
+    private static final int MAGIC = 0x50434958;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    private static final class Entry {
+        final byte[] mKey;
+        final long mPackageMtime;
+        final int mLength;
+        /** The position of the entry in the mapped index, or -1 if it isn't in there. */
+        final int mMappedPosition;
+
+        Entry(byte[] key, long packageMtime, int length, int mappedPosition) {
+            mKey = key;
+            mPackageMtime = packageMtime;
+            mLength = length;
+            mMappedPosition = mappedPosition;
+        }
+    }
+
+    @NonNull
+    private final File mCacheDir;
+
+    @NonNull
+    private final AtomicFile mFile;
+
+    /** The mapped index, or null if there is no usable index on disk. */
+    @Nullable
+    private final ByteBuffer mBuffer;
+
+    private final int mCount;
+
+    /** The entries that will be persisted by the next {@link #write()}. */
+    private final Map<String, Entry> mPending = new ConcurrentHashMap<>();
+
+    PackageCacheIndex(@NonNull File cacheDir) {
+        mCacheDir = cacheDir;
+        mFile = new AtomicFile(new File(cacheDir, INDEX_FILE_NAME));
+        ByteBuffer buffer = map(mFile.getBaseFile());
+        int count = 0;
+        if (buffer != null) {
+            count = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || count < 0
+                    || HEADER_SIZE + (long) count * Integer.BYTES > buffer.capacity()) {
+                Slog.w(TAG, "Ignoring malformed package cache index");
+                buffer = null;
+                count = 0;
+            }
+        }
+        mBuffer = buffer;
+        mCount = count;
+    }
+
+    @Nullable
+    private static ByteBuffer map(@NonNull File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            Slog.w(TAG, "Unable to map package cache index", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the index in {@code cacheDir}, so that the next boot reads every cache entry from
+     * its per-package cache file again.
+     */
+    static void delete(@NonNull File cacheDir) {
+        new AtomicFile(new File(cacheDir, INDEX_FILE_NAME)).delete();
+    }
+
+    /**
+     * Returns the cache entry for {@code cacheKey}, or null if the index holds no entry for it or
+     * the entry was recorded for a different package mtime.
+     */
+    @Nullable
+    byte[] getEntry(@NonNull String cacheKey, long packageMtime) {
+        final int position = findEntry(cacheKey.getBytes(StandardCharsets.UTF_8), packageMtime);
+        if (position < 0) {
+            return null;
+        }
+        try {
+            final int length = mBuffer.getInt(position - Integer.BYTES);
+            final byte[] bytes = new byte[length];
+            // A duplicate has its own position, so lookups can run concurrently.
+            final ByteBuffer entry = mBuffer.duplicate();
+            entry.position(position);
+            entry.get(bytes);
+            return bytes;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException
+                | BufferUnderflowException | NegativeArraySizeException e) {
+            Slog.w(TAG, "Truncated package cache index", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the position of the cache entry for {@code key} in the mapped index, which is
+     * preceded by its length, or -1 if the index holds no entry for it or the entry was recorded
+     * for a different package mtime.
+     */
+    private int findEntry(@NonNull byte[] key, long packageMtime) {
+        final ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            return -1;
+        }
+        try {
+            int lo = 0;
+            int hi = mCount - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int record = buffer.getInt(HEADER_SIZE + mid * Integer.BYTES);
+                final int cmp = compareKey(buffer, record, key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    final int data = record + Short.BYTES + key.length;
+                    if (buffer.getLong(data) != packageMtime) {
+                        return -1;
+                    }
+                    return data + Long.BYTES + Integer.BYTES;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            Slog.w(TAG, "Truncated package cache index", e);
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the key of the record at {@code record} with {@code key}, using the unsigned byte
+     * ordering the index is sorted by.
+     */
+    private static int compareKey(@NonNull ByteBuffer buffer, int record, @NonNull byte[] key) {
+        final int length = buffer.getShort(record) & 0xffff;
+        final int start = record + Short.BYTES;
+        final int end = Math.min(length, key.length);
+        for (int i = 0; i < end; i++) {
+            final int cmp = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int compareKeys(@NonNull byte[] l, @NonNull byte[] r) {
+        final int end = Math.min(l.length, r.length);
+        for (int i = 0; i < end; i++) {
+            final int cmp = Integer.compare(l[i] & 0xff, r[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(l.length, r.length);
+    }
+
+    /**
+     * Records that the per-package cache file for {@code cacheKey}, {@code length} bytes long,
+     * is up to date with respect to a package file whose mtime is {@code packageMtime}.  The
+     * next {@link #write()} copies it into the index.
+     */
+    void record(@NonNull String cacheKey, long packageMtime, int length) {
+        mPending.put(cacheKey, new Entry(cacheKey.getBytes(StandardCharsets.UTF_8),
+                packageMtime, length, -1 /* mappedPosition */));
+    }
+
+    /**
+     * Records that the entry {@link #getEntry} returned for {@code cacheKey} and
+     * {@code packageMtime} was used, so the next {@link #write()} keeps it.
+     */
+    void keep(@NonNull String cacheKey, long packageMtime) {
+        final byte[] key = cacheKey.getBytes(StandardCharsets.UTF_8);
+        final int position = findEntry(key, packageMtime);
+        if (position >= 0) {
+            mPending.put(cacheKey, new Entry(key, packageMtime,
+                    mBuffer.getInt(position - Integer.BYTES), position));
+        }
+    }
+
+    /**
+     * Writes every entry recorded since this index was loaded as the new index file, unless
+     * they are exactly the entries of the current one.
+     *
+     * @return whether a new index file was written
+     */
+    boolean write() {
+        final Entry[] entries = mPending.values().toArray(new Entry[0]);
+        boolean changed = mBuffer == null || entries.length != mCount;
+        for (int i = 0; i < entries.length && !changed; i++) {
+            changed = entries[i].mMappedPosition < 0;
+        }
+        if (!changed) {
+            return false;
+        }
+        Arrays.sort(entries, (l, r) -> compareKeys(l.mKey, r.mKey));
+
+        // Entries whose per-package cache file is gone or was rewritten since are left out.
+        int count = 0;
+        for (int i = 0; i < entries.length; i++) {
+            final Entry entry = entries[i];
+            if (entry.mMappedPosition < 0
+                    && getCacheFile(entry).length() != entry.mLength) {
+                entries[i] = null;
+            } else {
+                count++;
+            }
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            long offset = HEADER_SIZE + (long) count * Integer.BYTES;
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    if (offset > Integer.MAX_VALUE) {
+                        throw new IOException("Package cache index too large");
+                    }
+                    out.writeInt((int) offset);
+                    offset += Short.BYTES + entry.mKey.length + Long.BYTES + Integer.BYTES
+                            + entry.mLength;
+                }
+            }
+            final ByteBuffer mapped = mBuffer != null ? mBuffer.duplicate() : null;
+            final byte[] copy = new byte[64 * 1024];
+            for (Entry entry : entries) {
+                if (entry == null) {
+                    continue;
+                }
+                out.writeShort(entry.mKey.length);
+                out.write(entry.mKey);
+                out.writeLong(entry.mPackageMtime);
+                out.writeInt(entry.mLength);
+                if (entry.mMappedPosition >= 0) {
+                    mapped.position(entry.mMappedPosition);
+                    for (int left = entry.mLength; left > 0; ) {
+                        final int chunk = Math.min(left, copy.length);
+                        mapped.get(copy, 0, chunk);
+                        out.write(copy, 0, chunk);
+                        left -= chunk;
+                    }
+                } else {
+                    final byte[] bytes = readCacheFile(getCacheFile(entry), entry.mLength);
+                    if (bytes == null) {
+                        throw new IOException("Package cache entry changed: "
+                                + getCacheFile(entry));
+                    }
+                    out.write(bytes);
+                }
+            }
+            out.flush();
+            mFile.finishWrite(fos);
+            return true;
+        } catch (IOException e) {
+            Slog.w(TAG, "Unable to write package cache index", e);
+            mFile.failWrite(fos);
+            return false;
+        }
+    }
+
+    @NonNull
+    private File getCacheFile(@NonNull Entry entry) {
+        return new File(mCacheDir, new String(entry.mKey, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads {@code cacheFile}, expecting it to be exactly {@code length} bytes long.  Returns
+     * null if the file is missing, unreadable or has a different length.
+     */
+    @Nullable
+    static byte[] readCacheFile(@NonNull File cacheFile, int length) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(cacheFile))) {
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return in.read() == -1 ? bytes : null;
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            if (cacheFile.exists()) {
+                Slog.w(TAG, "Unable to read package cache entry " + cacheFile, e);
+            }
+            return null;
+        }
+    }
+}
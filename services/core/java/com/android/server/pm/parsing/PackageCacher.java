@@ -17,15 +17,19 @@
 package com.android.server.pm.parsing;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.pm.PackageParserCacheHelper;
 import android.os.Environment;
 import android.os.FileUtils;
 import android.os.Parcel;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
 import android.system.StructStat;
 import android.util.Slog;
+import android.util.TimingsTraceLog;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.pm.ApexManager;
@@ -37,7 +41,9 @@ import libcore.io.IoUtils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PackageCacher {
 
@@ -51,10 +57,35 @@ public class PackageCacher {
     @NonNull
     private File mCacheDir;
 
+    /** The index over the cache entries, loaded on the first lookup. */
+    @Nullable
+    private volatile PackageCacheIndex mIndex;
+
+    private final AtomicInteger mLookupCount = new AtomicInteger();
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mIndexHitCount = new AtomicInteger();
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicLong mLookupTimeNs = new AtomicLong();
+
     public PackageCacher(@NonNull File cacheDir) {
         this.mCacheDir = cacheDir;
     }
 
+    @NonNull
+    private PackageCacheIndex getIndex() {
+        PackageCacheIndex index = mIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = mIndex;
+                if (index == null) {
+                    index = new PackageCacheIndex(mCacheDir);
+                    mIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     /**
      * Returns the cache key for a specified {@code packageFile} and {@code flags}.
      */
@@ -117,10 +148,9 @@ public class PackageCacher {
     }
 
     /**
-     * Given a {@code packageFile} and a {@code cacheFile} returns whether the
-     * cache file is up to date based on the mod-time of both files.
+     * Returns the mod-time of {@code packageFile}, or -1 if it cannot be determined.
      */
-    private static boolean isCacheUpToDate(File packageFile, File cacheFile) {
+    private static long getPackageMtime(File packageFile) {
         try {
             // In case packageFile is located on one of /apex mount points it's mtime will always be
             // 0. Instead, we can use mtime of the APEX file backing the corresponding mount point.
@@ -136,25 +166,37 @@ public class PackageCacher {
             // NOTE: We don't use the File.lastModified API because it has the very
             // non-ideal failure mode of returning 0 with no excepions thrown.
             // The nio2 Files API is a little better but is considerably more expensive.
-            final StructStat pkg = Os.stat(packageFile.getAbsolutePath());
+            return Os.stat(packageFile.getAbsolutePath()).st_mtime;
+        } catch (ErrnoException ee) {
+            // This should never happen, and if it does, we do a full package parse (which is
+            // likely to throw the same exception).
+            if (ee.errno != OsConstants.ENOENT) {
+                Slog.w("Error while stating package : ", ee);
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Given the mod-time of a package file and its {@code cacheFile} returns the size of the
+     * cache file if it is up to date based on the mod-time of both files, or -1 otherwise.
+     */
+    private static long getUpToDateCacheLength(long packageMtime, File cacheFile) {
+        try {
             final StructStat cache = Os.stat(cacheFile.getAbsolutePath());
-            return pkg.st_mtime < cache.st_mtime;
+            return packageMtime < cache.st_mtime ? cache.st_size : -1;
         } catch (ErrnoException ee) {
             // The most common reason why stat fails is that a given cache file doesn't
             // exist. We ignore that here. It's easy to reason that it's safe to say the
             // cache isn't up to date if we see any sort of exception here.
             //
-            // (1) Exception while stating the package file : This should never happen,
-            // and if it does, we do a full package parse (which is likely to throw the
-            // same exception).
-            // (2) Exception while stating the cache file : If the file doesn't exist, the
-            // cache is obviously out of date. If the file *does* exist, we can't read it.
-            // We will attempt to delete and recreate it after parsing the package.
+            // If the file doesn't exist, the cache is obviously out of date. If the file
+            // *does* exist, we can't read it. We will attempt to delete and recreate it
+            // after parsing the package.
             if (ee.errno != OsConstants.ENOENT) {
                 Slog.w("Error while stating package cache : ", ee);
             }
-
-            return false;
+            return -1;
         }
     }
 
@@ -165,19 +207,42 @@ public class PackageCacher {
     public ParsedPackage getCachedResult(File packageFile, int flags) {
         final String cacheKey = getCacheKey(packageFile, flags);
         final File cacheFile = new File(mCacheDir, cacheKey);
+        mLookupCount.incrementAndGet();
 
+        final long startTimeNs = SystemClock.elapsedRealtimeNanos();
         try {
-            // If the cache is not up to date, return null.
-            if (!isCacheUpToDate(packageFile, cacheFile)) {
+            final long packageMtime = getPackageMtime(packageFile);
+            if (packageMtime < 0) {
                 return null;
             }
 
-            final byte[] bytes = IoUtils.readFileAsByteArray(cacheFile.getAbsolutePath());
+            // An index entry recorded for the same package mtime means the cache entry was
+            // up to date then and still is, so it is served from the index without touching
+            // the cache file.
+            final PackageCacheIndex index = getIndex();
+            byte[] bytes = index.getEntry(cacheKey, packageMtime);
+            final boolean fromIndex = bytes != null;
+            if (!fromIndex) {
+                // If the cache is not up to date, return null.
+                if (getUpToDateCacheLength(packageMtime, cacheFile) < 0) {
+                    return null;
+                }
+                bytes = IoUtils.readFileAsByteArray(cacheFile.getAbsolutePath());
+            }
+
             ParsedPackage parsed = fromCacheEntry(bytes);
             if (!packageFile.getAbsolutePath().equals(parsed.getPath())) {
                 // Don't use this cache if the path doesn't match
                 return null;
             }
+            if (fromIndex) {
+                index.keep(cacheKey, packageMtime);
+                mIndexHitCount.incrementAndGet();
+            } else {
+                index.record(cacheKey, packageMtime, bytes.length);
+            }
+            mHitCount.incrementAndGet();
+            mBytesRead.addAndGet(bytes.length);
             return parsed;
         } catch (Throwable e) {
             Slog.w(TAG, "Error reading package cache: ", e);
@@ -186,6 +251,8 @@ public class PackageCacher {
             // so that we regenerate it the next time.
             cacheFile.delete();
             return null;
+        } finally {
+            mLookupTimeNs.addAndGet(SystemClock.elapsedRealtimeNanos() - startTimeNs);
         }
     }
 
@@ -214,12 +281,47 @@ public class PackageCacher {
             } catch (IOException ioe) {
                 Slog.w(TAG, "Error writing cache entry.", ioe);
                 cacheFile.delete();
+                return;
+            }
+
+            // Only index the entry if the next lookup would consider it up to date.
+            final long packageMtime = getPackageMtime(packageFile);
+            if (packageMtime >= 0 && getUpToDateCacheLength(packageMtime, cacheFile) >= 0) {
+                getIndex().record(cacheKey, packageMtime, cacheEntry.length);
             }
         } catch (Throwable e) {
             Slog.w(TAG, "Error saving package cache.", e);
         }
     }
 
+    /**
+     * Persists the index of the cache entries looked up or written through this instance, so
+     * that the next boot can serve them from the index instead of reading every cache file, and
+     * logs the cache statistics for this instance along with the time spent writing the index
+     * to {@code t}.
+     */
+    public void writeIndex(@NonNull TimingsTraceLog t) {
+        final int lookups = mLookupCount.get();
+        final int hits = mHitCount.get();
+        final int indexHits = mIndexHitCount.get();
+        final long bytesRead = mBytesRead.get();
+        Slog.i(TAG, "Package cache: " + lookups + " lookups, " + hits + " hits ("
+                + indexHits + " from the index), " + (lookups - hits) + " misses, "
+                + (bytesRead / 1024) + " KiB read, "
+                + TimeUnit.NANOSECONDS.toMillis(mLookupTimeNs.get())
+                + " ms of lookups summed over all parsing threads");
+        Trace.traceCounter(Trace.TRACE_TAG_PACKAGE_MANAGER, "PackageCacheLookups", lookups);
+        Trace.traceCounter(Trace.TRACE_TAG_PACKAGE_MANAGER, "PackageCacheHits", hits);
+        Trace.traceCounter(Trace.TRACE_TAG_PACKAGE_MANAGER, "PackageCacheIndexHits", indexHits);
+        Trace.traceCounter(Trace.TRACE_TAG_PACKAGE_MANAGER, "PackageCacheKiBRead",
+                (int) (bytesRead / 1024));
+
+        final long startTime = SystemClock.elapsedRealtime();
+        if (getIndex().write()) {
+            t.logDuration("PackageCacheIndexWrite", SystemClock.elapsedRealtime() - startTime);
+        }
+    }
+
     /**
      * Delete the cache files for the given {@code packageFile}.
      */
@@ -232,5 +334,7 @@ public class PackageCacher {
                 Slog.e(TAG, "Unable to clean cache file: " + file);
             }
         }
+        // The index may hold a copy of the cleaned entries.
+        PackageCacheIndex.delete(mCacheDir);
     }
 }
@@ -32,6 +32,7 @@ import android.os.SystemClock;
 import android.permission.PermissionManager;
 import android.util.DisplayMetrics;
 import android.util.Slog;
+import android.util.TimingsTraceLog;
 
 import com.android.internal.compat.IPlatformCompat;
 import com.android.internal.util.ArrayUtils;
@@ -182,6 +183,17 @@ public class PackageParser2 implements AutoCloseable {
         return parsed;
     }
 
+    /**
+     * Persists the index of the package cache entries used by this parser, if caching is
+     * enabled, and reports the cache statistics to {@code t}.  This is expected to be called
+     * once the boot scan has parsed every package.
+     */
+    public void writeCacheIndex(@NonNull TimingsTraceLog t) {
+        if (mCacher != null) {
+            mCacher.writeIndex(t);
+        }
+    }
+
     /**
      * Removes the cached value for the thread the parser was created on. It is assumed that
      * any threads created for parallel parsing will be created and released, so they don't
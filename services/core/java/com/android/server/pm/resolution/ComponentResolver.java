@@ -87,11 +87,52 @@ public class ComponentResolver extends ComponentResolverLocked implements
     private static final boolean DEBUG_FILTERS = false;
     private static final boolean DEBUG_SHOW_INFO = false;
 
-    // Convenience function to report that this object has changed.
-    private void onChanged() {
+    /** Resolvers that may have changed since the last snapshot was taken. */
+    static final int DIRTY_ACTIVITIES = 1 << 0;
+    static final int DIRTY_RECEIVERS = 1 << 1;
+    static final int DIRTY_PROVIDERS = 1 << 2;
+    static final int DIRTY_SERVICES = 1 << 3;
+    static final int DIRTY_ALL =
+            DIRTY_ACTIVITIES | DIRTY_RECEIVERS | DIRTY_PROVIDERS | DIRTY_SERVICES;
+
+    /**
+     * The resolvers that changed since {@link #mLastSnapshot} was created.  Resolvers that
+     * are not dirty are shared with the next snapshot instead of being copied again.
+     */
+    @GuardedBy("mLock")
+    private int mDirtyResolvers = DIRTY_ALL;
+
+    /** The most recently created snapshot, or null if none has been created. */
+    @GuardedBy("mLock")
+    @Nullable
+    private ComponentResolverSnapshot mLastSnapshot;
+
+    // Convenience function to report that the given resolvers have changed.
+    private void onChanged(int dirtyResolvers) {
+        synchronized (mLock) {
+            mDirtyResolvers |= dirtyResolvers;
+        }
         dispatchChange(this);
     }
 
+    /** Returns the resolvers that hold components declared by the given package. */
+    private static int getResolversForPackage(@NonNull AndroidPackage pkg) {
+        int resolvers = 0;
+        if (!ArrayUtils.isEmpty(pkg.getActivities())) {
+            resolvers |= DIRTY_ACTIVITIES;
+        }
+        if (!ArrayUtils.isEmpty(pkg.getReceivers())) {
+            resolvers |= DIRTY_RECEIVERS;
+        }
+        if (!ArrayUtils.isEmpty(pkg.getProviders())) {
+            resolvers |= DIRTY_PROVIDERS;
+        }
+        if (!ArrayUtils.isEmpty(pkg.getServices())) {
+            resolvers |= DIRTY_SERVICES;
+        }
+        return resolvers;
+    }
+
     /**
      * The set of all protected actions [i.e. those actions for which a high priority
      * intent filter is disallowed].
@@ -172,8 +213,12 @@ public class ComponentResolver extends ComponentResolverLocked implements
                 @Override
                 public ComponentResolverApi createSnapshot() {
                     synchronized (mLock) {
-                        return new ComponentResolverSnapshot(ComponentResolver.this,
+                        final ComponentResolverSnapshot snapshot = new ComponentResolverSnapshot(
+                                ComponentResolver.this, mLastSnapshot, mDirtyResolvers,
                                 userNeedsBadgingCache);
+                        mLastSnapshot = snapshot;
+                        mDirtyResolvers = 0;
+                        return snapshot;
                     }
                 }};
     }
@@ -196,7 +241,7 @@ public class ComponentResolver extends ComponentResolverLocked implements
             addReceiversLocked(computer, pkg, chatty);
             addProvidersLocked(computer, pkg, chatty);
             addServicesLocked(computer, pkg, chatty);
-            onChanged();
+            onChanged(getResolversForPackage(pkg));
         }
 
         for (int i = newIntents.size() - 1; i >= 0; --i) {
@@ -208,7 +253,7 @@ public class ComponentResolver extends ComponentResolverLocked implements
             final List<ParsedActivity> systemActivities =
                     disabledPkg != null ? disabledPkg.getActivities() : null;
             adjustPriority(computer, systemActivities, pair.first, pair.second, setupWizardPackage);
-            onChanged();
+            onChanged(DIRTY_ACTIVITIES);
         }
     }
 
@@ -216,7 +261,7 @@ public class ComponentResolver extends ComponentResolverLocked implements
     public void removeAllComponents(AndroidPackage pkg, boolean chatty) {
         synchronized (mLock) {
             removeAllComponentsLocked(pkg, chatty);
-            onChanged();
+            onChanged(getResolversForPackage(pkg));
         }
     }
 
@@ -268,7 +313,7 @@ public class ComponentResolver extends ComponentResolverLocked implements
                 }
                 filter.setPriority(0);
             }
-            onChanged();
+            onChanged(DIRTY_ACTIVITIES);
         }
     }
 
@@ -1864,16 +1909,24 @@ public class ComponentResolver extends ComponentResolverLocked implements
      * @return true if any intent filters were changed due to this update
      */
     public boolean updateMimeGroup(@NonNull Computer computer, String packageName, String group) {
-        boolean hasChanges = false;
+        int changedResolvers = 0;
         synchronized (mLock) {
-            hasChanges |= mActivities.updateMimeGroup(computer, packageName, group);
-            hasChanges |= mProviders.updateMimeGroup(computer, packageName, group);
-            hasChanges |= mReceivers.updateMimeGroup(computer, packageName, group);
-            hasChanges |= mServices.updateMimeGroup(computer, packageName, group);
-            if (hasChanges) {
-                onChanged();
+            if (mActivities.updateMimeGroup(computer, packageName, group)) {
+                changedResolvers |= DIRTY_ACTIVITIES;
+            }
+            if (mProviders.updateMimeGroup(computer, packageName, group)) {
+                changedResolvers |= DIRTY_PROVIDERS;
+            }
+            if (mReceivers.updateMimeGroup(computer, packageName, group)) {
+                changedResolvers |= DIRTY_RECEIVERS;
+            }
+            if (mServices.updateMimeGroup(computer, packageName, group)) {
+                changedResolvers |= DIRTY_SERVICES;
+            }
+            if (changedResolvers != 0) {
+                onChanged(changedResolvers);
             }
         }
-        return hasChanges;
+        return changedResolvers != 0;
     }
 }
@@ -17,6 +17,7 @@
 package com.android.server.pm.resolution;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.util.ArrayMap;
 
 import com.android.server.pm.UserManagerService;
@@ -26,13 +27,49 @@ public class ComponentResolverSnapshot extends ComponentResolverBase {
 
     public ComponentResolverSnapshot(@NonNull ComponentResolver orig,
             @NonNull UserNeedsBadgingCache userNeedsBadgingCache) {
+        this(orig, null /* previous */, ComponentResolver.DIRTY_ALL, userNeedsBadgingCache);
+    }
+
+    /**
+     * Create a snapshot of {@code orig}.  Resolvers that have not changed since {@code previous}
+     * was created are shared with it rather than copied; snapshots are never modified, so
+     * sharing is safe.
+     *
+     * @param previous The last snapshot taken of {@code orig}, or null.
+     * @param dirtyResolvers The {@code ComponentResolver.DIRTY_*} flags for the resolvers that
+     *                       changed since {@code previous} was created.
+     */
+    ComponentResolverSnapshot(@NonNull ComponentResolver orig,
+            @Nullable ComponentResolverSnapshot previous, int dirtyResolvers,
+            @NonNull UserNeedsBadgingCache userNeedsBadgingCache) {
         super(UserManagerService.getInstance());
-        mActivities = new ComponentResolver.ActivityIntentResolver(orig.mActivities, mUserManager,
-                userNeedsBadgingCache);
-        mProviders = new ComponentResolver.ProviderIntentResolver(orig.mProviders, mUserManager);
-        mReceivers = new ComponentResolver.ReceiverIntentResolver(orig.mReceivers, mUserManager,
-                userNeedsBadgingCache);
-        mServices = new ComponentResolver.ServiceIntentResolver(orig.mServices, mUserManager);
-        mProvidersByAuthority = new ArrayMap<>(orig.mProvidersByAuthority);
+        if (previous == null) {
+            dirtyResolvers = ComponentResolver.DIRTY_ALL;
+        }
+        if ((dirtyResolvers & ComponentResolver.DIRTY_ACTIVITIES) != 0) {
+            mActivities = new ComponentResolver.ActivityIntentResolver(orig.mActivities,
+                    mUserManager, userNeedsBadgingCache);
+        } else {
+            mActivities = previous.mActivities;
+        }
+        if ((dirtyResolvers & ComponentResolver.DIRTY_PROVIDERS) != 0) {
+            mProviders = new ComponentResolver.ProviderIntentResolver(orig.mProviders,
+                    mUserManager);
+            mProvidersByAuthority = new ArrayMap<>(orig.mProvidersByAuthority);
+        } else {
+            mProviders = previous.mProviders;
+            mProvidersByAuthority = previous.mProvidersByAuthority;
+        }
+        if ((dirtyResolvers & ComponentResolver.DIRTY_RECEIVERS) != 0) {
+            mReceivers = new ComponentResolver.ReceiverIntentResolver(orig.mReceivers,
+                    mUserManager, userNeedsBadgingCache);
+        } else {
+            mReceivers = previous.mReceivers;
+        }
+        if ((dirtyResolvers & ComponentResolver.DIRTY_SERVICES) != 0) {
+            mServices = new ComponentResolver.ServiceIntentResolver(orig.mServices, mUserManager);
+        } else {
+            mServices = previous.mServices;
+        }
     }
 }
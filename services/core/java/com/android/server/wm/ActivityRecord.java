@@ -5236,6 +5236,7 @@ public final class ActivityRecord extends WindowToken implements WindowManagerSe
             if (app != null) {
                 mTaskSupervisor.onProcessActivityStateChanged(app, false /* forceBatch */);
             }
+            setSurfacePlacementDirty();
             scheduleAnimation();
         }
     }
@@ -131,7 +131,8 @@ class ActivitySnapshotController extends AbsAppSnapshotController<ActivityRecord
         final boolean use16BitFormat = service.mContext.getResources().getBoolean(
                 com.android.internal.R.bool.config_use16BitTaskSnapshotPixelFormat);
         return new PersistInfoProvider(resolver, SNAPSHOTS_DIRNAME,
-                false /* enableLowResSnapshots */, 0 /* lowResScaleFactor */, use16BitFormat);
+                false /* enableLowResSnapshots */, 0 /* lowResScaleFactor */, use16BitFormat,
+                BaseAppSnapshotPersister.getSnapshotFormat());
     }
 
     /** Retrieves a snapshot for an activity from cache. */
@@ -1047,6 +1047,7 @@ public class ActivityTaskManagerService extends IActivityTaskManager.Stub {
         synchronized (mGlobalLock) {
             mWindowManager = wm;
             mRootWindowContainer = wm.mRoot;
+            mLifecycleManager.setWindowManager(wm);
             mWindowOrganizerController.mTransitionController.setWindowManager(wm);
             mTempConfig.setToDefaults();
             mTempConfig.setLocales(LocaleList.getDefault());
@@ -6974,7 +6975,7 @@ public class ActivityTaskManagerService extends IActivityTaskManager.Stub {
         @Override
         public void loadRecentTasksForUser(int userId) {
             synchronized (mGlobalLock) {
-                mRecentTasks.loadUserRecentsLocked(userId);
+                mRecentTasks.onUserUnlockedLocked(userId);
                 // TODO renaming the methods(?)
                 mPackageConfigPersister.loadUserPackages(userId);
             }
@@ -16,6 +16,10 @@
 
 package com.android.server.wm;
 
+import static android.os.Trace.TRACE_TAG_WINDOW_MANAGER;
+
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_JPEG;
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_RAW;
 import static com.android.server.wm.WindowManagerDebugConfig.TAG_WITH_CLASS_NAME;
 import static com.android.server.wm.WindowManagerDebugConfig.TAG_WM;
 
@@ -29,6 +33,7 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.HardwareBuffer;
 import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Slog;
 import android.window.TaskSnapshot;
 
@@ -146,8 +151,16 @@ class AppSnapshotLoader {
         try {
             final byte[] bytes = Files.readAllBytes(protoFile.toPath());
             final TaskSnapshotProto proto = TaskSnapshotProto.parseFrom(bytes);
+            int format = mPersistInfoProvider.snapshotFormat();
+            if (!mPersistInfoProvider.getHighResolutionBitmapFile(id, userId, format).exists()
+                    && !mPersistInfoProvider.getLowResolutionBitmapFile(id, userId, format)
+                            .exists()) {
+                // Persisted before the format of the device changed.
+                format = format == SNAPSHOT_FORMAT_JPEG ? SNAPSHOT_FORMAT_RAW
+                        : SNAPSHOT_FORMAT_JPEG;
+            }
             final File highResBitmap = mPersistInfoProvider
-                    .getHighResolutionBitmapFile(id, userId);
+                    .getHighResolutionBitmapFile(id, userId, format);
 
             PreRLegacySnapshotConfig legacyConfig = getLegacySnapshotConfig(proto.taskWidth,
                     proto.legacyScale, highResBitmap.exists(), loadLowResolutionBitmap);
@@ -155,24 +168,36 @@ class AppSnapshotLoader {
             boolean forceLoadReducedJpeg =
                     legacyConfig != null && legacyConfig.mForceLoadReducedJpeg;
             File bitmapFile = (loadLowResolutionBitmap || forceLoadReducedJpeg)
-                    ? mPersistInfoProvider.getLowResolutionBitmapFile(id, userId)
+                    ? mPersistInfoProvider.getLowResolutionBitmapFile(id, userId, format)
                     : highResBitmap;
 
             if (!bitmapFile.exists()) {
                 return null;
             }
 
-            final Options options = new Options();
-            options.inPreferredConfig = mPersistInfoProvider.use16BitFormat()
-                    && !proto.isTranslucent ? Config.RGB_565 : Config.ARGB_8888;
-            final Bitmap bitmap = BitmapFactory.decodeFile(bitmapFile.getPath(), options);
-            if (bitmap == null) {
-                Slog.w(TAG, "Failed to load bitmap: " + bitmapFile.getPath());
-                return null;
+            final Bitmap hwBitmap;
+            Trace.traceBegin(TRACE_TAG_WINDOW_MANAGER, "loadSnapshotBitmap");
+            try {
+                final Bitmap bitmap;
+                if (format == SNAPSHOT_FORMAT_JPEG) {
+                    final Options options = new Options();
+                    options.inPreferredConfig = mPersistInfoProvider.use16BitFormat()
+                            && !proto.isTranslucent ? Config.RGB_565 : Config.ARGB_8888;
+                    bitmap = BitmapFactory.decodeFile(bitmapFile.getPath(), options);
+                } else {
+                    // Already in the config it was persisted for, no decoding needed.
+                    bitmap = SnapshotContainer.read(bitmapFile);
+                }
+                if (bitmap == null) {
+                    Slog.w(TAG, "Failed to load bitmap: " + bitmapFile.getPath());
+                    return null;
+                }
+
+                hwBitmap = bitmap.copy(Config.HARDWARE, false);
+                bitmap.recycle();
+            } finally {
+                Trace.traceEnd(TRACE_TAG_WINDOW_MANAGER);
             }
-
-            final Bitmap hwBitmap = bitmap.copy(Config.HARDWARE, false);
-            bitmap.recycle();
             if (hwBitmap == null) {
                 Slog.w(TAG, "Failed to create hardware bitmap: " + bitmapFile.getPath());
                 return null;
@@ -16,7 +16,9 @@
 
 package com.android.server.wm;
 
+import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.os.SystemProperties;
 import android.window.TaskSnapshot;
 
 import java.io.File;
@@ -25,6 +27,21 @@ class BaseAppSnapshotPersister {
     static final String LOW_RES_FILE_POSTFIX = "_reduced";
     static final String PROTO_EXTENSION = ".proto";
     static final String BITMAP_EXTENSION = ".jpg";
+    static final String CONTAINER_EXTENSION = ".snap";
+
+    /** Snapshots are compressed to JPEG. */
+    static final int SNAPSHOT_FORMAT_JPEG = 0;
+    /** Snapshots are stored uncompressed in a {@link SnapshotContainer}. */
+    static final int SNAPSHOT_FORMAT_RAW = 1;
+    /** Snapshots are stored losslessly compressed in a {@link SnapshotContainer}. */
+    static final int SNAPSHOT_FORMAT_COMPRESSED = 2;
+
+    @IntDef(prefix = { "SNAPSHOT_FORMAT_" }, value = {
+            SNAPSHOT_FORMAT_JPEG,
+            SNAPSHOT_FORMAT_RAW,
+            SNAPSHOT_FORMAT_COMPRESSED,
+    })
+    @interface SnapshotFormat {}
 
     // Shared with SnapshotPersistQueue
     protected final Object mLock;
@@ -65,6 +82,22 @@ class BaseAppSnapshotPersister {
         }
     }
 
+    /**
+     * Returns the format snapshots are stored in on this device, set by the
+     * {@code ro.wm.snapshot_format} property to {@code jpeg}, {@code raw} or {@code compressed}.
+     */
+    @SnapshotFormat
+    static int getSnapshotFormat() {
+        switch (SystemProperties.get("ro.wm.snapshot_format", "jpeg")) {
+            case "raw":
+                return SNAPSHOT_FORMAT_RAW;
+            case "compressed":
+                return SNAPSHOT_FORMAT_COMPRESSED;
+            default:
+                return SNAPSHOT_FORMAT_JPEG;
+        }
+    }
+
     interface DirectoryResolver {
         File getSystemDirectoryForUser(int userId);
     }
@@ -79,14 +112,24 @@ class BaseAppSnapshotPersister {
         private final boolean mEnableLowResSnapshots;
         private final float mLowResScaleFactor;
         private final boolean mUse16BitFormat;
+        @SnapshotFormat
+        private final int mSnapshotFormat;
 
         PersistInfoProvider(DirectoryResolver directoryResolver, String dirName,
                 boolean enableLowResSnapshots, float lowResScaleFactor, boolean use16BitFormat) {
+            this(directoryResolver, dirName, enableLowResSnapshots, lowResScaleFactor,
+                    use16BitFormat, SNAPSHOT_FORMAT_JPEG);
+        }
+
+        PersistInfoProvider(DirectoryResolver directoryResolver, String dirName,
+                boolean enableLowResSnapshots, float lowResScaleFactor, boolean use16BitFormat,
+                @SnapshotFormat int snapshotFormat) {
             mDirectoryResolver = directoryResolver;
             mDirName = dirName;
             mEnableLowResSnapshots = enableLowResSnapshots;
             mLowResScaleFactor = lowResScaleFactor;
             mUse16BitFormat = use16BitFormat;
+            mSnapshotFormat = snapshotFormat;
         }
 
         @NonNull
@@ -103,6 +146,12 @@ class BaseAppSnapshotPersister {
             return mUse16BitFormat;
         }
 
+        /** Returns the format snapshots are persisted in. */
+        @SnapshotFormat
+        int snapshotFormat() {
+            return mSnapshotFormat;
+        }
+
         boolean createDirectory(int userId) {
             final File dir = getDirectory(userId);
             return dir.exists() || dir.mkdir();
@@ -113,11 +162,24 @@ class BaseAppSnapshotPersister {
         }
 
         File getLowResolutionBitmapFile(int index, int userId) {
-            return new File(getDirectory(userId), index + LOW_RES_FILE_POSTFIX + BITMAP_EXTENSION);
+            return getLowResolutionBitmapFile(index, userId, mSnapshotFormat);
+        }
+
+        File getLowResolutionBitmapFile(int index, int userId, @SnapshotFormat int format) {
+            return new File(getDirectory(userId),
+                    index + LOW_RES_FILE_POSTFIX + getBitmapExtension(format));
         }
 
         File getHighResolutionBitmapFile(int index, int userId) {
-            return new File(getDirectory(userId), index + BITMAP_EXTENSION);
+            return getHighResolutionBitmapFile(index, userId, mSnapshotFormat);
+        }
+
+        File getHighResolutionBitmapFile(int index, int userId, @SnapshotFormat int format) {
+            return new File(getDirectory(userId), index + getBitmapExtension(format));
+        }
+
+        private static String getBitmapExtension(@SnapshotFormat int format) {
+            return format == SNAPSHOT_FORMAT_JPEG ? BITMAP_EXTENSION : CONTAINER_EXTENSION;
         }
 
         boolean enableLowResSnapshots() {
@@ -17,13 +17,22 @@
 package com.android.server.wm;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.IApplicationThread;
+import android.app.servertransaction.ActivityConfigurationChangeItem;
 import android.app.servertransaction.ClientTransaction;
 import android.app.servertransaction.ClientTransactionItem;
 import android.app.servertransaction.ActivityLifecycleItem;
+import android.app.servertransaction.ConfigurationChangeItem;
 import android.os.Binder;
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.SystemProperties;
+import android.util.Slog;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayList;
 
 /**
  * Class that is able to combine multiple client lifecycle transition requests and/or callbacks,
@@ -35,6 +44,30 @@ class ClientLifecycleManager {
     // TODO(lifecycler): Implement building transactions or global transaction.
     // TODO(lifecycler): Use object pools for transactions and transaction items.
 
+    private static final String TAG = "ClientLifecycleManager";
+
+    /**
+     * Whether configuration changes scheduled while window layout is deferred are held back until
+     * layout continues, so that a process or activity whose configuration changes several times
+     * in the meantime, as during a rotation, only receives the last one.
+     */
+    private static final boolean BATCH_CONFIGURATION_CHANGES =
+            SystemProperties.getBoolean("persist.wm.debug.batch_config_changes", true);
+
+    @Nullable
+    private WindowManagerService mWms;
+
+    /**
+     * Configuration changes held back until window layout continues, in the order they were
+     * scheduled. There is at most one for each process and activity.
+     */
+    @GuardedBy("mPendingConfigTransactions")
+    private final ArrayList<ClientTransaction> mPendingConfigTransactions = new ArrayList<>();
+
+    void setWindowManager(@NonNull WindowManagerService wms) {
+        mWms = wms;
+    }
+
     /**
      * Schedule a transaction, which may consist of multiple callbacks and a lifecycle request.
      * @param transaction A sequence of client transaction items.
@@ -43,6 +76,12 @@ class ClientLifecycleManager {
      * @see ClientTransaction
      */
     void scheduleTransaction(ClientTransaction transaction) throws RemoteException {
+        // Keep the order of transactions to the client.
+        dispatchPendingTransactions(transaction.getClient().asBinder());
+        scheduleTransactionNow(transaction);
+    }
+
+    private void scheduleTransactionNow(ClientTransaction transaction) throws RemoteException {
         final IApplicationThread client = transaction.getClient();
         transaction.schedule();
         if (!(client instanceof Binder)) {
@@ -82,6 +121,10 @@ class ClientLifecycleManager {
             @NonNull ClientTransactionItem callback) throws RemoteException {
         final ClientTransaction clientTransaction = transactionWithCallback(client, activityToken,
                 callback);
+        if (shouldHoldBack(callback)) {
+            holdBack(clientTransaction);
+            return;
+        }
         scheduleTransaction(clientTransaction);
     }
 
@@ -97,9 +140,101 @@ class ClientLifecycleManager {
             @NonNull ClientTransactionItem callback) throws RemoteException {
         final ClientTransaction clientTransaction = transactionWithCallback(client,
                 null /* activityToken */, callback);
+        if (shouldHoldBack(callback)) {
+            holdBack(clientTransaction);
+            return;
+        }
         scheduleTransaction(clientTransaction);
     }
 
+    /**
+     * Dispatches the configuration changes held back while window layout was deferred. Called when
+     * window layout continues.
+     */
+    void dispatchPendingTransactions() {
+        dispatchPendingTransactions(null /* client */);
+    }
+
+    /**
+     * Dispatches the configuration changes held back for {@code client}, or for all clients if it
+     * is {@code null}.
+     */
+    private void dispatchPendingTransactions(@Nullable IBinder client) {
+        final ArrayList<ClientTransaction> transactions;
+        synchronized (mPendingConfigTransactions) {
+            if (mPendingConfigTransactions.isEmpty()) {
+                return;
+            }
+            if (client == null) {
+                transactions = new ArrayList<>(mPendingConfigTransactions);
+                mPendingConfigTransactions.clear();
+            } else {
+                transactions = new ArrayList<>();
+                for (int i = 0; i < mPendingConfigTransactions.size(); i++) {
+                    final ClientTransaction transaction = mPendingConfigTransactions.get(i);
+                    if (transaction.getClient().asBinder() == client) {
+                        transactions.add(transaction);
+                        mPendingConfigTransactions.remove(i--);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < transactions.size(); i++) {
+            final ClientTransaction transaction = transactions.get(i);
+            try {
+                scheduleTransactionNow(transaction);
+            } catch (RemoteException e) {
+                // If process died, whatever.
+                Slog.w(TAG, "Failed to dispatch configuration change to "
+                        + transaction.getClient(), e);
+            }
+        }
+    }
+
+    /**
+     * Whether {@code callback} is a configuration change that can be held back until window
+     * layout continues. Only the callers holding the window manager lock can tell.
+     */
+    private boolean shouldHoldBack(@NonNull ClientTransactionItem callback) {
+        if (!BATCH_CONFIGURATION_CHANGES || mWms == null) {
+            return false;
+        }
+        if (!(callback instanceof ConfigurationChangeItem)
+                && !(callback instanceof ActivityConfigurationChangeItem)) {
+            return false;
+        }
+        return Thread.holdsLock(mWms.mGlobalLock) && mWms.mWindowPlacerLocked.isLayoutDeferred();
+    }
+
+    /**
+     * Holds back {@code transaction}, a single configuration change, replacing the one held back
+     * for the same process or activity, which the client would have overridden anyway. The
+     * replacement keeps the position of the replaced change, so that a process configuration
+     * change is still dispatched before the activity configuration changes that followed it.
+     */
+    private void holdBack(@NonNull ClientTransaction transaction) {
+        final IBinder client = transaction.getClient().asBinder();
+        final IBinder activityToken = transaction.getActivityToken();
+        ClientTransaction replaced = null;
+        synchronized (mPendingConfigTransactions) {
+            for (int i = mPendingConfigTransactions.size() - 1; i >= 0; i--) {
+                final ClientTransaction pending = mPendingConfigTransactions.get(i);
+                if (pending.getClient().asBinder() == client
+                        && pending.getActivityToken() == activityToken) {
+                    replaced = mPendingConfigTransactions.set(i, transaction);
+                    break;
+                }
+            }
+            if (replaced == null) {
+                mPendingConfigTransactions.add(transaction);
+            }
+        }
+        if (replaced != null) {
+            // It was never sent, so it can be recycled whether the client is local or not.
+            replaced.recycle();
+        }
+    }
+
     /**
      * @return A new instance of {@link ClientTransaction} with a single lifecycle state request.
      *
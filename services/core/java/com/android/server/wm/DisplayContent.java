@@ -158,6 +158,7 @@ import static com.android.server.wm.WindowManagerService.dipToPixel;
 import static com.android.server.wm.WindowState.EXCLUSION_LEFT;
 import static com.android.server.wm.WindowState.EXCLUSION_RIGHT;
 import static com.android.server.wm.WindowState.RESIZE_HANDLE_WIDTH_IN_DP;
+import static com.android.server.wm.WindowStateAnimator.COMMIT_DRAW_PENDING;
 import static com.android.server.wm.WindowStateAnimator.READY_TO_SHOW;
 import static com.android.server.wm.utils.RegionUtils.forEachRectReverse;
 import static com.android.server.wm.utils.RegionUtils.rectListToRegion;
@@ -185,6 +186,7 @@ import android.graphics.Region.Op;
 import android.hardware.HardwareBuffer;
 import android.hardware.display.DisplayManagerInternal;
 import android.metrics.LogMaker;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Debug;
 import android.os.Handler;
@@ -195,6 +197,7 @@ import android.os.PowerManager;
 import android.os.RemoteCallbackList;
 import android.os.RemoteException;
 import android.os.SystemClock;
+import android.os.SystemProperties;
 import android.os.Trace;
 import android.os.UserHandle;
 import android.os.WorkSource;
@@ -561,6 +564,23 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
     private final ApplySurfaceChangesTransactionState mTmpApplySurfaceChangesTransactionState =
             new ApplySurfaceChangesTransactionState();
 
+    /**
+     * Whether anything the windows of this display are placed from may have changed since
+     * {@link #applySurfaceChangesTransaction} last went through them.
+     *
+     * @see WindowContainer#setSurfacePlacementDirty
+     */
+    boolean mSurfacePlacementDirty = true;
+
+    // What the windows of this display contributed to the state RootWindowContainer gathers over
+    // all displays, the last time they were placed. Used in passes that skip this display.
+    long mLastUserActivityTimeout = -1;
+    float mLastScreenBrightnessOverride = PowerManager.BRIGHTNESS_INVALID_FLOAT;
+    boolean mLastSustainedPerformanceMode;
+    boolean mLastObscureApplicationContentOnSecondaryDisplays;
+    // Whether the content of secondary displays was obscured when this display was last placed.
+    boolean mLastSecondaryDisplaysObscured;
+
     // {@code false} if this display is in the processing of being created.
     private boolean mDisplayReady = false;
 
@@ -602,6 +622,30 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
 
     /** The delay to avoid toggling the animation quickly. */
     private static final long FIXED_ROTATION_HIDE_ANIMATION_DEBOUNCE_DELAY_MS = 250;
+
+    /**
+     * Whether surface placement skips the windows of displays on which nothing changed since they
+     * were last placed. When disabled, every pass goes through all the windows of all displays.
+     */
+    private static final boolean SKIP_UNCHANGED_DISPLAYS_IN_SURFACE_PLACEMENT =
+            SystemProperties.getBoolean("persist.wm.debug.skip_unchanged_displays", false);
+
+    /**
+     * Whether to check, before skipping the windows of a display in surface placement, that none
+     * of them has a resize to report, which would mean a change failed to mark the display dirty.
+     */
+    private static final boolean CHECK_SKIPPED_DISPLAYS_IN_SURFACE_PLACEMENT =
+            SystemProperties.getBoolean("persist.wm.debug.check_skipped_displays",
+                    Build.IS_DEBUGGABLE);
+
+    /** @see #SKIP_UNCHANGED_DISPLAYS_IN_SURFACE_PLACEMENT */
+    @VisibleForTesting
+    boolean mSkipUnchangedWindowsInSurfacePlacement = SKIP_UNCHANGED_DISPLAYS_IN_SURFACE_PLACEMENT;
+
+    /** @see #CHECK_SKIPPED_DISPLAYS_IN_SURFACE_PLACEMENT */
+    @VisibleForTesting
+    boolean mCheckSkippedWindowsInSurfacePlacement = CHECK_SKIPPED_DISPLAYS_IN_SURFACE_PLACEMENT;
+
     private AsyncRotationController mAsyncRotationController;
 
     final FixedRotationTransitionListener mFixedRotationTransitionListener =
@@ -1098,6 +1142,11 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
                     }
                 }
             }
+            if (winAnimator.mDrawState == COMMIT_DRAW_PENDING
+                    || winAnimator.mDrawState == READY_TO_SHOW) {
+                // Still waiting to be shown, go through the windows again in the next pass.
+                mTmpApplySurfaceChangesTransactionState.pendingShow = true;
+            }
         }
 
         final ActivityRecord activity = w.mActivityRecord;
@@ -3891,6 +3940,7 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
                 mCurrentFocus, newFocus, getDisplayId(), Debug.getCallers(4));
         final WindowState oldFocus = mCurrentFocus;
         mCurrentFocus = newFocus;
+        mSurfacePlacementDirty = true;
 
         if (newFocus != null) {
             mWinAddedSinceNullFocus.clear();
@@ -4288,6 +4338,7 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
             return;
         }
         mLastImeInputTarget = mImeInputTarget;
+        mSurfacePlacementDirty = true;
 
         // If the IME target is the input target, before it changes, prepare the IME screenshot
         // for the last IME target when its task is applying app transition. This is for the
@@ -4758,6 +4809,7 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
     void setLayoutNeeded() {
         if (DEBUG_LAYOUT) Slog.w(TAG_WM, "setLayoutNeeded: callers=" + Debug.getCallers(3));
         mLayoutNeeded = true;
+        mSurfacePlacementDirty = true;
     }
 
     private void clearLayoutNeeded() {
@@ -4974,12 +5026,17 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
         }
     }
 
+    /**
+     * Lays out the windows of this display if needed, then goes through them to apply the changes
+     * to their surfaces, unless nothing that they are placed from changed since the last pass.
+     *
+     * @return {@code true} if the windows were gone through, {@code false} if the state found the
+     *         last time still holds.
+     */
     // TODO: Super unexpected long method that should be broken down...
-    void applySurfaceChangesTransaction() {
+    boolean applySurfaceChangesTransaction() {
         final WindowSurfacePlacer surfacePlacer = mWmService.mWindowPlacerLocked;
 
-        beginHoldScreenUpdate();
-
         mTmpUpdateAllDrawn.clear();
 
         if (DEBUG_LAYOUT_REPEATS) surfacePlacer.debugLayoutRepeats("On entry to LockedInner",
@@ -5005,6 +5062,17 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
         performLayout(true /* initial */, false /* updateInputWindows */);
         pendingLayoutChanges = 0;
 
+        if (!needsWindowSurfaceChanges()) {
+            prepareSurfaces();
+            mInsetsStateController.getImeSourceProvider().checkShowImePostLayout();
+            updateRecording();
+            return false;
+        }
+        // Anything changing from here on is picked up by the next pass.
+        mSurfacePlacementDirty = false;
+
+        beginHoldScreenUpdate();
+
         Trace.traceBegin(TRACE_TAG_WINDOW_MANAGER, "applyPostLayoutPolicy");
         try {
             mDisplayPolicy.beginPostLayoutPolicyLw();
@@ -5058,6 +5126,34 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
         }
 
         finishHoldScreenUpdate();
+
+        // Keep going through the windows while they are settling.
+        if (mTmpApplySurfaceChangesTransactionState.pendingShow || inTransition()
+                || mDisplayRotation.isRotatingSeamlessly()) {
+            mSurfacePlacementDirty = true;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether {@link #applySurfaceChangesTransaction} needs to go through the windows of
+     * this display, rather than keep what it found the last time.
+     */
+    private boolean needsWindowSurfaceChanges() {
+        if (mSurfacePlacementDirty || !mSkipUnchangedWindowsInSurfacePlacement
+                || mWaitingForConfig || mAsyncRotationController != null || inTransition()
+                || mWmService.mDisplayFrozen) {
+            return true;
+        }
+        if (mCheckSkippedWindowsInSurfacePlacement) {
+            final WindowState w = getWindow(WindowState::isResizeReportPending);
+            if (w != null) {
+                Slog.wtf(TAG, "Skipping surface placement of " + this
+                        + " would miss the resize of " + w);
+                return true;
+            }
+        }
+        return false;
     }
 
     private void getBounds(Rect out, @Rotation int rotation) {
@@ -5244,6 +5340,7 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
         public float preferredMinRefreshRate;
         public float preferredMaxRefreshRate;
         public boolean disableHdrConversion;
+        public boolean pendingShow;
 
         void reset() {
             displayHasContent = false;
@@ -5255,6 +5352,7 @@ class DisplayContent extends RootDisplayArea implements WindowManagerPolicy.Disp
             preferredMinRefreshRate = 0;
             preferredMaxRefreshRate = 0;
             disableHdrConversion = false;
+            pendingShow = false;
         }
     }
 
@@ -162,6 +162,11 @@ class PersisterQueue {
         }
     }
 
+    /** Returns the number of items waiting to be written. */
+    synchronized int getQueueDepth() {
+        return mWriteQueue.size();
+    }
+
     synchronized void flush() {
         mNextWriteTime = FLUSH_QUEUE;
         notifyAll();
@@ -126,6 +126,13 @@ class RecentTasks {
     // front of the list)
     private static final long FREEZE_TASK_LIST_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
 
+    /**
+     * Whether restoring the persisted recent tasks of a user is deferred from unlocking the user
+     * to when they are first needed, or shortly after the user is unlocked at the latest.
+     */
+    private static final boolean DEFER_USER_RECENTS_LOADING =
+            SystemProperties.getBoolean("persist.wm.debug.defer_recents_loading", true);
+
     // Comparator to sort by taskId
     private static final Comparator<Task> TASK_ID_COMPARATOR =
             (lhs, rhs) -> rhs.mTaskId - lhs.mTaskId;
@@ -173,6 +180,12 @@ class RecentTasks {
     private final SparseBooleanArray mUsersWithRecentsLoaded = new SparseBooleanArray(
             DEFAULT_INITIAL_CAPACITY);
 
+    /**
+     * Users who are unlocked, but whose recent tasks haven't been loaded yet.
+     */
+    private final SparseBooleanArray mUsersWithRecentsPending = new SparseBooleanArray(
+            DEFAULT_INITIAL_CAPACITY);
+
     /**
      * Stores for each user task ids that are taken by tasks residing in persistent storage. These
      * tasks may or may not currently be in memory.
@@ -496,6 +509,7 @@ class RecentTasks {
             // User already loaded, return early
             return;
         }
+        mUsersWithRecentsPending.delete(userId);
 
         // Load the task ids if not loaded.
         loadPersistedTaskIdsForUserLocked(userId);
@@ -520,6 +534,39 @@ class RecentTasks {
         }
     }
 
+    /**
+     * Called when {@code userId} is unlocked. Only loads the ids of the persisted tasks of the
+     * user, which new task ids are allocated against, and defers restoring the tasks themselves to
+     * when they are first needed.
+     */
+    void onUserUnlockedLocked(int userId) {
+        if (!DEFER_USER_RECENTS_LOADING) {
+            loadUserRecentsLocked(userId);
+            return;
+        }
+        if (mUsersWithRecentsLoaded.get(userId) || mUsersWithRecentsPending.get(userId)) {
+            return;
+        }
+        loadPersistedTaskIdsForUserLocked(userId);
+        mUsersWithRecentsPending.put(userId, true);
+        // Don't hold the tasks back for long if nothing asks for them.
+        mService.mH.post(() -> {
+            synchronized (mService.mGlobalLock) {
+                loadPendingUserRecentsLocked(userId);
+            }
+        });
+    }
+
+    /**
+     * Loads the recent tasks of {@code userId} if the user is unlocked and they haven't been
+     * loaded yet.
+     */
+    void loadPendingUserRecentsLocked(int userId) {
+        if (mUsersWithRecentsPending.get(userId)) {
+            loadUserRecentsLocked(userId);
+        }
+    }
+
     private void loadPersistedTaskIdsForUserLocked(int userId) {
         // An empty instead of a null set here means that no persistent taskIds were present
         // on file when we loaded them.
@@ -640,6 +687,7 @@ class RecentTasks {
             mUsersWithRecentsLoaded.delete(userId);
             removeTasksForUserLocked(userId);
         }
+        mUsersWithRecentsPending.delete(userId);
         mPersistedTaskIds.delete(userId);
         mTaskPersister.unloadUserDataFromMemory(userId);
     }
@@ -723,6 +771,9 @@ class RecentTasks {
 
     void removeAllVisibleTasks(int userId) {
         Set<Integer> profileIds = getProfileIds(userId);
+        for (int profileId : profileIds) {
+            loadPendingUserRecentsLocked(profileId);
+        }
         String lockedTasks = Settings.System.getStringForUser(
                     mService.mContext.getContentResolver(),
                     Settings.System.RECENTS_LOCKED_TASKS,
@@ -886,6 +937,7 @@ class RecentTasks {
      * Returns the list of {@link ActivityManager.AppTask}s.
      */
     ArrayList<IBinder> getAppTasksList(int callingUid, String callingPackage) {
+        loadPendingUserRecentsLocked(UserHandle.getUserId(callingUid));
         final ArrayList<IBinder> list = new ArrayList<>();
         final int size = mTasks.size();
         for (int i = 0; i < size; i++) {
@@ -955,6 +1007,9 @@ class RecentTasks {
 
         final Set<Integer> includedUsers = getProfileIds(userId);
         includedUsers.add(Integer.valueOf(userId));
+        for (int includedUserId : includedUsers) {
+            loadPendingUserRecentsLocked(includedUserId);
+        }
 
         final ArrayList<ActivityManager.RecentTaskInfo> res = new ArrayList<>();
         final int size = mTasks.size();
@@ -1088,6 +1143,15 @@ class RecentTasks {
                 return task;
             }
         }
+        // The task may be persisted for a user whose recent tasks haven't been loaded yet.
+        for (int i = mUsersWithRecentsPending.size() - 1; i >= 0; i--) {
+            final int userId = mUsersWithRecentsPending.keyAt(i);
+            final SparseBooleanArray persistedTaskIds = mPersistedTaskIds.get(userId);
+            if (persistedTaskIds != null && persistedTaskIds.get(id)) {
+                loadUserRecentsLocked(userId);
+                return getTask(id);
+            }
+        }
         return null;
     }
 
@@ -1096,6 +1160,8 @@ class RecentTasks {
      */
     void add(Task task) {
         if (DEBUG_RECENTS_TRIM_TASKS) Slog.d(TAG, "add: task=" + task);
+        // Restore the tasks of the user first, which the new task may replace or be trimmed with.
+        loadPendingUserRecentsLocked(task.mUserId);
 
         final boolean isAffiliated = task.mAffiliatedTaskId != task.mTaskId
                 || task.mNextAffiliateTaskId != INVALID_TASK_ID
@@ -1841,6 +1907,10 @@ class RecentTasks {
         if (!mHiddenTasks.isEmpty()) {
             pw.println("mHiddenTasks=" + mHiddenTasks);
         }
+        if (mUsersWithRecentsPending.size() > 0) {
+            pw.println("mUsersWithRecentsPending=" + mUsersWithRecentsPending);
+        }
+        mTaskPersister.dump(pw, "");
         if (mTasks.isEmpty()) {
             return;
         }
@@ -186,6 +186,11 @@ class RootWindowContainer extends WindowContainer<DisplayContent>
     private boolean mSustainedPerformanceModeEnabled = false;
     private boolean mSustainedPerformanceModeCurrent = false;
 
+    // The keyguard state windows were last placed with. Windows of all displays are placed again
+    // when it changes, as it affects their visibility and whether displays have content.
+    private boolean mLastKeyguardShowing;
+    private boolean mLastKeyguardShowingAndNotOccluded;
+
     // During an orientation change, we track whether all windows have rendered
     // at the new orientation, and this will be false from changing orientation until that occurs.
     // For seamless rotation cases this always stays true, as the windows complete their orientation
@@ -985,10 +990,21 @@ class RootWindowContainer extends WindowContainer<DisplayContent>
                     defaultDc.getRotation(), t);
         }
 
+        final boolean keyguardShowing = mWmService.mPolicy.isKeyguardShowing();
+        final boolean keyguardShowingAndNotOccluded =
+                mWmService.mPolicy.isKeyguardShowingAndNotOccluded();
+        final boolean keyguardChanged = keyguardShowing != mLastKeyguardShowing
+                || keyguardShowingAndNotOccluded != mLastKeyguardShowingAndNotOccluded;
+        mLastKeyguardShowing = keyguardShowing;
+        mLastKeyguardShowingAndNotOccluded = keyguardShowingAndNotOccluded;
+
         final int count = mChildren.size();
         for (int j = 0; j < count; ++j) {
             final DisplayContent dc = mChildren.get(j);
-            dc.applySurfaceChangesTransaction();
+            if (keyguardChanged) {
+                dc.mSurfacePlacementDirty = true;
+            }
+            applySurfaceChangesTransaction(dc);
         }
 
         // Give the display manager a chance to adjust properties like display rotation if it needs
@@ -999,6 +1015,51 @@ class RootWindowContainer extends WindowContainer<DisplayContent>
         }
     }
 
+    /**
+     * Applies the surface changes of the windows of {@code dc}, and adds what they contribute to
+     * the state gathered over all displays, whether the windows are gone through again or the
+     * display is unchanged since the last pass.
+     */
+    private void applySurfaceChangesTransaction(DisplayContent dc) {
+        if (dc.mLastSecondaryDisplaysObscured != mObscureApplicationContentOnSecondaryDisplays) {
+            // Whether this display has content depends on the displays before it.
+            dc.mSurfacePlacementDirty = true;
+        }
+
+        // Gather the state of this display on its own, to be able to reuse it in later passes.
+        final long userActivityTimeout = mUserActivityTimeout;
+        final float screenBrightnessOverride = mScreenBrightnessOverride;
+        final boolean sustainedPerformanceMode = mSustainedPerformanceModeCurrent;
+        final boolean secondaryDisplaysObscured = mObscureApplicationContentOnSecondaryDisplays;
+        mUserActivityTimeout = -1;
+        mScreenBrightnessOverride = PowerManager.BRIGHTNESS_INVALID_FLOAT;
+        mSustainedPerformanceModeCurrent = false;
+
+        if (dc.applySurfaceChangesTransaction()) {
+            dc.mLastUserActivityTimeout = mUserActivityTimeout;
+            dc.mLastScreenBrightnessOverride = mScreenBrightnessOverride;
+            dc.mLastSustainedPerformanceMode = mSustainedPerformanceModeCurrent;
+            dc.mLastObscureApplicationContentOnSecondaryDisplays =
+                    mObscureApplicationContentOnSecondaryDisplays && !secondaryDisplaysObscured;
+            dc.mLastSecondaryDisplaysObscured = secondaryDisplaysObscured;
+        } else {
+            mUserActivityTimeout = dc.mLastUserActivityTimeout;
+            mScreenBrightnessOverride = dc.mLastScreenBrightnessOverride;
+            mSustainedPerformanceModeCurrent = dc.mLastSustainedPerformanceMode;
+            mObscureApplicationContentOnSecondaryDisplays |=
+                    dc.mLastObscureApplicationContentOnSecondaryDisplays;
+        }
+
+        // The displays before this one take precedence.
+        if (userActivityTimeout >= 0) {
+            mUserActivityTimeout = userActivityTimeout;
+        }
+        if (!Float.isNaN(screenBrightnessOverride)) {
+            mScreenBrightnessOverride = screenBrightnessOverride;
+        }
+        mSustainedPerformanceModeCurrent |= sustainedPerformanceMode;
+    }
+
     /**
      * Handles resizing windows during surface placement.
      */
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm;
+
+import android.annotation.Nullable;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.ColorSpace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the pixels of a snapshot as they are in memory, optionally compressed with a fast
+ * lossless compression, so that loading it doesn't need to decode an image.
+ *
+ * <pre>
+ * int magic, int version, int width, int height, int config, int colorSpace, int hasAlpha,
+ * int compression, int pixelsLength, int dataLength, byte[dataLength] data
+ * </pre>
+ *
+ * All values are little endian. The color space is stored as the id of a
+ * {@link ColorSpace.Named} color space, so other color spaces can't be stored. Uncompressed
+ * pixels are read straight from a mapping of the file.
+ */
+final class SnapshotContainer {
+    private static final int MAGIC = 0x50414E53; // "SNAP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 10 * Integer.BYTES;
+
+    private static final int CONFIG_ARGB_8888 = 0;
+    private static final int CONFIG_RGB_565 = 1;
+
+    private static final int COMPRESSION_NONE = 0;
+    private static final int COMPRESSION_DEFLATE = 1;
+
+    private SnapshotContainer() {
+    }
+
+    /** Returns whether bitmaps in {@code colorSpace} can be stored in a container. */
+    static boolean supportsColorSpace(@Nullable ColorSpace colorSpace) {
+        return colorSpace != null && colorSpace.getId() >= 0
+                && colorSpace.getId() < ColorSpace.Named.values().length;
+    }
+
+    /**
+     * Writes the pixels of {@code bitmap}, a software bitmap in {@link Config#ARGB_8888} or
+     * {@link Config#RGB_565} and in a color space {@link #supportsColorSpace supported} by
+     * containers, to {@code file}.
+     *
+     * @param compress Whether to compress the pixels. They are stored as they are if they don't
+     *                 compress.
+     */
+    static void write(Bitmap bitmap, File file, boolean compress) throws IOException {
+        final int config;
+        if (bitmap.getConfig() == Config.ARGB_8888) {
+            config = CONFIG_ARGB_8888;
+        } else if (bitmap.getConfig() == Config.RGB_565) {
+            config = CONFIG_RGB_565;
+        } else {
+            throw new IOException("Unsupported bitmap config " + bitmap.getConfig());
+        }
+        final ColorSpace colorSpace = bitmap.getColorSpace();
+        if (!supportsColorSpace(colorSpace)) {
+            throw new IOException("Unsupported bitmap color space " + colorSpace);
+        }
+        final int pixelsLength = bitmap.getByteCount();
+        final ByteBuffer pixels = ByteBuffer.allocate(pixelsLength);
+        bitmap.copyPixelsToBuffer(pixels);
+
+        byte[] data = pixels.array();
+        int dataLength = pixelsLength;
+        int compression = COMPRESSION_NONE;
+        if (compress) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data, 0, pixelsLength);
+                deflater.finish();
+                final byte[] compressed = new byte[pixelsLength];
+                final int compressedLength = deflater.deflate(compressed);
+                if (deflater.finished()) {
+                    data = compressed;
+                    dataLength = compressedLength;
+                    compression = COMPRESSION_DEFLATE;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(bitmap.getWidth());
+        header.putInt(bitmap.getHeight());
+        header.putInt(config);
+        header.putInt(colorSpace.getId());
+        header.putInt(bitmap.hasAlpha() ? 1 : 0);
+        header.putInt(compression);
+        header.putInt(pixelsLength);
+        header.putInt(dataLength);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(header.array());
+            fos.write(data, 0, dataLength);
+        }
+    }
+
+    /**
+     * Reads the pixels stored in {@code file} into a new software bitmap.
+     *
+     * @return the bitmap, or {@code null} if the file isn't a valid snapshot container.
+     */
+    @Nullable
+    static Bitmap read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            final int config = buffer.getInt();
+            final int colorSpaceId = buffer.getInt();
+            final boolean hasAlpha = buffer.getInt() != 0;
+            final int compression = buffer.getInt();
+            final int pixelsLength = buffer.getInt();
+            final int dataLength = buffer.getInt();
+            if (width <= 0 || height <= 0 || dataLength < 0
+                    || HEADER_SIZE + (long) dataLength != size) {
+                return null;
+            }
+            final Config bitmapConfig;
+            if (config == CONFIG_ARGB_8888) {
+                bitmapConfig = Config.ARGB_8888;
+            } else if (config == CONFIG_RGB_565) {
+                bitmapConfig = Config.RGB_565;
+            } else {
+                return null;
+            }
+            final ColorSpace.Named[] namedColorSpaces = ColorSpace.Named.values();
+            if (colorSpaceId < 0 || colorSpaceId >= namedColorSpaces.length) {
+                return null;
+            }
+
+            final Bitmap bitmap = Bitmap.createBitmap(width, height, bitmapConfig, hasAlpha,
+                    ColorSpace.get(namedColorSpaces[colorSpaceId]));
+            if (bitmap.getByteCount() != pixelsLength) {
+                bitmap.recycle();
+                return null;
+            }
+            if (compression == COMPRESSION_NONE && dataLength == pixelsLength) {
+                bitmap.copyPixelsFromBuffer(buffer);
+                return bitmap;
+            }
+            if (compression != COMPRESSION_DEFLATE) {
+                bitmap.recycle();
+                return null;
+            }
+            final byte[] data = new byte[dataLength];
+            buffer.get(data);
+            final byte[] pixels = new byte[pixelsLength];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                if (inflater.inflate(pixels) != pixelsLength || !inflater.finished()) {
+                    bitmap.recycle();
+                    return null;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            } finally {
+                inflater.end();
+            }
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+            return bitmap;
+        }
+    }
+}
@@ -19,6 +19,9 @@ package com.android.server.wm;
 import static android.graphics.Bitmap.CompressFormat.JPEG;
 import static android.os.Trace.TRACE_TAG_WINDOW_MANAGER;
 
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_COMPRESSED;
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_JPEG;
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_RAW;
 import static com.android.server.wm.WindowManagerDebugConfig.TAG_WITH_CLASS_NAME;
 import static com.android.server.wm.WindowManagerDebugConfig.TAG_WM;
 
@@ -117,6 +120,7 @@ class SnapshotPersistQueue {
         mWriteQueue.offer(item);
         item.onQueuedLocked();
         ensureStoreQueueDepthLocked();
+        traceQueueDepthLocked();
         if (!mPaused) {
             mLock.notifyAll();
         }
@@ -131,14 +135,30 @@ class SnapshotPersistQueue {
         }
     }
 
+    /** Records the backlog of the queue, to follow how far behind persisting is in traces. */
+    @GuardedBy("mLock")
+    private void traceQueueDepthLocked() {
+        if (Trace.isTagEnabled(TRACE_TAG_WINDOW_MANAGER)) {
+            Trace.traceCounter(TRACE_TAG_WINDOW_MANAGER, "SnapshotPersistQueueDepth",
+                    mWriteQueue.size());
+        }
+    }
+
     void deleteSnapshot(int index, int userId, PersistInfoProvider provider) {
         final File protoFile = provider.getProtoFile(index, userId);
-        final File bitmapLowResFile = provider.getLowResolutionBitmapFile(index, userId);
         protoFile.delete();
+        // Also delete the bitmaps of a snapshot persisted before the format changed.
+        deleteBitmaps(index, userId, provider, SNAPSHOT_FORMAT_JPEG);
+        deleteBitmaps(index, userId, provider, SNAPSHOT_FORMAT_RAW);
+    }
+
+    private static void deleteBitmaps(int index, int userId, PersistInfoProvider provider,
+            int format) {
+        final File bitmapLowResFile = provider.getLowResolutionBitmapFile(index, userId, format);
         if (bitmapLowResFile.exists()) {
             bitmapLowResFile.delete();
         }
-        final File bitmapFile = provider.getHighResolutionBitmapFile(index, userId);
+        final File bitmapFile = provider.getHighResolutionBitmapFile(index, userId, format);
         if (bitmapFile.exists()) {
             bitmapFile.delete();
         }
@@ -159,6 +179,7 @@ class SnapshotPersistQueue {
                             if (next.isReady()) {
                                 isReadyToWrite = true;
                                 next.onDequeuedLocked();
+                                traceQueueDepthLocked();
                             } else {
                                 mWriteQueue.addLast(next);
                             }
@@ -317,18 +338,32 @@ class SnapshotPersistQueue {
                 return false;
             }
 
-            final Bitmap swBitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false /* isMutable */);
+            // Containers only record named color spaces, JPEG embeds any color space profile.
+            int format = mPersistInfoProvider.snapshotFormat();
+            if (format != SNAPSHOT_FORMAT_JPEG
+                    && !SnapshotContainer.supportsColorSpace(bitmap.getColorSpace())) {
+                format = SNAPSHOT_FORMAT_JPEG;
+                // Don't let the loader pick up a container persisted earlier instead.
+                deleteBitmaps(mId, mUserId, mPersistInfoProvider,
+                        mPersistInfoProvider.snapshotFormat());
+            }
+            // Containers hold pixels as they are, so store opaque snapshots that are loaded in
+            // 16 bits in 16 bits already, which halves the data to write and load.
+            final Bitmap.Config config = format != SNAPSHOT_FORMAT_JPEG
+                    && mPersistInfoProvider.use16BitFormat() && !mSnapshot.isTranslucent()
+                    ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            final Bitmap swBitmap = bitmap.copy(config, false /* isMutable */);
             if (swBitmap == null) {
                 Slog.e(TAG, "Bitmap conversion from (config=" + bitmap.getConfig() + ", isMutable="
-                        + bitmap.isMutable() + ") to (config=ARGB_8888, isMutable=false) failed.");
+                        + bitmap.isMutable() + ") to (config=" + config
+                        + ", isMutable=false) failed.");
                 return false;
             }
 
-            final File file = mPersistInfoProvider.getHighResolutionBitmapFile(mId, mUserId);
+            final File file = mPersistInfoProvider.getHighResolutionBitmapFile(mId, mUserId,
+                    format);
             try {
-                FileOutputStream fos = new FileOutputStream(file);
-                swBitmap.compress(JPEG, COMPRESS_QUALITY, fos);
-                fos.close();
+                writeBitmap(swBitmap, file, format);
             } catch (IOException e) {
                 Slog.e(TAG, "Unable to open " + file + " for persisting.", e);
                 return false;
@@ -345,11 +380,10 @@ class SnapshotPersistQueue {
                     true /* filter */);
             swBitmap.recycle();
 
-            final File lowResFile = mPersistInfoProvider.getLowResolutionBitmapFile(mId, mUserId);
+            final File lowResFile = mPersistInfoProvider.getLowResolutionBitmapFile(mId, mUserId,
+                    format);
             try {
-                FileOutputStream lowResFos = new FileOutputStream(lowResFile);
-                lowResBitmap.compress(JPEG, COMPRESS_QUALITY, lowResFos);
-                lowResFos.close();
+                writeBitmap(lowResBitmap, lowResFile, format);
             } catch (IOException e) {
                 Slog.e(TAG, "Unable to open " + lowResFile + " for persisting.", e);
                 return false;
@@ -358,6 +392,16 @@ class SnapshotPersistQueue {
 
             return true;
         }
+
+        private void writeBitmap(Bitmap bitmap, File file, int format) throws IOException {
+            if (format == SNAPSHOT_FORMAT_JPEG) {
+                FileOutputStream fos = new FileOutputStream(file);
+                bitmap.compress(JPEG, COMPRESS_QUALITY, fos);
+                fos.close();
+            } else {
+                SnapshotContainer.write(bitmap, file, format == SNAPSHOT_FORMAT_COMPRESSED);
+            }
+        }
     }
 
     DeleteWriteQueueItem createDeleteWriteQueueItem(int id, int userId,
@@ -25,6 +25,7 @@ import android.os.Debug;
 import android.os.Environment;
 import android.os.FileUtils;
 import android.os.SystemClock;
+import android.text.format.DateUtils;
 import android.util.ArraySet;
 import android.util.AtomicFile;
 import android.util.Slog;
@@ -32,6 +33,7 @@ import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.Xml;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.XmlUtils;
 import com.android.modules.utils.TypedXmlPullParser;
@@ -52,11 +54,15 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Persister that saves recent tasks into disk.
@@ -84,6 +90,19 @@ public class TaskPersister implements PersisterQueue.Listener {
 
     private final ArraySet<Integer> mTmpTaskIds = new ArraySet<>();
 
+    /**
+     * The records last written to the task files of each user, by task id, by user id. A task
+     * whose record didn't change since it was last written doesn't need its file rewritten.
+     */
+    @GuardedBy("mWrittenTaskRecords")
+    private final SparseArray<SparseArray<byte[]>> mWrittenTaskRecords = new SparseArray<>();
+
+    // Write statistics, for dumpsys.
+    private final long mCreationTime = SystemClock.elapsedRealtime();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private final AtomicInteger mTaskWrites = new AtomicInteger();
+    private final AtomicInteger mSkippedTaskWrites = new AtomicInteger();
+
     TaskPersister(File systemDir, ActivityTaskSupervisor taskSupervisor,
             ActivityTaskManagerService service, RecentTasks recentTasks,
             PersisterQueue persisterQueue) {
@@ -180,11 +199,72 @@ public class TaskPersister implements PersisterQueue.Listener {
             } finally {
                 IoUtils.closeQuietly(writer);
             }
+            mBytesWritten.addAndGet(persistedTaskIdsFile.length());
         }
     }
 
     void unloadUserDataFromMemory(int userId) {
         mTaskIdsInFile.delete(userId);
+        synchronized (mWrittenTaskRecords) {
+            mWrittenTaskRecords.delete(userId);
+        }
+    }
+
+    /**
+     * Writes {@code record}, the serialized task {@code taskId} of {@code userId}, to its file in
+     * {@code userTasksDir}, unless it is the record that was last written to the file.
+     *
+     * @return whether the file was written.
+     */
+    @VisibleForTesting
+    boolean writeTaskRecord(File userTasksDir, int userId, int taskId, byte[] record) {
+        synchronized (mWrittenTaskRecords) {
+            final SparseArray<byte[]> userRecords = mWrittenTaskRecords.get(userId);
+            if (userRecords != null && Arrays.equals(userRecords.get(taskId), record)) {
+                mSkippedTaskWrites.incrementAndGet();
+                return false;
+            }
+        }
+        if (!userTasksDir.isDirectory() && !userTasksDir.mkdirs()) {
+            Slog.e(TAG, "Failure creating tasks directory for user " + userId + ": "
+                    + userTasksDir + " Dropping persistence for task " + taskId);
+            return false;
+        }
+        FileOutputStream file = null;
+        final AtomicFile atomicFile = new AtomicFile(new File(userTasksDir,
+                String.valueOf(taskId) + TASK_FILENAME_SUFFIX));
+        try {
+            file = atomicFile.startWrite();
+            file.write(record);
+            atomicFile.finishWrite(file);
+        } catch (IOException e) {
+            if (file != null) {
+                atomicFile.failWrite(file);
+            }
+            Slog.e(TAG, "Unable to open " + atomicFile + " for persisting. " + e);
+            forgetWrittenTaskRecord(userId, taskId);
+            return false;
+        }
+        synchronized (mWrittenTaskRecords) {
+            SparseArray<byte[]> userRecords = mWrittenTaskRecords.get(userId);
+            if (userRecords == null) {
+                userRecords = new SparseArray<>();
+                mWrittenTaskRecords.put(userId, userRecords);
+            }
+            userRecords.put(taskId, record);
+        }
+        mBytesWritten.addAndGet(record.length);
+        mTaskWrites.incrementAndGet();
+        return true;
+    }
+
+    private void forgetWrittenTaskRecord(int userId, int taskId) {
+        synchronized (mWrittenTaskRecords) {
+            final SparseArray<byte[]> userRecords = mWrittenTaskRecords.get(userId);
+            if (userRecords != null) {
+                userRecords.delete(taskId);
+            }
+        }
     }
 
     void wakeup(Task task, boolean flush) {
@@ -197,7 +277,7 @@ public class TaskPersister implements PersisterQueue.Listener {
                 }
 
                 if (item == null && task.isPersistable) {
-                    mPersisterQueue.addItem(new TaskWriteQueueItem(task, mService), flush);
+                    mPersisterQueue.addItem(new TaskWriteQueueItem(task, this), flush);
                 }
             } else {
                 // Placeholder. Ensures removeObsoleteFiles is called when LazyTaskThreadWriter is
@@ -218,7 +298,7 @@ public class TaskPersister implements PersisterQueue.Listener {
     }
 
     void saveImage(Bitmap image, String filePath) {
-        mPersisterQueue.updateLastOrAddItem(new ImageWriteQueueItem(filePath, image),
+        mPersisterQueue.updateLastOrAddItem(new ImageWriteQueueItem(filePath, image, this),
                 /* flush */ false);
         if (DEBUG) {
             Slog.d(TAG, "saveImage: filePath=" + filePath + " now="
@@ -294,12 +374,13 @@ public class TaskPersister implements PersisterQueue.Listener {
             if (!taskFile.getName().endsWith(TASK_FILENAME_SUFFIX)) {
                 continue;
             }
+            final int fileTaskId;
             try {
-                final int taskId = Integer.parseInt(taskFile.getName().substring(
+                fileTaskId = Integer.parseInt(taskFile.getName().substring(
                         0 /* beginIndex */,
                         taskFile.getName().length() - TASK_FILENAME_SUFFIX.length()));
-                if (preaddedTasks.get(taskId, false)) {
-                    Slog.w(TAG, "Task #" + taskId +
+                if (preaddedTasks.get(fileTaskId, false)) {
+                    Slog.w(TAG, "Task #" + fileTaskId +
                             " has already been created so we don't restore again");
                     continue;
                 }
@@ -372,6 +453,7 @@ public class TaskPersister implements PersisterQueue.Listener {
                 if (deleteFile) {
                     if (DEBUG) Slog.d(TAG, "Deleting file=" + taskFile.getName());
                     taskFile.delete();
+                    forgetWrittenTaskRecord(userId, fileTaskId);
                 }
             }
         }
@@ -483,9 +565,29 @@ public class TaskPersister implements PersisterQueue.Listener {
         for (int userId : candidateUserIds) {
             removeObsoleteFiles(persistentTaskIds, getUserImagesDir(userId).listFiles());
             removeObsoleteFiles(persistentTaskIds, getUserTasksDir(userId).listFiles());
+            synchronized (mWrittenTaskRecords) {
+                final SparseArray<byte[]> userRecords = mWrittenTaskRecords.get(userId);
+                for (int i = userRecords != null ? userRecords.size() - 1 : -1; i >= 0; i--) {
+                    if (!persistentTaskIds.contains(userRecords.keyAt(i))) {
+                        userRecords.removeAt(i);
+                    }
+                }
+            }
         }
     }
 
+    void dump(PrintWriter pw, String prefix) {
+        final long elapsedTime = Math.max(SystemClock.elapsedRealtime() - mCreationTime, 1);
+        final long bytesWritten = mBytesWritten.get();
+        pw.print(prefix); pw.println("TaskPersister:");
+        pw.print(prefix); pw.print("  queueDepth="); pw.println(mPersisterQueue.getQueueDepth());
+        pw.print(prefix); pw.print("  bytesWritten="); pw.print(bytesWritten);
+        pw.print(" ("); pw.print(bytesWritten * DateUtils.HOUR_IN_MILLIS / elapsedTime);
+        pw.println(" per hour)");
+        pw.print(prefix); pw.print("  taskWrites="); pw.print(mTaskWrites.get());
+        pw.print(" skippedUnchanged="); pw.println(mSkippedTaskWrites.get());
+    }
+
     static Bitmap restoreImage(String filename) {
         if (DEBUG) Slog.d(TAG, "restoreImage: restoring " + filename);
         return BitmapFactory.decodeFile(filename);
@@ -514,21 +616,28 @@ public class TaskPersister implements PersisterQueue.Listener {
 
     private static class TaskWriteQueueItem implements PersisterQueue.WriteQueueItem {
         private final ActivityTaskManagerService mService;
+        private final TaskPersister mPersister;
         private final Task mTask;
 
-        TaskWriteQueueItem(Task task, ActivityTaskManagerService service) {
+        TaskWriteQueueItem(Task task, TaskPersister persister) {
             mTask = task;
-            mService = service;
+            mPersister = persister;
+            mService = persister.mService;
         }
 
         private byte[] saveToXml(Task task) throws Exception {
             if (DEBUG) Slog.d(TAG, "saveToXml: task=" + task);
             final ByteArrayOutputStream os = new ByteArrayOutputStream();
-            final TypedXmlSerializer xmlSerializer = Xml.resolveSerializer(os);
-
+            final TypedXmlSerializer xmlSerializer;
             if (DEBUG) {
+                xmlSerializer = Xml.resolveSerializer(os);
                 xmlSerializer.setFeature(
                         "http://xmlpull.org/v1/doc/features.html#indent-output", true);
+            } else {
+                // Binary records are smaller and quicker to write and restore, whatever the
+                // default for other files is. Restoring detects the format of each file.
+                xmlSerializer = Xml.newBinarySerializer();
+                xmlSerializer.setOutput(os, StandardCharsets.UTF_8.name());
             }
 
             // save task
@@ -562,27 +671,8 @@ public class TaskPersister implements PersisterQueue.Listener {
             }
             if (data != null) {
                 // Write out xml file while not holding mService lock.
-                FileOutputStream file = null;
-                AtomicFile atomicFile = null;
-                try {
-                    File userTasksDir = getUserTasksDir(task.mUserId);
-                    if (!userTasksDir.isDirectory() && !userTasksDir.mkdirs()) {
-                        Slog.e(TAG, "Failure creating tasks directory for user " + task.mUserId
-                                + ": " + userTasksDir + " Dropping persistence for task " + task);
-                        return;
-                    }
-                    atomicFile = new AtomicFile(new File(userTasksDir,
-                            String.valueOf(task.mTaskId) + TASK_FILENAME_SUFFIX));
-                    file = atomicFile.startWrite();
-                    file.write(data);
-                    atomicFile.finishWrite(file);
-                } catch (IOException e) {
-                    if (file != null) {
-                        atomicFile.failWrite(file);
-                    }
-                    Slog.e(TAG,
-                            "Unable to open " + atomicFile + " for persisting. " + e);
-                }
+                mPersister.writeTaskRecord(getUserTasksDir(task.mUserId), task.mUserId,
+                        task.mTaskId, data);
             }
         }
 
@@ -594,12 +684,14 @@ public class TaskPersister implements PersisterQueue.Listener {
 
     private static class ImageWriteQueueItem implements
             PersisterQueue.WriteQueueItem<ImageWriteQueueItem> {
+        private final TaskPersister mPersister;
         final String mFilePath;
         Bitmap mImage;
 
-        ImageWriteQueueItem(String filePath, Bitmap image) {
+        ImageWriteQueueItem(String filePath, Bitmap image, TaskPersister persister) {
             mFilePath = filePath;
             mImage = image;
+            mPersister = persister;
         }
 
         @Override
@@ -620,6 +712,7 @@ public class TaskPersister implements PersisterQueue.Listener {
             } finally {
                 IoUtils.closeQuietly(imageFile);
             }
+            mPersister.mBytesWritten.addAndGet(new File(filePath).length());
         }
 
         @Override
@@ -105,7 +105,8 @@ class TaskSnapshotController extends AbsAppSnapshotController<Task, TaskSnapshot
         final boolean use16BitFormat = service.mContext.getResources().getBoolean(
                 com.android.internal.R.bool.config_use16BitTaskSnapshotPixelFormat);
         return new PersistInfoProvider(resolver, SNAPSHOTS_DIRNAME,
-                enableLowResSnapshots, lowResScaleFactor, use16BitFormat);
+                enableLowResSnapshots, lowResScaleFactor, use16BitFormat,
+                BaseAppSnapshotPersister.getSnapshotFormat());
     }
 
     // Still needed for legacy transition.(AppTransitionControllerTest)
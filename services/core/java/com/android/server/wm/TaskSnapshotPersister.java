@@ -129,7 +129,8 @@ class TaskSnapshotPersister extends BaseAppSnapshotPersister {
 
         @VisibleForTesting
         int getTaskId(String fileName) {
-            if (!fileName.endsWith(PROTO_EXTENSION) && !fileName.endsWith(BITMAP_EXTENSION)) {
+            if (!fileName.endsWith(PROTO_EXTENSION) && !fileName.endsWith(BITMAP_EXTENSION)
+                    && !fileName.endsWith(CONTAINER_EXTENSION)) {
                 return -1;
             }
             final int end = fileName.lastIndexOf('.');
@@ -587,6 +587,7 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
     public void onConfigurationChanged(Configuration newParentConfig) {
         super.onConfigurationChanged(newParentConfig);
         updateSurfacePositionNonOrganized();
+        setSurfacePlacementDirty();
         scheduleAnimation();
         if (mOverlayHost != null) {
             mOverlayHost.dispatchConfigurationChanged(getConfiguration());
@@ -660,9 +661,13 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
     @Override
     void onParentChanged(ConfigurationContainer newParent, ConfigurationContainer oldParent) {
         super.onParentChanged(newParent, oldParent);
+        if (oldParent != null) {
+            ((WindowContainer<?>) oldParent).setSurfacePlacementDirty();
+        }
         if (mParent == null) {
             return;
         }
+        setSurfacePlacementDirty();
 
         if (mSurfaceControl == null) {
             // If we don't yet have a surface, but we now have a parent, we should
@@ -1361,6 +1366,7 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
     boolean setVisibleRequested(boolean visible) {
         if (mVisibleRequested == visible) return false;
         mVisibleRequested = visible;
+        setSurfacePlacementDirty();
         final WindowContainer parent = getParent();
         if (parent != null) {
             parent.onChildVisibleRequestedChanged(this);
@@ -2913,6 +2919,17 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
         mWmService.scheduleAnimationLocked();
     }
 
+    /**
+     * Marks the display of this container as having changed, so that the next surface placement
+     * goes through its windows again rather than reusing what it found the last time.
+     */
+    void setSurfacePlacementDirty() {
+        final DisplayContent dc = getDisplayContent();
+        if (dc != null) {
+            dc.mSurfacePlacementDirty = true;
+        }
+    }
+
     /**
      * @return The SurfaceControl for this container.
      *         The SurfaceControl must be valid if non-null.
@@ -3500,6 +3517,7 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
         mLastLayer = -1;
         mAnimationLeash = leash;
         reassignLayer(t);
+        setSurfacePlacementDirty();
 
         // Leash is now responsible for position, so set our position to 0.
         resetSurfacePositionForAnimationLeash(t);
@@ -3513,6 +3531,7 @@ class WindowContainer<E extends WindowContainer> extends ConfigurationContainer<
         mNeedsZBoost = false;
         reassignLayer(t);
         updateSurfacePosition(t);
+        setSurfacePlacementDirty();
     }
 
     @Override
@@ -115,6 +115,14 @@ public class WindowFrames {
         return mLastForceReportingResized || mFrameSizeChanged;
     }
 
+    /**
+     * Returns what {@link #setReportResizeHints} would, without latching the hints.
+     */
+    boolean hasReportResizeHints() {
+        return mLastForceReportingResized || mForceReportingResized || mFrameSizeChanged
+                || didFrameSizeChange();
+    }
+
     /**
      * @return true if the width or height has changed since last reported to the client.
      */
@@ -2254,6 +2254,9 @@ public class WindowManagerService extends IWindowManager.Stub
                 flagChanges = win.mAttrs.flags ^ attrs.flags;
                 privateFlagChanges = win.mAttrs.privateFlags ^ attrs.privateFlags;
                 attrChanges = win.mAttrs.copyFrom(attrs);
+                if (attrChanges != 0) {
+                    win.setSurfacePlacementDirty();
+                }
                 final boolean layoutChanged =
                         (attrChanges & WindowManager.LayoutParams.LAYOUT_CHANGED) != 0;
                 if (layoutChanged || (attrChanges
@@ -8216,17 +8219,22 @@ public class WindowManagerService extends IWindowManager.Stub
         public void addRefreshRateRangeForPackage(@NonNull String packageName,
                 float minRefreshRate, float maxRefreshRate) {
             synchronized (mGlobalLock) {
-                mRoot.forAllDisplays(dc -> dc.getDisplayPolicy().getRefreshRatePolicy()
-                        .addRefreshRateRangeForPackage(
-                                packageName, minRefreshRate, maxRefreshRate));
+                mRoot.forAllDisplays(dc -> {
+                    dc.getDisplayPolicy().getRefreshRatePolicy().addRefreshRateRangeForPackage(
+                            packageName, minRefreshRate, maxRefreshRate);
+                    dc.setSurfacePlacementDirty();
+                });
             }
         }
 
         @Override
         public void removeRefreshRateRangeForPackage(@NonNull String packageName) {
             synchronized (mGlobalLock) {
-                mRoot.forAllDisplays(dc -> dc.getDisplayPolicy().getRefreshRatePolicy()
-                        .removeRefreshRateRangeForPackage(packageName));
+                mRoot.forAllDisplays(dc -> {
+                    dc.getDisplayPolicy().getRefreshRatePolicy()
+                            .removeRefreshRateRangeForPackage(packageName);
+                    dc.setSurfacePlacementDirty();
+                });
             }
         }
 
@@ -1508,6 +1508,24 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         }
     }
 
+    /**
+     * Returns whether {@link #updateResizingWindowIfNeeded} would report a resize to the client,
+     * without changing any state.
+     */
+    boolean isResizeReportPending() {
+        final boolean insetsChanged = mWindowFrames.hasInsetsChanged();
+        if ((!mHasSurface || getDisplayContent().mLayoutSeq != mLayoutSeq || isGoneForLayout())
+                && !insetsChanged) {
+            return false;
+        }
+        return insetsChanged
+                || mWindowFrames.hasReportResizeHints()
+                || (!mInRelayout && !isLastConfigReportedToClient())
+                || (!mDragResizingChangeReported && isDragResizeChanged())
+                || shouldSendRedrawForSync()
+                || (LOCAL_LAYOUT && mLayoutAttached && getParentWindow().frameChanged());
+    }
+
     private boolean frameChanged() {
         return !mWindowFrames.mFrame.equals(mWindowFrames.mLastFrame);
     }
@@ -1853,11 +1871,13 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
 
     void clearPolicyVisibilityFlag(int policyVisibilityFlag) {
         mPolicyVisibility &= ~policyVisibilityFlag;
+        setSurfacePlacementDirty();
         mWmService.scheduleAnimationLocked();
     }
 
     void setPolicyVisibilityFlag(int policyVisibilityFlag) {
         mPolicyVisibility |= policyVisibilityFlag;
+        setSurfacePlacementDirty();
         mWmService.scheduleAnimationLocked();
     }
 
@@ -2558,7 +2578,10 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
     }
 
     void setHasSurface(boolean hasSurface) {
-        mHasSurface = hasSurface;
+        if (mHasSurface != hasSurface) {
+            mHasSurface = hasSurface;
+            setSurfacePlacementDirty();
+        }
     }
 
     boolean canBeImeTarget() {
@@ -3795,6 +3818,8 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
     void notifyInsetsChanged() {
         ProtoLog.d(WM_DEBUG_WINDOW_INSETS, "notifyInsetsChanged for %s ", this);
         mWindowFrames.setInsetsChanged(true);
+        // The new insets are dispatched while going through the windows of the display.
+        setSurfacePlacementDirty();
 
         // If the new InsetsState won't be dispatched before releasing WM lock, the following
         // message will be executed.
@@ -3979,6 +4004,7 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
     @Override
     void resetDragResizingChangeReported() {
         mDragResizingChangeReported = false;
+        setSurfacePlacementDirty();
         super.resetDragResizingChangeReported();
     }
 
@@ -5649,7 +5675,10 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
     }
 
     void setViewVisibility(int viewVisibility) {
-        mViewVisibility = viewVisibility;
+        if (mViewVisibility != viewVisibility) {
+            mViewVisibility = viewVisibility;
+            setSurfacePlacementDirty();
+        }
     }
 
     SurfaceControl getClientViewRootSurface() {
@@ -5695,6 +5724,7 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         // to draw even if the children draw first or don't need to sync, so we start
         // in WAITING state rather than READY.
         mSyncState = SYNC_STATE_WAITING_FOR_DRAW;
+        setSurfacePlacementDirty();
 
         if (mPrepareSyncSeqId > 0) {
             // another prepareSync during existing sync (eg. reparented), so pre-emptively
@@ -5870,6 +5900,8 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
 
     void requestRedrawForSync() {
         mRedrawForSyncReported = false;
+        // The redraw is requested while going through the windows of the display.
+        setSurfacePlacementDirty();
     }
 
     /**
@@ -89,6 +89,10 @@ class WindowSurfacePlacer {
             return;
         }
 
+        // Send the configuration changes held back while layout was deferred, merged per process
+        // and activity.
+        mService.mAtmService.getLifecycleManager().dispatchPendingTransactions();
+
         if (hasChanges || mDeferredRequests > 0) {
             if (DEBUG) {
                 Slog.i(TAG, "continueLayout hasChanges=" + hasChanges
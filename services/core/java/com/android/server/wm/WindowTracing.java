@@ -77,6 +77,14 @@ class WindowTracing {
     private volatile boolean mEnabledLockFree;
     private boolean mScheduled;
 
+    // The time spent capturing states, and holding the window manager lock for it.
+    private final Object mCaptureStatsLock = new Object();
+    private long mCaptureCount;
+    private long mCaptureTotalNs;
+    private long mCaptureMaxNs;
+    private long mLockHoldTotalNs;
+    private long mLockHoldMaxNs;
+
     static WindowTracing createDefaultAndStartLooper(WindowManagerService service,
             Choreographer choreographer) {
         File file = new File(TRACE_FILENAME);
@@ -106,7 +114,7 @@ class WindowTracing {
         synchronized (mEnabledLock) {
             ProtoLogImpl.getSingleInstance().startProtoLog(pw);
             logAndPrintln(pw, "Start tracing to " + mTraceFile + ".");
-            mBuffer.resetBuffer();
+            resetBuffer();
             mEnabled = mEnabledLockFree = true;
         }
         log("trace.enable");
@@ -154,7 +162,7 @@ class WindowTracing {
             logAndPrintln(pw, "Trace written to " + mTraceFile + ".");
             ProtoLogImpl.getSingleInstance().stopProtoLog(pw, true);
             logAndPrintln(pw, "Start tracing to " + mTraceFile + ".");
-            mBuffer.resetBuffer();
+            resetBuffer();
             mEnabled = mEnabledLockFree = true;
             ProtoLogImpl.getSingleInstance().startProtoLog(pw);
         }
@@ -191,6 +199,18 @@ class WindowTracing {
         mBuffer.setCapacity(capacity);
     }
 
+    /** Clears the buffer, along with the capture statistics. */
+    private void resetBuffer() {
+        mBuffer.resetBuffer();
+        synchronized (mCaptureStatsLock) {
+            mCaptureCount = 0;
+            mCaptureTotalNs = 0;
+            mCaptureMaxNs = 0;
+            mLockHoldTotalNs = 0;
+            mLockHoldMaxNs = 0;
+        }
+    }
+
     boolean isEnabled() {
         return mEnabledLockFree;
     }
@@ -213,11 +233,11 @@ class WindowTracing {
                 return 0;
             case "frame":
                 setLogFrequency(true /* onFrame */, pw);
-                mBuffer.resetBuffer();
+                resetBuffer();
                 return 0;
             case "transaction":
                 setLogFrequency(false /* onFrame */, pw);
-                mBuffer.resetBuffer();
+                resetBuffer();
                 return 0;
             case "level":
                 String logLevelStr = shell.getNextArgRequired().toLowerCase();
@@ -239,11 +259,11 @@ class WindowTracing {
                         break;
                     }
                 }
-                mBuffer.resetBuffer();
+                resetBuffer();
                 return 0;
             case "size":
                 setBufferCapacity(Integer.parseInt(shell.getNextArgRequired()) * 1024, pw);
-                mBuffer.resetBuffer();
+                resetBuffer();
                 return 0;
             default:
                 pw.println("Unknown command: " + cmd);
@@ -271,7 +291,20 @@ class WindowTracing {
                 + "Log level: "
                 + mLogLevel
                 + "\n"
-                + mBuffer.getStatus();
+                + mBuffer.getStatus()
+                + "\n"
+                + getCaptureStats();
+    }
+
+    private String getCaptureStats() {
+        synchronized (mCaptureStatsLock) {
+            final long count = Math.max(mCaptureCount, 1);
+            return "Captures: " + mCaptureCount
+                    + " time avg=" + TimeUnit.NANOSECONDS.toMicros(mCaptureTotalNs / count)
+                    + "us max=" + TimeUnit.NANOSECONDS.toMicros(mCaptureMaxNs)
+                    + "us, lock held avg=" + TimeUnit.NANOSECONDS.toMicros(mLockHoldTotalNs / count)
+                    + "us max=" + TimeUnit.NANOSECONDS.toMicros(mLockHoldMaxNs) + "us";
+        }
     }
 
     /**
@@ -312,24 +345,36 @@ class WindowTracing {
     private void log(String where) {
         Trace.traceBegin(Trace.TRACE_TAG_WINDOW_MANAGER, "traceStateLocked");
         try {
+            final long startTimeNs = SystemClock.elapsedRealtimeNanos();
+            // Callers of logState usually hold the lock already, in which case it is held for
+            // the whole capture rather than just while dumping the hierarchy.
+            final boolean lockHeld = Thread.holdsLock(mGlobalLock);
             ProtoOutputStream os = new ProtoOutputStream();
             long tokenOuter = os.start(ENTRY);
-            os.write(ELAPSED_REALTIME_NANOS, SystemClock.elapsedRealtimeNanos());
+            os.write(ELAPSED_REALTIME_NANOS, startTimeNs);
             os.write(WHERE, where);
 
             long tokenInner = os.start(WINDOW_MANAGER_SERVICE);
+            long lockHoldNs;
             synchronized (mGlobalLock) {
+                final long lockedTimeNs = SystemClock.elapsedRealtimeNanos();
                 Trace.traceBegin(Trace.TRACE_TAG_WINDOW_MANAGER, "dumpDebugLocked");
                 try {
                     mService.dumpDebugLocked(os, mLogLevel);
                 } finally {
                     Trace.traceEnd(Trace.TRACE_TAG_WINDOW_MANAGER);
                 }
+                lockHoldNs = SystemClock.elapsedRealtimeNanos() - lockedTimeNs;
             }
             os.end(tokenInner);
             os.end(tokenOuter);
             mBuffer.add(os);
             mScheduled = false;
+            final long captureNs = SystemClock.elapsedRealtimeNanos() - startTimeNs;
+            if (lockHeld) {
+                lockHoldNs = captureNs;
+            }
+            recordCapture(captureNs, lockHoldNs);
         } catch (Exception e) {
             Log.wtf(TAG, "Exception while tracing state", e);
         } finally {
@@ -337,6 +382,16 @@ class WindowTracing {
         }
     }
 
+    private void recordCapture(long captureNs, long lockHoldNs) {
+        synchronized (mCaptureStatsLock) {
+            mCaptureCount++;
+            mCaptureTotalNs += captureNs;
+            mCaptureMaxNs = Math.max(mCaptureMaxNs, captureNs);
+            mLockHoldTotalNs += lockHoldNs;
+            mLockHoldMaxNs = Math.max(mLockHoldMaxNs, lockHoldNs);
+        }
+    }
+
     private void logAndPrintln(@Nullable PrintWriter pw, String msg) {
         Log.i(TAG, msg);
         if (pw != null) {
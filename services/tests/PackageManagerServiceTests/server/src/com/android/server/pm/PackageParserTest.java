@@ -49,8 +49,10 @@ import android.content.pm.SigningDetails;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.Trace;
 import android.platform.test.annotations.Presubmit;
 import android.util.ArraySet;
+import android.util.TimingsTraceLog;
 
 import androidx.annotation.Nullable;
 import androidx.test.InstrumentationRegistry;
@@ -183,6 +185,39 @@ public class PackageParserTest {
         assertEquals("android", pkg.getPackageName());
     }
 
+    @Test
+    public void testParse_withCacheIndex() throws Exception {
+        CachePackageNameParser pp = new CachePackageNameParser(mTmpDir);
+        // The first parse will write this package to the cache and record it in the index.
+        pp.parsePackage(FRAMEWORK, 0 /* parseFlags */, true /* useCaches */);
+        pp.writeCacheIndex(new TimingsTraceLog("PackageParserTest",
+                Trace.TRACE_TAG_PACKAGE_MANAGER));
+        assertEquals(2, mTmpDir.list().length);
+
+        // A new parser consults the persisted index and should return the cached result.
+        pp = new CachePackageNameParser(mTmpDir);
+        ParsedPackage pkg = pp.parsePackage(FRAMEWORK, 0 /* parseFlags */,
+                true /* useCaches */);
+        assertEquals("cache_android", pkg.getPackageName());
+
+        // The entry is served from the index, without reading its cache file.
+        for (File file : mTmpDir.listFiles()) {
+            if (!file.getName().startsWith(".")) {
+                file.delete();
+            }
+        }
+        pp = new CachePackageNameParser(mTmpDir);
+        pkg = pp.parsePackage(FRAMEWORK, 0 /* parseFlags */, true /* useCaches */);
+        assertEquals("cache_android", pkg.getPackageName());
+
+        // Cleaning the cached result of the package also drops it from the index.
+        new PackageCacher(mTmpDir).cleanCachedResult(FRAMEWORK);
+        assertEquals(0, mTmpDir.list().length);
+        pp = new CachePackageNameParser(mTmpDir);
+        pkg = pp.parsePackage(FRAMEWORK, 0 /* parseFlags */, true /* useCaches */);
+        assertEquals("android", pkg.getPackageName());
+    }
+
     @Test
     public void test_serializePackage() throws Exception {
         try (PackageParser2 pp = PackageParser2.forParsingFileWithDefaults()) {
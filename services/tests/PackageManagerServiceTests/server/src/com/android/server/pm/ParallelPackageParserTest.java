@@ -27,14 +27,21 @@ import com.android.server.pm.parsing.pkg.ParsedPackage;
 
 import junit.framework.Assert;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests for {@link ParallelPackageParser}
@@ -45,11 +52,21 @@ public class ParallelPackageParserTest {
     private static final String TAG = ParallelPackageParserTest.class.getSimpleName();
 
     private ParallelPackageParser mParser;
+    private ExecutorService mExecutorService;
+    private ExecutorService mSingleThreadExecutor;
 
     @Before
     public void setUp() {
-        mParser = new TestParallelPackageParser(new TestPackageParser2(),
-                ParallelPackageParser.makeExecutorService());
+        mExecutorService = ParallelPackageParser.makeExecutorService();
+        mParser = new TestParallelPackageParser(new TestPackageParser2(), mExecutorService);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutorService.shutdownNow();
+        if (mSingleThreadExecutor != null) {
+            mSingleThreadExecutor.shutdownNow();
+        }
     }
 
     @Test(timeout = 1000)
@@ -74,16 +91,74 @@ public class ParallelPackageParserTest {
         }
     }
 
+    @Test(timeout = 1000)
+    public void testSubmitLargestFirst() throws Exception {
+        // A single thread parses the packages in the order they were submitted.
+        mSingleThreadExecutor = Executors.newSingleThreadExecutor();
+        final TestParallelPackageParser parser = new TestParallelPackageParser(
+                new TestPackageParser2(), mSingleThreadExecutor);
+        final File dir = Files.createTempDirectory(TAG).toFile();
+        final File oatDir = new File(dir, "oat");
+        try {
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                File file = new File(dir, "f" + i + ".apk");
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    out.write(new byte[i * 100]);
+                }
+                files.add(file);
+            }
+            Assert.assertTrue(oatDir.mkdir());
+            try (FileOutputStream out = new FileOutputStream(new File(oatDir, "f0.odex"))) {
+                out.write(new byte[5000]);
+            }
+            parser.submitLargestFirst(files, 0);
+            for (int i = 0; i < files.size(); i++) {
+                Assert.assertNotNull(parser.take().scanFile);
+            }
+            final List<File> expectedOrder = new ArrayList<>(files);
+            Collections.reverse(expectedOrder);
+            Assert.assertEquals(expectedOrder, parser.getParsedFiles());
+            ParallelPackageParser.ParseStats stats = parser.getStats();
+            Assert.assertEquals(files.size(), stats.count);
+            Assert.assertNotNull(stats.maxParseFile);
+            Assert.assertTrue(stats.getTailTime() <= stats.getWallTime());
+            Assert.assertEquals(400, ParallelPackageParser.estimateSize(files.get(4)));
+            // Only the APKs at the top of a cluster package are counted.
+            Assert.assertEquals(1000, ParallelPackageParser.estimateSize(dir));
+        } finally {
+            final File[] oatFiles = oatDir.listFiles();
+            for (int i = 0; oatFiles != null && i < oatFiles.length; i++) {
+                oatFiles[i].delete();
+            }
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
     private class TestParallelPackageParser extends ParallelPackageParser {
 
         TestParallelPackageParser(PackageParser2 packageParser, ExecutorService executorService) {
             super(packageParser, executorService);
         }
 
+        private final List<File> mParsedFiles = new ArrayList<>();
+
         @Override
         protected ParsedPackage parsePackage(File scanFile, int parseFlags) {
+            synchronized (mParsedFiles) {
+                mParsedFiles.add(scanFile);
+            }
             // Do not actually parse the package for testing
             return null;
         }
+
+        List<File> getParsedFiles() {
+            synchronized (mParsedFiles) {
+                return new ArrayList<>(mParsedFiles);
+            }
+        }
     }
 }
@@ -85,6 +85,7 @@ import static com.android.server.alarm.AlarmManagerService.Constants.KEY_MIN_INT
 import static com.android.server.alarm.AlarmManagerService.Constants.KEY_MIN_WINDOW;
 import static com.android.server.alarm.AlarmManagerService.Constants.KEY_PRIORITY_ALARM_DELAY;
 import static com.android.server.alarm.AlarmManagerService.Constants.KEY_TEMPORARY_QUOTA_BUMP;
+import static com.android.server.alarm.AlarmManagerService.Constants.KEY_USE_TIMING_WHEEL_ALARM_STORE;
 import static com.android.server.alarm.AlarmManagerService.Constants.MAX_EXACT_ALARM_DENY_LIST_SIZE;
 import static com.android.server.alarm.AlarmManagerService.FREQUENT_INDEX;
 import static com.android.server.alarm.AlarmManagerService.INDEFINITE_DELAY;
@@ -1619,6 +1620,29 @@ public final class AlarmManagerServiceTest {
         assertEquals(1, mService.mAlarmStore.size());
     }
 
+    @Test
+    public void switchingAlarmStoreKeepsAlarms() {
+        final long firstTrigger = mNowElapsedTest + 10;
+        for (int i = 0; i < 5; i++) {
+            setTestAlarm(ELAPSED_REALTIME_WAKEUP, firstTrigger + i, getNewMockPendingIntent());
+        }
+        assertEquals(firstTrigger, mTestTimer.getElapsed());
+
+        setDeviceConfigBoolean(KEY_USE_TIMING_WHEEL_ALARM_STORE, true);
+        assertTrue(mService.mAlarmStore instanceof TimingWheelAlarmStore);
+        assertEquals(5, mService.mAlarmStore.size());
+
+        mNowElapsedTest = mTestTimer.getElapsed();
+        mTestTimer.expire();
+        assertEquals(4, mService.mAlarmStore.size());
+        assertEquals(firstTrigger + 1, mTestTimer.getElapsed());
+
+        setDeviceConfigBoolean(KEY_USE_TIMING_WHEEL_ALARM_STORE, false);
+        assertTrue(mService.mAlarmStore instanceof LazyAlarmStore);
+        assertEquals(4, mService.mAlarmStore.size());
+        assertEquals(firstTrigger + 1, mTestTimer.getElapsed());
+    }
+
     @Test
     public void nextWakeFromIdle() throws Exception {
         assertNull(mService.mNextWakeFromIdle);
@@ -33,8 +33,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 import android.app.AlarmManager;
+import android.app.IAlarmListener;
 import android.app.PendingIntent;
 import android.platform.test.annotations.Presubmit;
+import android.text.format.DateUtils;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +58,7 @@ public class AlarmStoreTest {
     public static Object[] stores() {
         return new AlarmStore[]{
                 new LazyAlarmStore(),
+                new TimingWheelAlarmStore(),
         };
     }
 
@@ -81,6 +84,18 @@ public class AlarmStoreTest {
                 EXACT_ALLOW_REASON_NOT_APPLICABLE);
     }
 
+    private static Alarm createAlarm(long whenElapsed, int uid, String packageName,
+            PendingIntent operation) {
+        return new Alarm(ELAPSED_REALTIME, whenElapsed, whenElapsed, 0, 0, operation, null, null,
+                null, 0, null, uid, packageName, null, EXACT_ALLOW_REASON_NOT_APPLICABLE);
+    }
+
+    private static Alarm createListenerAlarm(long whenElapsed, int uid, String packageName) {
+        return new Alarm(ELAPSED_REALTIME, whenElapsed, whenElapsed, 0, 0, null,
+                mock(IAlarmListener.class), null, null, 0, null, uid, packageName, null,
+                EXACT_ALLOW_REASON_NOT_APPLICABLE);
+    }
+
     private void addAlarmsToStore(Alarm... alarms) {
         for (Alarm a : alarms) {
             mAlarmStore.add(a);
@@ -267,4 +282,65 @@ public class AlarmStoreTest {
         assertEquals(2, mAlarmStore.getCount(a -> a.flags == 53));
         assertEquals(0, mAlarmStore.getCount(a -> a.type == RTC));
     }
+
+    @Test
+    public void removeForUidAndPackage() {
+        final String otherPackage = TEST_CALLING_PACKAGE + ".other";
+        final Alarm a1 = createListenerAlarm(1, TEST_CALLING_UID, TEST_CALLING_PACKAGE);
+        final Alarm a2 = createListenerAlarm(2, TEST_CALLING_UID, otherPackage);
+        final Alarm a3 = createListenerAlarm(3, TEST_CALLING_UID + 1, TEST_CALLING_PACKAGE);
+        final Alarm a4 = createListenerAlarm(4, TEST_CALLING_UID + 1, otherPackage);
+        addAlarmsToStore(a1, a2, a3, a4);
+
+        ArrayList<Alarm> removed = mAlarmStore.removeForUid(TEST_CALLING_UID,
+                a -> a.getWhenElapsed() > 1);
+        assertEquals(1, removed.size());
+        assertTrue(removed.contains(a2));
+
+        removed = mAlarmStore.removeForPackage(TEST_CALLING_PACKAGE, unused -> true);
+        assertEquals(2, removed.size());
+        assertTrue(removed.contains(a1) && removed.contains(a3));
+
+        assertEquals(1, mAlarmStore.size());
+        assertEquals(a4, mAlarmStore.asList().get(0));
+    }
+
+    @Test
+    public void removeMatching() {
+        final PendingIntent operation = mock(PendingIntent.class);
+        final Alarm a1 = createAlarm(1, TEST_CALLING_UID, TEST_CALLING_PACKAGE, operation);
+        final Alarm a2 = createAlarm(2, TEST_CALLING_UID, TEST_CALLING_PACKAGE,
+                mock(PendingIntent.class));
+        final Alarm a3 = createAlarm(3, TEST_CALLING_UID, TEST_CALLING_PACKAGE, operation);
+        addAlarmsToStore(a1, a2, a3);
+
+        final ArrayList<Alarm> removed = mAlarmStore.removeMatching(operation, null);
+        assertEquals(2, removed.size());
+        assertTrue(removed.contains(a1) && removed.contains(a3));
+        assertEquals(1, mAlarmStore.size());
+        assertEquals(2, mAlarmStore.getNextDeliveryTime());
+    }
+
+    @Test
+    public void farFutureAlarmsStayInOrder() {
+        // Spread over spans that are far larger than the time between deliveries.
+        final long[] times = {
+                DateUtils.SECOND_IN_MILLIS,
+                DateUtils.MINUTE_IN_MILLIS + 7,
+                DateUtils.HOUR_IN_MILLIS + 3,
+                DateUtils.DAY_IN_MILLIS + 11,
+                DateUtils.YEAR_IN_MILLIS + 5,
+                10 * DateUtils.YEAR_IN_MILLIS,
+        };
+        for (int i = times.length - 1; i >= 0; i--) {
+            mAlarmStore.add(createAlarm(times[i], 0));
+        }
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], mAlarmStore.getNextDeliveryTime());
+            final ArrayList<Alarm> delivered = mAlarmStore.removePendingAlarms(times[i]);
+            assertEquals(1, delivered.size());
+            assertEquals(times[i], delivered.get(0).getWhenElapsed());
+            assertEquals(times.length - i - 1, mAlarmStore.size());
+        }
+    }
 }
@@ -76,6 +76,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ResolveInfo;
 import android.media.AudioManager;
+import android.net.ConnectivityManager;
 import android.os.Bundle;
 import android.os.BundleMerger;
 import android.os.DropBoxManager;
@@ -93,6 +94,7 @@ import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.android.internal.util.FrameworkStatsLog;
 import com.android.server.ExtendedMockitoRule;
+import com.android.server.am.BroadcastProcessQueue.BroadcastConsumer;
 
 import org.junit.After;
 import org.junit.Before;
@@ -1451,6 +1453,75 @@ public final class BroadcastQueueModernImplTest {
         assertTrue(queue.isEmpty());
     }
 
+    /**
+     * Verify that a state broadcast from the system replaces its undelivered
+     * older instance, but only while the process is cached.
+     */
+    @Test
+    public void testCoalesceBroadcast() {
+        final BroadcastProcessQueue queue = new BroadcastProcessQueue(mConstants,
+                PACKAGE_GREEN, getUidForPackage(PACKAGE_GREEN));
+        final BroadcastConsumer unexpected = (r, i) -> {
+            throw new UnsupportedOperationException();
+        };
+
+        final Intent timeTick = new Intent(Intent.ACTION_TIME_TICK);
+        final BroadcastRecord timeTickRecord1 = makeBroadcastRecord(timeTick);
+        final BroadcastRecord timeTickRecord2 = makeBroadcastRecord(timeTick);
+        final BroadcastRecord timeTickRecord3 = makeBroadcastRecord(timeTick);
+        timeTickRecord3.enqueueTime = timeTickRecord2.enqueueTime + 1000;
+        timeTickRecord3.enqueueRealTime = timeTickRecord2.enqueueRealTime + 1000;
+        timeTickRecord3.enqueueClockTime = timeTickRecord2.enqueueClockTime + 1000;
+        assertTrue(BroadcastCoalescingPolicy.isCoalescable(timeTickRecord1));
+        assertFalse(BroadcastCoalescingPolicy.isCoalescable(
+                makeOrderedBroadcastRecord(timeTick)));
+        enqueueOrReplaceBroadcast(queue, timeTickRecord1, 0);
+
+        // Running processes receive every instance
+        queue.setProcessAndUidState(mProcess, false, false);
+        assertFalse(queue.coalesceBroadcast(timeTickRecord2, 0, unexpected, unexpected));
+        enqueueOrReplaceBroadcast(queue, timeTickRecord2, 0);
+
+        // Cached processes only receive the latest one
+        queue.setProcessAndUidState(mProcess, false, true);
+        final ArrayList<BroadcastRecord> replaced = new ArrayList<>();
+        assertTrue(queue.coalesceBroadcast(timeTickRecord3, 0, unexpected,
+                (r, i) -> replaced.add(r)));
+        assertEquals(List.of(timeTickRecord2), replaced);
+        // The replacement keeps the place of the older instance, including its enqueue time
+        assertEquals(timeTickRecord2.enqueueTime, timeTickRecord3.enqueueTime);
+        assertEquals(timeTickRecord2.enqueueRealTime, timeTickRecord3.enqueueRealTime);
+        assertEquals(timeTickRecord2.enqueueClockTime, timeTickRecord3.enqueueClockTime);
+        assertThat(timeTickRecord3.originalEnqueueClockTime)
+                .isGreaterThan(timeTickRecord3.enqueueClockTime);
+
+        queue.makeActiveNextPending();
+        assertEquals(timeTickRecord1, queue.getActive());
+        queue.makeActiveNextPending();
+        assertEquals(timeTickRecord3, queue.getActive());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Verify that connectivity changes only replace older instances about the
+     * same type of network.
+     */
+    @Test
+    public void testCoalesceBroadcast_connectivityByNetworkType() {
+        final Intent wifi = new Intent(ConnectivityManager.CONNECTIVITY_ACTION)
+                .putExtra(ConnectivityManager.EXTRA_NETWORK_TYPE, ConnectivityManager.TYPE_WIFI);
+        final Intent mobile = new Intent(ConnectivityManager.CONNECTIVITY_ACTION)
+                .putExtra(ConnectivityManager.EXTRA_NETWORK_TYPE,
+                        ConnectivityManager.TYPE_MOBILE);
+        final BroadcastRecord wifiRecord1 = makeBroadcastRecord(wifi);
+        final BroadcastRecord wifiRecord2 = makeBroadcastRecord(wifi);
+        final BroadcastRecord mobileRecord = makeBroadcastRecord(mobile);
+
+        assertTrue(BroadcastCoalescingPolicy.supersedes(wifiRecord2, wifiRecord1));
+        assertFalse(BroadcastCoalescingPolicy.supersedes(mobileRecord, wifiRecord1));
+        assertFalse(BroadcastCoalescingPolicy.supersedes(wifiRecord2, mobileRecord));
+    }
+
     @Test
     public void testCleanupDisabledPackageReceiversLocked() {
         final Intent userPresent = new Intent(Intent.ACTION_USER_PRESENT);
@@ -45,6 +45,7 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -60,6 +61,7 @@ import android.app.AppOpsManager;
 import android.app.BackgroundStartPrivileges;
 import android.app.BroadcastOptions;
 import android.app.IApplicationThread;
+import android.app.ReceiverInfo;
 import android.app.UidObserver;
 import android.app.usage.UsageEvents.Event;
 import android.app.usage.UsageStatsManagerInternal;
@@ -82,6 +84,7 @@ import android.os.IBinder;
 import android.os.PowerExemptionManager;
 import android.os.SystemClock;
 import android.os.TestLooperManager;
+import android.os.TransactionTooLargeException;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.Log;
@@ -527,6 +530,25 @@ public class BroadcastQueueTest {
         }).when(thread).scheduleRegisteredReceiver(any(), any(), anyInt(), any(), any(),
                 anyBoolean(), anyBoolean(), anyBoolean(), anyInt(), anyInt(), anyInt(), any());
 
+        // Unpack batches the same way ActivityThread does
+        doAnswer((invocation) -> {
+            final List<ReceiverInfo> infos = invocation.getArgument(0);
+            for (ReceiverInfo info : infos) {
+                if (info.registered) {
+                    thread.scheduleRegisteredReceiver(info.receiver, info.intent,
+                            info.resultCode, info.data, info.extras, info.ordered, info.sticky,
+                            info.assumeDelivered, info.sendingUser, info.processState,
+                            info.sendingUid, info.sendingPackage);
+                } else {
+                    thread.scheduleReceiver(info.intent, info.activityInfo, info.compatInfo,
+                            info.resultCode, info.data, info.extras, info.sync,
+                            info.assumeDelivered, info.sendingUser, info.processState,
+                            info.sendingUid, info.sendingPackage);
+                }
+            }
+            return null;
+        }).when(thread).scheduleReceiverList(any());
+
         return r;
     }
 
@@ -880,6 +902,99 @@ public class BroadcastQueueTest {
         verifyScheduleReceiver(receiverBlueApp, airplane);
     }
 
+    /**
+     * Verify that with batched delivery enabled, the receivers dispatched to a
+     * warm app in one pass are handed to it in a single transaction, up to and
+     * including the first receiver that it has to finish.
+     */
+    @Test
+    public void testBatchedDelivery_Warm() throws Exception {
+        // Legacy stack doesn't support batched delivery
+        Assume.assumeTrue(mImpl == Impl.MODERN);
+        mConstants.BATCH_DELIVERY_ENABLED = true;
+
+        final ProcessRecord callerApp = makeActiveProcessRecord(PACKAGE_RED);
+        final ProcessRecord receiverApp = makeActiveProcessRecord(PACKAGE_GREEN);
+
+        final Intent timezone = new Intent(Intent.ACTION_TIMEZONE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(timezone, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp))));
+        final Intent airplane = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(airplane, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp),
+                        makeManifestReceiver(PACKAGE_GREEN, CLASS_GREEN))));
+
+        waitForIdle();
+        verify(receiverApp.getThread(), times(1)).scheduleReceiverList(
+                argThat(infos -> infos.size() == 3));
+        verifyScheduleRegisteredReceiver(receiverApp, timezone);
+        verifyScheduleRegisteredReceiver(receiverApp, airplane);
+        verifyScheduleReceiver(receiverApp, airplane);
+    }
+
+    /**
+     * Verify that batched delivery hands over no more receivers per transaction
+     * than allowed.
+     */
+    @Test
+    public void testBatchedDelivery_MaxReceivers() throws Exception {
+        // Legacy stack doesn't support batched delivery
+        Assume.assumeTrue(mImpl == Impl.MODERN);
+        mConstants.BATCH_DELIVERY_ENABLED = true;
+        mConstants.BATCH_DELIVERY_MAX_RECEIVERS = 2;
+
+        final ProcessRecord callerApp = makeActiveProcessRecord(PACKAGE_RED);
+        final ProcessRecord receiverApp = makeActiveProcessRecord(PACKAGE_GREEN);
+
+        final Intent timezone = new Intent(Intent.ACTION_TIMEZONE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(timezone, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp))));
+        final Intent airplane = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(airplane, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp),
+                        makeManifestReceiver(PACKAGE_GREEN, CLASS_GREEN))));
+
+        waitForIdle();
+        verify(receiverApp.getThread(), times(1)).scheduleReceiverList(
+                argThat(infos -> infos.size() == 2));
+        verify(receiverApp.getThread(), times(1)).scheduleReceiverList(
+                argThat(infos -> infos.size() == 1));
+        verifyScheduleRegisteredReceiver(receiverApp, timezone);
+        verifyScheduleRegisteredReceiver(receiverApp, airplane);
+        verifyScheduleReceiver(receiverApp, airplane);
+    }
+
+    /**
+     * Verify that when a batch can't be handed over to a process that is still
+     * alive, its receivers are handed over one by one instead of killing it.
+     */
+    @Test
+    public void testBatchedDelivery_TransactionTooLarge() throws Exception {
+        // Legacy stack doesn't support batched delivery
+        Assume.assumeTrue(mImpl == Impl.MODERN);
+        mConstants.BATCH_DELIVERY_ENABLED = true;
+
+        final ProcessRecord callerApp = makeActiveProcessRecord(PACKAGE_RED);
+        final ProcessRecord receiverApp = makeActiveProcessRecord(PACKAGE_GREEN);
+        doThrow(new TransactionTooLargeException()).when(receiverApp.getThread())
+                .scheduleReceiverList(any());
+
+        final Intent timezone = new Intent(Intent.ACTION_TIMEZONE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(timezone, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp))));
+        final Intent airplane = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+        enqueueBroadcast(makeBroadcastRecord(airplane, callerApp,
+                List.of(makeRegisteredReceiver(receiverApp),
+                        makeManifestReceiver(PACKAGE_GREEN, CLASS_GREEN))));
+
+        waitForIdle();
+        verify(receiverApp, never()).killLocked(any(), any(), anyInt(), anyInt(), anyBoolean(),
+                anyBoolean());
+        verifyScheduleRegisteredReceiver(receiverApp, timezone);
+        verifyScheduleRegisteredReceiver(receiverApp, airplane);
+        verifyScheduleReceiver(receiverApp, airplane);
+    }
+
     /**
      * Verify dispatch of multiple broadcast to multiple manifest receivers in
      * apps that require cold starts.
@@ -1469,6 +1469,171 @@ public class MockingOomAdjusterTests {
         assertBfsl(app);
     }
 
+    @SuppressWarnings("GuardedBy")
+    @Test
+    public void testUpdateOomAdj_DoOne_Service_Chain_BoundByFgService_Incremental() {
+        ProcessRecord app = spy(makeDefaultProcessRecord(MOCKAPP_PID, MOCKAPP_UID,
+                MOCKAPP_PROCESSNAME, MOCKAPP_PACKAGENAME, false));
+        ProcessRecord client = spy(makeDefaultProcessRecord(MOCKAPP2_PID, MOCKAPP2_UID,
+                MOCKAPP2_PROCESSNAME, MOCKAPP2_PACKAGENAME, false));
+        bindService(app, client, null, 0, mock(IBinder.class));
+        ProcessRecord client2 = spy(makeDefaultProcessRecord(MOCKAPP3_PID, MOCKAPP3_UID,
+                MOCKAPP3_PROCESSNAME, MOCKAPP3_PACKAGENAME, false));
+        bindService(client, client2, null, 0, mock(IBinder.class));
+        sService.mWakefulness.set(PowerManagerInternal.WAKEFULNESS_AWAKE);
+        updateOomAdj(client, client2, app);
+
+        // Promote the head of the chain; the change has to reach the end of it.
+        final boolean incremental = sService.mConstants.OOMADJ_UPDATE_INCREMENTAL;
+        sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = true;
+        setProcessesToLru(client, client2, app);
+        try {
+            client2.mServices.setHasForegroundServices(true, 0, /* hasNoneType=*/true);
+            sService.mOomAdjuster.updateOomAdjLocked(client2, OOM_ADJ_REASON_NONE);
+        } finally {
+            sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = incremental;
+            sService.mProcessList.getLruProcessesLOSP().clear();
+        }
+
+        assertProcStates(client, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertProcStates(app, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertBfsl(app);
+    }
+
+    @SuppressWarnings("GuardedBy")
+    @Test
+    public void testUpdateOomAdj_DoOne_Service_Diamond_BoundByFgService_Incremental() {
+        ProcessRecord app = spy(makeDefaultProcessRecord(MOCKAPP_PID, MOCKAPP_UID,
+                MOCKAPP_PROCESSNAME, MOCKAPP_PACKAGENAME, false));
+        ProcessRecord service = spy(makeDefaultProcessRecord(MOCKAPP2_PID, MOCKAPP2_UID,
+                MOCKAPP2_PROCESSNAME, MOCKAPP2_PACKAGENAME, false));
+        ProcessRecord service2 = spy(makeDefaultProcessRecord(MOCKAPP3_PID, MOCKAPP3_UID,
+                MOCKAPP3_PROCESSNAME, MOCKAPP3_PACKAGENAME, false));
+        ProcessRecord client = spy(makeDefaultProcessRecord(MOCKAPP4_PID, MOCKAPP4_UID,
+                MOCKAPP4_PROCESSNAME, MOCKAPP4_PACKAGENAME, false));
+        bindService(app, service, null, 0, mock(IBinder.class));
+        bindService(service2, service, null, 0, mock(IBinder.class));
+        bindService(service, client, null, 0, mock(IBinder.class));
+        bindService(service2, client, null, 0, mock(IBinder.class));
+        sService.mWakefulness.set(PowerManagerInternal.WAKEFULNESS_AWAKE);
+        updateOomAdj(client, service, service2, app);
+
+        // Promote the client. service2 is visited first and computes service, one of its own
+        // clients, on the way; service has changed all the same, and so has the app it binds to.
+        final boolean incremental = sService.mConstants.OOMADJ_UPDATE_INCREMENTAL;
+        sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = true;
+        setProcessesToLru(client, service, service2, app);
+        try {
+            client.mServices.setHasForegroundServices(true, 0, /* hasNoneType=*/true);
+            sService.mOomAdjuster.updateOomAdjLocked(client, OOM_ADJ_REASON_NONE);
+        } finally {
+            sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = incremental;
+            sService.mProcessList.getLruProcessesLOSP().clear();
+        }
+
+        assertProcStates(service2, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertProcStates(service, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertProcStates(app, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertBfsl(app);
+    }
+
+    @SuppressWarnings("GuardedBy")
+    @Test
+    public void testUpdateOomAdj_DoOne_Service_Chain_ClampedClient_Incremental() {
+        ProcessRecord app = spy(makeDefaultProcessRecord(MOCKAPP_PID, MOCKAPP_UID,
+                MOCKAPP_PROCESSNAME, MOCKAPP_PACKAGENAME, false));
+        ProcessRecord client = spy(makeDefaultProcessRecord(MOCKAPP2_PID, MOCKAPP2_UID,
+                MOCKAPP2_PROCESSNAME, MOCKAPP2_PACKAGENAME, false));
+        bindService(app, client, null, 0, mock(IBinder.class));
+        ProcessRecord client2 = spy(makeDefaultProcessRecord(MOCKAPP3_PID, MOCKAPP3_UID,
+                MOCKAPP3_PROCESSNAME, MOCKAPP3_PACKAGENAME, false));
+        bindService(client, client2, null, 0, mock(IBinder.class));
+        ServiceRecord s = mock(ServiceRecord.class);
+        doReturn(new ArrayMap<IBinder, ArrayList<ConnectionRecord>>()).when(s).getConnections();
+        s.startRequested = true;
+        s.lastActivity = SystemClock.uptimeMillis();
+        client.mServices.startService(s);
+        client.mState.setMaxAdj(PERCEPTIBLE_APP_ADJ);
+        sService.mWakefulness.set(PowerManagerInternal.WAKEFULNESS_AWAKE);
+        updateOomAdj(client, client2, app);
+
+        assertProcStates(client, PROCESS_STATE_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertEquals(SERVICE_ADJ, app.mState.getSetAdj());
+
+        // The raw adj of the client improves, but its applied values stay clamped by its max
+        // adj; the service it binds to still has to pick up the change.
+        final boolean incremental = sService.mConstants.OOMADJ_UPDATE_INCREMENTAL;
+        sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = true;
+        setProcessesToLru(client, client2, app);
+        WindowProcessController wpc = client2.getWindowProcessController();
+        try {
+            doReturn(true).when(wpc).isHeavyWeightProcess();
+            sService.mOomAdjuster.updateOomAdjLocked(client2, OOM_ADJ_REASON_NONE);
+        } finally {
+            doReturn(false).when(wpc).isHeavyWeightProcess();
+            sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = incremental;
+            sService.mProcessList.getLruProcessesLOSP().clear();
+        }
+
+        assertEquals(HEAVY_WEIGHT_APP_ADJ, client.mState.getCurRawAdj());
+        assertProcStates(client, PROCESS_STATE_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+        assertProcStates(app, PROCESS_STATE_SERVICE, HEAVY_WEIGHT_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+    }
+
+    @SuppressWarnings("GuardedBy")
+    @Test
+    public void testUpdateOomAdj_DoOne_Service_Chain_ToCached_Incremental() {
+        ProcessRecord app = spy(makeDefaultProcessRecord(MOCKAPP_PID, MOCKAPP_UID,
+                MOCKAPP_PROCESSNAME, MOCKAPP_PACKAGENAME, false));
+        ProcessRecord client = spy(makeDefaultProcessRecord(MOCKAPP2_PID, MOCKAPP2_UID,
+                MOCKAPP2_PROCESSNAME, MOCKAPP2_PACKAGENAME, true));
+        bindService(app, client, null, 0, mock(IBinder.class));
+        ProcessRecord client2 = spy(makeDefaultProcessRecord(MOCKAPP3_PID, MOCKAPP3_UID,
+                MOCKAPP3_PROCESSNAME, MOCKAPP3_PACKAGENAME, false));
+        bindService(client, client2, null, 0, mock(IBinder.class));
+        client2.mServices.setHasForegroundServices(true, 0, /* hasNoneType=*/true);
+        sService.mWakefulness.set(PowerManagerInternal.WAKEFULNESS_AWAKE);
+        updateOomAdj(client, client2, app);
+
+        assertProcStates(client, PROCESS_STATE_FOREGROUND_SERVICE, PERCEPTIBLE_APP_ADJ,
+                SCHED_GROUP_DEFAULT);
+
+        // The client has shown UI, so it drops to the cached list once its own client is no
+        // longer perceptible; that needs a cached adj slot, which the propagation leaves to
+        // the regular update of the reachable processes.
+        final boolean incremental = sService.mConstants.OOMADJ_UPDATE_INCREMENTAL;
+        sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = true;
+        setProcessesToLru(client, client2, app);
+        ServiceRecord s = mock(ServiceRecord.class);
+        doReturn(new ArrayMap<IBinder, ArrayList<ConnectionRecord>>()).when(s).getConnections();
+        s.startRequested = true;
+        s.lastActivity = SystemClock.uptimeMillis();
+        try {
+            client2.mServices.setHasForegroundServices(false, 0, /* hasNoneType=*/false);
+            client2.mServices.startService(s);
+            sService.mOomAdjuster.updateOomAdjLocked(client2, OOM_ADJ_REASON_NONE);
+        } finally {
+            sService.mConstants.OOMADJ_UPDATE_INCREMENTAL = incremental;
+            sService.mProcessList.getLruProcessesLOSP().clear();
+        }
+
+        assertProcStates(client2, PROCESS_STATE_SERVICE, SERVICE_ADJ, SCHED_GROUP_BACKGROUND);
+        assertEquals(PROCESS_STATE_SERVICE, client.mState.getSetProcState());
+        assertTrue(client.mState.getSetAdj() >= CACHED_APP_MIN_ADJ);
+        assertEquals(PROCESS_STATE_SERVICE, app.mState.getSetProcState());
+        assertTrue(app.mState.getSetAdj() >= CACHED_APP_MIN_ADJ);
+        assertNoBfsl(client);
+        assertNoBfsl(app);
+    }
+
     @SuppressWarnings("GuardedBy")
     @Test
     public void testUpdateOomAdj_DoOne_Service_Chain_BoundByFgService_Cycle() {
@@ -2081,6 +2246,14 @@ public class MockingOomAdjusterTests {
             assertEquals(PROCESS_STATE_TRANSIENT_BACKGROUND, app2.mState.getSetProcState());
             assertEquals(PROCESS_STATE_TRANSIENT_BACKGROUND, client2.mState.getSetProcState());
 
+            // The committed uid states are published for lock-free readers.
+            final UidStateSnapshot snapshot = sService.mOomAdjuster.mActiveUids.getSnapshot();
+            assertEquals(PROCESS_STATE_FOREGROUND_SERVICE, snapshot.getProcState(MOCKAPP_UID));
+            assertEquals(PROCESS_STATE_TRANSIENT_BACKGROUND,
+                    snapshot.getProcState(MOCKAPP2_UID));
+            assertEquals(PROCESS_STATE_FOREGROUND_SERVICE, snapshot.getProcState(MOCKAPP3_UID));
+            assertEquals(PROCESS_STATE_NONEXISTENT, snapshot.getProcState(MOCKAPP4_UID));
+
             client1.mServices.setHasForegroundServices(false, 0, /* hasNoneType=*/false);
             client2.mState.setForcingToImportant(null);
             app1UidRecord.reset();
@@ -19,12 +19,20 @@ package com.android.server.job.controllers;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.doReturn;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.mock;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession;
+import static com.android.dx.mockito.inline.extended.ExtendedMockito.spy;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.when;
 import static com.android.server.job.JobSchedulerService.FREQUENT_INDEX;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.app.AppGlobals;
@@ -298,6 +306,61 @@ public class BatteryControllerTest {
         assertTrue(job2.isConstraintSatisfied(JobStatus.CONSTRAINT_CHARGING));
     }
 
+    @Test
+    public void testBatteryStateChangesOnlyVisitFlippedJobs() {
+        JobStatus chargingJob = spy(createJobStatus("testBatteryStateChangesOnlyVisitFlippedJobs",
+                SOURCE_PACKAGE, CALLING_UID,
+                createBaseJobInfoBuilder(1).setRequiresCharging(true).build()));
+        JobStatus batteryJob = spy(createJobStatus("testBatteryStateChangesOnlyVisitFlippedJobs",
+                SOURCE_PACKAGE, CALLING_UID,
+                createBaseJobInfoBuilder(2).setRequiresBatteryNotLow(true).build()));
+        JobStatus untrackedJob = spy(createJobStatus(
+                "testBatteryStateChangesOnlyVisitFlippedJobs", SOURCE_PACKAGE, CALLING_UID,
+                createBaseJobInfoBuilder(3).setRequiresCharging(true).build()));
+
+        setBatteryNotLow(true);
+        setDischarging();
+        trackJobs(chargingJob, batteryJob);
+        assertFalse(chargingJob.isConstraintSatisfied(JobStatus.CONSTRAINT_CHARGING));
+        assertTrue(batteryJob.isConstraintSatisfied(JobStatus.CONSTRAINT_BATTERY_NOT_LOW));
+        clearInvocations(chargingJob, batteryJob, untrackedJob);
+
+        // Only the charging constraint flips, so the job that only needs the battery not to be
+        // low isn't visited.
+        setCharging();
+        assertTrue(chargingJob.isConstraintSatisfied(JobStatus.CONSTRAINT_CHARGING));
+        verify(chargingJob).setChargingConstraintSatisfied(anyLong(), eq(true));
+        verifyNotVisited(batteryJob);
+        verifyNotVisited(untrackedJob);
+        clearInvocations(chargingJob);
+
+        // Both constraints flip.
+        setBatteryNotLow(false);
+        assertFalse(chargingJob.isConstraintSatisfied(JobStatus.CONSTRAINT_CHARGING));
+        assertFalse(batteryJob.isConstraintSatisfied(JobStatus.CONSTRAINT_BATTERY_NOT_LOW));
+        verify(chargingJob).setChargingConstraintSatisfied(anyLong(), eq(false));
+        verify(batteryJob).setBatteryNotLowConstraintSatisfied(anyLong(), eq(false));
+        verify(mJobSchedulerService, times(1)).onControllerStateChanged(any());
+        verifyNotVisited(untrackedJob);
+        clearInvocations(chargingJob, batteryJob);
+
+        // Battery level updates, and a charging change that the low battery outweighs, don't
+        // change any constraint, so they don't visit or report any job.
+        setBatteryNotLow(false);
+        setBatteryNotLow(false);
+        setDischarging();
+        assertFalse(chargingJob.isConstraintSatisfied(JobStatus.CONSTRAINT_CHARGING));
+        verifyNotVisited(chargingJob);
+        verifyNotVisited(batteryJob);
+        verifyNotVisited(untrackedJob);
+        verify(mJobSchedulerService, times(1)).onControllerStateChanged(any());
+    }
+
+    private void verifyNotVisited(JobStatus job) {
+        verify(job, never()).setChargingConstraintSatisfied(anyLong(), anyBoolean());
+        verify(job, never()).setBatteryNotLowConstraintSatisfied(anyLong(), anyBoolean());
+    }
+
     @Test
     public void testTopPowerConnectedExemption() {
         final int uid1 = mSourceUid;
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import static org.mockito.Mockito.mock;
+
+import android.annotation.NonNull;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.PatternMatcher;
+import android.os.PersistableBundle;
+import android.os.UserHandle;
+import android.platform.test.annotations.Presubmit;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.pm.Computer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies that the indexed lookups in {@link IntentResolver#queryIntent} return the same
+ * results as matching every registered filter.
+ *
+ * Build/Install/Run:
+ *  atest FrameworksServicesTests:IntentResolverTest
+ */
+@Presubmit
+@SmallTest
+public class IntentResolverTest {
+    private static final String ACTION_OTHER = "com.android.server.test.ACTION_OTHER";
+
+    private Computer mComputer;
+    private TestResolver mResolver;
+    private final List<TestFilter> mFilters = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mComputer = mock(Computer.class);
+        mResolver = new TestResolver();
+
+        addFilter(filter("view-https", Intent.ACTION_VIEW)
+                .category(Intent.CATEGORY_DEFAULT).category(Intent.CATEGORY_BROWSABLE)
+                .scheme("https"));
+        addFilter(filter("view-https-host", Intent.ACTION_VIEW)
+                .category(Intent.CATEGORY_DEFAULT).category(Intent.CATEGORY_BROWSABLE)
+                .scheme("https").authority("example.com"));
+        addFilter(filter("view-https-path", Intent.ACTION_VIEW)
+                .scheme("https").authority("example.com").path("/a"));
+        addFilter(filter("view-edit-http-https", Intent.ACTION_VIEW)
+                .action(Intent.ACTION_EDIT).scheme("http").scheme("https"));
+        addFilter(filter("edit-https", Intent.ACTION_EDIT).scheme("https"));
+        addFilter(filter("view-https-extras", Intent.ACTION_VIEW).scheme("https").extras());
+        addFilter(filter("view-wildcard-scheme", Intent.ACTION_VIEW).scheme("*"));
+        addFilter(filter("view-tel-ssp", Intent.ACTION_VIEW).scheme("tel").ssp("123"));
+        addFilter(filter("view-content-image", Intent.ACTION_VIEW)
+                .scheme("content").type("image/*"));
+        addFilter(filter("view-type-only", Intent.ACTION_VIEW).type("text/plain"));
+        addFilter(filter("send-text", Intent.ACTION_SEND)
+                .category(Intent.CATEGORY_DEFAULT).type("text/plain"));
+        addFilter(filter("send-dataless", Intent.ACTION_SEND).category(Intent.CATEGORY_DEFAULT));
+        addFilter(filter("send-dataless-extras", Intent.ACTION_SEND).extras());
+        addFilter(filter("main-launcher", Intent.ACTION_MAIN).category(Intent.CATEGORY_LAUNCHER));
+        addFilter(filter("no-action-dataless", null));
+        addFilter(filter("no-action-https", null).scheme("https"));
+        addFilter(filter("no-action-wildcard-scheme", null).scheme("*"));
+    }
+
+    @Test
+    public void testQueryIntent_datalessIntents() {
+        assertMatchesAllFilters(new Intent(Intent.ACTION_SEND), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_SEND)
+                .addCategory(Intent.CATEGORY_DEFAULT), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_HOME), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW), null);
+        assertMatchesAllFilters(new Intent(ACTION_OTHER), null);
+        assertMatchesAllFilters(new Intent(), null);
+    }
+
+    @Test
+    public void testQueryIntent_actionAndScheme() {
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW,
+                Uri.parse("https://example.com/a")), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW,
+                Uri.parse("https://example.com/b")).addCategory(Intent.CATEGORY_BROWSABLE), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW,
+                Uri.parse("https://other.org")), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_EDIT,
+                Uri.parse("https://other.org")), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW, Uri.parse("http://other.org"))
+                .addCategory(Intent.CATEGORY_DEFAULT), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW, Uri.parse("tel:123")), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW, Uri.parse("tel:456")), null);
+        assertMatchesAllFilters(new Intent(ACTION_OTHER, Uri.parse("https://example.com")), null);
+    }
+
+    @Test
+    public void testQueryIntent_wildcardScheme() {
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW, Uri.parse("*://example.com")),
+                null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW, Uri.parse("custom://example.com")),
+                null);
+        final Intent noAction = new Intent();
+        noAction.setData(Uri.parse("*://example.com"));
+        assertMatchesAllFilters(noAction, null);
+    }
+
+    @Test
+    public void testQueryIntent_filtersWithoutActions() {
+        final Intent httpsNoAction = new Intent();
+        httpsNoAction.setData(Uri.parse("https://example.com/a"));
+        assertMatchesAllFilters(httpsNoAction, null);
+        assertMatchesAllFilters(new Intent().addCategory(Intent.CATEGORY_DEFAULT), null);
+    }
+
+    @Test
+    public void testQueryIntent_typedIntents() {
+        assertMatchesAllFilters(new Intent(Intent.ACTION_SEND), "text/plain");
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW), "text/plain");
+        final Intent contentImage = new Intent(Intent.ACTION_VIEW);
+        contentImage.setDataAndType(Uri.parse("content://media/1"), "image/png");
+        assertMatchesAllFilters(contentImage, "image/png");
+    }
+
+    @Test
+    public void testQueryIntent_afterRemovingFilters() {
+        removeFilter("view-https");
+        removeFilter("no-action-https");
+        removeFilter("view-edit-http-https");
+        assertMatchesAllFilters(new Intent(Intent.ACTION_VIEW,
+                Uri.parse("https://example.com/a")), null);
+        assertMatchesAllFilters(new Intent(Intent.ACTION_EDIT,
+                Uri.parse("https://other.org")), null);
+        final Intent httpsNoAction = new Intent();
+        httpsNoAction.setData(Uri.parse("https://example.com/a"));
+        assertMatchesAllFilters(httpsNoAction, null);
+    }
+
+    /**
+     * Asserts that {@link IntentResolver#queryIntent} resolves the intent to the same filters,
+     * with the same match categories, as matching the intent against every registered filter.
+     */
+    private void assertMatchesAllFilters(Intent intent, String resolvedType) {
+        for (boolean defaultOnly : new boolean[] { false, true }) {
+            final List<String> indexed = mResolver.queryIntent(mComputer, intent, resolvedType,
+                    defaultOnly, UserHandle.USER_SYSTEM);
+            final ArrayList<TestFilter[]> all = new ArrayList<>();
+            all.add(mFilters.toArray(new TestFilter[0]));
+            final List<String> unindexed = mResolver.queryIntentFromList(mComputer, intent,
+                    resolvedType, defaultOnly, all, UserHandle.USER_SYSTEM, 0);
+            assertWithMessage(intent + " type=" + resolvedType + " defaultOnly=" + defaultOnly)
+                    .that(indexed).containsExactlyElementsIn(unindexed);
+        }
+    }
+
+    private void addFilter(TestFilter filter) {
+        mFilters.add(filter);
+        mResolver.addFilter(mComputer, filter);
+    }
+
+    private void removeFilter(String name) {
+        for (int i = mFilters.size() - 1; i >= 0; i--) {
+            if (mFilters.get(i).mName.equals(name)) {
+                mResolver.removeFilter(mFilters.remove(i));
+            }
+        }
+    }
+
+    private static TestFilter filter(String name, String action) {
+        final TestFilter filter = new TestFilter(name);
+        if (action != null) {
+            filter.addAction(action);
+        }
+        return filter;
+    }
+
+    private static class TestFilter extends IntentFilter {
+        final String mName;
+
+        TestFilter(String name) {
+            mName = name;
+        }
+
+        TestFilter action(String action) {
+            addAction(action);
+            return this;
+        }
+
+        TestFilter category(String category) {
+            addCategory(category);
+            return this;
+        }
+
+        TestFilter scheme(String scheme) {
+            addDataScheme(scheme);
+            return this;
+        }
+
+        TestFilter authority(String host) {
+            addDataAuthority(host, null);
+            return this;
+        }
+
+        TestFilter path(String path) {
+            addDataPath(path, PatternMatcher.PATTERN_LITERAL);
+            return this;
+        }
+
+        TestFilter ssp(String ssp) {
+            addDataSchemeSpecificPart(ssp, PatternMatcher.PATTERN_LITERAL);
+            return this;
+        }
+
+        TestFilter type(String type) {
+            try {
+                addDataType(type);
+            } catch (MalformedMimeTypeException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return this;
+        }
+
+        TestFilter extras() {
+            final PersistableBundle extras = new PersistableBundle();
+            extras.putBoolean("required", true);
+            setExtras(extras);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    /**
+     * Resolves filters to "name/match" strings so that both the matched filters and the match
+     * categories are compared.
+     */
+    private static class TestResolver extends IntentResolver<TestFilter, String> {
+        @Override
+        protected boolean allowFilterResult(TestFilter filter, List<String> dest) {
+            final String prefix = filter.mName + "/";
+            for (int i = dest.size() - 1; i >= 0; i--) {
+                if (dest.get(i).startsWith(prefix)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected boolean isPackageForFilter(String packageName, TestFilter filter) {
+            return false;
+        }
+
+        @Override
+        protected void sortResults(List<String> results) {
+            // Results are compared regardless of order.
+        }
+
+        @Override
+        protected TestFilter[] newArray(int size) {
+            return new TestFilter[size];
+        }
+
+        @Override
+        protected String newResult(@NonNull Computer computer, TestFilter filter, int match,
+                int userId, long customFlags) {
+            return filter.mName + "/0x" + Integer.toHexString(match);
+        }
+
+        @Override
+        protected IntentFilter getIntentFilter(@NonNull TestFilter input) {
+            return input;
+        }
+    }
+}
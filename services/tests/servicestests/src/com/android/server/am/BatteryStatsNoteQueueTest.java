@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.am;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+public final class BatteryStatsNoteQueueTest {
+    private static final int CAPACITY = 16;
+    private static final int PRODUCER_COUNT = 8;
+    private static final int NOTES_PER_PRODUCER = 2000;
+
+    private HandlerThread mHandlerThread;
+    private Handler mHandler;
+    private BatteryStatsNoteQueue mQueue;
+    private final ArrayList<long[]> mDrained = new ArrayList<>();
+    private final AtomicInteger mDrainedCount = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        mHandlerThread = new HandlerThread("note queue");
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper()) {
+            @Override
+            public void dispatchMessage(Message msg) {
+                while (drain(4, msg.getWhen()) == 4) {
+                    // Keep draining.
+                }
+                super.dispatchMessage(msg);
+            }
+        };
+        // A small ring, so that producers regularly find it full.
+        mQueue = new BatteryStatsNoteQueue(CAPACITY, mHandler);
+    }
+
+    @After
+    public void tearDown() {
+        mHandlerThread.quitSafely();
+    }
+
+    @Test
+    public void testNotesFromConcurrentProducersAreDrainedInOrder() throws Exception {
+        final Thread[] producers = new Thread[PRODUCER_COUNT];
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            final int uid = i;
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < NOTES_PER_PRODUCER; j++) {
+                    while (!append(uid, j)) {
+                        // The ring is full, retry once the handler has drained it.
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        awaitHandler();
+
+        assertEquals(PRODUCER_COUNT * NOTES_PER_PRODUCER, mDrained.size());
+        final long[] nextArgs = new long[PRODUCER_COUNT];
+        long lastUptime = 0;
+        long lastElapsedRealtime = 0;
+        for (int i = 0; i < mDrained.size(); i++) {
+            final long[] note = mDrained.get(i);
+            assertEquals("Note of producer " + note[0] + " out of order",
+                    nextArgs[(int) note[0]]++, note[1]);
+            assertTrue("Uptime went back", note[2] >= lastUptime);
+            assertTrue("Elapsed realtime went back", note[3] >= lastElapsedRealtime);
+            lastUptime = note[2];
+            lastElapsedRealtime = note[3];
+        }
+    }
+
+    @Test
+    public void testAppendFailsWhenFull() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] appended = new boolean[CAPACITY + 1];
+        mHandler.post(() -> {
+            // The handler can't drain the queue while this runs.
+            for (int i = 0; i < appended.length; i++) {
+                appended[i] = append(0, i);
+            }
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        awaitHandler();
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(appended[i]);
+        }
+        assertFalse(appended[CAPACITY]);
+        assertEquals(CAPACITY, mDrained.size());
+        assertTrue(append(0, CAPACITY));
+        awaitHandler();
+        assertEquals(CAPACITY + 1, mDrained.size());
+    }
+
+    @Test
+    public void testDrainStopsAtNotesStampedLater() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] drained = new int[2];
+        final long[] stampedAfter = new long[1];
+        mHandler.post(() -> {
+            // The handler can't drain the queue while this runs.
+            stampedAfter[0] = SystemClock.uptimeMillis();
+            for (int i = 0; i < 4; i++) {
+                append(0, i);
+            }
+            drained[0] = drain(Integer.MAX_VALUE, stampedAfter[0] - 1);
+            drained[1] = drain(Integer.MAX_VALUE, Long.MAX_VALUE);
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        awaitHandler();
+
+        assertEquals(0, drained[0]);
+        assertEquals(4, drained[1]);
+        for (int i = 0; i < mDrained.size(); i++) {
+            assertEquals(i, mDrained.get(i)[1]);
+            assertTrue(mDrained.get(i)[2] >= stampedAfter[0]);
+        }
+    }
+
+    @Test
+    public void testNotesPublishedWhileDrainingAreDrained() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(() -> {
+            // Notes stamped after the pending drain was posted aren't drained on its way, so
+            // the queue has to schedule another drain for them.
+            append(0, 0);
+            SystemClock.sleep(10);
+            append(0, 1);
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // Don't post anything to the handler, as that would drain the notes as well.
+        final long timeout = SystemClock.uptimeMillis() + 5000;
+        while (mDrainedCount.get() < 2 && SystemClock.uptimeMillis() < timeout) {
+            SystemClock.sleep(10);
+        }
+        assertEquals(2, mDrainedCount.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityMustBePowerOfTwo() {
+        new BatteryStatsNoteQueue(100, mHandler);
+    }
+
+    private boolean append(int uid, int arg) {
+        return mQueue.append(BatteryStatsNoteQueue.NOTE_START_SENSOR, uid, 0, arg, false,
+                null, null, null);
+    }
+
+    private int drain(int maxNotes, long maxUptime) {
+        return mQueue.drain(note -> {
+            mDrained.add(new long[] {note.uid, note.arg, note.uptime, note.elapsedRealtime});
+            mDrainedCount.incrementAndGet();
+        }, maxNotes, maxUptime);
+    }
+
+    private void awaitHandler() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(latch::countDown);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
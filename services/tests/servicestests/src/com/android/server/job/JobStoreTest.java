@@ -249,6 +249,55 @@ public class JobStoreTest {
         assertEquals("Incorrect # of persisted tasks.", 2, jobStatusSet.size());
     }
 
+    /**
+     * Test that changes to a split file that was already written are appended to its change log
+     * and replayed on read, and that rewriting the file drops the log.
+     */
+    @Test
+    public void testChangeLog_splitFiles() throws Exception {
+        setUseSplitFiles(true);
+        final JobStatus job1 = JobStatus.createFromJobInfo(
+                new Builder(1, mComponent).setPersisted(true).build(),
+                SOME_UID, null, -1, null, null);
+        final JobStatus job2 = JobStatus.createFromJobInfo(
+                new Builder(2, mComponent).setPersisted(true).build(),
+                SOME_UID, null, -1, "ns", null);
+        runWritingJobsToDisk(job1, job2);
+
+        final File rootDir = new File(mTestContext.getFilesDir(), "system/job");
+        final File jobFile = new File(rootDir, JOB_FILE_SPLIT_PREFIX + SOME_UID + ".xml");
+        final File changeLogFile = new File(rootDir, JOB_FILE_SPLIT_PREFIX + SOME_UID + ".log");
+        final byte[] jobFileBytes = Files.readAllBytes(jobFile.toPath());
+        assertFalse(changeLogFile.exists());
+
+        final JobStatus job3 = JobStatus.createFromJobInfo(
+                new Builder(3, mComponent).setPersisted(true).build(),
+                SOME_UID, null, -1, null, null);
+        mTaskStoreUnderTest.add(job3);
+        mTaskStoreUnderTest.remove(job2, true);
+        waitForPendingIo();
+
+        assertTrue(changeLogFile.exists());
+        assertArrayEquals(jobFileBytes, Files.readAllBytes(jobFile.toPath()));
+        JobSet jobStatusSet = new JobSet();
+        mTaskStoreUnderTest.readJobMapFromDisk(jobStatusSet, true);
+        assertEquals("Incorrect # of persisted tasks.", 2, jobStatusSet.size());
+        assertJobsEqual(job1, jobStatusSet.get(SOME_UID, null, 1));
+        assertJobsEqual(job3, jobStatusSet.get(SOME_UID, null, 3));
+        assertNull(jobStatusSet.get(SOME_UID, "ns", 2));
+
+        // Rewriting the whole file replaces the log.
+        mTaskStoreUnderTest.setUseChangeLog(false);
+        mTaskStoreUnderTest.remove(job3, true);
+        waitForPendingIo();
+
+        assertFalse(changeLogFile.exists());
+        jobStatusSet = new JobSet();
+        mTaskStoreUnderTest.readJobMapFromDisk(jobStatusSet, true);
+        assertEquals("Incorrect # of persisted tasks.", 1, jobStatusSet.size());
+        assertJobsEqual(job1, jobStatusSet.get(SOME_UID, null, 1));
+    }
+
     /**
      * Test that dynamic constraints aren't written to disk.
      */
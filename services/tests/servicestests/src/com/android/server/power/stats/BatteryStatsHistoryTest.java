@@ -30,6 +30,8 @@ import android.os.BatteryStats.CpuUsageDetails;
 import android.os.BatteryStats.EnergyConsumerDetails;
 import android.os.BatteryStats.HistoryItem;
 import android.os.Parcel;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 
 import androidx.test.InstrumentationRegistry;
@@ -50,6 +52,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -60,6 +65,8 @@ import java.util.List;
 @RunWith(AndroidJUnit4.class)
 public class BatteryStatsHistoryTest {
     private static final String TAG = "BatteryStatsHistoryTest";
+    // The buffer is preceded by the version, the history base time and the buffer size.
+    private static final int HISTORY_FILE_HEADER_SIZE = 16;
     private final Parcel mHistoryBuffer = Parcel.obtain();
     private File mSystemDir;
     private File mHistoryDir;
@@ -230,6 +237,83 @@ public class BatteryStatsHistoryTest {
         verifyActiveFile(history2, "1.bin");
     }
 
+    @Test
+    public void testWriteHistoryAppendsToActiveFile() throws Exception {
+        mHistory.forceRecordAllHistory();
+        mHistory.startRecordingHistory(0, 0, /* reset */ true);
+        mHistory.recordStateStartEvent(mClock.elapsedRealtime(), mClock.uptimeMillis(),
+                HistoryItem.STATE_MOBILE_RADIO_ACTIVE_FLAG);
+        mHistory.writeHistory();
+        verifyActiveFileMatchesBuffer();
+        final int firstSize = mHistoryBuffer.dataSize();
+        assertThat(mHistory.getPersistedHistoryBufferSize()).isEqualTo(firstSize);
+        byte[] savedBytes = readActiveFile();
+        long savedInode = getActiveFileInode();
+
+        // New records are appended after the ones already saved, in the same file, without
+        // touching the saved records.
+        mClock.realtime = 5000;
+        mClock.uptime = 5000;
+        mHistory.recordStateStopEvent(mClock.elapsedRealtime(), mClock.uptimeMillis(),
+                HistoryItem.STATE_MOBILE_RADIO_ACTIVE_FLAG);
+        final int secondSize = mHistoryBuffer.dataSize();
+        assertThat(secondSize).isGreaterThan(firstSize);
+        mHistory.writeHistory();
+        verifyActiveFileMatchesBuffer();
+        assertThat(getActiveFileInode()).isEqualTo(savedInode);
+        assertThat(mHistory.getPersistedHistoryBufferSize()).isEqualTo(secondSize);
+        byte[] fileBytes = readActiveFile();
+        assertThat(fileBytes.length - savedBytes.length)
+                .isEqualTo(mHistory.getPersistedHistoryBufferSize() - firstSize);
+        assertThat(Arrays.copyOfRange(fileBytes, HISTORY_FILE_HEADER_SIZE, savedBytes.length))
+                .isEqualTo(Arrays.copyOfRange(savedBytes, HISTORY_FILE_HEADER_SIZE,
+                        savedBytes.length));
+        savedBytes = fileBytes;
+
+        // A record that follows closely may be merged into the last saved one, which then has
+        // to be saved again by rewriting the file.
+        mClock.realtime = 5100;
+        mClock.uptime = 5100;
+        mHistory.recordStateStartEvent(mClock.elapsedRealtime(), mClock.uptimeMillis(),
+                HistoryItem.STATE_GPS_ON_FLAG);
+        assertThat(mHistory.getPersistedHistoryBufferSize()).isEqualTo(-1);
+        mHistory.writeHistory();
+        verifyActiveFileMatchesBuffer();
+        assertThat(getActiveFileInode()).isNotEqualTo(savedInode);
+        assertThat(mHistory.getPersistedHistoryBufferSize())
+                .isEqualTo(mHistoryBuffer.dataSize());
+        savedBytes = readActiveFile();
+        savedInode = getActiveFileInode();
+
+        // Saving without new records only updates the header, in place.
+        mHistory.writeHistory();
+        verifyActiveFileMatchesBuffer();
+        assertThat(getActiveFileInode()).isEqualTo(savedInode);
+        fileBytes = readActiveFile();
+        assertThat(fileBytes.length).isEqualTo(savedBytes.length);
+        assertThat(Arrays.copyOfRange(fileBytes, HISTORY_FILE_HEADER_SIZE, fileBytes.length))
+                .isEqualTo(Arrays.copyOfRange(savedBytes, HISTORY_FILE_HEADER_SIZE,
+                        savedBytes.length));
+    }
+
+    private byte[] readActiveFile() throws IOException {
+        return Files.readAllBytes(mHistory.getActiveFile().getBaseFile().toPath());
+    }
+
+    private long getActiveFileInode() throws ErrnoException {
+        return Os.stat(mHistory.getActiveFile().getBaseFile().getPath()).st_ino;
+    }
+
+    private void verifyActiveFileMatchesBuffer() throws IOException {
+        final byte[] fileBytes = readActiveFile();
+        final byte[] bufferBytes = mHistoryBuffer.marshall();
+        assertThat(fileBytes.length).isEqualTo(HISTORY_FILE_HEADER_SIZE + bufferBytes.length);
+        assertThat(ByteBuffer.wrap(fileBytes, 12, 4).order(ByteOrder.nativeOrder()).getInt())
+                .isEqualTo(bufferBytes.length);
+        assertThat(Arrays.copyOfRange(fileBytes, HISTORY_FILE_HEADER_SIZE, fileBytes.length))
+                .isEqualTo(bufferBytes);
+    }
+
     private void verifyActiveFile(BatteryStatsHistory history, String file) {
         final File expectedFile = new File(mHistoryDir, file);
         assertEquals(expectedFile.getPath(), history.getActiveFile().getBaseFile().getPath());
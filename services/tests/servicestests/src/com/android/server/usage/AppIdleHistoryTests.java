@@ -161,6 +161,49 @@ public class AppIdleHistoryTests extends AndroidTestCase {
         assertEquals(5000, aih.getTimeSinceLastJobRun(PACKAGE_1, USER_ID, 7000));
     }
 
+    public void testLoadPackageStates() throws Exception {
+        final long[] screenThresholds = {0, 1000, 3000};
+        final long[] elapsedThresholds = {0, 2000, 6000};
+        AppIdleHistory aih = new AppIdleHistory(mStorageDir, 1000);
+        aih.updateDisplay(true, 1000);
+        aih.reportUsage(PACKAGE_1, USER_ID, STANDBY_BUCKET_ACTIVE,
+                REASON_SUB_USAGE_MOVE_TO_FOREGROUND, 2000, 0);
+        aih.reportUsage(PACKAGE_2, USER_ID, STANDBY_BUCKET_ACTIVE,
+                REASON_SUB_USAGE_MOVE_TO_FOREGROUND, 6000, 0);
+        // PACKAGE_3 has only been bucketed, never used.
+        aih.setAppStandbyBucket(PACKAGE_3, USER_ID, 6000, STANDBY_BUCKET_WORKING_SET,
+                REASON_MAIN_TIMEOUT);
+
+        final AppIdleHistory.PackageStates states = new AppIdleHistory.PackageStates();
+        states.reset(4);
+        states.add(PACKAGE_1, STANDBY_BUCKET_RESTRICTED);
+        states.add(PACKAGE_2, STANDBY_BUCKET_RESTRICTED);
+        states.add(PACKAGE_3, STANDBY_BUCKET_RESTRICTED);
+        states.add(PACKAGE_4, STANDBY_BUCKET_ACTIVE);
+        aih.loadPackageStates(USER_ID, 8000, states, screenThresholds, elapsedThresholds);
+
+        assertEquals(4, states.size);
+        for (int i = 0; i < states.size; i++) {
+            final String packageName = states.packageNames[i];
+            assertSame(aih.getAppUsageHistory(packageName, USER_ID, 8000), states.histories[i]);
+            assertEquals(packageName, aih.getThresholdIndex(packageName, USER_ID, 8000,
+                    screenThresholds, elapsedThresholds), states.thresholdIndices[i]);
+        }
+        assertEquals(2, states.thresholdIndices[0]);
+        assertEquals(1, states.thresholdIndices[1]);
+        assertEquals(-1, states.thresholdIndices[2]);
+        assertEquals(-1, states.thresholdIndices[3]);
+        assertEquals(STANDBY_BUCKET_ACTIVE, states.minBuckets[3]);
+
+        // Reusing the batch forgets the previous packages.
+        states.reset(1);
+        states.add(PACKAGE_2, STANDBY_BUCKET_RESTRICTED);
+        aih.loadPackageStates(USER_ID, 8000, states, screenThresholds, elapsedThresholds);
+        assertEquals(1, states.size);
+        assertEquals(1, states.thresholdIndices[0]);
+        assertNull(states.histories[1]);
+    }
+
     public void testReason() throws Exception {
         AppIdleHistory aih = new AppIdleHistory(mStorageDir, 1000);
         aih.reportUsage(PACKAGE_1, USER_ID, STANDBY_BUCKET_ACTIVE,
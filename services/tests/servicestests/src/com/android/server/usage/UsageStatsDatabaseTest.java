@@ -24,6 +24,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import android.app.usage.EventList;
 import android.app.usage.UsageEvents.Event;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
@@ -44,6 +45,7 @@ import org.junit.runner.RunWith;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -730,4 +732,92 @@ public class UsageStatsDatabaseTest {
         verifyPackageDataIsNotRemoved(newDB, UsageStatsManager.INTERVAL_MONTHLY, installedPackages);
         verifyPackageDataIsNotRemoved(newDB, UsageStatsManager.INTERVAL_YEARLY, installedPackages);
     }
+
+    /**
+     * Returns the events of the stats read back from the daily file which are in the range, and of
+     * the package if it isn't null.
+     */
+    private List<Event> readDailyEvents(UsageStatsDatabase db, long beginTime, long endTime,
+            String packageName) {
+        final List<IntervalStats> stats = db.queryUsageStats(UsageStatsManager.INTERVAL_DAILY,
+                0, mEndTime, mIntervalStatsVerifier);
+        assertEquals(1, stats.size());
+        final List<Event> events = new ArrayList<>();
+        final EventList eventList = stats.get(0).events;
+        for (int i = 0; i < eventList.size(); i++) {
+            final Event event = eventList.get(i);
+            if (event.mTimeStamp >= beginTime && event.mTimeStamp < endTime
+                    && (packageName == null || packageName.equals(event.mPackage))) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private void verifyQueryEvents(UsageStatsDatabase db, long beginTime, long endTime,
+            String packageName) {
+        final List<Event> expected = readDailyEvents(db, beginTime, endTime, packageName);
+        final List<IntervalStats> stats = db.queryEvents(beginTime, endTime, packageName,
+                mIntervalStatsVerifier);
+        assertEquals(1, stats.size());
+        final EventList events = stats.get(0).events;
+        assertEquals(expected.size(), events.size(), "Events of " + packageName);
+        for (int i = 0; i < events.size(); i++) {
+            compareUsageEvent(expected.get(i), events.get(i), i, 5);
+            assertEquals(expected.get(i).mPackage, events.get(i).mPackage);
+            assertEquals(expected.get(i).mClass, events.get(i).mClass);
+        }
+    }
+
+    @Test
+    public void testQueryEvents() throws IOException {
+        UsageStatsDatabase db = new UsageStatsDatabase(mTestDir);
+        db.readMappingsLocked();
+        db.init(1);
+        db.putUsageStats(UsageStatsManager.INTERVAL_DAILY, mIntervalStats);
+        db.writeMappingsLocked();
+
+        // A range spanning several blocks of the log, starting and ending mid-block.
+        final long beginTime = mIntervalStats.beginTime + (mEndTime - mIntervalStats.beginTime) / 5;
+        final long endTime = mEndTime - (mEndTime - mIntervalStats.beginTime) / 3;
+        verifyQueryEvents(db, beginTime, endTime, null);
+        verifyQueryEvents(db, beginTime, endTime, "fake.package.name2");
+        verifyQueryEvents(db, 0, mEndTime, "fake.package.name3");
+
+        final List<IntervalStats> stats = db.queryEvents(0, mEndTime, "not.a.package",
+                mIntervalStatsVerifier);
+        assertTrue(stats.isEmpty());
+    }
+
+    @Test
+    public void testQueryEventsRebuildsEventLog() throws IOException {
+        UsageStatsDatabase db = new UsageStatsDatabase(mTestDir);
+        db.readMappingsLocked();
+        db.init(1);
+        db.putUsageStats(UsageStatsManager.INTERVAL_DAILY, mIntervalStats);
+        db.writeMappingsLocked();
+
+        final File logFile = new File(new File(mTestDir, "daily-events"),
+                Long.toString(mIntervalStats.beginTime));
+        assertTrue(logFile.exists());
+
+        // Files written before event logs existed have none.
+        logFile.delete();
+        verifyQueryEvents(db, 0, mEndTime, "fake.package.name1");
+        assertTrue(logFile.exists());
+
+        // A log which doesn't match its daily file anymore is rebuilt too.
+        final File dailyFile = new File(new File(mTestDir, "daily"),
+                Long.toString(mIntervalStats.beginTime));
+        final long logModified = logFile.lastModified();
+        assertTrue(dailyFile.setLastModified(dailyFile.lastModified() - 60 * 1000));
+        assertTrue(logFile.setLastModified(logModified - 120 * 1000));
+        verifyQueryEvents(db, 0, mEndTime, "fake.package.name4");
+        assertTrue(logFile.lastModified() > logModified - 120 * 1000);
+
+        // Logs of daily files which are gone are deleted.
+        dailyFile.delete();
+        db.forceIndexFiles();
+        assertFalse(logFile.exists());
+    }
 }
@@ -25,10 +25,13 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import static java.util.Collections.singletonList;
+
 import android.app.NotificationHistory;
 import android.app.NotificationHistory.HistoricalNotification;
 import android.content.Context;
 import android.graphics.drawable.Icon;
+import android.os.FileUtils;
 import android.os.Handler;
 import android.os.UserHandle;
 import android.util.AtomicFile;
@@ -38,6 +41,7 @@ import androidx.test.runner.AndroidJUnit4;
 
 import com.android.server.UiServiceTestCase;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -98,6 +102,26 @@ public class NotificationHistoryDatabaseTest extends UiServiceTestCase {
         mDataBase.init();
     }
 
+    @After
+    public void tearDown() {
+        FileUtils.deleteContentsAndDir(mRootDir);
+    }
+
+    /**
+     * Writes a history file holding notifications of {@code packageCount} packages, each posting
+     * to two channels, and returns the file.
+     */
+    private AtomicFile writeHistoryFile(String name, int packageCount) {
+        for (int i = 0; i < 4 * packageCount; i++) {
+            HistoricalNotification n = getHistoricalNotification("package" + (i % packageCount),
+                    i % 2);
+            mDataBase.mBuffer.addNewNotificationToWrite(n);
+        }
+        AtomicFile af = new AtomicFile(new File(new File(mRootDir, "history"), name));
+        mDataBase.new WriteBufferRunnable().run(af);
+        return af;
+    }
+
     @Test
     public void testPrune() throws Exception {
         GregorianCalendar cal = new GregorianCalendar();
@@ -245,6 +269,101 @@ public class NotificationHistoryDatabaseTest extends UiServiceTestCase {
         verify(af2, never()).openRead();
     }
 
+    @Test
+    public void testReadNotificationHistory_filtered_matchesFullRead() throws Exception {
+        writeHistoryFile("2", 3);
+        writeHistoryFile("1", 3);
+
+        NotificationHistory all = mDataBase.readNotificationHistory();
+        for (String pkg : new String[] {"package0", "package2", "package5"}) {
+            for (String channel : new String[] {null, "channelId0", "channelId1", "other"}) {
+                List<HistoricalNotification> expected = new ArrayList<>();
+                for (HistoricalNotification n : all.getNotificationsToWrite()) {
+                    if (n.getPackage().equals(pkg)
+                            && (channel == null || channel.equals(n.getChannelId()))) {
+                        expected.add(n);
+                    }
+                }
+
+                NotificationHistory filtered =
+                        mDataBase.readNotificationHistory(pkg, channel, Integer.MAX_VALUE);
+
+                assertThat(filtered.getNotificationsToWrite())
+                        .containsExactlyElementsIn(expected).inOrder();
+            }
+        }
+    }
+
+    @Test
+    public void testReadNotificationHistory_filtered_maxNotifications() throws Exception {
+        writeHistoryFile("2", 2);
+        writeHistoryFile("1", 2);
+
+        NotificationHistory nh = mDataBase.readNotificationHistory("package1", null, 3);
+
+        assertThat(nh.getHistoryCount()).isEqualTo(3);
+        for (HistoricalNotification n : nh.getNotificationsToWrite()) {
+            assertThat(n.getPackage()).isEqualTo("package1");
+        }
+    }
+
+    @Test
+    public void testReadNotificationHistory_filtered_staleIndex_readsWholeFile()
+            throws Exception {
+        AtomicFile af = writeHistoryFile("1", 2);
+        // Rewrite the history file behind the back of its index
+        File indexFile = new File(new File(mRootDir, "history_index"), "1");
+        File savedIndex = new File(mRootDir, "saved_index");
+        assertThat(indexFile.renameTo(savedIndex)).isTrue();
+        HistoricalNotification n = getHistoricalNotification("package0", 7);
+        mDataBase.mBuffer.addNewNotificationToWrite(n);
+        mDataBase.mHistoryFiles.clear();
+        mDataBase.new WriteBufferRunnable().run(af);
+        assertThat(savedIndex.renameTo(indexFile)).isTrue();
+
+        NotificationHistory nh = mDataBase.readNotificationHistory("package0", null, 10);
+
+        assertThat(nh.getNotificationsToWrite()).containsExactly(n);
+    }
+
+    @Test
+    public void testReadNotificationHistory_filtered_noIndex_readsWholeFile() throws Exception {
+        writeHistoryFile("1", 2);
+        assertThat(new File(new File(mRootDir, "history_index"), "1").delete()).isTrue();
+
+        NotificationHistory nh = mDataBase.readNotificationHistory("package1", "channelId1", 10);
+
+        assertThat(nh.getHistoryCount()).isEqualTo(2);
+        for (HistoricalNotification n : nh.getNotificationsToWrite()) {
+            assertThat(n.getPackage()).isEqualTo("package1");
+            assertThat(n.getChannelId()).isEqualTo("channelId1");
+        }
+    }
+
+    @Test
+    public void testWriteBufferedNotifications() {
+        HistoricalNotification n = getHistoricalNotification(1);
+        mDataBase.addNotification(n);
+
+        mDataBase.writeBufferedNotifications();
+
+        verify(mFileWriteHandler, times(1)).removeCallbacks(
+                any(NotificationHistoryDatabase.WriteBufferRunnable.class));
+        assertThat(mDataBase.mHistoryFiles.size()).isEqualTo(1);
+        assertThat(mDataBase.mBuffer.getHistoryCount()).isEqualTo(0);
+        assertThat(mDataBase.readNotificationHistory().getNotificationsToWrite())
+                .isEqualTo(singletonList(n));
+    }
+
+    @Test
+    public void testWriteBufferedNotifications_emptyBuffer_doesNotWrite() {
+        mDataBase.writeBufferedNotifications();
+
+        verify(mFileWriteHandler, times(1)).removeCallbacks(
+                any(NotificationHistoryDatabase.WriteBufferRunnable.class));
+        assertThat(mDataBase.mHistoryFiles).isEmpty();
+    }
+
     @Test
     public void testRemoveNotificationRunnable() throws Exception {
         NotificationHistory nh = mock(NotificationHistory.class);
@@ -563,6 +563,18 @@ public class NotificationHistoryManagerTest extends UiServiceTestCase {
         verify(mDb, times(1)).readNotificationHistory("pkg", "chn", 1000);
     }
 
+    @Test
+    public void testCleanupHistoryFiles_writesBufferOfUnlockedUsers() {
+        mHistoryManager.onUserUnlocked(USER_SYSTEM);
+        mHistoryManager.onUserUnlocked(mProfileId);
+        mHistoryManager.onUserStopped(mProfileId);
+
+        mHistoryManager.cleanupHistoryFiles();
+
+        verify(mDb, times(1)).prune();
+        verify(mDb, times(1)).writeBufferedNotifications();
+    }
+
     @Test
     public void testIsHistoryEnabled() {
         assertThat(mHistoryManager.isHistoryEnabled(USER_SYSTEM)).isTrue();
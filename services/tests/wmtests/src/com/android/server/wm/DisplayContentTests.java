@@ -2892,6 +2892,86 @@ public class DisplayContentTests extends WindowTestsBase {
         assertFalse(mDisplayContent.mayImeShowOnLaunchingActivity(app));
     }
 
+    @Test
+    public void testApplySurfaceChangesTransaction_skipsUnchangedDisplay() {
+        final DisplayContent dc = createNewDisplay();
+        dc.mSkipUnchangedWindowsInSurfacePlacement = true;
+        final WindowState win = createWindow(null, TYPE_BASE_APPLICATION, dc, "win");
+
+        // Adding the window changed the display.
+        assertTrue(dc.applySurfaceChangesTransaction());
+        assertFalse(dc.mSurfacePlacementDirty);
+        // Nothing changed since.
+        assertFalse(dc.applySurfaceChangesTransaction());
+
+        win.setViewVisibility(View.INVISIBLE);
+        assertTrue(dc.mSurfacePlacementDirty);
+        assertTrue(dc.applySurfaceChangesTransaction());
+
+        win.setHasSurface(!win.mHasSurface);
+        assertTrue(dc.applySurfaceChangesTransaction());
+
+        dc.setLayoutNeeded();
+        assertTrue(dc.applySurfaceChangesTransaction());
+        assertFalse(dc.applySurfaceChangesTransaction());
+    }
+
+    @Test
+    public void testApplySurfaceChangesTransaction_dispatchesChangedInsets() {
+        final DisplayContent dc = createNewDisplay();
+        dc.mSkipUnchangedWindowsInSurfacePlacement = true;
+        final WindowState win = createWindow(null, TYPE_BASE_APPLICATION, dc, "win");
+        dc.applySurfaceChangesTransaction();
+        assertFalse(dc.applySurfaceChangesTransaction());
+
+        final int insetsChanged = mWm.mWindowsInsetsChanged;
+        win.notifyInsetsChanged();
+        assertTrue(dc.mSurfacePlacementDirty);
+
+        // The pass goes through the window again, which dispatches the new insets.
+        assertTrue(dc.applySurfaceChangesTransaction());
+        assertFalse(win.getWindowFrames().hasInsetsChanged());
+        assertEquals(insetsChanged, mWm.mWindowsInsetsChanged);
+    }
+
+    @Test
+    public void testApplySurfaceChangesTransaction_changeOnOtherDisplay() {
+        final DisplayContent dc = createNewDisplay();
+        dc.mSkipUnchangedWindowsInSurfacePlacement = true;
+        final WindowState win = createWindow(null, TYPE_BASE_APPLICATION, dc, "win");
+        final WindowState otherWin = createWindow(null, TYPE_BASE_APPLICATION, mDisplayContent,
+                "otherWin");
+        dc.applySurfaceChangesTransaction();
+        mDisplayContent.applySurfaceChangesTransaction();
+
+        otherWin.setViewVisibility(View.INVISIBLE);
+
+        assertTrue(mDisplayContent.mSurfacePlacementDirty);
+        assertFalse(dc.mSurfacePlacementDirty);
+        assertFalse(dc.applySurfaceChangesTransaction());
+    }
+
+    @Test
+    public void testApplySurfaceChangesTransaction_checksSkippedDisplay() {
+        final DisplayContent dc = createNewDisplay();
+        dc.mSkipUnchangedWindowsInSurfacePlacement = true;
+        dc.mCheckSkippedWindowsInSurfacePlacement = true;
+        final WindowState win = createWindow(null, TYPE_BASE_APPLICATION, dc, "win");
+        dc.applySurfaceChangesTransaction();
+        assertFalse(dc.applySurfaceChangesTransaction());
+
+        // A resize that didn't mark the display dirty still gets the windows placed.
+        spyOn(win);
+        doReturn(true).when(win).isResizeReportPending();
+        assertFalse(dc.mSurfacePlacementDirty);
+        assertTrue(dc.applySurfaceChangesTransaction());
+
+        // Without the skipping, every pass goes through the windows.
+        doReturn(false).when(win).isResizeReportPending();
+        dc.mSkipUnchangedWindowsInSurfacePlacement = false;
+        assertTrue(dc.applySurfaceChangesTransaction());
+    }
+
     private void removeRootTaskTests(Runnable runnable) {
         final TaskDisplayArea taskDisplayArea = mRootWindowContainer.getDefaultTaskDisplayArea();
         final Task rootTask1 = taskDisplayArea.createRootTask(WINDOWING_MODE_FULLSCREEN,
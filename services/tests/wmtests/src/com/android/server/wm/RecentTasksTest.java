@@ -1524,6 +1524,25 @@ public class RecentTasksTest extends WindowTestsBase {
         }
     }
 
+    @Test
+    public void testUserUnlocked_loadsTaskIds() {
+        mRecentTasks.unloadUserDataFromMemoryLocked(TEST_USER_0_ID);
+        mTaskPersister.mUserTaskIdsOverride = new SparseBooleanArray();
+        mTaskPersister.mUserTaskIdsOverride.put(1, true);
+        mTaskPersister.mUserTaskIdsOverride.put(2, true);
+        mTaskPersister.mUserTasksOverride = new ArrayList<>();
+        mTaskPersister.mUserTasksOverride.add(createTaskBuilder(".UserTask1").build());
+
+        // The persisted task ids are loaded right away, as new task ids are allocated against them.
+        mRecentTasks.onUserUnlockedLocked(TEST_USER_0_ID);
+        assertTrue(mRecentTasks.containsTaskId(1, TEST_USER_0_ID));
+        assertTrue(mRecentTasks.containsTaskId(2, TEST_USER_0_ID));
+
+        // The tasks themselves are loaded when they are first needed at the latest.
+        mRecentTasks.loadPendingUserRecentsLocked(TEST_USER_0_ID);
+        assertThat(mRecentTasks.usersWithRecentsLoadedLocked()).asList().contains(TEST_USER_0_ID);
+    }
+
     private static class TestTaskPersister extends TaskPersister {
         public SparseBooleanArray mUserTaskIdsOverride;
         public ArrayList<Task> mUserTasksOverride;
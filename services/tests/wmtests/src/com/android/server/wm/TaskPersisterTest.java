@@ -19,11 +19,13 @@ package com.android.server.wm;
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 import android.content.pm.UserInfo;
+import android.os.FileUtils;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.platform.test.annotations.Presubmit;
@@ -35,6 +37,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+
 /**
  * Tests for {@link TaskPersister}.
  *
@@ -48,12 +52,14 @@ public class TaskPersisterTest {
     private TaskPersister mTaskPersister;
     private int mTestUserId;
     private UserManager mUserManager;
+    private File mTasksDir;
 
     @Before
     public void setUp() throws Exception {
         final Context context = getInstrumentation().getTargetContext();
         mUserManager = UserManager.get(context);
         mTaskPersister = new TaskPersister(context.getFilesDir());
+        mTasksDir = new File(context.getFilesDir(), "recent_tasks_test");
         // In ARC, the maximum number of supported users is one, which is different from the ones of
         // most phones (more than 4). This prevents TaskPersisterTest from creating another user for
         // test. However, since guest users can be added as much as possible, we create guest user
@@ -65,6 +71,7 @@ public class TaskPersisterTest {
     public void tearDown() throws Exception {
         mTaskPersister.unloadUserDataFromMemory(mTestUserId);
         removeUser(mTestUserId);
+        FileUtils.deleteContentsAndDir(mTasksDir);
     }
 
     private int getRandomTaskIdForUser(int userId) {
@@ -86,6 +93,26 @@ public class TaskPersisterTest {
                 taskIdsOnFile, newTaskIdsOnFile);
     }
 
+    @Test
+    public void testWriteTaskRecord_skipsUnchangedRecords() {
+        final int taskId = getRandomTaskIdForUser(mTestUserId);
+        final File taskFile = new File(mTasksDir, taskId + "_task.xml");
+        final byte[] record = {1, 2, 3};
+
+        assertTrue(mTaskPersister.writeTaskRecord(mTasksDir, mTestUserId, taskId, record));
+        assertEquals(record.length, taskFile.length());
+        assertFalse(mTaskPersister.writeTaskRecord(mTasksDir, mTestUserId, taskId,
+                record.clone()));
+
+        assertTrue(mTaskPersister.writeTaskRecord(mTasksDir, mTestUserId, taskId,
+                new byte[] {1, 2, 4}));
+
+        // Records are written again once the data of the user was unloaded.
+        mTaskPersister.unloadUserDataFromMemory(mTestUserId);
+        assertTrue(mTaskPersister.writeTaskRecord(mTasksDir, mTestUserId, taskId,
+                new byte[] {1, 2, 4}));
+    }
+
     private int createUser(String name, int flags) {
         UserInfo user = mUserManager.createUser(name, flags);
         assertNotNull("Error while creating the test user: " + TEST_USER_NAME, user);
@@ -22,6 +22,8 @@ import static android.view.WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BA
 import static android.view.WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS;
 
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession;
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_COMPRESSED;
+import static com.android.server.wm.BaseAppSnapshotPersister.SNAPSHOT_FORMAT_RAW;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -33,6 +35,9 @@ import static org.mockito.Mockito.when;
 
 import android.app.ActivityManager;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.ColorSpace;
 import android.graphics.Rect;
 import android.os.SystemClock;
 import android.platform.test.annotations.Presubmit;
@@ -415,6 +420,103 @@ public class TaskSnapshotPersisterLoaderTest extends TaskSnapshotPersisterTestBa
         assertNotNull(snapshotB);
     }
 
+    @Test
+    public void testPersistAndLoadSnapshot_rawContainer() {
+        persistAndLoadSnapshot(SNAPSHOT_FORMAT_RAW);
+    }
+
+    @Test
+    public void testPersistAndLoadSnapshot_compressedContainer() {
+        persistAndLoadSnapshot(SNAPSHOT_FORMAT_COMPRESSED);
+    }
+
+    private void persistAndLoadSnapshot(int format) {
+        final PersistInfoProvider provider = createContainerPersistInfoProvider(format);
+        final TaskSnapshotPersister persister =
+                new TaskSnapshotPersister(mSnapshotPersistQueue, provider);
+        final AppSnapshotLoader loader = new AppSnapshotLoader(provider);
+        persister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mSnapshotPersistQueue.waitForQueueEmpty();
+        final File[] files = new File[]{new File(FILES_DIR.getPath() + "/snapshots/1.proto"),
+                new File(FILES_DIR.getPath() + "/snapshots/1.snap"),
+                new File(FILES_DIR.getPath() + "/snapshots/1_reduced.snap")};
+        assertTrueForFiles(files, File::exists, " must exist");
+        assertFalse(new File(FILES_DIR.getPath() + "/snapshots/1.jpg").exists());
+
+        final TaskSnapshot snapshot = loader.loadTask(1, mTestUserId, false /* isLowResolution */);
+        assertNotNull(snapshot);
+        assertEquals(MOCK_SNAPSHOT_ID, snapshot.getId());
+        assertEquals(TEST_INSETS, snapshot.getContentInsets());
+        assertNotNull(snapshot.getSnapshot());
+        final TaskSnapshot lowResSnapshot =
+                loader.loadTask(1, mTestUserId, true /* isLowResolution */);
+        assertNotNull(lowResSnapshot);
+        assertTrue(lowResSnapshot.getHardwareBuffer().getWidth()
+                < snapshot.getHardwareBuffer().getWidth());
+
+        persister.onTaskRemovedFromRecents(1, mTestUserId);
+        mSnapshotPersistQueue.waitForQueueEmpty();
+        assertTrueForFiles(files, file -> !file.exists(), " must be removed");
+    }
+
+    @Test
+    public void testLoadSnapshot_persistedInOtherFormat() {
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mSnapshotPersistQueue.waitForQueueEmpty();
+
+        final AppSnapshotLoader loader =
+                new AppSnapshotLoader(createContainerPersistInfoProvider(SNAPSHOT_FORMAT_RAW));
+        assertNotNull(loader.loadTask(1, mTestUserId, false /* isLowResolution */));
+    }
+
+    @Test
+    public void testSnapshotContainer_lossless() throws Exception {
+        final File file = new File(FILES_DIR, "container.snap");
+        final Bitmap bitmap = Bitmap.createBitmap(64, 48, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            for (int x = 0; x < bitmap.getWidth(); x++) {
+                bitmap.setPixel(x, y, Color.argb(255, x * 4, y * 5, (x + y) % 256));
+            }
+        }
+        try {
+            for (boolean compress : new boolean[] {false, true}) {
+                SnapshotContainer.write(bitmap, file, compress);
+                final Bitmap read = SnapshotContainer.read(file);
+                assertNotNull(read);
+                assertTrue(bitmap.sameAs(read));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshotContainer_keepsColorSpace() throws Exception {
+        final File file = new File(FILES_DIR, "container.snap");
+        final ColorSpace displayP3 = ColorSpace.get(ColorSpace.Named.DISPLAY_P3);
+        final Bitmap bitmap = Bitmap.createBitmap(64, 48, Bitmap.Config.ARGB_8888,
+                false /* hasAlpha */, displayP3);
+        try {
+            SnapshotContainer.write(bitmap, file, true /* compress */);
+            final Bitmap read = SnapshotContainer.read(file);
+            assertNotNull(read);
+            assertEquals(displayP3, read.getColorSpace());
+            assertFalse(read.hasAlpha());
+        } finally {
+            file.delete();
+        }
+
+        final ColorSpace unnamed = new ColorSpace.Rgb("Unnamed",
+                displayP3.getPrimaries(), displayP3.getWhitePoint(), 2.2);
+        assertFalse(SnapshotContainer.supportsColorSpace(unnamed));
+    }
+
+    private PersistInfoProvider createContainerPersistInfoProvider(int format) {
+        return new PersistInfoProvider(userId -> FILES_DIR, "snapshots",
+                true /* enableLowResSnapshots */, 0.5f /* lowResScaleFactor */,
+                false /* use16BitFormat */, format);
+    }
+
     @Test
     public void testRemoveObsoleteFiles() {
         mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
@@ -22,6 +22,7 @@ import static android.content.res.Configuration.GRAMMATICAL_GENDER_NOT_SPECIFIED
 import static android.content.res.Configuration.ORIENTATION_LANDSCAPE;
 import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
 
+import static com.android.dx.mockito.inline.extended.ExtendedMockito.doAnswer;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.doNothing;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.never;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.spyOn;
@@ -51,6 +52,7 @@ import android.Manifest;
 import android.app.ActivityManager;
 import android.app.ClientTransactionHandler;
 import android.app.IApplicationThread;
+import android.app.servertransaction.ClientTransaction;
 import android.app.servertransaction.ConfigurationChangeItem;
 import android.content.ComponentName;
 import android.content.pm.ApplicationInfo;
@@ -337,6 +339,40 @@ public class WindowProcessControllerTests extends WindowTestsBase {
         assertEquals(newConfig, configCaptor.getValue());
     }
 
+    @Test
+    public void testConfigurationChangesMergedWhileLayoutDeferred() throws RemoteException {
+        final IApplicationThread thread = mWpc.getThread();
+        final ClientTransactionHandler client = mock(ClientTransactionHandler.class);
+        doAnswer(invocation -> {
+            final ClientTransaction transaction = invocation.getArgument(0);
+            transaction.getCallbacks().get(0).preExecute(client, null /* token */);
+            return null;
+        }).when(thread).scheduleTransaction(any());
+        mWpc.setReportedProcState(ActivityManager.PROCESS_STATE_IMPORTANT_BACKGROUND);
+        final Configuration newConfig = new Configuration(mWpc.getConfiguration());
+        clearInvocations(thread);
+
+        synchronized (mWm.mGlobalLock) {
+            mAtm.deferWindowLayout();
+            try {
+                newConfig.densityDpi += 100;
+                mWpc.onConfigurationChanged(newConfig);
+                newConfig.densityDpi += 100;
+                mWpc.onConfigurationChanged(newConfig);
+                verify(thread, never()).scheduleTransaction(any());
+            } finally {
+                mAtm.continueWindowLayout();
+            }
+        }
+
+        // Only the last configuration is sent.
+        verify(thread, times(1)).scheduleTransaction(any());
+        final ArgumentCaptor<Configuration> configCaptor =
+                ArgumentCaptor.forClass(Configuration.class);
+        verify(client).updatePendingConfiguration(configCaptor.capture());
+        assertEquals(newConfig, configCaptor.getValue());
+    }
+
     @Test
     public void testComputeOomAdjFromActivities() {
         final ActivityRecord activity = createActivityRecord(mWpc);
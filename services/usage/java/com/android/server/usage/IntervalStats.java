@@ -516,65 +516,12 @@ public class IntervalStats {
         final ArraySet<Integer> omittedTokens = new ArraySet<>();
         for (int i = this.events.size() - 1; i >= 0; i--) {
             final Event event = this.events.get(i);
-            final int packageToken = event.mPackageToken;
-            event.mPackage = packagesTokenData.getPackageString(packageToken);
-            if (event.mPackage == null) {
-                omittedTokens.add(packageToken);
+            if (!deobfuscateEvent(event, packagesTokenData)) {
+                if (event.mPackage == null) {
+                    omittedTokens.add(event.mPackageToken);
+                }
                 this.events.remove(i);
                 dataOmitted = true;
-                continue;
-            }
-
-            if (event.mClassToken != PackagesTokenData.UNASSIGNED_TOKEN) {
-                event.mClass = packagesTokenData.getString(packageToken, event.mClassToken);
-            }
-            if (event.mTaskRootPackageToken != PackagesTokenData.UNASSIGNED_TOKEN) {
-                event.mTaskRootPackage = packagesTokenData.getString(packageToken,
-                        event.mTaskRootPackageToken);
-            }
-            if (event.mTaskRootClassToken != PackagesTokenData.UNASSIGNED_TOKEN) {
-                event.mTaskRootClass = packagesTokenData.getString(packageToken,
-                        event.mTaskRootClassToken);
-            }
-            switch (event.mEventType) {
-                case CONFIGURATION_CHANGE:
-                    if (event.mConfiguration == null) {
-                        event.mConfiguration = new Configuration();
-                    }
-                    break;
-                case SHORTCUT_INVOCATION:
-                    event.mShortcutId = packagesTokenData.getString(packageToken,
-                            event.mShortcutIdToken);
-                    if (event.mShortcutId == null) {
-                        Slog.v(TAG, "Unable to parse shortcut " + event.mShortcutIdToken
-                                + " for package " + packageToken);
-                        this.events.remove(i);
-                        dataOmitted = true;
-                        continue;
-                    }
-                    break;
-                case NOTIFICATION_INTERRUPTION:
-                    event.mNotificationChannelId = packagesTokenData.getString(packageToken,
-                            event.mNotificationChannelIdToken);
-                    if (event.mNotificationChannelId == null) {
-                        Slog.v(TAG, "Unable to parse notification channel "
-                                + event.mNotificationChannelIdToken + " for package "
-                                + packageToken);
-                        this.events.remove(i);
-                        dataOmitted = true;
-                        continue;
-                    }
-                    break;
-                case LOCUS_ID_SET:
-                    event.mLocusId = packagesTokenData.getString(packageToken, event.mLocusIdToken);
-                    if (event.mLocusId == null) {
-                        Slog.v(TAG, "Unable to parse locus " + event.mLocusIdToken
-                                + " for package " + packageToken);
-                        this.events.remove(i);
-                        dataOmitted = true;
-                        continue;
-                    }
-                    break;
             }
         }
         if (dataOmitted) {
@@ -584,6 +531,67 @@ public class IntervalStats {
         return dataOmitted;
     }
 
+    /**
+     * Resolves the tokens of the given event to the strings they stand for.
+     *
+     * @return {@code false} if some of the tokens are unknown, in which case the event should be
+     *         dropped. {@link Event#mPackage} is {@code null} if the package token is unknown.
+     */
+    static boolean deobfuscateEvent(Event event, PackagesTokenData packagesTokenData) {
+        final int packageToken = event.mPackageToken;
+        event.mPackage = packagesTokenData.getPackageString(packageToken);
+        if (event.mPackage == null) {
+            return false;
+        }
+
+        if (event.mClassToken != PackagesTokenData.UNASSIGNED_TOKEN) {
+            event.mClass = packagesTokenData.getString(packageToken, event.mClassToken);
+        }
+        if (event.mTaskRootPackageToken != PackagesTokenData.UNASSIGNED_TOKEN) {
+            event.mTaskRootPackage = packagesTokenData.getString(packageToken,
+                    event.mTaskRootPackageToken);
+        }
+        if (event.mTaskRootClassToken != PackagesTokenData.UNASSIGNED_TOKEN) {
+            event.mTaskRootClass = packagesTokenData.getString(packageToken,
+                    event.mTaskRootClassToken);
+        }
+        switch (event.mEventType) {
+            case CONFIGURATION_CHANGE:
+                if (event.mConfiguration == null) {
+                    event.mConfiguration = new Configuration();
+                }
+                break;
+            case SHORTCUT_INVOCATION:
+                event.mShortcutId = packagesTokenData.getString(packageToken,
+                        event.mShortcutIdToken);
+                if (event.mShortcutId == null) {
+                    Slog.v(TAG, "Unable to parse shortcut " + event.mShortcutIdToken
+                            + " for package " + packageToken);
+                    return false;
+                }
+                break;
+            case NOTIFICATION_INTERRUPTION:
+                event.mNotificationChannelId = packagesTokenData.getString(packageToken,
+                        event.mNotificationChannelIdToken);
+                if (event.mNotificationChannelId == null) {
+                    Slog.v(TAG, "Unable to parse notification channel "
+                            + event.mNotificationChannelIdToken + " for package "
+                            + packageToken);
+                    return false;
+                }
+                break;
+            case LOCUS_ID_SET:
+                event.mLocusId = packagesTokenData.getString(packageToken, event.mLocusIdToken);
+                if (event.mLocusId == null) {
+                    Slog.v(TAG, "Unable to parse locus " + event.mLocusIdToken
+                            + " for package " + packageToken);
+                    return false;
+                }
+                break;
+        }
+        return true;
+    }
+
     /**
      * Parses the obfuscated tokenized data held in this interval stats object.
      *
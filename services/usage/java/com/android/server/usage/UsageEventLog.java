@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.usage;
+
+import android.app.usage.EventList;
+import android.app.usage.UsageEvents;
+import android.util.AtomicFile;
+import android.util.Slog;
+import android.util.proto.ProtoInputStream;
+import android.util.proto.ProtoOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A columnar copy of the events of a daily {@link IntervalStats} file, which lets queries read
+ * the events of a time range or of a single package without decoding the rest of the file.
+ *
+ * The events are split in blocks of up to {@link #BLOCK_SIZE} events. Each block stores the
+ * time and package token of its events as plain columns, followed by their
+ * {@code EventObfuscatedProto}s compressed together. An index at the start of the file holds the
+ * time range and the sorted package tokens of each block, so a query only reads and inflates the
+ * blocks that may hold matching events, and only parses the matching events in them.
+ *
+ * The log records the length and modification time of the file it was built from, and is
+ * ignored once that file changes; the database then rebuilds it from the file.
+ *
+ * <pre>
+ * header: int magic, int version, long sourceLength, long sourceLastModified,
+ *         long beginTime, long endTime, int blockCount, int indexLength
+ * index:  for each block: long firstTime, long lastTime, int eventCount,
+ *         int tokenCount, int[tokenCount] sortedPackageTokens, int blockLength
+ * blocks: long[eventCount] times, int[eventCount] packageTokens,
+ *         int[eventCount] payloadEnds, deflated payload
+ * </pre>
+ */
+final class UsageEventLog {
+    private static final String TAG = "UsageEventLog";
+
+    private static final int MAGIC = 0x55454C47; // "UELG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+
+    /** The maximum number of events in a block. */
+    static final int BLOCK_SIZE = 256;
+
+    private UsageEventLog() {
+    }
+
+    /**
+     * Writes the events of {@code stats}, as read from or written to {@code source}, to
+     * {@code logFile}. The events must hold their tokens, i.e. have been obfuscated.
+     */
+    static void write(AtomicFile logFile, AtomicFile source, IntervalStats stats)
+            throws IOException {
+        final EventList events = stats.events;
+        final int eventCount = events.size();
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final DataOutputStream indexOut = new DataOutputStream(index);
+        final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        final DataOutputStream blocksOut = new DataOutputStream(blocks);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final long[] times = new long[BLOCK_SIZE];
+        final int[] tokens = new int[BLOCK_SIZE];
+        final int[] payloadEnds = new int[BLOCK_SIZE];
+        final byte[] buffer = new byte[8192];
+        final Deflater deflater = new Deflater();
+        int blockCount = 0;
+        try {
+            int i = 0;
+            while (i < eventCount) {
+                int n = 0;
+                payload.reset();
+                for (; i < eventCount && n < BLOCK_SIZE; i++) {
+                    final UsageEvents.Event event = events.get(i);
+                    if (event.mPackageToken == PackagesTokenData.UNASSIGNED_TOKEN) {
+                        continue;
+                    }
+                    final ProtoOutputStream proto = new ProtoOutputStream();
+                    try {
+                        UsageStatsProtoV2.writeEvent(proto, stats.beginTime, event);
+                    } catch (IllegalArgumentException e) {
+                        Slog.e(TAG, "Unable to write some events to the log.", e);
+                        continue;
+                    }
+                    payload.write(proto.getBytes());
+                    times[n] = event.mTimeStamp;
+                    tokens[n] = event.mPackageToken;
+                    payloadEnds[n] = payload.size();
+                    n++;
+                }
+                if (n == 0) {
+                    break;
+                }
+
+                final int blockStart = blocksOut.size();
+                long lastTime = times[0];
+                for (int j = 0; j < n; j++) {
+                    blocksOut.writeLong(times[j]);
+                    lastTime = Math.max(lastTime, times[j]);
+                }
+                for (int j = 0; j < n; j++) {
+                    blocksOut.writeInt(tokens[j]);
+                }
+                for (int j = 0; j < n; j++) {
+                    blocksOut.writeInt(payloadEnds[j]);
+                }
+                deflater.reset();
+                deflater.setInput(payload.toByteArray());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    blocksOut.write(buffer, 0, deflater.deflate(buffer));
+                }
+
+                // Sort the tokens in place, they aren't needed in event order anymore.
+                Arrays.sort(tokens, 0, n);
+                int tokenCount = 0;
+                for (int j = 0; j < n; j++) {
+                    if (j == 0 || tokens[j] != tokens[j - 1]) {
+                        tokens[tokenCount++] = tokens[j];
+                    }
+                }
+                indexOut.writeLong(times[0]);
+                indexOut.writeLong(lastTime);
+                indexOut.writeInt(n);
+                indexOut.writeInt(tokenCount);
+                for (int j = 0; j < tokenCount; j++) {
+                    indexOut.writeInt(tokens[j]);
+                }
+                indexOut.writeInt(blocksOut.size() - blockStart);
+                blockCount++;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        FileOutputStream fos = logFile.startWrite();
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.getBaseFile().length());
+            out.writeLong(source.getLastModifiedTime());
+            out.writeLong(stats.beginTime);
+            out.writeLong(stats.endTime);
+            out.writeInt(blockCount);
+            out.writeInt(index.size());
+            index.writeTo(out);
+            blocks.writeTo(out);
+            out.flush();
+            logFile.finishWrite(fos);
+            fos = null;
+        } finally {
+            // When fos is null (successful write), this will no-op
+            logFile.failWrite(fos);
+        }
+    }
+
+    /**
+     * Reads the events of {@code logFile} in {@code [beginTime, endTime)} into
+     * {@code statsOut.events}, along with the begin and end time of the stats. The events are
+     * left obfuscated.
+     *
+     * @param packageToken the token of the only package to read the events of, or
+     *                     {@link PackagesTokenData#UNASSIGNED_TOKEN} to read the events of all
+     *                     packages.
+     * @return {@code false} if there is no log, or it wasn't built from the current contents of
+     *         {@code source}, in which case nothing was read.
+     */
+    static boolean read(File logFile, AtomicFile source, long beginTime, long endTime,
+            int packageToken, IntervalStats statsOut) throws IOException {
+        final RandomAccessFile in;
+        try {
+            in = new RandomAccessFile(logFile, "r");
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        Inflater inflater = null;
+        try {
+            final byte[] headerBytes = new byte[HEADER_SIZE];
+            in.readFully(headerBytes);
+            final ByteBuffer header = ByteBuffer.wrap(headerBytes);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != source.getBaseFile().length()
+                    || header.getLong() != source.getLastModifiedTime()) {
+                return false;
+            }
+            statsOut.beginTime = header.getLong();
+            statsOut.endTime = header.getLong();
+            final int blockCount = header.getInt();
+            final byte[] indexBytes = new byte[header.getInt()];
+            in.readFully(indexBytes);
+            final ByteBuffer index = ByteBuffer.wrap(indexBytes);
+
+            long blockOffset = HEADER_SIZE + indexBytes.length;
+            for (int b = 0; b < blockCount; b++) {
+                final long firstTime = index.getLong();
+                final long lastTime = index.getLong();
+                final int eventCount = index.getInt();
+                final int tokenCount = index.getInt();
+                final int tokensStart = index.position();
+                index.position(tokensStart + tokenCount * 4);
+                final int blockLength = index.getInt();
+                final long offset = blockOffset;
+                blockOffset += blockLength;
+
+                if (lastTime < beginTime || firstTime >= endTime) {
+                    continue;
+                }
+                if (packageToken != PackagesTokenData.UNASSIGNED_TOKEN
+                        && !containsToken(index, tokensStart, tokenCount, packageToken)) {
+                    continue;
+                }
+
+                final byte[] blockBytes = new byte[blockLength];
+                in.seek(offset);
+                in.readFully(blockBytes);
+                final ByteBuffer block = ByteBuffer.wrap(blockBytes);
+                final int tokensAt = eventCount * 8;
+                final int endsAt = eventCount * 12;
+                final int payloadAt = eventCount * 16;
+                byte[] payload = null;
+                for (int i = 0; i < eventCount; i++) {
+                    final long time = block.getLong(i * 8);
+                    if (time < beginTime || time >= endTime) {
+                        continue;
+                    }
+                    if (packageToken != PackagesTokenData.UNASSIGNED_TOKEN
+                            && block.getInt(tokensAt + i * 4) != packageToken) {
+                        continue;
+                    }
+                    if (payload == null) {
+                        if (inflater == null) {
+                            inflater = new Inflater();
+                        } else {
+                            inflater.reset();
+                        }
+                        payload = new byte[block.getInt(endsAt + (eventCount - 1) * 4)];
+                        inflater.setInput(blockBytes, payloadAt, blockLength - payloadAt);
+                        inflate(inflater, payload);
+                    }
+                    final int start = i == 0 ? 0 : block.getInt(endsAt + (i - 1) * 4);
+                    final int end = block.getInt(endsAt + i * 4);
+                    final UsageEvents.Event event = UsageStatsProtoV2.parseEvent(
+                            new ProtoInputStream(
+                                    new ByteArrayInputStream(payload, start, end - start)),
+                            statsOut.beginTime);
+                    if (event != null) {
+                        statsOut.events.insert(event);
+                    }
+                }
+            }
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+            in.close();
+        }
+        return true;
+    }
+
+    private static boolean containsToken(ByteBuffer index, int tokensStart, int tokenCount,
+            int token) {
+        int low = 0;
+        int high = tokenCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midToken = index.getInt(tokensStart + mid * 4);
+            if (midToken < token) {
+                low = mid + 1;
+            } else if (midToken > token) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void inflate(Inflater inflater, byte[] out) throws IOException {
+        try {
+            int length = 0;
+            while (length < out.length) {
+                final int inflated = inflater.inflate(out, length, out.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated event block");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+}
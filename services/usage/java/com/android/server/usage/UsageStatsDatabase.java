@@ -135,6 +135,8 @@ public class UsageStatsDatabase {
 
     // The obfuscated packages to tokens mappings file
     private final File mPackageMappingsFile;
+    // The UsageEventLogs of the daily files, named after the begin time of their daily file.
+    private final File mEventLogsDir;
     // Holds all of the data related to the obfuscated packages and their token mappings.
     final PackagesTokenData mPackagesTokenData = new PackagesTokenData();
 
@@ -158,6 +160,7 @@ public class UsageStatsDatabase {
         mUpdateBreadcrumb = new File(dir, "breadcrumb");
         mSortedStatFiles = new TimeSparseArray[mIntervalDirs.length];
         mPackageMappingsFile = new File(dir, "mappings");
+        mEventLogsDir = new File(dir, "daily-events");
         mCal = new UnixCalendar(0);
     }
 
@@ -177,6 +180,8 @@ public class UsageStatsDatabase {
                             + f.getAbsolutePath());
                 }
             }
+            // Event logs are only an index of the daily files, so carry on without them.
+            mEventLogsDir.mkdirs();
 
             checkVersionAndBuildLocked();
             indexFilesLocked();
@@ -319,6 +324,27 @@ public class UsageStatsDatabase {
                 }
             }
         }
+        pruneEventLogsLocked();
+    }
+
+    /** Deletes the event logs whose daily file was deleted or renamed. */
+    private void pruneEventLogsLocked() {
+        final File[] logs = mEventLogsDir.listFiles();
+        if (logs == null) {
+            return;
+        }
+        final TimeSparseArray<AtomicFile> dailyFiles =
+                mSortedStatFiles[UsageStatsManager.INTERVAL_DAILY];
+        for (File log : logs) {
+            try {
+                if (dailyFiles.get(Long.parseLong(log.getName())) != null) {
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                // Not a log, e.g. the leftover of an interrupted write.
+            }
+            log.delete();
+        }
     }
 
     /**
@@ -832,51 +858,105 @@ public class UsageStatsDatabase {
         synchronized (mLock) {
             final TimeSparseArray<AtomicFile> intervalStats = mSortedStatFiles[intervalType];
 
-            int endIndex = intervalStats.closestIndexOnOrBefore(endTime);
+            final int endIndex = lastIndexBefore(intervalStats, endTime);
             if (endIndex < 0) {
-                // All the stats start after this range ends, so nothing matches.
-                if (DEBUG) {
-                    Slog.d(TAG, "No results for this range. All stats start after.");
-                }
                 return null;
             }
+            final int startIndex = firstIndexForRange(intervalStats, beginTime);
 
-            if (intervalStats.keyAt(endIndex) == endTime) {
-                // The endTime is exclusive, so if we matched exactly take the one before.
-                endIndex--;
-                if (endIndex < 0) {
-                    // All the stats start after this range ends, so nothing matches.
-                    if (DEBUG) {
-                        Slog.d(TAG, "No results for this range. All stats start after.");
+            final ArrayList<T> results = new ArrayList<>();
+            for (int i = startIndex; i <= endIndex; i++) {
+                final AtomicFile f = intervalStats.valueAt(i);
+                final IntervalStats stats = new IntervalStats();
+
+                if (DEBUG) {
+                    Slog.d(TAG, "Reading stat file " + f.getBaseFile().getAbsolutePath());
+                }
+
+                try {
+                    readLocked(f, stats);
+                    if (beginTime < stats.endTime
+                            && !combiner.combine(stats, false, results)) {
+                        break;
                     }
-                    return null;
+                } catch (Exception e) {
+                    Slog.e(TAG, "Failed to read usage stats file", e);
+                    // We continue so that we return results that are not
+                    // corrupt.
                 }
             }
+            return results;
+        }
+    }
 
-            int startIndex = intervalStats.closestIndexOnOrBefore(beginTime);
-            if (startIndex < 0) {
-                // All the stats available have timestamps after beginTime, which means they all
-                // match.
-                startIndex = 0;
+    /**
+     * Find the events of the daily {@link IntervalStats} in the given range, optionally only those
+     * of one package.
+     * <p/>
+     * This reads the {@link UsageEventLog} kept alongside each daily file, which only decodes the
+     * events in the range and of the package rather than the whole file. The
+     * {@link IntervalStats} given to the combiner hold these events and nothing else. A daily file
+     * without an up to date log, such as one written before logs existed, is read in full once and
+     * gets its log rebuilt.
+     *
+     * @param packageName the package to find the events of, or {@code null} for all packages.
+     */
+    @Nullable
+    public <T> List<T> queryEvents(long beginTime, long endTime, @Nullable String packageName,
+            StatCombiner<T> combiner) {
+        if (mCurrentVersion < 5) {
+            // Event logs rely on the package tokens.
+            return queryUsageStats(UsageStatsManager.INTERVAL_DAILY, beginTime, endTime,
+                    combiner);
+        }
+
+        if (endTime <= beginTime) {
+            if (DEBUG) {
+                Slog.d(TAG, "endTime(" + endTime + ") <= beginTime(" + beginTime + ")");
             }
+            return null;
+        }
+
+        synchronized (mLock) {
+            final TimeSparseArray<AtomicFile> dailyFiles =
+                    mSortedStatFiles[UsageStatsManager.INTERVAL_DAILY];
+
+            final int endIndex = lastIndexBefore(dailyFiles, endTime);
+            if (endIndex < 0) {
+                return null;
+            }
+            final int startIndex = firstIndexForRange(dailyFiles, beginTime);
 
             final ArrayList<T> results = new ArrayList<>();
+            int packageToken = PackagesTokenData.UNASSIGNED_TOKEN;
+            if (packageName != null) {
+                final ArrayMap<String, Integer> packageTokens =
+                        mPackagesTokenData.packagesToTokensMap.get(packageName);
+                if (packageTokens == null) {
+                    // Without a token, none of the package's events could be read back.
+                    return results;
+                }
+                packageToken = packageTokens.get(packageName);
+            }
+
             for (int i = startIndex; i <= endIndex; i++) {
-                final AtomicFile f = intervalStats.valueAt(i);
+                final AtomicFile f = dailyFiles.valueAt(i);
                 final IntervalStats stats = new IntervalStats();
 
                 if (DEBUG) {
-                    Slog.d(TAG, "Reading stat file " + f.getBaseFile().getAbsolutePath());
+                    Slog.d(TAG, "Reading events of stat file "
+                            + f.getBaseFile().getAbsolutePath());
                 }
 
                 try {
-                    readLocked(f, stats);
+                    readEventsLocked(f, dailyFiles.keyAt(i), beginTime, endTime, packageToken,
+                            stats);
                     if (beginTime < stats.endTime
                             && !combiner.combine(stats, false, results)) {
                         break;
                     }
                 } catch (Exception e) {
-                    Slog.e(TAG, "Failed to read usage stats file", e);
+                    Slog.e(TAG, "Failed to read usage events", e);
                     // We continue so that we return results that are not
                     // corrupt.
                 }
@@ -885,6 +965,107 @@ public class UsageStatsDatabase {
         }
     }
 
+    /**
+     * Returns the index of the last file starting before {@code endTime}, or -1 if there is none.
+     */
+    private static int lastIndexBefore(TimeSparseArray<AtomicFile> files, long endTime) {
+        int endIndex = files.closestIndexOnOrBefore(endTime);
+        if (endIndex < 0) {
+            // All the stats start after this range ends, so nothing matches.
+            if (DEBUG) {
+                Slog.d(TAG, "No results for this range. All stats start after.");
+            }
+            return -1;
+        }
+
+        if (files.keyAt(endIndex) == endTime) {
+            // The endTime is exclusive, so if we matched exactly take the one before.
+            endIndex--;
+            if (endIndex < 0) {
+                // All the stats start after this range ends, so nothing matches.
+                if (DEBUG) {
+                    Slog.d(TAG, "No results for this range. All stats start after.");
+                }
+                return -1;
+            }
+        }
+        return endIndex;
+    }
+
+    /** Returns the index of the first file which may hold stats from {@code beginTime} on. */
+    private static int firstIndexForRange(TimeSparseArray<AtomicFile> files, long beginTime) {
+        final int startIndex = files.closestIndexOnOrBefore(beginTime);
+        if (startIndex < 0) {
+            // All the stats available have timestamps after beginTime, which means they all
+            // match.
+            return 0;
+        }
+        return startIndex;
+    }
+
+    /**
+     * Reads the events of the given daily file in the range, and of the package unless
+     * {@code packageToken} is {@link PackagesTokenData#UNASSIGNED_TOKEN}, from its event log.
+     */
+    private void readEventsLocked(AtomicFile file, long fileBeginTime, long beginTime,
+            long endTime, int packageToken, IntervalStats statsOut) throws IOException {
+        final File logFile = getEventLogFile(fileBeginTime);
+        boolean logRead;
+        try {
+            logRead = UsageEventLog.read(logFile, file, beginTime, endTime, packageToken,
+                    statsOut);
+        } catch (IOException e) {
+            Slog.w(TAG, "Failed to read usage event log " + logFile, e);
+            statsOut.events.clear();
+            logRead = false;
+        }
+        if (logRead) {
+            for (int i = statsOut.events.size() - 1; i >= 0; i--) {
+                if (!IntervalStats.deobfuscateEvent(statsOut.events.get(i),
+                        mPackagesTokenData)) {
+                    statsOut.events.remove(i);
+                }
+            }
+            return;
+        }
+
+        // The log is missing or out of date: read the whole file, and rebuild the log from it so
+        // that the next query doesn't have to.
+        final IntervalStats fullStats = new IntervalStats();
+        readLocked(file, fullStats);
+        writeEventLogLocked(file, fileBeginTime, fullStats);
+        statsOut.beginTime = fullStats.beginTime;
+        statsOut.endTime = fullStats.endTime;
+        final int size = fullStats.events.size();
+        for (int i = fullStats.events.firstIndexOnOrAfter(beginTime); i < size; i++) {
+            final UsageEvents.Event event = fullStats.events.get(i);
+            if (event.mTimeStamp >= endTime) {
+                break;
+            }
+            if (packageToken == PackagesTokenData.UNASSIGNED_TOKEN
+                    || event.mPackageToken == packageToken) {
+                statsOut.events.insert(event);
+            }
+        }
+    }
+
+    /**
+     * Writes the event log of the given daily file from its stats, whose events must hold their
+     * tokens.
+     */
+    private void writeEventLogLocked(AtomicFile file, long fileBeginTime, IntervalStats stats) {
+        try {
+            UsageEventLog.write(new AtomicFile(getEventLogFile(fileBeginTime)), file, stats);
+        } catch (Exception e) {
+            // An unwritten log is only rebuilt on the next query.
+            Slog.e(TAG, "Failed to write usage event log", e);
+        }
+    }
+
+    private File getEventLogFile(long fileBeginTime) {
+        return new File(mEventLogsDir, Long.toString(fileBeginTime));
+    }
+
     /**
      * Find the interval that best matches this range.
      *
@@ -1241,6 +1422,9 @@ public class UsageStatsDatabase {
 
             writeLocked(f, stats);
             stats.lastTimeSaved = f.getLastModifiedTime();
+            if (intervalType == UsageStatsManager.INTERVAL_DAILY && mCurrentVersion >= 5) {
+                writeEventLogLocked(f, stats.beginTime, stats);
+            }
         }
     }
 
@@ -232,7 +232,7 @@ final class UsageStatsProtoV2 {
         }
     }
 
-    private static UsageEvents.Event parseEvent(ProtoInputStream proto, long beginTime)
+    static UsageEvents.Event parseEvent(ProtoInputStream proto, long beginTime)
             throws IOException {
         final UsageEvents.Event event = new UsageEvents.Event();
         while (true) {
@@ -385,7 +385,7 @@ final class UsageStatsProtoV2 {
         proto.write(IntervalStatsObfuscatedProto.Configuration.ACTIVE, isActive);
     }
 
-    private static void writeEvent(ProtoOutputStream proto, final long statsBeginTime,
+    static void writeEvent(ProtoOutputStream proto, final long statsBeginTime,
             final UsageEvents.Event event) throws IllegalArgumentException {
         proto.write(EventObfuscatedProto.PACKAGE_TOKEN, event.mPackageToken + 1);
         if (event.mClassToken != PackagesTokenData.UNASSIGNED_TOKEN) {
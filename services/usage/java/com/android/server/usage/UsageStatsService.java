@@ -1405,6 +1405,15 @@ public class UsageStatsService extends SystemService implements
      * Called by the Binder stub.
      */
     UsageEvents queryEvents(int userId, long beginTime, long endTime, int flags) {
+        return queryEvents(userId, beginTime, endTime, flags, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Called by the Binder stub. Returns up to {@code maxEvents} of the events in the range,
+     * after skipping the first {@code skip} of them.
+     */
+    UsageEvents queryEvents(int userId, long beginTime, long endTime, int flags, int skip,
+            int maxEvents) {
         synchronized (mLock) {
             if (!mUserUnlockedStates.contains(userId)) {
                 Slog.w(TAG, "Failed to query events for locked user " + userId);
@@ -1415,7 +1424,7 @@ public class UsageStatsService extends SystemService implements
             if (service == null) {
                 return null; // user was stopped or removed
             }
-            return service.queryEvents(beginTime, endTime, flags);
+            return service.queryEvents(beginTime, endTime, flags, skip, maxEvents);
         }
     }
 
@@ -2195,6 +2204,16 @@ public class UsageStatsService extends SystemService implements
 
         @Override
         public UsageEvents queryEvents(long beginTime, long endTime, String callingPackage) {
+            return queryEventsPage(beginTime, endTime, 0, Integer.MAX_VALUE, callingPackage);
+        }
+
+        @Override
+        public UsageEvents queryEventsPage(long beginTime, long endTime, int skip, int maxEvents,
+                String callingPackage) {
+            if (skip < 0 || maxEvents <= 0) {
+                throw new IllegalArgumentException("Bad page, skip=" + skip
+                        + " maxEvents=" + maxEvents);
+            }
             if (!hasPermission(callingPackage)) {
                 return null;
             }
@@ -2217,7 +2236,8 @@ public class UsageStatsService extends SystemService implements
                 if (hideShortcutInvocationEvents) flags |= UsageEvents.HIDE_SHORTCUT_EVENTS;
                 if (hideLocusIdEvents) flags |= UsageEvents.HIDE_LOCUS_EVENTS;
                 if (obfuscateNotificationEvents) flags |= UsageEvents.OBFUSCATE_NOTIFICATION_EVENTS;
-                return UsageStatsService.this.queryEvents(userId, beginTime, endTime, flags);
+                return UsageStatsService.this.queryEvents(userId, beginTime, endTime, flags,
+                        skip, maxEvents);
             } finally {
                 Binder.restoreCallingIdentity(token);
             }
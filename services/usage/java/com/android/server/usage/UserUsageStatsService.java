@@ -449,6 +449,17 @@ class UserUsageStatsService {
     @Nullable
     private <T> List<T> queryStats(int intervalType, final long beginTime, final long endTime,
             StatCombiner<T> combiner) {
+        return queryStats(intervalType, beginTime, endTime, false, null, combiner);
+    }
+
+    /**
+     * Like {@link #queryStats(int, long, long, StatCombiner)}, for combiners which may only look
+     * at the events when {@code eventsOnly} is set. The daily stats on disk then only hold the
+     * events in the range, and only those of {@code packageName} if it isn't null.
+     */
+    @Nullable
+    private <T> List<T> queryStats(int intervalType, final long beginTime, final long endTime,
+            boolean eventsOnly, @Nullable String packageName, StatCombiner<T> combiner) {
         if (intervalType == INTERVAL_BEST) {
             intervalType = mDatabase.findBestFitBucket(beginTime, endTime);
             if (intervalType < 0) {
@@ -487,8 +498,9 @@ class UserUsageStatsService {
         final long truncatedEndTime = Math.min(currentStats.beginTime, endTime);
 
         // Get the stats from disk.
-        List<T> results = mDatabase.queryUsageStats(intervalType, beginTime,
-                truncatedEndTime, combiner);
+        List<T> results = eventsOnly && intervalType == INTERVAL_DAILY
+                ? mDatabase.queryEvents(beginTime, truncatedEndTime, packageName, combiner)
+                : mDatabase.queryUsageStats(intervalType, beginTime, truncatedEndTime, combiner);
         if (DEBUG) {
             Slog.d(TAG, "Got " + (results != null ? results.size() : 0) + " results from disk");
             Slog.d(TAG, "Current stats beginTime=" + currentStats.beginTime +
@@ -536,18 +548,30 @@ class UserUsageStatsService {
     }
 
     UsageEvents queryEvents(final long beginTime, final long endTime, int flags) {
+        return queryEvents(beginTime, endTime, flags, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns up to {@code maxEvents} of the events in the range, after skipping the first
+     * {@code skip} of them. The stats are only read until the page is full.
+     */
+    UsageEvents queryEvents(final long beginTime, final long endTime, int flags, int skip,
+            int maxEvents) {
         if (!validRange(checkAndGetTimeLocked(), beginTime, endTime)) {
             return null;
         }
-        final ArraySet<String> names = new ArraySet<>();
+        final long limit = (long) skip + maxEvents;
         List<Event> results = queryStats(INTERVAL_DAILY,
-                beginTime, endTime, new StatCombiner<Event>() {
+                beginTime, endTime, true, null, new StatCombiner<Event>() {
                     @Override
                     public boolean combine(IntervalStats stats, boolean mutable,
                             List<Event> accumulatedResult) {
                         final int startIndex = stats.events.firstIndexOnOrAfter(beginTime);
                         final int size = stats.events.size();
                         for (int i = startIndex; i < size; i++) {
+                            if (accumulatedResult.size() >= limit) {
+                                return false;
+                            }
                             Event event = stats.events.get(i);
                             if (event.mTimeStamp >= endTime) {
                                 return false;
@@ -571,28 +595,36 @@ class UserUsageStatsService {
                             if ((flags & OBFUSCATE_INSTANT_APPS) == OBFUSCATE_INSTANT_APPS) {
                                 event = event.getObfuscatedIfInstantApp();
                             }
-                            if (event.mPackage != null) {
-                                names.add(event.mPackage);
-                            }
-                            if (event.mClass != null) {
-                                names.add(event.mClass);
-                            }
-                            if (event.mTaskRootPackage != null) {
-                                names.add(event.mTaskRootPackage);
-                            }
-                            if (event.mTaskRootClass != null) {
-                                names.add(event.mTaskRootClass);
-                            }
                             accumulatedResult.add(event);
                         }
                         return true;
                     }
                 });
 
-        if (results == null || results.isEmpty()) {
+        if (results == null || results.size() <= skip) {
             return null;
         }
+        if (skip > 0) {
+            results = results.subList(skip, results.size());
+        }
 
+        final ArraySet<String> names = new ArraySet<>();
+        final int size = results.size();
+        for (int i = 0; i < size; i++) {
+            final Event event = results.get(i);
+            if (event.mPackage != null) {
+                names.add(event.mPackage);
+            }
+            if (event.mClass != null) {
+                names.add(event.mClass);
+            }
+            if (event.mTaskRootPackage != null) {
+                names.add(event.mTaskRootPackage);
+            }
+            if (event.mTaskRootClass != null) {
+                names.add(event.mTaskRootClass);
+            }
+        }
         String[] table = names.toArray(new String[names.size()]);
         Arrays.sort(table);
         return new UsageEvents(results, table, true);
@@ -660,7 +692,7 @@ class UserUsageStatsService {
         final ArraySet<String> names = new ArraySet<>();
         names.add(packageName);
         final List<Event> results = queryStats(INTERVAL_DAILY,
-                beginTime, endTime, (stats, mutable, accumulatedResult) -> {
+                beginTime, endTime, true, packageName, (stats, mutable, accumulatedResult) -> {
                     final int startIndex = stats.events.firstIndexOnOrAfter(beginTime);
                     final int size = stats.events.size();
                     for (int i = startIndex; i < size; i++) {
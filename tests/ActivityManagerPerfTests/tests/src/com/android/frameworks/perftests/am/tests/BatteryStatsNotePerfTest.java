@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.frameworks.perftests.am.tests;
+
+import android.Manifest;
+import android.os.BatteryStats;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.internal.app.IBatteryStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Measures the latency of the wakelock and sensor notes battery stats gets from binder threads,
+ * when as many threads as a busy system_server has note at the same time.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public final class BatteryStatsNotePerfTest {
+    private static final int THREAD_COUNT = 8;
+    /** The number of notes timed by each thread in each iteration of the benchmark. */
+    private static final int NOTES_PER_THREAD = 50;
+    private static final int SENSOR = 1;
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    private IBatteryStats mBatteryStats;
+
+    @Before
+    public void setUp() {
+        mBatteryStats = IBatteryStats.Stub.asInterface(
+                ServiceManager.getService(BatteryStats.SERVICE_NAME));
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .adoptShellPermissionIdentity(Manifest.permission.UPDATE_DEVICE_STATS);
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .dropShellPermissionIdentity();
+    }
+
+    @Test
+    public void testNoteWakelock() throws Exception {
+        measureConcurrentNotes(thread -> {
+            final String name = "perf-" + thread;
+            mBatteryStats.noteStartWakelock(Process.myUid(), Process.myPid(), name, name,
+                    PowerManager.PARTIAL_WAKE_LOCK, false);
+            mBatteryStats.noteStopWakelock(Process.myUid(), Process.myPid(), name, name,
+                    PowerManager.PARTIAL_WAKE_LOCK);
+        });
+    }
+
+    @Test
+    public void testNoteSensor() throws Exception {
+        measureConcurrentNotes(thread -> {
+            mBatteryStats.noteStartSensor(Process.myUid(), SENSOR);
+            mBatteryStats.noteStopSensor(Process.myUid(), SENSOR);
+        });
+    }
+
+    private interface NoteCall {
+        void call(int thread) throws RemoteException;
+    }
+
+    /**
+     * Runs {@code noteCall} {@link #NOTES_PER_THREAD} times on each of {@link #THREAD_COUNT}
+     * threads started together, and reports the latency of each call.
+     */
+    private void measureConcurrentNotes(NoteCall noteCall) throws Exception {
+        final ManualBenchmarkState state = mPerfManualStatusReporter.getBenchmarkState();
+        final ArrayList<Long> durations = new ArrayList<>(THREAD_COUNT * NOTES_PER_THREAD);
+        final long[][] threadDurations = new long[THREAD_COUNT][NOTES_PER_THREAD];
+        while (state.keepRunning(durations)) {
+            durations.clear();
+            final CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+            final Thread[] threads = new Thread[THREAD_COUNT];
+            for (int t = 0; t < THREAD_COUNT; t++) {
+                final int thread = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        barrier.await();
+                        for (int i = 0; i < NOTES_PER_THREAD; i++) {
+                            final long startTime = System.nanoTime();
+                            noteCall.call(thread);
+                            threadDurations[thread][i] = System.nanoTime() - startTime;
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }, "note-" + t);
+                threads[t].start();
+            }
+            for (int t = 0; t < THREAD_COUNT; t++) {
+                threads[t].join();
+                for (long duration : threadDurations[t]) {
+                    durations.add(duration);
+                }
+            }
+        }
+    }
+}
@@ -71,6 +71,7 @@ public final class OomAdjPerfTest extends BasePerfTest {
 
     private static final String ATRACE_CATEGORY = "am";
     private static final String ATRACE_OOMADJ_PREFIX = "updateOomAdj_";
+    private static final int OOMADJ_UPDATE_POLICY_INCREMENTAL = 2;
 
     private TraceMarkParser mTraceMarkParser = new TraceMarkParser(this::shouldFilterTraceLine);
     private final ArrayList<Long> mDurations = new ArrayList<Long>();
@@ -105,6 +106,25 @@ public final class OomAdjPerfTest extends BasePerfTest {
 
     @Test
     public void testOomAdj() {
+        runOomAdjBenchmark();
+    }
+
+    /**
+     * Same as {@link #testOomAdj}, with the oom adjuster propagating changes only to the
+     * processes they affect.
+     */
+    @Test
+    public void testOomAdjIncremental() {
+        Utils.runShellCommand("device_config put activity_manager oomadj_update_policy "
+                + OOMADJ_UPDATE_POLICY_INCREMENTAL);
+        try {
+            runOomAdjBenchmark();
+        } finally {
+            Utils.runShellCommand("device_config delete activity_manager oomadj_update_policy");
+        }
+    }
+
+    private void runOomAdjBenchmark() {
         final AtraceUtils atraceUtils = AtraceUtils.getInstance(
                 InstrumentationRegistry.getInstrumentation());
         final ManualBenchmarkState state = mPerfManualStatusReporter.getBenchmarkState();
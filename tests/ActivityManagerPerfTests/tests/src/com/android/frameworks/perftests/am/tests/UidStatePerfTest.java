@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.frameworks.perftests.am.tests;
+
+import android.Manifest;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.HandlerThread;
+import android.perftests.utils.ManualBenchmarkState;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.frameworks.perftests.am.util.TargetPackageUtils;
+import com.android.frameworks.perftests.am.util.Utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Measures the latency of uid state queries while another thread keeps the OomAdjuster busy
+ * by starting and stopping activities and services of the stub packages. The queries are
+ * served from the published uid state snapshot, so their latency should not depend on how
+ * long the concurrent oom adj updates hold the AMS lock.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public final class UidStatePerfTest extends BasePerfTest {
+    private static final String STUB_PACKAGE1_NAME = "com.android.stubs.am1";
+    private static final String STUB_PACKAGE2_NAME = "com.android.stubs.am2";
+
+    /** The number of queries timed in each iteration of the benchmark. */
+    private static final int QUERIES_PER_ITERATION = 100;
+
+    private final ArrayList<Long> mDurations = new ArrayList<>(QUERIES_PER_ITERATION);
+    private HandlerThread mHandlerThread;
+    private Thread mStormThread;
+    private volatile boolean mStopStorm;
+    private ActivityManager mActivityManager;
+    private int mStubUid;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mActivityManager = mContext.getSystemService(ActivityManager.class);
+        mHandlerThread = new HandlerThread("command receiver");
+        mHandlerThread.start();
+        TargetPackageUtils.initCommandResultReceiver(mHandlerThread.getLooper());
+
+        Utils.runShellCommand("cmd deviceidle whitelist +" + STUB_PACKAGE1_NAME);
+        Utils.runShellCommand("cmd deviceidle whitelist +" + STUB_PACKAGE2_NAME);
+        TargetPackageUtils.startStubPackage(mContext, STUB_PACKAGE1_NAME);
+        TargetPackageUtils.startStubPackage(mContext, STUB_PACKAGE2_NAME);
+        try {
+            mStubUid = mContext.getPackageManager().getPackageUid(STUB_PACKAGE1_NAME, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .adoptShellPermissionIdentity(Manifest.permission.PACKAGE_USAGE_STATS);
+    }
+
+    @After
+    public void tearDown() {
+        stopOomAdjStorm();
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .dropShellPermissionIdentity();
+        TargetPackageUtils.stopStubPackage(mContext, STUB_PACKAGE1_NAME);
+        TargetPackageUtils.stopStubPackage(mContext, STUB_PACKAGE2_NAME);
+        Utils.runShellCommand("cmd deviceidle whitelist -" + STUB_PACKAGE1_NAME);
+        Utils.runShellCommand("cmd deviceidle whitelist -" + STUB_PACKAGE2_NAME);
+        mHandlerThread.quitSafely();
+    }
+
+    @Test
+    public void testGetUidImportance() {
+        measureQueries();
+    }
+
+    @Test
+    public void testGetUidImportanceDuringOomAdjStorm() {
+        startOomAdjStorm();
+        measureQueries();
+    }
+
+    private void measureQueries() {
+        final ManualBenchmarkState state = mPerfManualStatusReporter.getBenchmarkState();
+        while (state.keepRunning(mDurations)) {
+            mDurations.clear();
+            for (int i = 0; i < QUERIES_PER_ITERATION; i++) {
+                final long startTime = System.nanoTime();
+                mActivityManager.getUidImportance(mStubUid);
+                mDurations.add(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    private void startOomAdjStorm() {
+        mStopStorm = false;
+        mStormThread = new Thread(() -> {
+            while (!mStopStorm) {
+                TargetPackageUtils.startActivity(STUB_PACKAGE1_NAME, STUB_PACKAGE1_NAME);
+                TargetPackageUtils.bindService(STUB_PACKAGE1_NAME, STUB_PACKAGE2_NAME,
+                        Context.BIND_AUTO_CREATE);
+                TargetPackageUtils.sendBroadcast(STUB_PACKAGE2_NAME, STUB_PACKAGE2_NAME);
+                TargetPackageUtils.stopActivity(STUB_PACKAGE1_NAME, STUB_PACKAGE1_NAME);
+                TargetPackageUtils.unbindService(STUB_PACKAGE1_NAME, STUB_PACKAGE2_NAME, 0);
+            }
+        }, "oom adj storm");
+        mStormThread.start();
+    }
+
+    private void stopOomAdjStorm() {
+        if (mStormThread == null) {
+            return;
+        }
+        mStopStorm = true;
+        try {
+            mStormThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mStormThread = null;
+    }
+}
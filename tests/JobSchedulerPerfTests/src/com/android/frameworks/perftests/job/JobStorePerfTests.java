@@ -47,6 +47,7 @@ public class JobStorePerfTests {
     private static final int SOURCE_USER_ID = 0;
     private static final int BASE_CALLING_UID = 10079;
     private static final int MAX_UID_COUNT = 10;
+    private static final long WRITE_TIMEOUT_MS = 30_000L;
 
     private static Context sContext;
     private static File sTestDir;
@@ -54,6 +55,7 @@ public class JobStorePerfTests {
 
     private static List<JobStatus> sFewJobs = new ArrayList<>();
     private static List<JobStatus> sManyJobs = new ArrayList<>();
+    private static List<JobStatus> sHugeJobs = new ArrayList<>();
 
     @Rule
     public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
@@ -70,6 +72,9 @@ public class JobStorePerfTests {
         for (int i = 0; i < 500; i++) {
             sManyJobs.add(createJobStatus("manyJobs", i, BASE_CALLING_UID + (i % MAX_UID_COUNT)));
         }
+        for (int i = 0; i < 5000; i++) {
+            sHugeJobs.add(createJobStatus("hugeJobs", i, BASE_CALLING_UID + (i % MAX_UID_COUNT)));
+        }
     }
 
     @AfterClass
@@ -162,6 +167,64 @@ public class JobStorePerfTests {
         runPersistedJobWriting_delta(sManyJobs, additions, removals);
     }
 
+    /**
+     * Measures the write amplification of changing a single job at a time: besides the time of
+     * each write, reports the number of bytes written to disk for every change, including the
+     * compactions of the change log that the changes cause.
+     */
+    private void runPersistedJobWriting_singleChange(List<JobStatus> jobList,
+            boolean useSplitFiles, boolean useChangeLog) {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        sJobStore.setUseSplitFilesForTesting(useSplitFiles);
+        sJobStore.setUseChangeLog(useChangeLog);
+        try {
+            sJobStore.clearForTesting();
+            for (JobStatus job : jobList) {
+                sJobStore.addForTesting(job);
+            }
+            sJobStore.writeStatusToDiskForTesting();
+
+            long persistedBytes = sJobStore.getPersistedBytesForTesting();
+            long elapsedTimeNs = 0;
+            int changedJob = 0;
+            while (benchmarkState.keepRunning(elapsedTimeNs)) {
+                // Let any compaction of the change log finish so that the write can be started.
+                sJobStore.waitForWriteToCompleteForTesting(WRITE_TIMEOUT_MS);
+                sJobStore.addForTesting(jobList.get(changedJob));
+                changedJob = (changedJob + 1) % jobList.size();
+
+                final long startTime = SystemClock.elapsedRealtimeNanos();
+                sJobStore.writeStatusToDiskForTesting();
+                final long endTime = SystemClock.elapsedRealtimeNanos();
+                elapsedTimeNs = endTime - startTime;
+
+                final long newPersistedBytes = sJobStore.getPersistedBytesForTesting();
+                benchmarkState.addExtraResult("bytesWritten", newPersistedBytes - persistedBytes);
+                persistedBytes = newPersistedBytes;
+            }
+        } finally {
+            sJobStore.waitForWriteToCompleteForTesting(WRITE_TIMEOUT_MS);
+            sJobStore.setUseSplitFilesForTesting(true);
+            sJobStore.setUseChangeLog(true);
+        }
+    }
+
+    @Test
+    public void testPersistedJobWriting_singleChange_hugeJobs_singleFile() {
+        runPersistedJobWriting_singleChange(sHugeJobs, false, false);
+    }
+
+    @Test
+    public void testPersistedJobWriting_singleChange_hugeJobs_splitFiles() {
+        runPersistedJobWriting_singleChange(sHugeJobs, true, false);
+    }
+
+    @Test
+    public void testPersistedJobWriting_singleChange_hugeJobs_changeLog() {
+        runPersistedJobWriting_singleChange(sHugeJobs, true, true);
+    }
+
     private void runPersistedJobReading(List<JobStatus> jobList, boolean rtcIsGood) {
         final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
 
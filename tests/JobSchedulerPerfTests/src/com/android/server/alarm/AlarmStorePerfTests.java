@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.alarm;
+
+import static android.app.AlarmManager.ELAPSED_REALTIME;
+import static android.app.AlarmManager.ELAPSED_REALTIME_WAKEUP;
+
+import static com.android.server.alarm.Alarm.EXACT_ALLOW_REASON_NOT_APPLICABLE;
+
+import android.app.IAlarmCompleteListener;
+import android.app.IAlarmListener;
+import android.os.SystemClock;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+import android.text.format.DateUtils;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the throughput of the {@link AlarmStore} implementations on a store holding as many
+ * alarms as a busy device does.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class AlarmStorePerfTests {
+    private static final String SOURCE_PACKAGE = "com.android.frameworks.perftests.alarm";
+    private static final int BASE_UID = 10079;
+    private static final int UID_COUNT = 100;
+    private static final int ALARM_COUNT = 5000;
+    /** The alarms are spread over this much time, as most alarms are due within a day. */
+    private static final long ALARM_SPREAD = DateUtils.DAY_IN_MILLIS;
+    /** How far the clock moves between two calls to removePendingAlarms. */
+    private static final long DELIVERY_STEP = 10 * DateUtils.MINUTE_IN_MILLIS;
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    @Parameterized.Parameter(0)
+    public String mName;
+    @Parameterized.Parameter(1)
+    public Supplier<AlarmStore> mStoreSupplier;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][] {
+                { "lazy", (Supplier<AlarmStore>) LazyAlarmStore::new },
+                { "timingWheel", (Supplier<AlarmStore>) TimingWheelAlarmStore::new },
+        });
+    }
+
+    private final ArrayList<Alarm> mAlarms = new ArrayList<>(ALARM_COUNT);
+
+    @Before
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < ALARM_COUNT; i++) {
+            final long whenElapsed = (long) (random.nextDouble() * ALARM_SPREAD);
+            final long windowLength = random.nextBoolean() ? 0 : DateUtils.MINUTE_IN_MILLIS;
+            mAlarms.add(createAlarm(i % 2 == 0 ? ELAPSED_REALTIME_WAKEUP : ELAPSED_REALTIME,
+                    whenElapsed, windowLength, BASE_UID + (i % UID_COUNT)));
+        }
+    }
+
+    private static Alarm createAlarm(int type, long whenElapsed, long windowLength, int uid) {
+        final IAlarmListener listener = new IAlarmListener.Stub() {
+            @Override
+            public void doAlarm(IAlarmCompleteListener callback) {
+            }
+        };
+        return new Alarm(type, whenElapsed, whenElapsed, windowLength, 0, null, listener,
+                "perf", null, 0, null, uid, SOURCE_PACKAGE + (uid - BASE_UID), null,
+                EXACT_ALLOW_REASON_NOT_APPLICABLE);
+    }
+
+    private AlarmStore createFullStore() {
+        final AlarmStore store = mStoreSupplier.get();
+        store.addAll(mAlarms);
+        return store;
+    }
+
+    @Test
+    public void testAdd() {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            final AlarmStore store = mStoreSupplier.get();
+
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < mAlarms.size(); i++) {
+                store.add(mAlarms.get(i));
+            }
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+
+    @Test
+    public void testRemoveForUid() {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+        final AlarmStore store = createFullStore();
+
+        long elapsedTimeNs = 0;
+        int uid = BASE_UID;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            final ArrayList<Alarm> removed = store.removeForUid(uid, a -> true);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            store.addAll(removed);
+            uid = BASE_UID + ((uid - BASE_UID + 1) % UID_COUNT);
+        }
+    }
+
+    @Test
+    public void testRemoveMatching() {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+        final AlarmStore store = createFullStore();
+
+        long elapsedTimeNs = 0;
+        int index = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            final Alarm alarm = mAlarms.get(index);
+
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            store.removeMatching(null, alarm.listener);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            store.add(alarm);
+            index = (index + 1) % mAlarms.size();
+        }
+    }
+
+    @Test
+    public void testRemovePendingAlarms() {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            final AlarmStore store = createFullStore();
+
+            // Deliver all the alarms the way the service does, one step of the clock at a time.
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            for (long nowElapsed = 0; store.size() > 0; nowElapsed += DELIVERY_STEP) {
+                store.removePendingAlarms(nowElapsed);
+                store.getNextWakeupDeliveryTime();
+                store.getNextDeliveryTime();
+            }
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.job.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+import android.app.AlarmManager;
+import android.app.UiModeManager;
+import android.app.job.JobInfo;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.BatteryManagerInternal;
+import android.os.SystemClock;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.LocalServices;
+import com.android.server.job.JobSchedulerService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Measures the cost of a device state change for {@link BatteryController} and
+ * {@link IdleController}, which only visit the jobs whose constraint flips, as found by their
+ * {@link ConstraintIndex}. The battery benchmarks also time the controller path that still goes
+ * through every tracked job, a top app change, as a reference.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ConstraintIndexPerfTests {
+    private static final String SOURCE_PACKAGE = "com.android.frameworks.perftests.job";
+    private static final int SOURCE_USER_ID = 0;
+    private static final int BASE_CALLING_UID = 10079;
+    private static final int UID_COUNT = 500;
+    private static final int JOB_COUNT = 10_000;
+    /** A uid without jobs, whose top app changes make the battery controller visit every job. */
+    private static final int OTHER_UID = BASE_CALLING_UID + UID_COUNT;
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    private Context mContext;
+    private JobSchedulerService mJobSchedulerService;
+    private BatteryController mBatteryController;
+    private IdleController mIdleController;
+    private BroadcastReceiver mPowerReceiver;
+    private final Intent mPowerConnectedIntent = new Intent(Intent.ACTION_POWER_CONNECTED);
+    private final Intent mPowerDisconnectedIntent = new Intent(Intent.ACTION_POWER_DISCONNECTED);
+    private boolean mCharging;
+
+    @Before
+    public void setUp() {
+        mContext = mock(Context.class);
+        doReturn(mock(PackageManager.class)).when(mContext).getPackageManager();
+        doReturn(mock(Resources.class)).when(mContext).getResources();
+        doReturn(mock(AlarmManager.class)).when(mContext).getSystemService(Context.ALARM_SERVICE);
+        doReturn(mock(UiModeManager.class)).when(mContext).getSystemService(UiModeManager.class);
+        LocalServices.removeServiceForTest(BatteryManagerInternal.class);
+        LocalServices.addService(BatteryManagerInternal.class,
+                mock(BatteryManagerInternal.class));
+
+        // Stub only, so that the state change reports aren't recorded while benchmarking.
+        mJobSchedulerService = mock(JobSchedulerService.class, withSettings().stubOnly());
+        doReturn(mContext).when(mJobSchedulerService).getTestableContext();
+        doReturn(new Object()).when(mJobSchedulerService).getLock();
+        doReturn(new JobSchedulerService.Constants()).when(mJobSchedulerService).getConstants();
+        doAnswer(invocation -> mCharging).when(mJobSchedulerService).isBatteryCharging();
+        doReturn(true).when(mJobSchedulerService).isBatteryNotLow();
+
+        final FlexibilityController flexibilityController =
+                new FlexibilityController(mJobSchedulerService, mock(PrefetchController.class));
+        mBatteryController = new BatteryController(mJobSchedulerService, flexibilityController);
+        mIdleController = new IdleController(mJobSchedulerService, flexibilityController);
+        final ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mContext).registerReceiver(receiverCaptor.capture(), any(IntentFilter.class));
+        mPowerReceiver = receiverCaptor.getValue();
+
+        final Context targetContext = InstrumentationRegistry.getTargetContext();
+        final ComponentName batteryService =
+                new ComponentName(targetContext, "BatteryPerfTestJobService");
+        final ComponentName idleService =
+                new ComponentName(targetContext, "IdlePerfTestJobService");
+        synchronized (mJobSchedulerService.getLock()) {
+            for (int i = 0; i < JOB_COUNT; i++) {
+                final int uid = BASE_CALLING_UID + (i % UID_COUNT);
+                mBatteryController.maybeStartTrackingJobLocked(createJobStatus(uid,
+                        new JobInfo.Builder(i, batteryService).setRequiresCharging(true)), null);
+                mIdleController.maybeStartTrackingJobLocked(createJobStatus(uid,
+                        new JobInfo.Builder(i, idleService).setRequiresDeviceIdle(true)), null);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        LocalServices.removeServiceForTest(BatteryManagerInternal.class);
+    }
+
+    private static JobStatus createJobStatus(int uid, JobInfo.Builder builder) {
+        return JobStatus.createFromJobInfo(builder.build(), uid, SOURCE_PACKAGE, SOURCE_USER_ID,
+                null, "ConstraintIndexPerfTests");
+    }
+
+    /**
+     * Reports a battery state change to the battery controller the way power connection
+     * broadcasts do, with the device charging or not.
+     */
+    private void runBatteryStateChange(boolean flip) {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        boolean powerConnected = false;
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            // Power connection changes that don't affect charging still have the controller
+            // evaluate its jobs, like battery level updates do.
+            powerConnected = !powerConnected;
+            if (flip) {
+                mCharging = !mCharging;
+            }
+            final Intent intent = powerConnected ? mPowerConnectedIntent
+                    : mPowerDisconnectedIntent;
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            mPowerReceiver.onReceive(mContext, intent);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+
+    /** Has the battery controller evaluate every tracked job after a battery state change. */
+    private void runBatteryStateChangeForAllJobs(boolean flip) {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            if (flip) {
+                mCharging = !mCharging;
+            }
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            synchronized (mJobSchedulerService.getLock()) {
+                mBatteryController.onUidBiasChangedLocked(OTHER_UID, JobInfo.BIAS_TOP_APP,
+                        JobInfo.BIAS_DEFAULT);
+            }
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+
+    private void runIdleStateChange(boolean flip) {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        boolean idle = false;
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            if (flip) {
+                idle = !idle;
+            }
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            mIdleController.reportNewIdleState(idle);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+
+    /** A battery state update that doesn't change whether the device is charging. */
+    @Test
+    public void testBatteryUnchangedState() {
+        runBatteryStateChange(false);
+    }
+
+    @Test
+    public void testBatteryUnchangedState_allJobs() {
+        runBatteryStateChangeForAllJobs(false);
+    }
+
+    /** The device starting or stopping to charge, which flips the constraint of every job. */
+    @Test
+    public void testBatteryFlippedState() {
+        runBatteryStateChange(true);
+    }
+
+    @Test
+    public void testBatteryFlippedState_allJobs() {
+        runBatteryStateChangeForAllJobs(true);
+    }
+
+    @Test
+    public void testIdleUnchangedState() {
+        runIdleStateChange(false);
+    }
+
+    @Test
+    public void testIdleFlippedState() {
+        runIdleStateChange(true);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.usage;
+
+import static android.app.usage.UsageStatsManager.REASON_SUB_USAGE_MOVE_TO_FOREGROUND;
+import static android.app.usage.UsageStatsManager.STANDBY_BUCKET_ACTIVE;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import android.app.usage.UsageStatsManagerInternal;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.FileUtils;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+import android.telephony.TelephonyManager;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.LocalServices;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of the periodic idle check of {@link AppStandbyController}, which recomputes
+ * the age-based standby bucket of every package of every running user.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class AppIdleHistoryPerfTests {
+    private static final int USER_COUNT = 4;
+    private static final int PACKAGE_COUNT = 600;
+    private static final long ONE_HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    private File mStorageDir;
+    private HandlerThread mHandlerThread;
+    private PerfInjector mInjector;
+    private AppStandbyController mController;
+
+    /** Keeps the controller away from the services of the device, and controls its clock. */
+    private static class PerfInjector extends AppStandbyController.Injector {
+        private final File mDataSystemDirectory;
+        private final int[] mRunningUserIds = new int[USER_COUNT];
+        long mElapsedRealtime;
+
+        PerfInjector(Context context, Looper looper, File dataSystemDirectory) {
+            super(context, looper);
+            mDataSystemDirectory = dataSystemDirectory;
+            for (int userId = 0; userId < USER_COUNT; userId++) {
+                mRunningUserIds[userId] = userId;
+            }
+        }
+
+        @Override
+        void onBootPhase(int phase) {
+        }
+
+        @Override
+        long elapsedRealtime() {
+            return mElapsedRealtime;
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return mElapsedRealtime;
+        }
+
+        @Override
+        boolean isAppIdleEnabled() {
+            return true;
+        }
+
+        @Override
+        File getDataSystemDirectory() {
+            return mDataSystemDirectory;
+        }
+
+        @Override
+        void noteEvent(int event, String packageName, int uid) {
+        }
+
+        @Override
+        int[] getRunningUserIds() {
+            return mRunningUserIds;
+        }
+    }
+
+    /** Serves the installed packages from a mock, and has no carrier privileged apps. */
+    private static class PerfContext extends ContextWrapper {
+        private final PackageManager mPackageManager = mock(PackageManager.class);
+        private final TelephonyManager mTelephonyManager = mock(TelephonyManager.class);
+
+        PerfContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public PackageManager getPackageManager() {
+            return mPackageManager;
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            if (Context.TELEPHONY_SERVICE.equals(name)) {
+                return mTelephonyManager;
+            }
+            return super.getSystemService(name);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mStorageDir = new File(context.getCacheDir(), "appidle-perf");
+        mStorageDir.mkdirs();
+        mHandlerThread = new HandlerThread("AppIdleHistoryPerfTests");
+        mHandlerThread.start();
+
+        final PerfContext perfContext = new PerfContext(context);
+        for (int userId = 0; userId < USER_COUNT; userId++) {
+            final List<PackageInfo> packages = new ArrayList<>(PACKAGE_COUNT);
+            for (int p = 0; p < PACKAGE_COUNT; p++) {
+                final PackageInfo pi = new PackageInfo();
+                pi.packageName = "com.android.perftests.usage.package" + p;
+                pi.applicationInfo = new ApplicationInfo();
+                pi.applicationInfo.uid =
+                        UserHandle.getUid(userId, Process.FIRST_APPLICATION_UID + p);
+                packages.add(pi);
+            }
+            doReturn(packages).when(perfContext.mPackageManager)
+                    .getInstalledPackagesAsUser(anyInt(), eq(userId));
+        }
+        doReturn(PackageManager.PERMISSION_DENIED).when(perfContext.mPackageManager)
+                .checkPermission(anyString(), anyString());
+
+        LocalServices.removeServiceForTest(UsageStatsManagerInternal.class);
+        LocalServices.addService(UsageStatsManagerInternal.class,
+                mock(UsageStatsManagerInternal.class));
+        mInjector = new PerfInjector(perfContext, mHandlerThread.getLooper(), mStorageDir);
+        mController = new AppStandbyController(mInjector);
+        mController.setAppIdleEnabled(true);
+
+        // Spread the last usage of the packages over the past 10 days.
+        final long now = 10 * 24 * ONE_HOUR;
+        final AppIdleHistory appIdleHistory = mController.getAppIdleHistoryForTest();
+        appIdleHistory.updateDisplay(true, 0);
+        for (int userId = 0; userId < USER_COUNT; userId++) {
+            for (int p = 0; p < PACKAGE_COUNT; p++) {
+                appIdleHistory.reportUsage("com.android.perftests.usage.package" + p, userId,
+                        STANDBY_BUCKET_ACTIVE, REASON_SUB_USAGE_MOVE_TO_FOREGROUND,
+                        1 + (now / PACKAGE_COUNT) * p, 0);
+            }
+        }
+        mInjector.mElapsedRealtime = now;
+    }
+
+    @After
+    public void tearDown() {
+        mHandlerThread.quitSafely();
+        LocalServices.removeServiceForTest(UsageStatsManagerInternal.class);
+        FileUtils.deleteContentsAndDir(mStorageDir);
+    }
+
+    private void runCheckIdleStates(int userId) {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            // Move time forward by an hour for each run, so that some packages change buckets.
+            mInjector.mElapsedRealtime += ONE_HOUR;
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            mController.checkIdleStates(userId);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+    }
+
+    @Test
+    public void testCheckIdleStates_allUsers() {
+        runCheckIdleStates(UserHandle.USER_ALL);
+    }
+
+    @Test
+    public void testCheckIdleStates_oneUser() {
+        runCheckIdleStates(0);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.notification;
+
+import android.app.NotificationHistory;
+import android.app.NotificationHistory.HistoricalNotification;
+import android.content.Context;
+import android.graphics.drawable.Icon;
+import android.os.FileUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+import android.text.format.DateUtils;
+import android.util.AtomicFile;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Compares the time taken to read the notifications of one package, or one channel of it, from
+ * 30 days of history of a busy device, with and without the index of the history files.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class NotificationHistoryDatabasePerfTest {
+    private static final int DAYS = 30;
+    private static final int NOTIFICATIONS_PER_DAY = 1000;
+    private static final int PACKAGE_COUNT = 50;
+    private static final int CHANNELS_PER_PACKAGE = 4;
+
+    private static final String PACKAGE = "com.android.perftests.notification.package7";
+    private static final String CHANNEL = "channel2";
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    private File mRootDir;
+    private NotificationHistoryDatabase mDataBase;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mRootDir = new File(context.getCacheDir(), "notification-history-perf");
+        FileUtils.deleteContentsAndDir(mRootDir);
+        mRootDir.mkdirs();
+        mDataBase = new NotificationHistoryDatabase(new Handler(Looper.getMainLooper()),
+                mRootDir);
+        mDataBase.init();
+
+        final Icon icon = Icon.createWithResource(context, android.R.drawable.ic_dialog_info);
+        final File historyDir = new File(mRootDir, "history");
+        final long now = System.currentTimeMillis();
+        // Oldest first, as each written file becomes the newest one
+        for (int day = DAYS - 1; day >= 0; day--) {
+            final long dayStart = now - day * DateUtils.DAY_IN_MILLIS;
+            for (int i = 0; i < NOTIFICATIONS_PER_DAY; i++) {
+                final int p = i % PACKAGE_COUNT;
+                mDataBase.mBuffer.addNewNotificationToWrite(new HistoricalNotification.Builder()
+                        .setPackage("com.android.perftests.notification.package" + p)
+                        .setChannelId("channel" + (i / PACKAGE_COUNT) % CHANNELS_PER_PACKAGE)
+                        .setChannelName("Channel " + (i / PACKAGE_COUNT) % CHANNELS_PER_PACKAGE)
+                        .setUid(10000 + p)
+                        .setUserId(0)
+                        .setPostedTimeMs(dayStart + i * 1000L)
+                        .setTitle("Title " + i)
+                        .setText("Some text of notification " + i + " of day " + day)
+                        .setIcon(icon)
+                        .build());
+            }
+            mDataBase.new WriteBufferRunnable().run(
+                    new AtomicFile(new File(historyDir, String.valueOf(dayStart))));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteContentsAndDir(mRootDir);
+    }
+
+    @Test
+    public void testReadPackage_indexed() {
+        runReadTest(PACKAGE, null, true);
+    }
+
+    @Test
+    public void testReadPackage_fullParse() {
+        runReadTest(PACKAGE, null, false);
+    }
+
+    @Test
+    public void testReadChannel_indexed() {
+        runReadTest(PACKAGE, CHANNEL, true);
+    }
+
+    @Test
+    public void testReadChannel_fullParse() {
+        runReadTest(PACKAGE, CHANNEL, false);
+    }
+
+    private void runReadTest(String packageName, String channelId, boolean indexed) {
+        if (!indexed) {
+            FileUtils.deleteContents(new File(mRootDir, "history_index"));
+        }
+        final ManualBenchmarkState state = mPerfManualStatusReporter.getBenchmarkState();
+        long elapsedTimeNs = 0;
+        while (state.keepRunning(elapsedTimeNs)) {
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            final NotificationHistory history = mDataBase.readNotificationHistory(packageName,
+                    channelId, Integer.MAX_VALUE);
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            state.addExtraResult("notifications", history.getHistoryCount());
+        }
+    }
+}
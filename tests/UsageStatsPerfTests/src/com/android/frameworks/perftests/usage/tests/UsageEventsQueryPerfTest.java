@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.frameworks.perftests.usage.tests;
+
+import android.Manifest;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageEventsCursor;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.perftests.utils.ManualBenchmarkState;
+import android.perftests.utils.PerfManualStatusReporter;
+import android.text.format.DateUtils;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the time taken and the peak heap, Java and native, used by the caller to read the last
+ * 30 days of usage events, all at once or through a paged cursor.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class UsageEventsQueryPerfTest {
+    private static final long QUERY_RANGE = 30 * DateUtils.DAY_IN_MILLIS;
+    private static final int PAGE_SIZE = 500;
+    /** How often to sample the heap while reading events. */
+    private static final int HEAP_SAMPLE_INTERVAL = 100;
+
+    @Rule
+    public PerfManualStatusReporter mPerfManualStatusReporter = new PerfManualStatusReporter();
+
+    private UsageStatsManager mUsageStatsManager;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mUsageStatsManager = context.getSystemService(UsageStatsManager.class);
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .adoptShellPermissionIdentity(Manifest.permission.PACKAGE_USAGE_STATS);
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .dropShellPermissionIdentity();
+    }
+
+    @Test
+    public void testQueryEvents_30Days() {
+        runQueryTest(false);
+    }
+
+    @Test
+    public void testQueryEventsCursor_30Days() {
+        runQueryTest(true);
+    }
+
+    private void runQueryTest(boolean paged) {
+        final ManualBenchmarkState state = mPerfManualStatusReporter.getBenchmarkState();
+        final UsageEvents.Event event = new UsageEvents.Event();
+        long elapsedTimeNs = 0;
+        while (state.keepRunning(elapsedTimeNs)) {
+            final long endTime = System.currentTimeMillis();
+            final long beginTime = endTime - QUERY_RANGE;
+            final long baseHeap = getUsedHeap(true);
+            long peakHeap = baseHeap;
+            int eventCount = 0;
+
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            if (paged) {
+                final UsageEventsCursor cursor = mUsageStatsManager.queryEventsCursor(
+                        beginTime, endTime, PAGE_SIZE);
+                while (cursor.getNextEvent(event)) {
+                    if (++eventCount % HEAP_SAMPLE_INTERVAL == 0) {
+                        peakHeap = Math.max(peakHeap, getUsedHeap(false));
+                    }
+                }
+            } else {
+                final UsageEvents events = mUsageStatsManager.queryEvents(beginTime, endTime);
+                while (events.getNextEvent(event)) {
+                    if (++eventCount % HEAP_SAMPLE_INTERVAL == 0) {
+                        peakHeap = Math.max(peakHeap, getUsedHeap(false));
+                    }
+                }
+            }
+            elapsedTimeNs = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            peakHeap = Math.max(peakHeap, getUsedHeap(false));
+            state.addExtraResult("peak_heap_bytes", peakHeap - baseHeap);
+            state.addExtraResult("events", eventCount);
+        }
+    }
+
+    private static long getUsedHeap(boolean gc) {
+        final Runtime runtime = Runtime.getRuntime();
+        if (gc) {
+            runtime.gc();
+            runtime.runFinalization();
+            runtime.gc();
+        }
+        // The events of a UsageEvents are kept in a native Parcel until read.
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+}
@@ -24,6 +24,7 @@ import android.content.Context;
 import android.os.SystemClock;
 import android.perftests.utils.ManualBenchmarkState;
 import android.perftests.utils.PerfManualStatusReporter;
+import android.text.format.DateUtils;
 
 import androidx.test.InstrumentationRegistry;
 import androidx.test.filters.LargeTest;
@@ -58,6 +59,8 @@ public class UsageStatsDatabasePerfTest {
     final static int LIGHT_USE = 10;
     // Represents how many usage events per app a device might have with heavy usage
     final static int HEAVY_USE = 50;
+    // Represents a year of daily usage stats files
+    final static int YEAR_OF_DAYS = 365;
 
     private static final StatCombiner<UsageEvents.Event> sUsageStatsCombiner =
             new StatCombiner<UsageEvents.Event>() {
@@ -101,6 +104,36 @@ public class UsageStatsDatabasePerfTest {
         }
     }
 
+    /**
+     * Writes a daily file for each of the given number of days, with the events of the given
+     * packages spread over the day.
+     */
+    private static void populateDailyFiles(int dayCount, int packageCount, int eventsPerPackage)
+            throws IOException {
+        final long eventSpacing = DateUtils.DAY_IN_MILLIS / (packageCount * eventsPerPackage);
+        for (int day = 1; day <= dayCount; day++) {
+            final IntervalStats intervalStats = new IntervalStats();
+            intervalStats.beginTime = day * DateUtils.DAY_IN_MILLIS;
+            long time = intervalStats.beginTime;
+            for (int evt = 0; evt < eventsPerPackage; evt++) {
+                for (int pkg = 0; pkg < packageCount; pkg++) {
+                    UsageEvents.Event event = new UsageEvents.Event();
+                    event.mPackage = "fake.package.name" + pkg;
+                    event.mClass = event.mPackage + ".class1";
+                    event.mTimeStamp = time;
+                    event.mEventType = evt % 2 == 0 ? UsageEvents.Event.ACTIVITY_RESUMED
+                            : UsageEvents.Event.ACTIVITY_PAUSED;
+                    intervalStats.events.insert(event);
+                    intervalStats.update(event.mPackage, event.mClass, event.mTimeStamp,
+                            event.mEventType, 1);
+                    time += eventSpacing;
+                }
+            }
+            intervalStats.endTime = intervalStats.beginTime + DateUtils.DAY_IN_MILLIS;
+            sUsageStatsDatabase.putUsageStats(UsageStatsManager.INTERVAL_DAILY, intervalStats);
+        }
+    }
+
     private static void clearUsageStatsFiles() {
         File[] intervalDirs = mTestDir.listFiles();
         for (File intervalDir : intervalDirs) {
@@ -174,6 +207,52 @@ public class UsageStatsDatabasePerfTest {
         }
     }
 
+    /**
+     * Queries the events of one package during one day out of a year of daily files, either from
+     * the event logs or by reading the whole daily files.
+     */
+    private void runQueryOneDayOfPackageEventsTest(boolean fromEventLogs) throws IOException {
+        final ManualBenchmarkState benchmarkState = mPerfManualStatusReporter.getBenchmarkState();
+        clearUsageStatsFiles();
+        populateDailyFiles(YEAR_OF_DAYS, MANY_PKGS, HEAVY_USE);
+        final String packageName = "fake.package.name" + (MANY_PKGS / 2);
+        final long beginTime = (YEAR_OF_DAYS / 2) * DateUtils.DAY_IN_MILLIS;
+        final long endTime = beginTime + DateUtils.DAY_IN_MILLIS;
+        final StatCombiner<UsageEvents.Event> combiner = (stats, mutable, accResult) -> {
+            final int size = stats.events.size();
+            for (int i = 0; i < size; i++) {
+                final UsageEvents.Event event = stats.events.get(i);
+                if (event.mTimeStamp >= beginTime && event.mTimeStamp < endTime
+                        && packageName.equals(event.mPackage)) {
+                    accResult.add(event);
+                }
+            }
+            return true;
+        };
+        long elapsedTimeNs = 0;
+        while (benchmarkState.keepRunning(elapsedTimeNs)) {
+            final long startTime = SystemClock.elapsedRealtimeNanos();
+            List<UsageEvents.Event> temp = fromEventLogs
+                    ? sUsageStatsDatabase.queryEvents(beginTime, endTime, packageName, combiner)
+                    : sUsageStatsDatabase.queryUsageStats(UsageStatsManager.INTERVAL_DAILY,
+                            beginTime, endTime, combiner);
+            final long endTimeNs = SystemClock.elapsedRealtimeNanos();
+            elapsedTimeNs = endTimeNs - startTime;
+            assertEquals(HEAVY_USE, temp.size());
+        }
+        clearUsageStatsFiles();
+    }
+
+    @Test
+    public void testQueryEvents_OneDayOfPackageInYear() throws IOException {
+        runQueryOneDayOfPackageEventsTest(true);
+    }
+
+    @Test
+    public void testQueryUsageStats_OneDayOfPackageInYear() throws IOException {
+        runQueryOneDayOfPackageEventsTest(false);
+    }
+
     @Test
     public void testQueryUsageStats_FewPkgsLightUse() throws IOException {
         runQueryUsageStatsTest(FEW_PKGS, LIGHT_USE);